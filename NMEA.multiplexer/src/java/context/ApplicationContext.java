@@ -32,12 +32,28 @@ public class ApplicationContext {
 	                      double hdgOffset,         // Default 0
 	                      double defaultDeclination,// Default 0
 	                      int damping) {            // Default 1
+		initCache(deviationFileName, maxLeeway, bspFactor, awsFactor, awaOffset, hdgOffset, defaultDeclination, damping, 0L);
+	}
+
+	public void initCache(String deviationFileName, // Default "zero-deviation.csv"
+	                      double maxLeeway,         // Default 0
+	                      double bspFactor,         // Default 1
+	                      double awsFactor,         // Default 1
+	                      double awaOffset,         // Default 0
+	                      double hdgOffset,         // Default 0
+	                      double defaultDeclination,// Default 0
+	                      int damping,              // Default 1
+	                      long dampingWindow) {     // Default 0, in ms
 
 		dataCache = new NMEADataCache();
+		if (damping > 1) {
+			dataCache.setDampingSize(damping);
+		}
+		if (dampingWindow > 0) {
+			dataCache.setDampingWindow(dampingWindow);
+		}
 
-		List<double[]> deviationCurve = NMEAUtils.loadDeviationCurve(deviationFileName);
-		dataCache.put(NMEADataCache.DEVIATION_FILE, deviationFileName);
-		dataCache.put(NMEADataCache.DEVIATION_DATA, deviationCurve);
+		loadDeviationCurve(deviationFileName);
 		dataCache.put(NMEADataCache.MAX_LEEWAY, maxLeeway);
 
 		dataCache.put(NMEADataCache.BSP_FACTOR, bspFactor);
@@ -48,4 +64,22 @@ public class ApplicationContext {
 		dataCache.put(NMEADataCache.DEFAULT_DECLINATION, new Angle180EW(defaultDeclination));
 		dataCache.put(NMEADataCache.DAMPING, damping);
 	}
+
+	/**
+	 * (Re-)loads the deviation curve, and its lookup table (see {@link NMEADataCache#getDeviationTable()}).
+	 * The file name and the curve are put in the cache together, the readers of the cache see both old ones, or both new ones.
+	 *
+	 * @param deviationFileName the deviation file, CSV, <code>compass heading,deviation</code> on each line
+	 * @return the curve, null if it could not be loaded (then the previous one, if any, is kept)
+	 */
+	public List<double[]> loadDeviationCurve(String deviationFileName) {
+		List<double[]> deviationCurve = NMEAUtils.loadDeviationCurve(deviationFileName);
+		if (deviationCurve != null || dataCache.get(NMEADataCache.DEVIATION_DATA) == null) {
+			dataCache.update(() -> {
+				dataCache.put(NMEADataCache.DEVIATION_FILE, deviationFileName);
+				dataCache.put(NMEADataCache.DEVIATION_DATA, deviationCurve);
+			});
+		}
+		return deviationCurve;
+	}
 }
@@ -0,0 +1,305 @@
+package context;
+
+/**
+ * The damping of one value of the {@link NMEADataCache}.
+ * <br>
+ * Keeps the last values in a ring buffer of <code>double</code>s, along with their timestamps.
+ * The buffer can be limited
+ * <ul>
+ *   <li>by count: the last <code>size</code> values</li>
+ *   <li>by time: the values of the last <code>window</code> milliseconds</li>
+ *   <li>or both, whichever is reached first.</li>
+ * </ul>
+ * All the statistics are maintained when a value comes in or goes out, nothing is iterated when they are read:
+ * <ul>
+ *   <li>running sums (and sums of squares) for the scalars</li>
+ *   <li>running sums of sines and cosines for the angles (in degrees), the mean is the circular mean</li>
+ *   <li>monotonic queues for min and max</li>
+ * </ul>
+ * So <code>add</code> and <code>getStatistics</code> are O(1) (amortized), whatever the size of the buffer.
+ * <br>
+ * Thread safe.
+ */
+public class DampingBuffer {
+
+	/**
+	 * Max number of values, when the buffer is limited by time only.
+	 */
+	public final static int MAX_CAPACITY = 1 << 16;
+
+	private final static int INITIAL_CAPACITY = 16;
+
+	private final boolean angle;
+	private int size;    // 0: not limited by count
+	private long window; // in ms, 0: not limited by time
+
+	// Ring buffer, indexed by sequence number: seq & mask
+	private double[] values;
+	private long[] times;
+	private int mask;
+	private long first = 0L; // Sequence of the oldest value
+	private long next = 0L;  // Sequence of the next value
+
+	// Monotonic queues (of sequence numbers) for min and max, same capacity as the ring.
+	private long[] minQueue;
+	private int minHead = 0, minSize = 0;
+	private long[] maxQueue;
+	private int maxHead = 0, maxSize = 0;
+
+	// Running sums. The scalars are shifted by the first value, for the variance to remain accurate.
+	private double shift = 0d;
+	private double sum = 0d;
+	private double sumSq = 0d;
+	private double sumSin = 0d;
+	private double sumCos = 0d;
+	private int sinceRecompute = 0;
+
+	/**
+	 * @param size   max number of values, 0 for no limit (up to {@link #MAX_CAPACITY})
+	 * @param window max age of the values, in ms, 0 for no limit
+	 * @param angle  true if the values are angles, in degrees
+	 */
+	public DampingBuffer(int size, long window, boolean angle) {
+		this.angle = angle;
+		this.size = size;
+		this.window = window;
+		allocate(INITIAL_CAPACITY);
+	}
+
+	private void allocate(int capacity) {
+		this.values = new double[capacity];
+		this.times = new long[capacity];
+		this.minQueue = new long[capacity];
+		this.maxQueue = new long[capacity];
+		this.mask = capacity - 1;
+	}
+
+	public boolean isAngle() {
+		return angle;
+	}
+
+	public synchronized int getSize() {
+		return size;
+	}
+
+	/**
+	 * @param size max number of values, 0 for no limit
+	 */
+	public synchronized void setSize(int size) {
+		this.size = size;
+		while (size > 0 && count() > size) {
+			evictFirst();
+		}
+	}
+
+	public synchronized long getWindow() {
+		return window;
+	}
+
+	/**
+	 * @param window max age of the values, in ms, 0 for no limit
+	 */
+	public synchronized void setWindow(long window) {
+		this.window = window;
+	}
+
+	public synchronized void clear() {
+		first = next = 0L;
+		minHead = minSize = maxHead = maxSize = 0;
+		sum = sumSq = sumSin = sumCos = 0d;
+		sinceRecompute = 0;
+	}
+
+	/**
+	 * @param value the value to add
+	 * @param time  its timestamp, in ms
+	 */
+	public synchronized void add(double value, long time) {
+		if (Double.isNaN(value)) {
+			return;
+		}
+		evictOlderThan(time);
+		int limit = (size > 0) ? Math.min(size, MAX_CAPACITY) : MAX_CAPACITY;
+		while (count() >= limit) {
+			evictFirst();
+		}
+		if (count() == values.length) {
+			grow();
+		}
+		if (count() == 0) {
+			shift = value;
+		}
+		long seq = next++;
+		int idx = (int) (seq & mask);
+		values[idx] = value;
+		times[idx] = time;
+		accumulate(value, 1);
+		// Monotonic queues: drop the values that can no longer be the min (resp. max).
+		while (minSize > 0 && values[(int) (minQueue[(minHead + minSize - 1) & mask] & mask)] >= value) {
+			minSize--;
+		}
+		minQueue[(minHead + minSize++) & mask] = seq;
+		while (maxSize > 0 && values[(int) (maxQueue[(maxHead + maxSize - 1) & mask] & mask)] <= value) {
+			maxSize--;
+		}
+		maxQueue[(maxHead + maxSize++) & mask] = seq;
+
+		if (++sinceRecompute >= values.length) { // Get rid of the rounding errors, from time to time
+			recompute();
+		}
+	}
+
+	/**
+	 * @param now the current time, in ms, to evict the values out of the time window.
+	 * @return the statistics of the values in the buffer, null if empty.
+	 */
+	public synchronized Statistics getStatistics(long now) {
+		evictOlderThan(now);
+		int count = count();
+		if (count == 0) {
+			return null;
+		}
+		double min = values[(int) (minQueue[minHead] & mask)];
+		double max = values[(int) (maxQueue[maxHead] & mask)];
+		return new Statistics(count, mean(count), min, max, stdDev(count));
+	}
+
+	/**
+	 * @param now the current time, in ms, to evict the values out of the time window.
+	 * @return the mean of the values in the buffer, NaN if empty.
+	 */
+	public synchronized double getMean(long now) {
+		evictOlderThan(now);
+		int count = count();
+		return (count == 0) ? Double.NaN : mean(count);
+	}
+
+	private int count() {
+		return (int) (next - first);
+	}
+
+	private double mean(int count) {
+		if (angle) {
+			double a = Math.toDegrees(Math.atan2(sumSin, sumCos));
+			return (a < 0) ? a + 360d : a;
+		}
+		return shift + (sum / count);
+	}
+
+	private double stdDev(int count) {
+		if (angle) { // Circular standard deviation, in degrees
+			double r = Math.min(1d, Math.sqrt((sumSin * sumSin) + (sumCos * sumCos)) / count);
+			return (r == 0) ? Double.NaN : Math.toDegrees(Math.sqrt(-2d * Math.log(r)));
+		}
+		double m = sum / count;
+		return Math.sqrt(Math.max(0d, (sumSq / count) - (m * m)));
+	}
+
+	private void accumulate(double value, int sign) {
+		if (angle) {
+			double rad = Math.toRadians(value);
+			sumSin += (sign * Math.sin(rad));
+			sumCos += (sign * Math.cos(rad));
+		} else {
+			double d = value - shift;
+			sum += (sign * d);
+			sumSq += (sign * d * d);
+		}
+	}
+
+	private void evictOlderThan(long now) {
+		if (window > 0) {
+			long oldest = now - window;
+			while (count() > 0 && times[(int) (first & mask)] < oldest) {
+				evictFirst();
+			}
+		}
+	}
+
+	private void evictFirst() {
+		long seq = first++;
+		accumulate(values[(int) (seq & mask)], -1);
+		if (minSize > 0 && minQueue[minHead] == seq) {
+			minHead = (minHead + 1) & mask;
+			minSize--;
+		}
+		if (maxSize > 0 && maxQueue[maxHead] == seq) {
+			maxHead = (maxHead + 1) & mask;
+			maxSize--;
+		}
+		if (count() == 0) {
+			sum = sumSq = sumSin = sumCos = 0d;
+		}
+	}
+
+	private void recompute() {
+		sinceRecompute = 0;
+		sum = sumSq = sumSin = sumCos = 0d;
+		for (long seq = first; seq < next; seq++) {
+			accumulate(values[(int) (seq & mask)], 1);
+		}
+	}
+
+	private void grow() {
+		double[] oldValues = this.values;
+		long[] oldTimes = this.times;
+		long[] oldMin = this.minQueue;
+		long[] oldMax = this.maxQueue;
+		int oldMask = this.mask;
+		allocate(oldValues.length * 2);
+		for (long seq = first; seq < next; seq++) {
+			values[(int) (seq & mask)] = oldValues[(int) (seq & oldMask)];
+			times[(int) (seq & mask)] = oldTimes[(int) (seq & oldMask)];
+		}
+		for (int i = 0; i < minSize; i++) {
+			minQueue[i] = oldMin[(minHead + i) & oldMask];
+		}
+		minHead = 0;
+		for (int i = 0; i < maxSize; i++) {
+			maxQueue[i] = oldMax[(maxHead + i) & oldMask];
+		}
+		maxHead = 0;
+	}
+
+	/**
+	 * What the buffer contains, at a given time. Immutable.
+	 * <br>
+	 * For the angles, the mean is the circular mean in [0, 360[, the standard deviation is the circular one,
+	 * min and max are the ones of the raw values.
+	 */
+	public final static class Statistics {
+		private final int count;
+		private final double mean;
+		private final double min;
+		private final double max;
+		private final double stdDev;
+
+		public Statistics(int count, double mean, double min, double max, double stdDev) {
+			this.count = count;
+			this.mean = mean;
+			this.min = min;
+			this.max = max;
+			this.stdDev = stdDev;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public double getMean() {
+			return mean;
+		}
+
+		public double getMin() {
+			return min;
+		}
+
+		public double getMax() {
+			return max;
+		}
+
+		public double getStdDev() {
+			return stdDev;
+		}
+	}
+}
@@ -1,10 +1,12 @@
 package context;
 
-import java.util.logging.Level;
-import nmea.mux.context.Context;
+import nmea.ais.AISParser;
+import nmea.ais.AISTargetTable;
+import nmea.api.NMEASentence;
 import nmea.parser.Angle;
 import nmea.parser.Angle180;
 import nmea.parser.Angle180EW;
+import nmea.parser.Angle180LR;
 import nmea.parser.Angle360;
 import nmea.parser.ApparentWind;
 import nmea.parser.Current;
@@ -23,28 +25,56 @@ import nmea.parser.StringGenerator;
 import nmea.parser.StringParsers;
 import nmea.parser.Temperature;
 import nmea.parser.TrueWind;
+import nmea.parser.TrueWindDirection;
+import nmea.parser.TrueWindSpeed;
 import nmea.parser.UTC;
 import nmea.parser.UTCDate;
 import nmea.parser.UTCTime;
 import nmea.parser.Wind;
+import nmea.utils.DeviationTable;
 import nmea.utils.NMEAUtils;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.AbstractMap;
 import java.util.Arrays;
-import java.util.ConcurrentModificationException;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import static nmea.utils.NMEAUtils.longitudeToTime;
 
+/**
+ * The cache, fed by the multiplexer, read by the REST and WebSocket clients, the computers, the screens, etc.
+ * <br>
+ * Still a <code>Map&lt;String, Object&gt;</code> (for Gson, RMI, and the existing clients), but:
+ * <ul>
+ *   <li>Every key has its own slot, holding an immutable {@link CacheEntry} (value, timestamp, version).
+ *   A <code>put</code> replaces the entry of one slot, it does not lock the whole cache.</li>
+ *   <li>Single values are read without lock ({@link #get(Object)}, {@link #getEntry(String)}, {@link #get(String, Class)}).</li>
+ *   <li>{@link #snapshot()} returns a consistent, immutable view of the whole cache.
+ *   Related values written in one {@link #update(Runnable)} (like all the values from one sentence, see {@link #parseAndFeed(String)})
+ *   are all in it, or none of them.
+ *   The snapshot is built once per cache version, all the readers share it.
+ *   Iterating on the cache ({@link #entrySet()}, {@link #keySet()}) uses the snapshot.</li>
+ *   <li>Damping (by count, see {@link #setDampingSize(int)}, and/or by time, see {@link #setDampingWindow(long)})
+ *   is done in {@link DampingBuffer}s, O(1) whatever the size.</li>
+ * </ul>
+ */
 public class NMEADataCache
-				extends HashMap<String, Object>
+				extends AbstractMap<String, Object>
 				implements Serializable {
 
+	private static final long serialVersionUID = 1L;
+
 	public static final String LAST_NMEA_SENTENCE = "NMEA";
 
 	public static final String SOG = "SOG";
@@ -108,8 +138,12 @@ public class NMEADataCache
 
 	public static final String ALTITUDE = "Altitude";
 
-	// Damping ArrayList's
+	public static final String AIS_THREATS = "AIS Threats";
+
+	// Damping buffers size. 1: no damping
 	private transient int dampingSize = 1;
+	// Damping time window, in ms. 0: no time window
+	private transient long dampingWindow = 0L;
 
 	private transient static List<String> NOT_TO_RESET = Arrays.asList(
 					BSP_FACTOR,
@@ -123,10 +157,79 @@ public class NMEADataCache
 					DAMPING,
 					CALCULATED_CURRENT);
 
-	private transient HashMap<String, List<Object>> dampingMap = new HashMap<String, List<Object>>();
+	private transient static List<String> DAMPED_KEYS = Arrays.asList(
+					BSP,
+					HDG_TRUE,
+					AWA,
+					AWS,
+					TWA,
+					TWS,
+					TWD,
+					CSP,
+					CDR,
+					COG,
+					SOG,
+					LEEWAY);
+
+	/*
+	 * How to re-create a damped value, without reflection.
+	 * Like before, through setDoubleValue (the Angle180s are normalized there).
+	 */
+	private final static Map<Class<?>, Supplier<NMEADoubleValueHolder>> DAMPED_TYPES = new HashMap<>();
+	static {
+		DAMPED_TYPES.put(Speed.class, Speed::new);
+		DAMPED_TYPES.put(TrueWindSpeed.class, TrueWindSpeed::new);
+		DAMPED_TYPES.put(Angle360.class, Angle360::new);
+		DAMPED_TYPES.put(TrueWindDirection.class, TrueWindDirection::new);
+		DAMPED_TYPES.put(Angle180.class, Angle180::new);
+		DAMPED_TYPES.put(Angle180EW.class, Angle180EW::new);
+		DAMPED_TYPES.put(Angle180LR.class, Angle180LR::new);
+		DAMPED_TYPES.put(Distance.class, Distance::new);
+		DAMPED_TYPES.put(Depth.class, Depth::new);
+	}
+
+	private final ConcurrentHashMap<String, CacheEntry> slots = new ConcurrentHashMap<>();
+	private final AtomicLong version = new AtomicLong(0L);
+	/*
+	 * Versioned read, the writers never wait for the snapshots.
+	 * A write (or a batch of writes) increments writesStarted before, and writesCompleted after.
+	 * The snapshot is a good one if no write was in progress when it started (started == completed),
+	 * and none started while it was copying (started has not moved). Otherwise, it tries again.
+	 */
+	private transient AtomicLong writesStarted = new AtomicLong(0L);
+	private transient AtomicLong writesCompleted = new AtomicLong(0L);
+	private transient volatile Snapshot lastSnapshot = null;
+
+	private final static int SNAPSHOT_ATTEMPTS = 100;
+	/*
+	 * Depth of the updates in progress on the current thread, a snapshot taken from an update cannot wait for it to complete.
+	 */
+	private final static ThreadLocal<int[]> UPDATE_DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+	/*
+	 * The values of those keys are mutable maps, put in the cache as immutable copies, so the snapshots do not change.
+	 */
+	private final static List<String> COPIED_ON_PUT = Arrays.asList(CALCULATED_CURRENT, SAT_IN_VIEW);
+
+	private transient Map<String, DampedValue> dampingMap = null;
 
 	private transient long started = 0L;
 
+	/*
+	 * Built from DEVIATION_DATA, every time it is put in the cache. Swapped in one write, the readers see the old table or the new one.
+	 */
+	private transient volatile DeviationTable deviationTable = DeviationTable.ZERO;
+
+	/*
+	 * AIS. The threats are re-computed at most every aisThreatsPeriod ms.
+	 */
+	private transient AISParser aisParser = null;
+	private transient AISTargetTable aisTargets = null;
+	private transient long lastThreats = 0L;
+	private transient long aisThreatsPeriod = Long.parseLong(System.getProperty("ais.threats.period", "1000"));
+	private transient double aisRadius = Double.parseDouble(System.getProperty("ais.threats.radius", "12"));
+	private transient double aisCpaLimit = Double.parseDouble(System.getProperty("ais.threats.cpa", "1"));
+	private transient double aisTcpaLimit = Double.parseDouble(System.getProperty("ais.threats.tcpa", "30"));
+
 	private transient NMEADataCache instance = this;
 
 	public NMEADataCache() {
@@ -141,307 +244,634 @@ public class NMEADataCache
 	}
 
 	private void init() {
-		dampingMap.put(BSP, new ArrayList<Object>());
-		dampingMap.put(HDG_TRUE, new ArrayList<Object>());
-		dampingMap.put(AWA, new ArrayList<Object>());
-		dampingMap.put(AWS, new ArrayList<Object>());
-		dampingMap.put(TWA, new ArrayList<Object>());
-		dampingMap.put(TWS, new ArrayList<Object>());
-		dampingMap.put(TWD, new ArrayList<Object>());
-		dampingMap.put(CSP, new ArrayList<Object>());
-		dampingMap.put(CDR, new ArrayList<Object>());
-		dampingMap.put(COG, new ArrayList<Object>());
-		dampingMap.put(SOG, new ArrayList<Object>());
-		dampingMap.put(LEEWAY, new ArrayList<Object>());
-
+		if (dampingMap == null) {
+			Map<String, DampedValue> map = new HashMap<>();
+			DAMPED_KEYS.forEach(k -> map.put(k, new DampedValue()));
+			dampingMap = map;
+		} else {
+			resetDampingBuffers();
+		}
 		// Initialization
 		this.put(CALCULATED_CURRENT, new HashMap<Long, CurrentDefinition>());
 	}
 
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		writesStarted = new AtomicLong(0L);
+		writesCompleted = new AtomicLong(0L);
+	}
+
 	public void reset() {
-//	synchronized (this) {
-			this.keySet()
+		update(() -> {
+			slots.keySet()
 							.stream()
 							.filter(k -> !NOT_TO_RESET.contains(k))
 							.forEach(k -> this.put(k, null));
-			Map<Long, NMEADataCache.CurrentDefinition> currentMap = (Map<Long, NMEADataCache.CurrentDefinition>)this.get(NMEADataCache.CALCULATED_CURRENT);
-			if (currentMap != null) {
-				currentMap.keySet().stream().forEach(tbl -> currentMap.put(tbl, null));
+			init(); // New, empty, current map
+		});
+		if (aisTargets != null) {
+			aisTargets.clear();
+		}
+	}
+
+	/**
+	 * @return the deviation table, built from the curve in {@link #DEVIATION_DATA}. Zero deviation if there is no curve.
+	 */
+	public DeviationTable getDeviationTable() {
+		DeviationTable table = deviationTable;
+		if (table == null) { // Deserialized
+			table = DeviationTable.from(asDeviationCurve(this.get(DEVIATION_DATA)));
+			deviationTable = table;
+		}
+		return table;
+	}
+
+	/**
+	 * @return the AIS targets, fed by the <code>!AIVDM</code> sentences
+	 */
+	public synchronized AISTargetTable getAISTargets() {
+		if (aisTargets == null) {
+			aisTargets = new AISTargetTable();
+		}
+		return aisTargets;
+	}
+
+	/**
+	 * The AIS targets around the own position ({@link #POSITION}), with their CPA and TCPA (own {@link #COG} and {@link #SOG}).
+	 *
+	 * @param radius in nm
+	 * @return the targets within the radius, the closest first. null if the own position is not known.
+	 */
+	public List<AISTargetTable.Proximity> getAISTargetsWithin(double radius) {
+		GeoPos pos = this.get(POSITION, GeoPos.class);
+		if (pos == null) {
+			return null;
+		}
+		return getAISTargets().getTargetsWithin(pos.lat, pos.lng, ownCog(), ownSog(), radius);
+	}
+
+	/**
+	 * The threats (see {@link AISTargetTable#getThreats(double, double, double, double, double, double, double)})
+	 * around the own position ({@link #POSITION}, {@link #COG}, {@link #SOG}),
+	 * with the limits set by <code>-Dais.threats.radius</code> (nm, default 12), <code>-Dais.threats.cpa</code> (nm, default 1)
+	 * and <code>-Dais.threats.tcpa</code> (minutes, default 30).
+	 *
+	 * @return the threats, the closest in time first. null if the own position is not known.
+	 */
+	public List<AISTargetTable.Proximity> getAISThreats() {
+		GeoPos pos = this.get(POSITION, GeoPos.class);
+		if (pos == null) {
+			return null;
+		}
+		return getAISTargets().getThreats(pos.lat, pos.lng, ownCog(), ownSog(), aisRadius, aisCpaLimit, aisTcpaLimit);
+	}
+
+	private double ownCog() {
+		Angle360 cog = this.get(COG, Angle360.class);
+		return cog != null ? cog.getValue() : 0d;
+	}
+
+	private double ownSog() {
+		Speed sog = this.get(SOG, Speed.class);
+		return sog != null ? sog.getValue() : 0d;
+	}
+
+	/**
+	 * Executes several writes as one: a {@link #snapshot()} will see all of them, or none of them.
+	 * <br>
+	 * A snapshot taken from the updates is the one from before them.
+	 *
+	 * @param updates the writes to do
+	 */
+	public void update(Runnable updates) {
+		startWrite();
+		try {
+			updates.run();
+		} finally {
+			completeWrite();
+		}
+	}
+
+	private void startWrite() {
+		UPDATE_DEPTH.get()[0]++;
+		writesStarted.incrementAndGet();
+	}
+
+	private void completeWrite() {
+		writesCompleted.incrementAndGet();
+		UPDATE_DEPTH.get()[0]--;
+	}
+
+	/*
+	 * Immutable copy, same iteration order.
+	 */
+	private static Map<Object, Object> immutableCopy(Map<?, ?> map) {
+		return Collections.unmodifiableMap(new LinkedHashMap<Object, Object>(map));
+	}
+
+	@Override
+	public Object put(String key, Object value) {
+		if (DEVIATION_DATA.equals(key)) {
+			deviationTable = DeviationTable.from(asDeviationCurve(value));
+		}
+		if (value instanceof Map && COPIED_ON_PUT.contains(key)) {
+			value = immutableCopy((Map<?, ?>) value);
+		}
+		CacheEntry previous;
+		startWrite();
+		try {
+			previous = slots.put(key, new CacheEntry(value, System.currentTimeMillis(), version.incrementAndGet()));
+		} finally {
+			completeWrite();
+		}
+		if (isDamping() && dampingMap != null) {
+			DampedValue damped = dampingMap.get(key);
+			if (damped != null) {
+				damped.add(value, dampingSize, dampingWindow, dampingClock());
 			}
-			init();
-//	}
+		}
+		return previous != null ? previous.getValue() : null;
 	}
 
+	/**
+	 * All the values are written in one {@link #update(Runnable)}.
+	 */
 	@Override
-	public /*synchronized*/ Object put(String key, Object value) {
-		Object o = null;
-		synchronized (this) {
-			o = super.put(key, value);
+	public void putAll(Map<? extends String, ?> map) {
+		update(() -> map.forEach(this::put));
+	}
+
+	@Override
+	public Object remove(Object key) {
+		CacheEntry previous;
+		startWrite();
+		try {
+			previous = slots.remove(key);
+			if (previous != null) {
+				version.incrementAndGet();
+			}
+		} finally {
+			completeWrite();
 		}
-		if (dampingSize > 1 && dampingMap.containsKey(key)) {
-			List<Object> ald = dampingMap.get(key);
-			ald.add(value);
-			while (ald.size() > dampingSize)
-				ald.remove(0);
+		return previous != null ? previous.getValue() : null;
+	}
+
+	@Override
+	public void clear() {
+		startWrite();
+		try {
+			slots.clear();
+			version.incrementAndGet();
+		} finally {
+			completeWrite();
 		}
-		return o;
 	}
 
-	public void parseAndFeed(String nmeaSentence) {
-		if (StringParsers.validCheckSum(nmeaSentence)) {
-
-			this.put(LAST_NMEA_SENTENCE, nmeaSentence);
-
-			String id = StringParsers.getSentenceID(nmeaSentence);
-			switch (id) {
-				case "GGA":
-					List<Object> gga = StringParsers.parseGGA(nmeaSentence);
-					GeoPos ggaPos = (GeoPos)gga.get(StringParsers.GGA_POS_IDX);
-					this.put(POSITION, ggaPos);
-					UTC ggaDate = (UTC)gga.get(StringParsers.GGA_UTC_IDX);
-					if (ggaDate != null) {
-						this.put(GPS_DATE_TIME, new UTCDate(ggaDate.getDate()));
-					}
-			//	int ggaNbSat = (Integer)gga.get(StringParsers.GGA_NBSAT_IDX);
-					double ggaAlt = (Double)gga.get(StringParsers.GGA_ALT_IDX);
-					this.put(ALTITUDE, ggaAlt);
-					break;
-				case "RMC":
-					RMC rmc = StringParsers.parseRMC(nmeaSentence);
-					if (rmc != null) {
-						this.put(POSITION, rmc.getGp());
-						this.put(COG, new Angle360(rmc.getCog()));
-						this.put(SOG, new Speed(rmc.getSog()));
-						this.put(DECLINATION, new Angle180EW(rmc.getDeclination()));
-						if (rmc.getRmcDate() != null) {
-							this.put(GPS_DATE_TIME, new UTCDate(rmc.getRmcDate()));
-						}
-						if (rmc.getRmcTime() != null) {
-							this.put(GPS_TIME, new UTCTime(rmc.getRmcTime()));
-						}
-						if ((rmc.getRmcDate() != null || rmc.getRmcTime() != null) && rmc.getGp() != null)
-						{
-							long solarTime = -1L;
-							if (rmc.getRmcDate() != null)
-								solarTime = rmc.getRmcDate().getTime() + longitudeToTime(rmc.getGp().lng);
-							else
-								solarTime = rmc.getRmcTime().getTime() + longitudeToTime(rmc.getGp().lng);
-							Date solarDate = new Date(solarTime);
-							this.put(GPS_SOLAR_TIME, new SolarDate(solarDate));
-						}
-					}
-					break;
-				case "ZDA":
-					UTCDate utc = StringParsers.parseZDA(nmeaSentence);
-					if (utc != null) {
-						this.put(GPS_DATE_TIME, utc);
-						this.put(GPS_TIME, new UTCTime(utc.getValue()));
-
-						GeoPos pos = (GeoPos)this.get(POSITION);
-						if (pos != null) {
-							long solarTime = utc.getValue().getTime() + longitudeToTime(pos.lng);
-							Date solarDate = new Date(solarTime);
-							this.put(GPS_SOLAR_TIME, new SolarDate(solarDate));
-						}
-					}
-					break;
-				case "VHW": // Water Speed and Heading
-					double[] vhw = StringParsers.parseVHW(nmeaSentence);
-					if (vhw == null)
-						return;
-					double bsp = vhw[StringParsers.BSP_in_VHW];
-					double hdm = vhw[StringParsers.HDM_in_VHW];
-					if (bsp != -Double.MAX_VALUE) {
-						this.put(BSP, new Speed(bsp));
-					}
-					this.put(HDG_COMPASS, new Angle360(hdm /* - dec */));
-					break;
-				case "VLW": // Log
-					double[] d = StringParsers.parseVLW(nmeaSentence);
-					HashMap<String, Object> map = new HashMap<String, Object>(2);
-					this.put(LOG      , new Distance(d[StringParsers.LOG_in_VLW]));
-					this.put(DAILY_LOG, new Distance(d[StringParsers.DAILYLOG_in_VLW]));
-					break;
-				case "MTW": // Water Temperature
-					double wt = StringParsers.parseMTW(nmeaSentence);
-					this.put(WATER_TEMP, new Temperature(wt));
-					break;
-				case "MTA": // Air Temperature
-					double at = StringParsers.parseMTA(nmeaSentence);
-					this.put(AIR_TEMP, new Temperature(at));
-					break;
-				case "MMB": // Barometric Pressure
-					double p = StringParsers.parseMMB(nmeaSentence); // in mb
-					this.put(BARO_PRESS, new Pressure(p));
-					break;
-				case "MWV": // Apparent Wind Speed and Direction
-					Wind wind = StringParsers.parseMWV(nmeaSentence);
-					if (wind != null && wind instanceof ApparentWind) { // TODO: TrueWind not used for now
-						this.put(AWS, new Speed(wind.speed));
-						int awa = wind.angle;
-						if (awa > 180)
-							awa -= 360;
-						this.put(AWA, new Angle180(awa));
+	@Override
+	public boolean containsKey(Object key) {
+		return slots.containsKey(key);
+	}
+
+	@Override
+	public int size() {
+		return slots.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return slots.isEmpty();
+	}
+
+	/**
+	 * The iterations on the cache are done on the snapshot, they are consistent, and cannot fail on a concurrent modification.
+	 */
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		return snapshot().entrySet();
+	}
+
+	/**
+	 * @return the number of modifications done on the cache since its creation.
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * A consistent, immutable, view of the cache, with the non-damped values.
+	 * <br>
+	 * Built only if the cache has been modified since the previous one, it is then shared by all the readers.
+	 * Taking it does not block the writers. If they keep it from completing, the previous one is returned.
+	 *
+	 * @return the content of the cache
+	 */
+	public Map<String, Object> snapshot() {
+		return currentSnapshot().content;
+	}
+
+	/**
+	 * Same as {@link #snapshot()}, with the entries (value, timestamp, version) instead of the values.
+	 * <br>
+	 * Used to find out what has changed since a given version.
+	 *
+	 * @return the entries of the cache
+	 */
+	public Map<String, CacheEntry> entrySnapshot() {
+		return currentSnapshot().entries;
+	}
+
+	private Snapshot currentSnapshot() {
+		Snapshot previous = lastSnapshot;
+		if (previous != null && previous.version == version.get()) {
+			return previous;
+		}
+		boolean inUpdate = UPDATE_DEPTH.get()[0] > 0; // Cannot wait for the update to complete
+		if (inUpdate && previous != null) {
+			return previous;
+		}
+		for (int attempt = 0; ; attempt++) {
+			long completed = writesCompleted.get();
+			long started = writesStarted.get();
+			if (started == completed || inUpdate) {
+				Snapshot snapshot = buildSnapshot();
+				if (inUpdate) { // Nothing before this update, not shared
+					return snapshot;
+				}
+				if (writesStarted.get() == started) {
+					previous = lastSnapshot;
+					if (previous == null || previous.version < snapshot.version) {
+						lastSnapshot = snapshot; // Several readers may race, any of them is consistent.
 					}
-					break;
-				case "VDR":
-					Current current = StringParsers.parseVDR(nmeaSentence);
-					this.put(NMEADataCache.VDR_CURRENT, current);
-					break;
-				case "VWR": // Apparent Wind Speed and Direction (2)
-					Wind aWind = StringParsers.parseVWR(nmeaSentence);
-					if (aWind != null) {
-						this.put(AWS, new Speed(aWind.speed));
-						int awa = aWind.angle;
-						if (awa > 180)
-							awa -= 360;
-						this.put(AWA, new Angle180(awa));
+					return snapshot;
+				}
+			}
+			if (attempt >= SNAPSHOT_ATTEMPTS && previous != null) {
+				return previous;
+			}
+			Thread.yield();
+		}
+	}
+
+	private Snapshot buildSnapshot() {
+		long v = version.get();
+		Map<String, Object> content = new HashMap<>(slots.size() * 2);
+		Map<String, CacheEntry> entries = new HashMap<>(slots.size() * 2);
+		slots.forEach((k, entry) -> {
+			content.put(k, entry.getValue());
+			entries.put(k, entry);
+		});
+		return new Snapshot(v, Collections.unmodifiableMap(content), Collections.unmodifiableMap(entries));
+	}
+
+	/**
+	 * @param key identifies the data
+	 * @return the entry (value, timestamp, version) for this key, null if not in the cache. Never damped.
+	 */
+	public CacheEntry getEntry(String key) {
+		return slots.get(key);
+	}
+
+	/**
+	 * Typed read.
+	 *
+	 * @param key  identifies the data to get
+	 * @param type the expected type
+	 * @param <T> the expected type
+	 * @return the damped value, or null if not there, or not of the expected type.
+	 */
+	public <T> T get(String key, Class<T> type) {
+		Object value = get(key, true);
+		return type.isInstance(value) ? type.cast(value) : null;
+	}
+
+	/*
+	 * The deviation curve is a List<double[]>, see NMEAUtils.loadDeviationCurve
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<double[]> asDeviationCurve(Object value) {
+		return (value instanceof List) ? (List<double[]>) value : null;
+	}
+
+	/*
+	 * The parsed GGA is a List<Object>, see StringParsers.parseGGA
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<Object> asList(Object parsed) {
+		return (List<Object>) parsed;
+	}
+
+	/**
+	 * Parses the sentence, and puts its data in the cache. All those data are written in one {@link #update(Runnable)}.
+	 *
+	 * @param nmeaSentence the sentence
+	 */
+	public void parseAndFeed(String nmeaSentence) {
+		parseAndFeed(new NMEASentence(nmeaSentence));
+	}
+
+	/**
+	 * Same as {@link #parseAndFeed(String)}, the parsed data of the sentence are shared with its other consumers
+	 * (see {@link NMEASentence#getParsed()}).
+	 *
+	 * @param sentence the sentence, as created by the Multiplexer
+	 */
+	public void parseAndFeed(NMEASentence sentence) {
+		if (sentence.isValid()) {
+			update(() -> feed(sentence));
+		}
+	}
+
+	private void feed(NMEASentence sentence) {
+		String nmeaSentence = sentence.getSentence();
+		this.put(LAST_NMEA_SENTENCE, nmeaSentence);
+
+		String id = sentence.getSentenceID();
+		if (id == null) {
+			return;
+		}
+		switch (id) {
+			case "GGA":
+				List<Object> gga = asList(sentence.getParsed());
+				GeoPos ggaPos = (GeoPos)gga.get(StringParsers.GGA_POS_IDX);
+				this.put(POSITION, ggaPos);
+				UTC ggaDate = (UTC)gga.get(StringParsers.GGA_UTC_IDX);
+				if (ggaDate != null) {
+					this.put(GPS_DATE_TIME, new UTCDate(ggaDate.getDate()));
+				}
+		//	int ggaNbSat = (Integer)gga.get(StringParsers.GGA_NBSAT_IDX);
+				double ggaAlt = (Double)gga.get(StringParsers.GGA_ALT_IDX);
+				this.put(ALTITUDE, ggaAlt);
+				break;
+			case "RMC":
+				RMC rmc = sentence.getParsed(RMC.class);
+				if (rmc != null) {
+					this.put(POSITION, rmc.getGp());
+					this.put(COG, new Angle360(rmc.getCog()));
+					this.put(SOG, new Speed(rmc.getSog()));
+					this.put(DECLINATION, new Angle180EW(rmc.getDeclination()));
+					if (rmc.getRmcDate() != null) {
+						this.put(GPS_DATE_TIME, new UTCDate(rmc.getRmcDate()));
 					}
-					break;
-				case "VTG": // Speed and Course over Ground
-					OverGround og = StringParsers.parseVTG(nmeaSentence);
-					if (og != null) {
-						this.put(COG, new Angle360(og.getCourse()));
-						this.put(SOG, new Speed(og.getSpeed()));
+					if (rmc.getRmcTime() != null) {
+						this.put(GPS_TIME, new UTCTime(rmc.getRmcTime()));
 					}
-					break;
-				case "GLL": // Lat & Long, UTC (No date, just time)
-						Object[] obj = StringParsers.parseGLL(nmeaSentence);
-						if (obj != null) {
-							GeoPos pos = (GeoPos)obj[StringParsers.GP_in_GLL];
-							if (pos != null) {
-								this.put(POSITION, pos);
-							}
-							Date date = (Date)obj[StringParsers.DATE_in_GLL];
-							if (date != null) {
-								this.put(GPS_TIME, new UTCTime(date));
-								long solarTime = date.getTime() + longitudeToTime(pos.lng);
-								Date solarDate = new Date(solarTime);
-								this.put(GPS_SOLAR_TIME, new SolarDate(solarDate));
-							}
-						}
-					break;
-				case "HDM": // Heading, magnetic
-					int hdg = StringParsers.parseHDM(nmeaSentence);
-					this.put(HDG_COMPASS, new Angle360(hdg));
-					break;
-				case "HDT": // Heading, true
-					this.put(NMEADataCache.HDG_TRUE, new Angle360(StringParsers.parseHDT(nmeaSentence)));
-					break;
-				case "HDG": // Heading
-					double[] hdgData = StringParsers.parseHDG(nmeaSentence);
-					int heading = (int)hdgData[StringParsers.HDG_in_HDG];
-					double dev = hdgData[StringParsers.DEV_in_HDG];
-					double var = hdgData[StringParsers.VAR_in_HDG];
-					if (dev == -Double.MAX_VALUE && var == -Double.MAX_VALUE) {
-						this.put(HDG_COMPASS, new Angle360(heading));
-					} else {
-						double dec = 0d;
-						if (dev != -Double.MAX_VALUE)
-							dec = dev;
+					if ((rmc.getRmcDate() != null || rmc.getRmcTime() != null) && rmc.getGp() != null)
+					{
+						long solarTime = -1L;
+						if (rmc.getRmcDate() != null)
+							solarTime = rmc.getRmcDate().getTime() + longitudeToTime(rmc.getGp().lng);
 						else
-							dec = var;
-						this.put(DECLINATION, new Angle180EW(dec));
-						this.put(HDG_COMPASS, new Angle360(heading /* - dec */));
-					}
-					break;
-				case "RMB":
-					RMB rmb = StringParsers.parseRMB(nmeaSentence);
-					if (rmb != null) {
-						this.put(XTE,     new Distance(rmb.getXte()));
-						this.put(WP_POS,  rmb.getDest());
-						this.put(FROM_WP, rmb.getOwpid());
-						this.put(TO_WP,   rmb.getDwpid());
-						this.put(D2WP,    new Distance(rmb.getRtd()));
-						this.put(B2WP,    new Angle360(rmb.getBtd()));
-						this.put(S2WP,    new Speed(rmb.getDcv()));
-						this.put(S2STEER, rmb.getDts());
+							solarTime = rmc.getRmcTime().getTime() + longitudeToTime(rmc.getGp().lng);
+						Date solarDate = new Date(solarTime);
+						this.put(GPS_SOLAR_TIME, new SolarDate(solarDate));
 					}
-					break;
-				case "DBT": // Depth
-					float fb = StringParsers.parseDBT(nmeaSentence, StringParsers.DEPTH_IN_METERS);
-					this.put(DBT, new Depth(fb));
-					break;
-				case "DPT": // Depth
-					float fp = StringParsers.parseDPT(nmeaSentence, StringParsers.DEPTH_IN_METERS);
-					this.put(DBT, new Depth(fp));
-					break;
-				case "GSV": // Satellites in view
-					Map<Integer, SVData> satmap = StringParsers.parseGSV(nmeaSentence);
-					if (satmap != null) {
-						this.put(SAT_IN_VIEW, satmap);
+				}
+				break;
+			case "ZDA":
+				UTCDate utc = sentence.getParsed(UTCDate.class);
+				if (utc != null) {
+					this.put(GPS_DATE_TIME, utc);
+					this.put(GPS_TIME, new UTCTime(utc.getValue()));
+
+					GeoPos pos = (GeoPos)this.get(POSITION);
+					if (pos != null) {
+						long solarTime = utc.getValue().getTime() + longitudeToTime(pos.lng);
+						Date solarDate = new Date(solarTime);
+						this.put(GPS_SOLAR_TIME, new SolarDate(solarDate));
 					}
-					break;
-				case "MDA": // Meteorological composite (Humidity, among others)
-					StringParsers.MDA mda = StringParsers.parseMDA(nmeaSentence);
-					if (mda.airT != null)
-						this.put(NMEADataCache.AIR_TEMP, new Temperature(mda.airT));
-					if (mda.waterT != null)
-						this.put(NMEADataCache.WATER_TEMP, new Temperature(mda.waterT));
-					if (mda.pressBar != null)
-						this.put(NMEADataCache.BARO_PRESS, new Pressure(mda.pressBar * 1_000));
-					if (mda.relHum != null)
-						this.put(NMEADataCache.RELATIVE_HUMIDITY, mda.relHum);
-					// TODO: More MDA data...
-					break;
-				case "XTE": // Cross Track Error
-					// TODO: Implement
-					break;
-				case "XDR": // Transducer measurement
-					List<StringGenerator.XDRElement> xdr = StringParsers.parseXDR(nmeaSentence);
-					if (xdr != null) {
-						for (StringGenerator.XDRElement xe : xdr) {
-							StringGenerator.XDRTypes type = xe.getTypeNunit();
-							double val = xe.getValue();
-							if (type.equals(StringGenerator.XDRTypes.HUMIDITY)) {
-								this.put(RELATIVE_HUMIDITY, val);
-							} else if (type.equals(StringGenerator.XDRTypes.PRESSURE_B)) {
-								this.put(BARO_PRESS, new Pressure(val * 1_000));
-							} else if (type.equals(StringGenerator.XDRTypes.VOLTAGE)) {
-								this.put(BATTERY, new Float(val));
-							} else {
-								if ("true".equals(System.getProperty("verbose", "false")))
-									System.out.println("Unmanaged XDR Type:" + type.toString());
-							}
+				}
+				break;
+			case "VHW": // Water Speed and Heading
+				double[] vhw = sentence.getParsed(double[].class);
+				if (vhw == null)
+					return;
+				double bsp = vhw[StringParsers.BSP_in_VHW];
+				double hdm = vhw[StringParsers.HDM_in_VHW];
+				if (bsp != -Double.MAX_VALUE) {
+					this.put(BSP, new Speed(bsp));
+				}
+				this.put(HDG_COMPASS, new Angle360(hdm /* - dec */));
+				break;
+			case "VLW": // Log
+				double[] d = sentence.getParsed(double[].class);
+				HashMap<String, Object> map = new HashMap<String, Object>(2);
+				this.put(LOG      , new Distance(d[StringParsers.LOG_in_VLW]));
+				this.put(DAILY_LOG, new Distance(d[StringParsers.DAILYLOG_in_VLW]));
+				break;
+			case "MTW": // Water Temperature
+				double wt = sentence.getParsed(Double.class);
+				this.put(WATER_TEMP, new Temperature(wt));
+				break;
+			case "MTA": // Air Temperature
+				double at = sentence.getParsed(Double.class);
+				this.put(AIR_TEMP, new Temperature(at));
+				break;
+			case "MMB": // Barometric Pressure
+				double p = sentence.getParsed(Double.class); // in mb
+				this.put(BARO_PRESS, new Pressure(p));
+				break;
+			case "MWV": // Apparent Wind Speed and Direction
+				Wind wind = sentence.getParsed(Wind.class);
+				if (wind != null && wind instanceof ApparentWind) { // TODO: TrueWind not used for now
+					this.put(AWS, new Speed(wind.speed));
+					int awa = wind.angle;
+					if (awa > 180)
+						awa -= 360;
+					this.put(AWA, new Angle180(awa));
+				}
+				break;
+			case "VDR":
+				Current current = StringParsers.parseVDR(nmeaSentence);
+				this.put(NMEADataCache.VDR_CURRENT, current);
+				break;
+			case "VWR": // Apparent Wind Speed and Direction (2)
+				Wind aWind = sentence.getParsed(Wind.class);
+				if (aWind != null) {
+					this.put(AWS, new Speed(aWind.speed));
+					int awa = aWind.angle;
+					if (awa > 180)
+						awa -= 360;
+					this.put(AWA, new Angle180(awa));
+				}
+				break;
+			case "VTG": // Speed and Course over Ground
+				OverGround og = sentence.getParsed(OverGround.class);
+				if (og != null) {
+					this.put(COG, new Angle360(og.getCourse()));
+					this.put(SOG, new Speed(og.getSpeed()));
+				}
+				break;
+			case "GLL": // Lat & Long, UTC (No date, just time)
+					Object[] obj = sentence.getParsed(Object[].class);
+					if (obj != null) {
+						GeoPos pos = (GeoPos)obj[StringParsers.GP_in_GLL];
+						if (pos != null) {
+							this.put(POSITION, pos);
 						}
-					}
-					break;
-				case "MWD": // Wind Speed and Direction
-					Wind mwdWind = StringParsers.parseMWD(nmeaSentence);
-					if (mwdWind != null && mwdWind instanceof TrueWind) {
-						this.put(TWS, new Speed(mwdWind.speed));
-						this.put(TWD, new Angle360(mwdWind.angle));
-					}
-					break;
-				case "VWT": // True Wind Speed and Angle (deprecated, use MWV)
-					Wind trueWind = StringParsers.parseVWT(nmeaSentence);
-					if (trueWind != null) {
-						this.put(TWS, new Speed(trueWind.speed));
-						this.put(TWA, new Angle180(trueWind.angle));
-						Angle360 trueHeading = (Angle360)this.get(HDG_TRUE);
-						if (trueHeading != null) {
-							double twd = trueHeading.getValue() + trueWind.angle;
-							System.out.println("TWD: " + twd); // TODO: Implement put(TWD, new Angle360(twd))
+						Date date = (Date)obj[StringParsers.DATE_in_GLL];
+						if (date != null) {
+							this.put(GPS_TIME, new UTCTime(date));
+							long solarTime = date.getTime() + longitudeToTime(pos.lng);
+							Date solarDate = new Date(solarTime);
+							this.put(GPS_SOLAR_TIME, new SolarDate(solarDate));
 						}
 					}
-					break;
-				case "BAT":     // Battery Voltage. Not Standard, from the Raspberry PI. There is an XDR Voltage...
-					float volt = StringParsers.parseBAT(nmeaSentence);
-					if (volt > -1) {
-						this.put(BATTERY, new Float(volt));
-					}
-					break;
-				case "STD":     // Cache age. Not Standard. From Original cache
-					long age = StringParsers.parseSTD(nmeaSentence);
-					if (age > -1) {
-						this.put(TIME_RUNNING, new Long(age));
+				break;
+			case "HDM": // Heading, magnetic
+				int hdg = sentence.getParsed(Integer.class);
+				this.put(HDG_COMPASS, new Angle360(hdg));
+				break;
+			case "HDT": // Heading, true
+				this.put(NMEADataCache.HDG_TRUE, new Angle360(sentence.getParsed(Integer.class)));
+				break;
+			case "HDG": // Heading
+				double[] hdgData = sentence.getParsed(double[].class);
+				int heading = (int)hdgData[StringParsers.HDG_in_HDG];
+				double dev = hdgData[StringParsers.DEV_in_HDG];
+				double var = hdgData[StringParsers.VAR_in_HDG];
+				if (dev == -Double.MAX_VALUE && var == -Double.MAX_VALUE) {
+					this.put(HDG_COMPASS, new Angle360(heading));
+				} else {
+					double dec = 0d;
+					if (dev != -Double.MAX_VALUE)
+						dec = dev;
+					else
+						dec = var;
+					this.put(DECLINATION, new Angle180EW(dec));
+					this.put(HDG_COMPASS, new Angle360(heading /* - dec */));
+				}
+				break;
+			case "RMB":
+				RMB rmb = StringParsers.parseRMB(nmeaSentence);
+				if (rmb != null) {
+					this.put(XTE,     new Distance(rmb.getXte()));
+					this.put(WP_POS,  rmb.getDest());
+					this.put(FROM_WP, rmb.getOwpid());
+					this.put(TO_WP,   rmb.getDwpid());
+					this.put(D2WP,    new Distance(rmb.getRtd()));
+					this.put(B2WP,    new Angle360(rmb.getBtd()));
+					this.put(S2WP,    new Speed(rmb.getDcv()));
+					this.put(S2STEER, rmb.getDts());
+				}
+				break;
+			case "DBT": // Depth
+				float fb = StringParsers.parseDBT(nmeaSentence, StringParsers.DEPTH_IN_METERS);
+				this.put(DBT, new Depth(fb));
+				break;
+			case "DPT": // Depth
+				float fp = StringParsers.parseDPT(nmeaSentence, StringParsers.DEPTH_IN_METERS);
+				this.put(DBT, new Depth(fp));
+				break;
+			case "GSV": // Satellites in view
+				Map<Integer, SVData> satmap = StringParsers.parseGSV(nmeaSentence);
+				if (satmap != null) {
+					this.put(SAT_IN_VIEW, satmap);
+				}
+				break;
+			case "MDA": // Meteorological composite (Humidity, among others)
+				StringParsers.MDA mda = StringParsers.parseMDA(nmeaSentence);
+				if (mda.airT != null)
+					this.put(NMEADataCache.AIR_TEMP, new Temperature(mda.airT));
+				if (mda.waterT != null)
+					this.put(NMEADataCache.WATER_TEMP, new Temperature(mda.waterT));
+				if (mda.pressBar != null)
+					this.put(NMEADataCache.BARO_PRESS, new Pressure(mda.pressBar * 1_000));
+				if (mda.relHum != null)
+					this.put(NMEADataCache.RELATIVE_HUMIDITY, mda.relHum);
+				// TODO: More MDA data...
+				break;
+			case "XTE": // Cross Track Error
+				// TODO: Implement
+				break;
+			case "XDR": // Transducer measurement
+				List<StringGenerator.XDRElement> xdr = StringParsers.parseXDR(nmeaSentence);
+				if (xdr != null) {
+					for (StringGenerator.XDRElement xe : xdr) {
+						StringGenerator.XDRTypes type = xe.getTypeNunit();
+						double val = xe.getValue();
+						if (type.equals(StringGenerator.XDRTypes.HUMIDITY)) {
+							this.put(RELATIVE_HUMIDITY, val);
+						} else if (type.equals(StringGenerator.XDRTypes.PRESSURE_B)) {
+							this.put(BARO_PRESS, new Pressure(val * 1_000));
+						} else if (type.equals(StringGenerator.XDRTypes.VOLTAGE)) {
+							this.put(BATTERY, new Float(val));
+						} else {
+							if ("true".equals(System.getProperty("verbose", "false")))
+								System.out.println("Unmanaged XDR Type:" + type.toString());
+						}
 					}
-					break;
-				default:
-					if (System.getProperty("verbose", "false").equals("true")) {
-						System.out.println(String.format("NMEA Sentence [%s] not managed by parseAndFeed.", id));
+				}
+				break;
+			case "MWD": // Wind Speed and Direction
+				Wind mwdWind = StringParsers.parseMWD(nmeaSentence);
+				if (mwdWind != null && mwdWind instanceof TrueWind) {
+					this.put(TWS, new Speed(mwdWind.speed));
+					this.put(TWD, new Angle360(mwdWind.angle));
+				}
+				break;
+			case "VWT": // True Wind Speed and Angle (deprecated, use MWV)
+				Wind trueWind = StringParsers.parseVWT(nmeaSentence);
+				if (trueWind != null) {
+					this.put(TWS, new Speed(trueWind.speed));
+					this.put(TWA, new Angle180(trueWind.angle));
+					Angle360 trueHeading = (Angle360)this.get(HDG_TRUE);
+					if (trueHeading != null) {
+						double twd = trueHeading.getValue() + trueWind.angle;
+						System.out.println("TWD: " + twd); // TODO: Implement put(TWD, new Angle360(twd))
 					}
-					break;
+				}
+				break;
+			case "BAT":     // Battery Voltage. Not Standard, from the Raspberry PI. There is an XDR Voltage...
+				float volt = StringParsers.parseBAT(nmeaSentence);
+				if (volt > -1) {
+					this.put(BATTERY, new Float(volt));
+				}
+				break;
+			case "VDM":     // AIS
+			case "VDO":     // AIS, own vessel
+				feedAIS(sentence);
+				break;
+			case "STD":     // Cache age. Not Standard. From Original cache
+				long age = StringParsers.parseSTD(nmeaSentence);
+				if (age > -1) {
+					this.put(TIME_RUNNING, new Long(age));
+				}
+				break;
+			default:
+				if (System.getProperty("verbose", "false").equals("true")) {
+					System.out.println(String.format("NMEA Sentence [%s] not managed by parseAndFeed.", id));
+				}
+				break;
+		}
+	}
+
+	/**
+	 * Updates the AIS targets. The {@link #AIS_THREATS} are re-computed at most every <code>-Dais.threats.period</code> ms (default 1000),
+	 * not for every AIS sentence.
+	 */
+	private void feedAIS(NMEASentence sentence) {
+		if (aisParser == null) {
+			aisParser = new AISParser();
+		}
+		AISParser.AISRecord record;
+		try {
+			record = aisParser.parse(sentence.getSentence());
+		} catch (RuntimeException re) {
+			if (System.getProperty("verbose", "false").equals("true")) {
+				System.out.println(String.format("AIS sentence [%s] not managed: %s", sentence.getSentence(), re.toString()));
+			}
+			return;
+		}
+		if (record == null) { // Waiting for the other fragments
+			return;
+		}
+		getAISTargets().update(record);
+		long now = System.currentTimeMillis();
+		if (now - lastThreats >= aisThreatsPeriod) {
+			lastThreats = now;
+			List<AISTargetTable.Proximity> threats = getAISThreats();
+			if (threats != null) {
+				this.put(AIS_THREATS, threats);
 			}
 		}
 	}
@@ -451,90 +881,200 @@ public class NMEADataCache
 	 * @return Damped Data, by default
 	 */
 	@Override
-	public /*synchronized*/ Object get(Object key) {
+	public Object get(Object key) {
 		return get(key, true);
 	}
 
-	public /*synchronized*/ Object get(Object key, boolean useDamping) {
-		Object ret = null;
-		try {
-			//  System.out.println("Damping = " + dampingSize);
-			if (useDamping && dampingSize > 1 && dampingMap != null && dampingMap.containsKey(key)) {
-				Class cl = null;
-				List<?> ald = dampingMap.get(key);
-				double sum = 0d;
-				double sumCos = 0d,
-								sumSin = 0d;
-
-				for (Object v : ald) {
-					if (cl == null)
-						cl = v.getClass();
-					if (v instanceof Double)
-						sum += ((Double) v).doubleValue();
-					else if (v instanceof NMEADoubleValueHolder) {
-						// Debug
-						if (false && key.equals(TWD))
-							System.out.print(((NMEADoubleValueHolder) v).getDoubleValue() + ";");
-
-						if (v instanceof Angle) { // Angle360 || v instanceof Angle180 || v instanceof Angle180EW || v instanceof Angle180LR)
-							double val = ((NMEADoubleValueHolder) v).getDoubleValue();
-							sumCos += (Math.cos(Math.toRadians(val)));
-							sumSin += (Math.sin(Math.toRadians(val)));
-						} else
-							sum += ((NMEADoubleValueHolder) v).getDoubleValue();
-					} else
-						System.out.println("What'zat:" + v.getClass().getName());
-				}
-				try {
-					if (ald.size() != 0) { // Average here
-						sum /= ald.size();
-						sumCos /= ald.size();
-						sumSin /= ald.size();
-					}
-					if (cl != null) {
-						if (cl.equals(Double.class)) {
-							ret = new Double(sum);
-						} else {
-							ret = Class.forName(cl.getName()).newInstance();
-							if (ret instanceof Angle) { // Angle360 || ret instanceof Angle180 || ret instanceof Angle180EW || ret instanceof Angle180LR)
-								double a = Math.toDegrees(Math.acos(sumCos));
-								if (sumSin < 0)
-									a = 360d - a;
-								sum = a;
-							}
-							((NMEADoubleValueHolder) ret).setDoubleValue(sum);
-						}
-					} else
-						ret = super.get(key);
-				} catch (Exception ex) {
-					Context.getInstance().getLogger().log(Level.INFO, String.format("For key", key), ex);
+	public Object get(Object key, boolean useDamping) {
+		CacheEntry entry = slots.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (useDamping && isDamping() && dampingMap != null) {
+			DampedValue damped = dampingMap.get(key);
+			if (damped != null) {
+				Object mean = damped.mean(dampingClock());
+				if (mean != null) {
+					return mean;
 				}
-			} else {
-				ret = super.get(key);
-//				if (ret == null) {
-//					long age = System.currentTimeMillis() - started;
-//					ret = new Long(age);
-//				}
 			}
-		} catch (ConcurrentModificationException cme) {
-			Context.getInstance().getLogger().log(Level.INFO, String.format("Conflict for key [%s]", key), cme);
 		}
-		return ret;
+		return entry.getValue();
 	}
 
+	/**
+	 * Damping by count.
+	 *
+	 * @param dampingSize the number of values to average. 1 means no damping by count.
+	 */
 	public void setDampingSize(int dampingSize) {
 		System.out.println("Setting Damping to " + dampingSize);
 		this.dampingSize = dampingSize;
+		reconfigureDamping();
 	}
 
 	public int getDampingSize() {
 		return dampingSize;
 	}
 
+	/**
+	 * Damping by time, like "the last 30 seconds".
+	 * Can be combined with the damping by count, the first limit reached applies.
+	 *
+	 * @param dampingWindow in ms. 0 means no time window.
+	 */
+	public void setDampingWindow(long dampingWindow) {
+		this.dampingWindow = dampingWindow;
+		reconfigureDamping();
+	}
+
+	public long getDampingWindow() {
+		return dampingWindow;
+	}
+
+	public boolean isDamping() {
+		return dampingSize > 1 || dampingWindow > 0;
+	}
+
+	/**
+	 * @param key identifies the data
+	 * @return count, mean, min, max, and standard deviation of the damped values for this key, null if this key is not damped, or not fed yet.
+	 */
+	public DampingBuffer.Statistics getDampingStatistics(String key) {
+		if (!isDamping() || dampingMap == null) {
+			return null;
+		}
+		DampedValue damped = dampingMap.get(key);
+		return (damped != null) ? damped.statistics(dampingClock()) : null;
+	}
+
+	/*
+	 * The timestamps are only used by the time window.
+	 */
+	private long dampingClock() {
+		return (dampingWindow > 0) ? System.currentTimeMillis() : 0L;
+	}
+
+	private void reconfigureDamping() {
+		if (dampingMap != null) {
+			dampingMap.values().forEach(damped -> damped.configure(dampingSize, dampingWindow));
+		}
+	}
+
 	public void resetDampingBuffers() {
-		Set<String> keys = dampingMap.keySet();
-		for (String k : keys)
-			dampingMap.get(k).clear();
+		if (dampingMap != null) {
+			dampingMap.values().forEach(DampedValue::clear);
+		}
+	}
+
+	/**
+	 * What the cache holds for a key. Immutable.
+	 */
+	public final static class CacheEntry implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final Object value;
+		private final long timestamp;
+		private final long version;
+
+		public CacheEntry(Object value, long timestamp, long version) {
+			this.value = value;
+			this.timestamp = timestamp;
+			this.version = version;
+		}
+
+		public Object getValue() {
+			return value;
+		}
+
+		/**
+		 * @return when the value was put in the cache (System.currentTimeMillis)
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * @return the cache version ({@link NMEADataCache#getVersion()}) when this value was put.
+		 */
+		public long getVersion() {
+			return version;
+		}
+	}
+
+	private final static class Snapshot {
+		private final long version;
+		private final Map<String, Object> content;
+		private final Map<String, CacheEntry> entries;
+
+		Snapshot(long version, Map<String, Object> content, Map<String, CacheEntry> entries) {
+			this.version = version;
+			this.content = content;
+			this.entries = entries;
+		}
+	}
+
+	/**
+	 * The damping buffer of a key, along with the type of its values, to return the mean with the same type.
+	 */
+	private final static class DampedValue {
+		private DampingBuffer buffer = null;
+		private Class<?> type = null;
+		private Supplier<NMEADoubleValueHolder> factory = null; // null for Double
+
+		synchronized void add(Object value, int size, long window, long time) {
+			if (value == null || !(value instanceof Double || DAMPED_TYPES.containsKey(value.getClass()))) {
+				return;
+			}
+			if (value.getClass() != this.type) { // New type, start again
+				this.type = value.getClass();
+				this.factory = DAMPED_TYPES.get(this.type);
+				this.buffer = new DampingBuffer(bufferSize(size), window, value instanceof Angle);
+			}
+			double d = (value instanceof Double) ? (Double) value : ((NMEADoubleValueHolder) value).getDoubleValue();
+			buffer.add(d, time);
+		}
+
+		/**
+		 * @return the mean, with the type of the values, null if empty.
+		 */
+		synchronized Object mean(long now) {
+			if (buffer == null) {
+				return null;
+			}
+			double mean = buffer.getMean(now);
+			if (Double.isNaN(mean)) {
+				return null;
+			}
+			if (factory == null) {
+				return mean;
+			}
+			NMEADoubleValueHolder damped = factory.get();
+			damped.setDoubleValue(mean);
+			return damped;
+		}
+
+		synchronized DampingBuffer.Statistics statistics(long now) {
+			return (buffer != null) ? buffer.getStatistics(now) : null;
+		}
+
+		synchronized void configure(int size, long window) {
+			if (buffer != null) {
+				buffer.setSize(bufferSize(size));
+				buffer.setWindow(window);
+				buffer.clear();
+			}
+		}
+
+		synchronized void clear() {
+			if (buffer != null) {
+				buffer.clear();
+			}
+		}
+
+		private static int bufferSize(int dampingSize) {
+			return (dampingSize > 1) ? dampingSize : 0; // 0: limited by the time window only
+		}
 	}
 
 	public static class CurrentDefinition implements Serializable {
@@ -558,6 +1098,21 @@ public class NMEADataCache
 			return direction;
 		}
 
+		public int getNbPoints() {
+			return nbPoints;
+		}
+
+		public String getOldest() {
+			return oldest;
+		}
+
+		public String getLatest() {
+			return latest;
+		}
+
+		public long getLen() {
+			return len;
+		}
 
 		public CurrentDefinition(long bl, Speed sp, Angle360 dir, int nbp, String old, String last, long len) {
 			this.bufferLength = bl;
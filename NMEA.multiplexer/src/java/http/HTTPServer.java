@@ -1,19 +1,39 @@
 package http;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.io.OutputStream;
 
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-
-import java.nio.file.Files;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 
 import http.utils.DumpUtil;
@@ -43,15 +63,19 @@ import http.utils.HTTPClient;
  * To turn it off: any other value.
  * <br>
  * Example: http://localhost:9999/web/admin.html?verbose=on
+ * <br>
+ * The connections are served by a pool of workers, and kept alive (HTTP/1.1).
+ * The request bodies are read according to their <code>Content-Length</code> (or <code>Transfer-Encoding: chunked</code>),
+ * the responses can be streamed (see {@link Response.PayloadWriter}).
  * <em>
- * Warning: This is a very lightweight HTTP server. It is not supposed to scale!!
+ * Warning: This is still a lightweight HTTP server.
  * </em>
  * <p>
  * Logging can be done. See -Djava.util.logging.config.file=[path]/logging.properties
  * See https://docs.oracle.com/cd/E23549_01/doc.1111/e14568/handler.htm
  */
 public class HTTPServer {
-	private boolean verbose = "true".equals(System.getProperty("http.verbose", "false"));
+	private volatile boolean verbose = "true".equals(System.getProperty("http.verbose", "false"));
 
 	private Thread httpListenerThread;
 
@@ -159,6 +183,32 @@ public class HTTPServer {
 		private String protocol;
 		private Map<String, String> headers;
 		private byte[] payload;
+		private PayloadWriter payloadWriter;
+		private File payloadFile;
+		private StreamHandler streamHandler;
+
+		/**
+		 * For the payloads that are produced on the fly (like big JSON documents), instead of being built in memory.
+		 * <br>
+		 * Sent with <code>Transfer-Encoding: chunked</code> (HTTP/1.1), or followed by the end of the connection (HTTP/1.0).
+		 */
+		public interface PayloadWriter {
+			void writeTo(OutputStream out) throws IOException;
+		}
+
+		/**
+		 * For the responses that never end, like Server-Sent Events.
+		 * <br>
+		 * Once the headers are sent, the connection is handed over to the handler, that will write to it as long as it wants,
+		 * from any thread. The HTTP worker is released.
+		 */
+		public interface StreamHandler {
+			/**
+			 * @param out        to write the stream to, chunked (HTTP/1.1) or not (HTTP/1.0). Flush it to send what has been written.
+			 * @param connection to close the connection, when the stream is over.
+			 */
+			void onOpen(OutputStream out, Closeable connection) throws IOException;
+		}
 
 		public Response() {
 		}
@@ -200,6 +250,39 @@ public class HTTPServer {
 			this.payload = payload;
 		}
 
+		public PayloadWriter getPayloadWriter() {
+			return payloadWriter;
+		}
+
+		/**
+		 * @param payloadWriter writes the payload, takes precedence over {@link #setPayload(byte[])}.
+		 */
+		public void setPayloadWriter(PayloadWriter payloadWriter) {
+			this.payloadWriter = payloadWriter;
+		}
+
+		public File getPayloadFile() {
+			return payloadFile;
+		}
+
+		/**
+		 * @param payloadFile a file to send as payload, without loading it in memory. Takes precedence over {@link #setPayload(byte[])}.
+		 */
+		public void setPayloadFile(File payloadFile) {
+			this.payloadFile = payloadFile;
+		}
+
+		public StreamHandler getStreamHandler() {
+			return streamHandler;
+		}
+
+		/**
+		 * @param streamHandler takes over the connection once the headers are sent. Takes precedence over the payload(s).
+		 */
+		public void setStreamHandler(StreamHandler streamHandler) {
+			this.streamHandler = streamHandler;
+		}
+
 		@Override
 		public String toString() {
 			final StringBuffer sb = new StringBuffer();
@@ -228,13 +311,37 @@ public class HTTPServer {
 			Context.getInstance().getLogger().info("Stop nicely requested");
 		}
 		this.keepRunning = false;
+		try {
+			if (serverSocket != null) {
+				serverSocket.close(); // Releases the accept
+			}
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
 	}
 
-	private boolean keepRunning = true;
+	private volatile boolean keepRunning = true;
 	private HTTPServerInterface requestManager = null;
 
 	private static int defaultPort = 9999;
 
+	private final static int NB_WORKERS = Integer.parseInt(System.getProperty("http.workers", "64")); // Max
+	private final static long WORKER_IDLE_TIMEOUT = 60_000L; // ms, after which an idle worker goes away
+	private final static int KEEP_ALIVE_TIMEOUT = Integer.parseInt(System.getProperty("http.keep.alive.timeout", "15000")); // ms
+	private final static int IDLE_POLL = 500; // ms, how often an idle keep-alive connection checks if other ones are waiting for a worker
+	private final static int MAX_KEEP_ALIVE_REQUESTS = 1_000;
+	private final static int MAX_LINE_LENGTH = 8_192;
+	private final static int MAX_CONTENT_LENGTH = 16 * 1_024 * 1_024;
+	private final static int CHUNK_SIZE = 8_192;
+
+	private ServerSocket serverSocket = null;
+	private ThreadPoolExecutor workers = null;
+	private final StaticContentCache staticContent = new StaticContentCache("/web/", "./web");
+	/*
+	 * The REST operations used to be executed one at a time. They still are, except the GETs, that can run in parallel.
+	 */
+	private final ReadWriteLock requestLock = new ReentrantReadWriteLock();
+
 	public HTTPServer() throws Exception {
 		this(defaultPort, null);
 	}
@@ -247,187 +354,63 @@ public class HTTPServer {
 		this(defaultPort, requestManager);
 	}
 
+	/**
+	 * The <code>HTTPListener</code> thread accepts the connections, they are then handled by a pool of workers,
+	 * started when needed, up to <code>-Dhttp.workers</code> (default 64), and stopped after one minute of inactivity.
+	 * <br>
+	 * The connections are kept alive (HTTP/1.1, or HTTP/1.0 with <code>Connection: keep-alive</code>),
+	 * until the client closes them, or after <code>-Dhttp.keep.alive.timeout</code> ms (default 15000) of inactivity.
+	 * A worker holds its connection while it is kept alive. When all the workers are busy, and other connections
+	 * are waiting for one, the kept alive connections are closed (<code>Connection: close</code> after the current request,
+	 * or right away if idle), so the waiting ones get served.
+	 *
+	 * @param port           the HTTP port
+	 * @param requestManager what to do with the requests that are not /exit, /test, or /web/...
+	 * @throws Exception when the port cannot be opened
+	 */
 	public HTTPServer(int port, HTTPServerInterface requestManager) throws Exception {
 		this.requestManager = requestManager;
+		AtomicInteger workerIdx = new AtomicInteger(0);
+		// All core threads, so they are created before the connections get queued. They go away when idle.
+		this.workers = new ThreadPoolExecutor(NB_WORKERS, NB_WORKERS, WORKER_IDLE_TIMEOUT, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+			Thread worker = new Thread(runnable, String.format("HTTPWorker-%d", workerIdx.incrementAndGet()));
+			worker.setDaemon(true);
+			return worker;
+		});
+		this.workers.allowCoreThreadTimeOut(true);
 		// Infinite loop, waiting for requests
 		httpListenerThread = new Thread("HTTPListener") {
 			public void run() {
 				try {
-					boolean okToStop = false;
-					ServerSocket ss = new ServerSocket(port);
+					serverSocket = ServerSocketChannel.open().bind(new InetSocketAddress(port)).socket(); // With a channel, for the transferTo of the big files
 					if (verbose) {
 						Context.getInstance().getLogger().info("Port " + port + " opened successfully.");
 					}
 					while (isRunning()) {
-						Socket client = ss.accept(); // Blocking read
-						InputStreamReader in = new InputStreamReader(client.getInputStream());
-						OutputStream out = client.getOutputStream();
-						Request request = null;
-						String line = "";
-						boolean top = true;
-						Map<String, String> headers = new HashMap<>();
-//					while ((line = in.readLine()) != null)
-						int read = 0;
-						boolean cr = false, lf = false;
-						boolean lineAvailable = false;
-						boolean inPayload = false;
-						StringBuffer sb = new StringBuffer();
-						boolean keepReading = true;
-						if (verbose) {
-							Context.getInstance().getLogger().info(">>> Top of the loop <<<");
-						}
-						while (keepReading) {
-							if (top) { // Ugly!! Argh! :(
-								try {
-									Thread.sleep(100L);
-								} catch (InterruptedException ie) {
-								}
-								top = false;
-							}
-							try {
-								if (in.ready()) {
-									read = in.read();
-								} else {
-									if (verbose)
-										Context.getInstance().getLogger().info(">>> End of InputStream <<<");
-									read = -1;
-								}
-							} catch (IOException ioe) {
-								read = -1;
-							}
-							if (read == -1) {
-								keepReading = false;
-							} else {
-								if (!inPayload) {
-									sb.append((char) read);
-									if (!cr && read == '\r') {
-										cr = true;
-									}
-									if (!lf && read == '\n') {
-										lf = true;
-									}
-									if (cr && lf) {
-										line = sb.toString().trim(); // trim removes CR & LF
-										sb = new StringBuffer();
-										lineAvailable = true;
-										cr = lf = false;
-									}
-								} else {
-									sb.append((char) read);
-								}
-//								System.out.println("======================");
-//								DumpUtil.displayDualDump(sb.toString());
-//								System.out.println("======================");
-								if (!inPayload) {
-									if (lineAvailable) {
-										if (verbose) {
-//							      System.out.println("HTTP Request line : " + line);
-											DumpUtil.displayDualDump(line);
-											System.out.println(); // Blank between lines
-										}
-										if (request != null && line.length() == 0) {
-											// Payload begins
-											inPayload = true;
-											request.setHeaders(headers);
-										}
-										if (request == null && line.indexOf(" ") != -1) {
-											String firstWord = line.substring(0, line.indexOf(" "));
-											if (Request.VERBS.contains(firstWord)) { // Start Line
-												String[] requestElements = line.split(" ");
-												request = new Request(requestElements[0], requestElements[1], requestElements[2]);
-												if (verbose) {
-													Context.getInstance().getLogger().info(">>> New request: " + line + " <<<");
-												}
-											}
-										}
-										if (request != null && !inPayload) {
-											if (line.indexOf(":") > -1) // Header?
-											{
-												String headerKey = line.substring(0, line.indexOf(":"));
-												String headerValue = line.substring(line.indexOf(":") + 1);
-												headers.put(headerKey, headerValue);
-											}
-										}
-									}
-									lineAvailable = false;
-								}
-							}
-						}
-						String payload = sb.toString();
-						if (payload != null && request != null) {
-							request.setContent(payload.getBytes());
-						}
-						if (verbose) {
-							Context.getInstance().getLogger().info(">>> End of HTTP Request <<<");
-						}
-						if (request != null) {
-							String path = request.getPath();
-							if (request.getQueryStringParameters() != null && request.getQueryStringParameters().keySet().contains("verbose")) {
-								String verb = request.getQueryStringParameters().get("verbose");
-								verbose = (verb == null || verb.toUpperCase().equals("YES") || verb.toUpperCase().equals("TRUE") || verb.toUpperCase().equals("ON"));
-							}
-							if ("/exit".equals(path)) {
-								System.out.println("Received an exit signal");
-								Response response = new Response(request.getProtocol(), Response.STATUS_OK);
-								String content = "Exiting";
-								RESTProcessorUtil.generateHappyResponseHeaders(response, "text/html", content.length());
-								response.setPayload(content.getBytes());
-								sendResponse(response, out);
-								okToStop = true;
-							} else if ("/test".equals(path)) {
-								Response response = new Response(request.getProtocol(), Response.STATUS_OK);
-								String content = "Test is OK";
-								if (request.getContent() != null && request.getContent().length > 0) {
-									content += String.format("\nYour payload was [%s]", new String(request.getContent()));
-								}
-								RESTProcessorUtil.generateHappyResponseHeaders(response, "text/html", content.length());
-								response.setPayload(content.getBytes());
-								sendResponse(response, out);
-							} else if (path.startsWith("/web/")) {                                    // Assume this is static content. TODO Tweak that.
-								Response response = new Response(request.getProtocol(), Response.STATUS_OK);
-								File f = new File("." + path);
-								if (!f.exists()) {
-									response = new Response(request.getProtocol(), Response.NOT_FOUND);
-								}
-								ByteArrayOutputStream baos = new ByteArrayOutputStream();
-								Files.copy(f.toPath(), baos);
-								baos.close();
-								byte[] content = baos.toByteArray();
-								RESTProcessorUtil.generateHappyResponseHeaders(response, getContentType(path), content.length);
-								response.setPayload(content);
-								sendResponse(response, out);
-							} else {
-								if (requestManager != null) {
-									Response response = requestManager.onRequest(request); // REST Request, most likely.
-									sendResponse(response, out);
-								}
-							}
-						} else {
-							if (payload != null && payload.length() > 0 && payload.startsWith("?WATCH=")) { // GPSd ?  ?WATCH={...}; ?POLL; ?DEVICE;
-								System.out.println(String.format(">>>>>>>> GPSd: [%s]", payload)); // This is the first embryo of a GPSd implementation...
-								String json = payload.substring("?WATCH=".length());
-								String responsePayload = "{\"class\":\"SKY\",\"device\":\"/dev/pts/1\",\"time\":\"2005-07-08T11:28:07.114Z\",\"xdop\":1.55,\"hdop\":1.24,\"pdop\":1.99,\"satellites\":[{\"PRN\":23,\"el\":6,\"az\":84,\"ss\":0,\"used\":false},{\"PRN\":28,\"el\":7,\"az\":160,\"ss\":0,\"used\":false},{\"PRN\":8,\"el\":66,\"az\":189,\"ss\":44,\"used\":true},{\"PRN\":29,\"el\":13,\"az\":273,\"ss\":0,\"used\":false},{\"PRN\":10,\"el\":51,\"az\":304,\"ss\":29,\"used\":true},{\"PRN\":4,\"el\":15,\"az\":199,\"ss\":36,\"used\":true},{\"PRN\":2,\"el\":34,\"az\":241,\"ss\":43,\"used\":true},{\"PRN\":27,\"el\":71,\"az\":76,\"ss\":43,\"used\":true}]}" + "\n";
-								out.write(responsePayload.getBytes());
-								out.flush();
-							} else if (line != null && line.length() != 0) {
-								Context.getInstance().getLogger().warning(">>>>>>>>>> What?"); // TODO See when/why this happens...
-								Context.getInstance().getLogger().warning(">>>>>>>>>> Last line was [" + line + "]");
-								Context.getInstance().getLogger().warning(String.format(">>>>>>>>>> line: %s, in payload: %s, request %s", lineAvailable, inPayload, request));
+						Socket client;
+						try {
+							client = serverSocket.accept(); // Blocking read
+						} catch (IOException ioe) {
+							if (isRunning()) {
+								throw ioe;
 							}
+							break; // Closed by stopRunning
 						}
-						out.flush();
-						out.close();
-						in.close();
-						client.close();
-						if (okToStop)
-							stopRunning();
+						workers.submit(() -> handleConnection(client));
 					}
-					ss.close();
 				} catch (Exception e) {
 					Context.getInstance().getLogger().severe(String.format(">>> Port %d, %s >>>", port, e.toString()));
 					Context.getInstance().getLogger().log(Level.SEVERE, e.getMessage(), e);
 					Context.getInstance().getLogger().severe(String.format("<<< Port %d <<<", port));
 				} finally {
+					workers.shutdown();
+					try {
+						if (serverSocket != null && !serverSocket.isClosed()) {
+							serverSocket.close();
+						}
+					} catch (IOException ioe) {
+						ioe.printStackTrace();
+					}
 					if (verbose)
 						Context.getInstance().getLogger().info("HTTP Server is done.");
 					if (waiter != null) {
@@ -464,52 +447,453 @@ public class HTTPServer {
 	}
 
 	/**
-	 * Full mime-type list at https://www.sitepoint.com/web-foundations/mime-types-complete-list/
+	 * One client connection.
+	 */
+	private static class Connection {
+		final Socket socket;
+		final OutputStream out;
+		boolean detached = false; // Handed over to a StreamHandler
+
+		Connection(Socket socket, OutputStream out) {
+			this.socket = socket;
+			this.out = out;
+		}
+	}
+
+	/**
+	 * @return true if some accepted connections are waiting for a worker
+	 */
+	private boolean othersWaiting() {
+		return !workers.getQueue().isEmpty();
+	}
+
+	/**
+	 * Waits for the first byte of the next request on a kept alive connection, without consuming it.
+	 * Gives up after <code>KEEP_ALIVE_TIMEOUT</code>, or as soon as other connections are waiting for a worker.
 	 *
-	 * @param f
-	 * @return
+	 * @param client the socket
+	 * @param in     its input stream
+	 * @return true if a request is coming, false if the connection can be closed
+	 * @throws IOException when the socket fails
 	 */
-	private static String getContentType(String f) { // TODO add more types, as requested
-		String contentType = "text/plain";
-		if (f.endsWith(".html"))
-			contentType = "text/html";
-		else if (f.endsWith(".js"))
-			contentType = "text/javascript";
-		else if (f.endsWith(".css"))
-			contentType = "text/css";
-		else if (f.endsWith(".xml"))
-			contentType = "text/xml";
-		else if (f.endsWith(".ico"))
-			contentType = "iimage/x-icon";
-		else if (f.endsWith(".png"))
-			contentType = "image/png";
-		else if (f.endsWith(".gif"))
-			contentType = "image/gif";
-		else if (f.endsWith(".jpg") || f.endsWith(".jpeg"))
-			contentType = "image/jpeg";
-		return contentType;
+	private boolean waitForNextRequest(Socket client, BufferedInputStream in) throws IOException {
+		if (in.available() > 0) {
+			return true; // Pipelined
+		}
+		long idleSince = System.currentTimeMillis();
+		client.setSoTimeout(Math.min(IDLE_POLL, KEEP_ALIVE_TIMEOUT));
+		try {
+			while (isRunning()) {
+				try {
+					in.mark(1);
+					if (in.read() == -1) {
+						return false; // Closed by the client
+					}
+					in.reset();
+					return true;
+				} catch (SocketTimeoutException idle) {
+					if (othersWaiting() || System.currentTimeMillis() - idleSince >= KEEP_ALIVE_TIMEOUT) {
+						return false;
+					}
+				}
+			}
+			return false;
+		} finally {
+			if (!client.isClosed()) {
+				client.setSoTimeout(KEEP_ALIVE_TIMEOUT);
+			}
+		}
 	}
 
-	private void sendResponse(Response response, OutputStream os) {
+	/**
+	 * Serves the requests of one connection, until it is closed (by the client, or because it is not kept alive).
+	 *
+	 * @param client the accepted socket
+	 */
+	private void handleConnection(Socket client) {
+		Connection connection = null;
 		try {
-			os.write(String.format("%s %d \r\n", response.getProtocol(), response.getStatus()).getBytes());
-			if (response.getHeaders() != null) {
-				response.getHeaders().keySet().stream().forEach(k -> {
-					try {
-						os.write(String.format("%s: %s\r\n", k, response.getHeaders().get(k)).getBytes());
-					} catch (IOException e) {
-						e.printStackTrace();
+			client.setSoTimeout(KEEP_ALIVE_TIMEOUT);
+			client.setTcpNoDelay(true);
+			BufferedInputStream in = new BufferedInputStream(client.getInputStream());
+			OutputStream out = new BufferedOutputStream(client.getOutputStream());
+			connection = new Connection(client, out);
+			boolean keepAlive = true;
+			int nbRequests = 0;
+			while (keepAlive && isRunning()) {
+				if (nbRequests > 0 && !waitForNextRequest(client, in)) {
+					break;
+				}
+				String line = readLine(in);
+				if (line == null) {
+					break; // Closed by the client
+				}
+				if (line.isEmpty()) {
+					continue; // Tolerated between requests
+				}
+				if (verbose) {
+					DumpUtil.displayDualDump(line);
+					System.out.println(); // Blank between lines
+				}
+				String[] requestElements = line.split(" ");
+				if (requestElements.length < 3 || !Request.VERBS.contains(requestElements[0])) {
+					if (line.startsWith("?WATCH=")) { // GPSd ?  ?WATCH={...}; ?POLL; ?DEVICE;
+						System.out.println(String.format(">>>>>>>> GPSd: [%s]", line)); // This is the first embryo of a GPSd implementation...
+						String responsePayload = "{\"class\":\"SKY\",\"device\":\"/dev/pts/1\",\"time\":\"2005-07-08T11:28:07.114Z\",\"xdop\":1.55,\"hdop\":1.24,\"pdop\":1.99,\"satellites\":[{\"PRN\":23,\"el\":6,\"az\":84,\"ss\":0,\"used\":false},{\"PRN\":28,\"el\":7,\"az\":160,\"ss\":0,\"used\":false},{\"PRN\":8,\"el\":66,\"az\":189,\"ss\":44,\"used\":true},{\"PRN\":29,\"el\":13,\"az\":273,\"ss\":0,\"used\":false},{\"PRN\":10,\"el\":51,\"az\":304,\"ss\":29,\"used\":true},{\"PRN\":4,\"el\":15,\"az\":199,\"ss\":36,\"used\":true},{\"PRN\":2,\"el\":34,\"az\":241,\"ss\":43,\"used\":true},{\"PRN\":27,\"el\":71,\"az\":76,\"ss\":43,\"used\":true}]}" + "\n";
+						out.write(responsePayload.getBytes());
+						out.flush();
+					} else {
+						Context.getInstance().getLogger().warning(">>>>>>>>>> What?");
+						Context.getInstance().getLogger().warning(">>>>>>>>>> Last line was [" + line + "]");
 					}
-				});
+					break;
+				}
+				Request request = new Request(requestElements[0], requestElements[1], requestElements[2]);
+				if (verbose) {
+					Context.getInstance().getLogger().info(">>> New request: " + line + " <<<");
+				}
+				Map<String, String> headers = new HashMap<>();
+				while ((line = readLine(in)) != null && !line.isEmpty()) {
+					int colon = line.indexOf(":");
+					if (colon > -1) { // Header
+						headers.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+					}
+				}
+				if (line == null) {
+					break;
+				}
+				request.setHeaders(headers);
+				request.setContent(readBody(in, headers));
+				if (verbose) {
+					Context.getInstance().getLogger().info(">>> End of HTTP Request <<<");
+				}
+				String connectionHeader = getHeader(headers, "Connection");
+				if ("HTTP/1.0".equals(request.getProtocol())) {
+					keepAlive = "keep-alive".equalsIgnoreCase(connectionHeader);
+				} else {
+					keepAlive = !"close".equalsIgnoreCase(connectionHeader);
+				}
+				if (++nbRequests >= MAX_KEEP_ALIVE_REQUESTS || othersWaiting()) {
+					keepAlive = false;
+				}
+				keepAlive = processRequest(request, connection, keepAlive);
+				if (connection.detached) {
+					return;
+				}
+				out.flush();
+			}
+		} catch (SocketTimeoutException | SocketException closed) {
+			// Idle keep-alive connection, or closed by the client
+		} catch (Exception e) {
+			Context.getInstance().getLogger().log(Level.SEVERE, e.getMessage(), e);
+		} finally {
+			try {
+				if (connection != null && connection.detached) {
+					return;
+				}
+				client.close();
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @return false if the connection must be closed after this response.
+	 */
+	private boolean processRequest(Request request, Connection connection, boolean keepAlive) throws IOException {
+		String path = request.getPath();
+		if (request.getQueryStringParameters() != null && request.getQueryStringParameters().keySet().contains("verbose")) {
+			String verb = request.getQueryStringParameters().get("verbose");
+			verbose = (verb == null || verb.toUpperCase().equals("YES") || verb.toUpperCase().equals("TRUE") || verb.toUpperCase().equals("ON"));
+		}
+		if ("/exit".equals(path)) {
+			System.out.println("Received an exit signal");
+			Response response = new Response(request.getProtocol(), Response.STATUS_OK);
+			String content = "Exiting";
+			RESTProcessorUtil.generateHappyResponseHeaders(response, "text/html", content.length());
+			response.setPayload(content.getBytes());
+			sendResponse(response, connection, false);
+			stopRunning();
+			return false;
+		} else if ("/test".equals(path)) {
+			Response response = new Response(request.getProtocol(), Response.STATUS_OK);
+			String content = "Test is OK";
+			if (request.getContent() != null && request.getContent().length > 0) {
+				content += String.format("\nYour payload was [%s]", new String(request.getContent()));
+			}
+			RESTProcessorUtil.generateHappyResponseHeaders(response, "text/html", content.length());
+			response.setPayload(content.getBytes());
+			return sendResponse(response, connection, keepAlive);
+		} else if (staticContent.accepts(path)) {                                    // Assume this is static content.
+			return sendResponse(staticContent.get(request), connection, keepAlive);
+		} else if (requestManager != null) {
+			Lock lock = "GET".equals(request.getVerb()) ? requestLock.readLock() : requestLock.writeLock();
+			Response response;
+			lock.lock();
+			try {
+				response = requestManager.onRequest(request); // REST Request, most likely.
+			} finally {
+				lock.unlock();
+			}
+			return sendResponse(response, connection, keepAlive);
+		} else {
+			return sendResponse(new Response(request.getProtocol(), Response.NOT_IMPLEMENTED), connection, keepAlive);
+		}
+	}
+
+	private static String getHeader(Map<String, String> headers, String name) {
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			if (header.getKey().equalsIgnoreCase(name)) {
+				return header.getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads a line, ended by CR-LF (or LF).
+	 *
+	 * @return the line, without its end, null if the stream is closed.
+	 */
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		int read;
+		while ((read = in.read()) != -1) {
+			if (read == '\n') {
+				int len = sb.length();
+				if (len > 0 && sb.charAt(len - 1) == '\r') {
+					sb.setLength(len - 1);
+				}
+				return sb.toString();
+			}
+			if (sb.length() >= MAX_LINE_LENGTH) {
+				throw new IOException("Line too long");
+			}
+			sb.append((char) read);
+		}
+		return (sb.length() > 0) ? sb.toString() : null;
+	}
+
+	/**
+	 * Reads the body of a request, as specified by its <code>Content-Length</code>,
+	 * or its <code>Transfer-Encoding: chunked</code>. No body otherwise.
+	 *
+	 * @return the body, an empty array if there is none.
+	 */
+	private static byte[] readBody(InputStream in, Map<String, String> headers) throws IOException {
+		String transferEncoding = getHeader(headers, "Transfer-Encoding");
+		if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			while (true) {
+				String sizeLine = readLine(in);
+				if (sizeLine == null) {
+					throw new EOFException("Unexpected end of chunked body");
+				}
+				int semiColon = sizeLine.indexOf(";"); // Chunk extensions
+				int size = Integer.parseInt((semiColon > -1 ? sizeLine.substring(0, semiColon) : sizeLine).trim(), 16);
+				if (size == 0) {
+					String trailer;
+					while ((trailer = readLine(in)) != null && !trailer.isEmpty()) ; // Trailers, ignored
+					break;
+				}
+				if (body.size() + size > MAX_CONTENT_LENGTH) {
+					throw new IOException("Request body too big");
+				}
+				body.write(readFully(in, size));
+				readLine(in); // CR-LF after the chunk
+			}
+			return body.toByteArray();
+		}
+		String contentLength = getHeader(headers, "Content-Length");
+		if (contentLength != null) {
+			int length = Integer.parseInt(contentLength.trim());
+			if (length > MAX_CONTENT_LENGTH) {
+				throw new IOException("Request body too big");
+			}
+			return readFully(in, length);
+		}
+		return new byte[0];
+	}
+
+	private static byte[] readFully(InputStream in, int length) throws IOException {
+		byte[] data = new byte[length];
+		int offset = 0;
+		while (offset < length) {
+			int read = in.read(data, offset, length - offset);
+			if (read == -1) {
+				throw new EOFException(String.format("Expected %d bytes, got %d", length, offset));
+			}
+			offset += read;
+		}
+		return data;
+	}
+
+	private static String getReasonPhrase(int status) {
+		switch (status) {
+			case 200:
+				return "OK";
+			case 204:
+				return "No Content";
+			case 304:
+				return "Not Modified";
+			case 400:
+				return "Bad Request";
+			case 404:
+				return "Not Found";
+			case 408:
+				return "Request Timeout";
+			case 501:
+				return "Not Implemented";
+			default:
+				return "";
+		}
+	}
+
+	/**
+	 * Writes the response.
+	 * <ul>
+	 *   <li>A payload is sent with its real <code>Content-Length</code>.</li>
+	 *   <li>A {@link Response.PayloadWriter} is sent chunked (HTTP/1.1), or followed by the end of the connection (HTTP/1.0).</li>
+	 *   <li>A payload file is sent with <code>transferTo</code>.</li>
+	 *   <li>With a {@link Response.StreamHandler}, the connection is handed over to it after the headers.</li>
+	 * </ul>
+	 *
+	 * @param response   the response to send
+	 * @param connection where to send it
+	 * @param keepAlive  true if the client wants to keep the connection open
+	 * @return true if the connection can be kept alive after this response.
+	 */
+	private boolean sendResponse(Response response, Connection connection, boolean keepAlive) throws IOException {
+		OutputStream os = connection.out;
+		Map<String, String> headers = new LinkedHashMap<>();
+		if (response.getHeaders() != null) {
+			headers.putAll(response.getHeaders());
+		}
+		headers.remove("Content-Length"); // Recomputed below, from the bytes
+		headers.remove("Connection");
+		headers.remove("Transfer-Encoding");
+		boolean http11 = !"HTTP/1.0".equals(response.getProtocol());
+		boolean chunked = false;
+		if (response.getStreamHandler() != null) {
+			chunked = http11;
+			if (chunked) {
+				headers.put("Transfer-Encoding", "chunked");
+			}
+			keepAlive = true; // Until the handler closes it
+		} else if (response.getPayloadWriter() != null) {
+			if (http11) {
+				chunked = true;
+				headers.put("Transfer-Encoding", "chunked");
+			} else {
+				keepAlive = false; // The end of the connection is the end of the payload
+			}
+		} else if (response.getPayloadFile() != null) {
+			headers.put("Content-Length", String.valueOf(response.getPayloadFile().length()));
+		} else if (response.getStatus() != Response.NO_CONTENT && response.getStatus() != StaticContentCache.NOT_MODIFIED) {
+			headers.put("Content-Length", String.valueOf(response.getPayload() != null ? response.getPayload().length : 0));
+		}
+		headers.put("Connection", keepAlive ? "keep-alive" : "close");
+
+		StringBuilder head = new StringBuilder();
+		head.append(String.format("%s %d %s\r\n", response.getProtocol(), response.getStatus(), getReasonPhrase(response.getStatus())));
+		headers.forEach((k, v) -> head.append(k).append(": ").append(v).append("\r\n"));
+		head.append("\r\n"); // End Of Header
+		os.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+		if (response.getStreamHandler() != null) {
+			os.flush();
+			connection.detached = true;
+			Socket socket = connection.socket;
+			socket.setSoTimeout(0);
+			response.getStreamHandler().onOpen(chunked ? new ChunkedOutputStream(os) : os, socket::close);
+			return true;
+		} else if (response.getPayloadWriter() != null) {
+			if (chunked) {
+				ChunkedOutputStream chunks = new ChunkedOutputStream(os);
+				response.getPayloadWriter().writeTo(chunks);
+				chunks.finish();
+			} else {
+				response.getPayloadWriter().writeTo(os);
+			}
+		} else if (response.getPayloadFile() != null) {
+			os.flush();
+			WritableByteChannel channel = connection.socket.getChannel();
+			WritableByteChannel target = (channel != null) ? channel : Channels.newChannel(os);
+			try (FileChannel fileChannel = FileChannel.open(response.getPayloadFile().toPath(), StandardOpenOption.READ)) {
+				long position = 0L, size = fileChannel.size();
+				while (position < size) {
+					position += fileChannel.transferTo(position, size - position, target);
+				}
+			}
+		} else if (response.getPayload() != null) {
+			os.write(response.getPayload());
+		}
+		os.flush();
+		return keepAlive;
+	}
+
+	/**
+	 * <code>Transfer-Encoding: chunked</code>, the data are buffered, and sent by chunks of {@link #CHUNK_SIZE} bytes.
+	 */
+	private static class ChunkedOutputStream extends OutputStream {
+		private final OutputStream out;
+		private final byte[] buffer = new byte[CHUNK_SIZE];
+		private int count = 0;
+
+		ChunkedOutputStream(OutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (count == buffer.length) {
+				flushChunk();
+			}
+			buffer[count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (count == buffer.length) {
+					flushChunk();
+				}
+				int n = Math.min(len, buffer.length - count);
+				System.arraycopy(b, off, buffer, count, n);
+				count += n;
+				off += n;
+				len -= n;
 			}
-			os.write("\r\n".getBytes()); // End Of Header
-			if (response.getPayload() != null) {
-				os.write(response.getPayload());
-				os.flush();
+		}
+
+		@Override
+		public void flush() throws IOException {
+			flushChunk();
+			out.flush();
+		}
+
+		@Override
+		public void close() {
+			// The connection is not closed, see finish.
+		}
+
+		private void flushChunk() throws IOException {
+			if (count > 0) {
+				out.write(String.format("%x\r\n", count).getBytes(StandardCharsets.ISO_8859_1));
+				out.write(buffer, 0, count);
+				out.write(CRLF);
+				count = 0;
 			}
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
+
+		void finish() throws IOException {
+			flushChunk();
+			out.write('0');
+			out.write(CRLF);
+			out.write(CRLF);
+		}
+
+		private final static byte[] CRLF = {'\r', '\n'};
 	}
 
 	private static Thread waiter = null;
@@ -0,0 +1,297 @@
+package http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves the static documents (the ones under <code>/web/</code>) for the {@link HTTPServer}.
+ * <br>
+ * The small files are kept in memory, with a gzipped copy (for the text ones), in an LRU cache
+ * limited in size (<code>-Dhttp.static.cache.size</code>, in bytes, default 4 MB).
+ * A cached file is re-read when its modification date (or its size) changes.
+ * <br>
+ * The files bigger than <code>-Dhttp.static.cache.max.file</code> (default 256 KB) are not cached,
+ * they are sent from the file system with {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+ * <br>
+ * <code>ETag</code> and <code>Last-Modified</code> are sent with the documents, so the browsers can ask with
+ * <code>If-None-Match</code> or <code>If-Modified-Since</code>, and get a <code>304 Not Modified</code> if nothing has changed.
+ * The gzipped and the plain versions of a document have their own <code>ETag</code> (the gzipped one ends with <code>-gz</code>),
+ * and are sent with <code>Vary: Accept-Encoding</code>, so a cache never serves one for the other.
+ * <br>
+ * Thread safe.
+ */
+public class StaticContentCache {
+
+	public final static int NOT_MODIFIED = 304;
+
+	private final static long MAX_CACHE_SIZE = Long.parseLong(System.getProperty("http.static.cache.size", String.valueOf(4 * 1_024 * 1_024)));
+	private final static long MAX_FILE_SIZE = Long.parseLong(System.getProperty("http.static.cache.max.file", String.valueOf(256 * 1_024)));
+
+	private final Path root;
+	private final String prefix;
+	private long cacheSize = 0L;
+
+	private final LinkedHashMap<String, CachedFile> cache = new LinkedHashMap<>(64, 0.75f, true); // Access order, for LRU
+
+	private static class CachedFile {
+		final long lastModified;
+		final long length;
+		final String contentType;
+		final byte[] content;
+		final byte[] gzipped; // null if not worth it
+
+		CachedFile(long lastModified, long length, String contentType, byte[] content, byte[] gzipped) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.contentType = contentType;
+			this.content = content;
+			this.gzipped = gzipped;
+		}
+
+		long size() {
+			return content.length + (gzipped != null ? gzipped.length : 0);
+		}
+	}
+
+	/**
+	 * @param prefix the path prefix of the static documents, like <code>/web/</code>
+	 * @param root   the directory they are read from, like <code>./web</code>
+	 */
+	public StaticContentCache(String prefix, String root) {
+		this.prefix = prefix;
+		this.root = Paths.get(root).toAbsolutePath().normalize();
+	}
+
+	public boolean accepts(String path) {
+		return path.startsWith(prefix);
+	}
+
+	/**
+	 * @param request a request for a static document
+	 * @return the response: the document (from the cache, or to send from the file system), 304, or 404.
+	 */
+	public HTTPServer.Response get(HTTPServer.Request request) throws IOException {
+		Path file = root.resolve(request.getPath().substring(prefix.length())).normalize();
+		if (!file.startsWith(root)) { // ../../
+			return new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.NOT_FOUND);
+		}
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		} catch (IOException ioe) {
+			attributes = null;
+		}
+		String key = file.toString();
+		if (attributes == null || attributes.isDirectory()) {
+			evict(key);
+			return new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.NOT_FOUND);
+		}
+		long lastModified = attributes.lastModifiedTime().toMillis();
+		long length = attributes.size();
+		String contentType = getContentType(key);
+
+		CachedFile cached = null;
+		if (length <= MAX_FILE_SIZE) {
+			synchronized (cache) {
+				cached = cache.get(key);
+			}
+			if (cached == null || cached.lastModified != lastModified || cached.length != length) {
+				cached = load(file, lastModified, contentType);
+				put(key, cached);
+			}
+		}
+		// The validators depend on the version (plain or gzipped) this request gets
+		boolean gzip = cached != null && cached.gzipped != null && acceptsGzip(request);
+		Map<String, String> validators = validators(lastModified, length, gzip);
+		if (cached != null && cached.gzipped != null) {
+			validators.put("Vary", "Accept-Encoding");
+		}
+
+		if (isNotModified(request, lastModified, validators.get("ETag"))) {
+			HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), NOT_MODIFIED);
+			response.setHeaders(validators);
+			return response;
+		}
+
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+		if (cached == null) {
+			RESTProcessorUtil.generateHappyResponseHeaders(response, contentType, (int) length);
+			response.getHeaders().putAll(validators);
+			response.setPayloadFile(file.toFile());
+			return response;
+		}
+
+		byte[] content = gzip ? cached.gzipped : cached.content;
+		RESTProcessorUtil.generateHappyResponseHeaders(response, contentType, content.length);
+		response.getHeaders().putAll(validators);
+		if (gzip) {
+			response.getHeaders().put("Content-Encoding", "gzip");
+		}
+		response.setPayload(content);
+		return response;
+	}
+
+	private static CachedFile load(Path file, long lastModified, String contentType) throws IOException {
+		byte[] content = Files.readAllBytes(file);
+		byte[] gzipped = null;
+		if (isCompressible(contentType) && content.length > 256) {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(content.length / 3);
+			try (GZIPOutputStream gzos = new GZIPOutputStream(baos)) {
+				gzos.write(content);
+			}
+			if (baos.size() < content.length) {
+				gzipped = baos.toByteArray();
+			}
+		}
+		return new CachedFile(lastModified, content.length, contentType, content, gzipped);
+	}
+
+	private void put(String key, CachedFile cached) {
+		synchronized (cache) {
+			CachedFile previous = cache.put(key, cached);
+			if (previous != null) {
+				cacheSize -= previous.size();
+			}
+			cacheSize += cached.size();
+			Iterator<CachedFile> lru = cache.values().iterator();
+			while (cacheSize > MAX_CACHE_SIZE && lru.hasNext()) {
+				CachedFile eldest = lru.next();
+				if (eldest == cached) {
+					continue; // Too big alone, but just requested
+				}
+				cacheSize -= eldest.size();
+				lru.remove();
+			}
+		}
+	}
+
+	private void evict(String key) {
+		synchronized (cache) {
+			CachedFile previous = cache.remove(key);
+			if (previous != null) {
+				cacheSize -= previous.size();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of files in the cache, and their size (bytes), as a bean.
+	 */
+	public Map<String, Long> getStatus() {
+		Map<String, Long> status = new HashMap<>();
+		synchronized (cache) {
+			status.put("files", (long) cache.size());
+			status.put("bytes", cacheSize);
+		}
+		return status;
+	}
+
+	private static boolean isNotModified(HTTPServer.Request request, long lastModified, String etag) {
+		String ifNoneMatch = getHeader(request, "If-None-Match");
+		if (ifNoneMatch != null) { // Takes precedence over If-Modified-Since
+			for (String candidate : ifNoneMatch.split(",")) {
+				candidate = candidate.trim();
+				if (candidate.equals("*") || candidate.equals(etag) || candidate.equals("W/" + etag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		String ifModifiedSince = getHeader(request, "If-Modified-Since");
+		if (ifModifiedSince != null) {
+			try {
+				Date since = httpDateFormat().parse(ifModifiedSince);
+				return (lastModified / 1_000L) <= (since.getTime() / 1_000L); // HTTP dates are in seconds
+			} catch (Exception ex) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	private static boolean acceptsGzip(HTTPServer.Request request) {
+		String acceptEncoding = getHeader(request, "Accept-Encoding");
+		return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+	}
+
+	private static String getHeader(HTTPServer.Request request, String name) {
+		if (request.getHeaders() != null) {
+			for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+				if (header.getKey().equalsIgnoreCase(name)) {
+					return header.getValue();
+				}
+			}
+		}
+		return null;
+	}
+
+	private static Map<String, String> validators(long lastModified, long length, boolean gzip) {
+		Map<String, String> headers = new HashMap<>();
+		headers.put("ETag", makeETag(lastModified, length, gzip));
+		headers.put("Last-Modified", httpDateFormat().format(new Date(lastModified)));
+		headers.put("Cache-Control", "no-cache"); // Cached by the browser, but checked every time
+		return headers;
+	}
+
+	private static String makeETag(long lastModified, long length, boolean gzip) {
+		return String.format("\"%x-%x%s\"", length, lastModified, (gzip ? "-gz" : ""));
+	}
+
+	private static SimpleDateFormat httpDateFormat() { // SimpleDateFormat is not thread safe
+		SimpleDateFormat sdf = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		sdf.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return sdf;
+	}
+
+	private static boolean isCompressible(String contentType) {
+		return contentType.startsWith("text/") ||
+						contentType.equals("application/json") ||
+						contentType.equals("application/javascript") ||
+						contentType.equals("image/svg+xml");
+	}
+
+	/**
+	 * Full mime-type list at https://www.sitepoint.com/web-foundations/mime-types-complete-list/
+	 *
+	 * @param f the file name
+	 * @return its mime-type
+	 */
+	public static String getContentType(String f) { // TODO add more types, as requested
+		String contentType = "text/plain";
+		if (f.endsWith(".html"))
+			contentType = "text/html";
+		else if (f.endsWith(".js"))
+			contentType = "text/javascript";
+		else if (f.endsWith(".css"))
+			contentType = "text/css";
+		else if (f.endsWith(".xml"))
+			contentType = "text/xml";
+		else if (f.endsWith(".json"))
+			contentType = "application/json";
+		else if (f.endsWith(".svg"))
+			contentType = "image/svg+xml";
+		else if (f.endsWith(".ico"))
+			contentType = "image/x-icon";
+		else if (f.endsWith(".png"))
+			contentType = "image/png";
+		else if (f.endsWith(".gif"))
+			contentType = "image/gif";
+		else if (f.endsWith(".jpg") || f.endsWith(".jpeg"))
+			contentType = "image/jpeg";
+		return contentType;
+	}
+}
@@ -0,0 +1,172 @@
+package nmea.ais;
+
+import java.util.Arrays;
+
+/**
+ * The bits of an AIS message, unpacked from the 6-bit armoring of the payload(s), 64 per <code>long</code>.
+ * <br>
+ * The first bit of the message is the most significant bit of the first <code>long</code>,
+ * a field is read with one or two shifts, whatever its position and length.
+ * <br>
+ * The bits after the end of the message read as 0, like the AIS spec says for the truncated messages.
+ * <br>
+ * Not thread-safe.
+ */
+public final class AISBitBuffer {
+
+	/**
+	 * Index: the armored character, value: its 6 bits, or -1 if the character is not valid.
+	 */
+	private final static byte[] SIX_BITS = new byte[128];
+
+	static {
+		Arrays.fill(SIX_BITS, (byte) -1);
+		for (int c = '0'; c <= 'W'; c++) {
+			SIX_BITS[c] = (byte) (c - 48);
+		}
+		for (int c = '`'; c <= 'w'; c++) {
+			SIX_BITS[c] = (byte) (c - 56);
+		}
+	}
+
+	private long[] bits;
+	private int length = 0;
+
+	public AISBitBuffer() {
+		this(168); // The length of the position reports
+	}
+
+	/**
+	 * @param capacity the expected number of bits. The buffer grows if needed.
+	 */
+	public AISBitBuffer(int capacity) {
+		this.bits = new long[words(capacity)];
+	}
+
+	/**
+	 * One more word than needed, so a field can always be read from two consecutive words.
+	 */
+	private static int words(int nbBits) {
+		return (nbBits >>> 6) + 2;
+	}
+
+	/**
+	 * Clear the buffer, to decode another message.
+	 */
+	public void reset() {
+		Arrays.fill(bits, 0L);
+		length = 0;
+	}
+
+	/**
+	 * @param payload  the armored payload (field 5 of <code>!AIVDM</code>)
+	 * @param fillBits the number of bits to ignore at the end of the payload (field 6 of <code>!AIVDM</code>). 0 but for the last fragment.
+	 * @throws IllegalArgumentException if the payload contains a character that is not part of the 6-bit armoring
+	 */
+	public void append(CharSequence payload, int fillBits) {
+		int nbChars = payload.length();
+		int needed = words(length + (6 * nbChars));
+		if (needed > bits.length) {
+			bits = Arrays.copyOf(bits, Math.max(needed, bits.length * 2));
+		}
+		for (int i = 0; i < nbChars; i++) {
+			char c = payload.charAt(i);
+			int value = (c < 128) ? SIX_BITS[c] : -1;
+			if (value < 0) {
+				throw new IllegalArgumentException(String.format("Invalid AIS character [%c] in [%s]", c, payload));
+			}
+			int word = length >>> 6;
+			int offset = length & 63;
+			if (offset <= 58) {
+				bits[word] |= ((long) value) << (58 - offset);
+			} else { // Spans 2 words
+				bits[word] |= ((long) value) >>> (offset - 58);
+				bits[word + 1] |= ((long) value) << (122 - offset);
+			}
+			length += 6;
+		}
+		length = Math.max(0, length - fillBits);
+		// The fill bits are not part of the message, they must read as 0.
+		int offset = length & 63;
+		int word = length >>> 6;
+		bits[word] &= (offset == 0 ? 0L : (-1L << (64 - offset)));
+		for (int i = word + 1; i < bits.length; i++) {
+			bits[i] = 0L;
+		}
+	}
+
+	/**
+	 * @return the number of bits in the message
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * @param from the position of the first bit, 0 for the first bit of the message
+	 * @param len  the number of bits, 1 to 64
+	 * @return the field, as an unsigned value
+	 */
+	public long unsigned(int from, int len) {
+		int word = from >>> 6;
+		if (word >= bits.length - 1) {
+			return 0L;
+		}
+		int offset = from & 63;
+		long value = bits[word] << offset;
+		if (offset + len > 64) {
+			value |= bits[word + 1] >>> (64 - offset);
+		}
+		return value >>> (64 - len);
+	}
+
+	/**
+	 * @param from the position of the first bit, 0 for the first bit of the message
+	 * @param len  the number of bits, 1 to 64
+	 * @return the field, as a two's complement signed value
+	 */
+	public long signed(int from, int len) {
+		return (unsigned(from, len) << (64 - len)) >> (64 - len);
+	}
+
+	/**
+	 * @param from the position of the first bit, 0 for the first bit of the message
+	 * @param len  the number of bits, 1 to 32
+	 * @return the field, as an unsigned value
+	 */
+	public int uint(int from, int len) {
+		return (int) unsigned(from, len);
+	}
+
+	/**
+	 * @param from the position of the first bit, 0 for the first bit of the message
+	 * @param len  the number of bits, 1 to 32
+	 * @return the field, as a two's complement signed value
+	 */
+	public int sint(int from, int len) {
+		return (int) signed(from, len);
+	}
+
+	/**
+	 * @param from the position of the first bit, 0 for the first bit of the message
+	 * @param nbChars the number of 6-bit characters
+	 * @return the text, without the trailing <code>@</code> (padding) and spaces. Stops at the end of the message.
+	 */
+	public String text(int from, int nbChars) {
+		int available = Math.max(0, Math.min(nbChars, (length - from) / 6));
+		char[] chars = new char[available];
+		int end = 0;
+		for (int i = 0; i < available; i++) {
+			int value = (int) unsigned(from + (6 * i), 6);
+			if (value == 0) { // '@', padding
+				break;
+			}
+			chars[i] = (char) (value < 32 ? value + 64 : value);
+			end = i + 1;
+		}
+		while (end > 0 && chars[end - 1] == ' ') {
+			end--;
+		}
+		return new String(chars, 0, end);
+	}
+}
@@ -4,9 +4,23 @@ import java.io.BufferedReader;
 
 import java.io.FileReader;
 
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+
 import nmea.parser.StringParsers;
-import nmea.utils.NMEAUtils;
 
+/**
+ * Decodes the <code>!AIVDM</code> sentences: message types 1, 2, 3 (Class A position), 4 and 11 (base station),
+ * 5 (static and voyage data), 18 and 19 (Class B position), 21 (aid to navigation), 24 (static data) and 27 (long range).
+ * For the other types, only the header (type, repeat indicator, MMSI) is decoded.
+ * <br>
+ * The payload is unpacked into an {@link AISBitBuffer}, the fields are read with shifts.
+ * The fragments of the multi-sentence messages (like the type 5) are kept until the last one is there,
+ * or for {@link #DEFAULT_FRAGMENT_TIMEOUT} ms.
+ */
 public class AISParser {
 	public final static boolean verbose = false;
 	/*
@@ -106,101 +120,231 @@ AIS Message type 2:
 	}
 
 	public final static String AIS_PREFIX = "!AIVDM";
+	public final static String AIS_OWN_VESSEL_PREFIX = "!AIVDO";
 	public final static int PREFIX_POS = 0;
 	public final static int NB_SENTENCES_POS = 1;
+	public final static int SENTENCE_NUMBER_POS = 2;
+	public final static int SEQUENCE_ID_POS = 3;
+	public final static int CHANNEL_POS = 4;
 	public final static int AIS_DATA_POS = 5;
+	public final static int FILL_BITS_POS = 6;
+
+	/**
+	 * How long (in ms) the first fragments of a multi-sentence message wait for the others.
+	 * <code>-Dais.fragment.timeout</code>, default 5000.
+	 */
+	public final static long DEFAULT_FRAGMENT_TIMEOUT = Long.parseLong(System.getProperty("ais.fragment.timeout", "5000"));
+
+	private final static AISParser DEFAULT_PARSER = new AISParser();
+
+	/**
+	 * The fragments of a multi-sentence message, until they are all there.
+	 */
+	private static class Fragments {
+		final long created;
+		final String[] payloads;
+		int received = 0;
+		int fillBits = 0;
+
+		Fragments(int nbSentences, long created) {
+			this.payloads = new String[nbSentences];
+			this.created = created;
+		}
+	}
+
+	private final long fragmentTimeout;
+	private final Map<String, Fragments> pending = new HashMap<>();
+	private final AISBitBuffer bits = new AISBitBuffer(424); // The length of a type 5
+
+	public AISParser() {
+		this(DEFAULT_FRAGMENT_TIMEOUT);
+	}
 
+	/**
+	 * @param fragmentTimeout how long (in ms) the first fragments of a multi-sentence message wait for the others
+	 */
+	public AISParser(long fragmentTimeout) {
+		this.fragmentTimeout = fragmentTimeout;
+	}
+
+	/**
+	 * Parses with a parser shared by all the callers, see {@link #parse(String)}.
+	 * <br>
+	 * The fragments of the multi-sentence messages are reassembled by sequence ID and channel,
+	 * use a dedicated {@link AISParser} if several feeds are read at the same time.
+	 */
 	public static AISRecord parseAIS(String sentence) throws Exception {
-		boolean valid = StringParsers.validCheckSum(sentence);
-		if (!valid)
+		return DEFAULT_PARSER.parse(sentence);
+	}
+
+	/**
+	 * @param sentence an <code>!AIVDM</code> (or <code>!AIVDO</code>) sentence
+	 * @return the decoded message, or null if the sentence is a fragment of a multi-sentence message that is not complete yet.
+	 * @throws RuntimeException if the checksum is wrong, or if the sentence is not a valid AIS sentence
+	 */
+	public synchronized AISRecord parse(String sentence) {
+		if (!StringParsers.validCheckSum(sentence))
 			throw new RuntimeException("Invalid AIS Data (Bad checksum) for [" + sentence + "]");
 
-		String[] dataElement = sentence.split(",");
-		if (!dataElement[PREFIX_POS].equals(AIS_PREFIX))
+		String[] dataElement = sentence.trim().split(",");
+		if (!dataElement[PREFIX_POS].equals(AIS_PREFIX) && !dataElement[PREFIX_POS].equals(AIS_OWN_VESSEL_PREFIX))
 			throw new RuntimeException("Unmanaged AIS Prefix [" + dataElement[PREFIX_POS] + "].");
-
-		if (!dataElement[NB_SENTENCES_POS].equals("1")) // More than 1 message: Not Managed
+		if (dataElement.length <= FILL_BITS_POS)
+			throw new RuntimeException("Invalid AIS Data (missing fields) for [" + sentence + "]");
+
+		int nbSentences;
+		int sentenceNumber;
+		int fillBits;
+		try {
+			nbSentences = Integer.parseInt(dataElement[NB_SENTENCES_POS]);
+			sentenceNumber = Integer.parseInt(dataElement[SENTENCE_NUMBER_POS]);
+			fillBits = Character.digit(dataElement[FILL_BITS_POS].charAt(0), 10);
+		} catch (NumberFormatException | StringIndexOutOfBoundsException ex) {
+			throw new RuntimeException("Invalid AIS Data for [" + sentence + "]", ex);
+		}
+		if (nbSentences < 1 || sentenceNumber < 1 || sentenceNumber > nbSentences || fillBits < 0)
+			throw new RuntimeException("Invalid AIS Data (fragment " + sentenceNumber + " of " + nbSentences + ") for [" + sentence + "]");
+
+		long now = System.currentTimeMillis();
+		bits.reset();
+		if (nbSentences == 1) {
+			bits.append(dataElement[AIS_DATA_POS], fillBits);
+			return decode(bits, now);
+		}
+
+		expireFragments(now);
+		String key = dataElement[SEQUENCE_ID_POS] + "," + dataElement[CHANNEL_POS];
+		Fragments fragments = pending.get(key);
+		if (fragments == null || fragments.payloads.length != nbSentences || fragments.payloads[sentenceNumber - 1] != null) {
+			// First fragment, or another message with the same sequence ID
+			fragments = new Fragments(nbSentences, now);
+			pending.put(key, fragments);
+		}
+		fragments.payloads[sentenceNumber - 1] = dataElement[AIS_DATA_POS];
+		fragments.received++;
+		if (sentenceNumber == nbSentences) {
+			fragments.fillBits = fillBits;
+		}
+		if (fragments.received < nbSentences) {
 			return null;
+		}
+		pending.remove(key);
+		for (int i = 0; i < nbSentences; i++) {
+			bits.append(fragments.payloads[i], (i == nbSentences - 1) ? fragments.fillBits : 0);
+		}
+		return decode(bits, now);
+	}
 
-		AISRecord aisRecord = new AISRecord(System.currentTimeMillis());
-		String aisData = dataElement[AIS_DATA_POS];
-//  System.out.println("[" + aisData + "]");
-		String binString = encodedAIStoBinaryString(aisData);
-//  System.out.println(binString);
-
-		for (AISData a : AISData.values()) {
-			String binStr = binString.substring(a.from(), a.to());
-			int intValue = Integer.parseInt(binStr, 2);
-			if (a.equals(AISData.LATITUDE) || a.equals(AISData.LONGITUDE)) {
-				if ((a.equals(AISData.LATITUDE) && intValue != (91 * 600_000) && intValue > (90 * 600_000)) ||
-								(a.equals(AISData.LONGITUDE) && intValue != (181 * 600_000) && intValue > (180 * 600_000))) {
-					intValue = -Integer.parseInt(neg(binStr), 2);
-				}
-			} else if (a.equals(AISData.ROT)) {
-				if (intValue > 128)
-					intValue = -Integer.parseInt(neg(binStr), 2);
-			}
-			setAISData(a, aisRecord, intValue);
-			if (verbose)
-				System.out.println(a + " [" + binStr + "] becomes [" + intValue + "]");
+	private void expireFragments(long now) {
+		if (!pending.isEmpty()) {
+			pending.values().removeIf(fragments -> (now - fragments.created) > fragmentTimeout);
 		}
-		return aisRecord;
 	}
 
 	/**
-	 * 2's complement, for negative numbers.
-	 *
-	 * @param binStr
-	 * @return
+	 * @return the number of multi-sentence messages waiting for their other fragments
 	 */
-	private static String neg(String binStr) {
-		String s = "";
-		for (int i = 0; i < binStr.length(); i++)
-			s += (binStr.charAt(i) == '0' ? '1' : '0');
-		return s;
+	public synchronized int getNbPending() {
+		return pending.size();
 	}
 
-	private static void setAISData(AISData a, AISRecord ar, int value) {
-		if (a.equals(AISData.MESSAGE_TYPE))
-			ar.setMessageType(value);
-		else if (a.equals(AISData.REPEAT_INDICATOR))
-			ar.setRepeatIndicator(value);
-		else if (a.equals(AISData.MMSI))
-			ar.setMmsi(value);
-		else if (a.equals(AISData.NAV_STATUS))
-			ar.setNavstatus(value);
-		else if (a.equals(AISData.ROT))
-			ar.setRot(value);
-		else if (a.equals(AISData.SOG))
-			ar.setSog(value);
-		else if (a.equals(AISData.POS_ACC))
-			ar.setPosAcc(value);
-		else if (a.equals(AISData.LONGITUDE))
-			ar.setLongitude(value);
-		else if (a.equals(AISData.LATITUDE))
-			ar.setLatitude(value);
-		else if (a.equals(AISData.COG))
-			ar.setCog(value);
-		else if (a.equals(AISData.HDG))
-			ar.setHdg(value);
-		else if (a.equals(AISData.TIME_STAMP))
-			ar.setUtc(value);
-	}
-
-	private static String encodedAIStoBinaryString(String encoded) {
-		StringBuffer sb = new StringBuffer();
-		for (int i = 0; i < encoded.length(); i++) {
-			int c = encoded.charAt(i);
-			c -= 48;
-			if (c > 40)
-				c -= 8;
-			String bin = NMEAUtils.lpad(Integer.toBinaryString(c), 6, "0");
-			sb.append(bin);
-			if (verbose)
-				System.out.println(encoded.charAt(i) + " becomes " + bin + " (" + c + ")");
-//    sb.append(" ");
-		}
-		return sb.toString();
+	/*
+	 * Bit layouts, see https://gpsd.gitlab.io/gpsd/AIVDM.html
+	 * The offsets below are 0-based.
+	 */
+	private static AISRecord decode(AISBitBuffer bits, long now) {
+		AISRecord aisRecord = new AISRecord(now);
+		int messageType = bits.uint(0, 6);
+		aisRecord.setMessageType(messageType);
+		aisRecord.setRepeatIndicator(bits.uint(6, 2));
+		aisRecord.setMmsi(bits.uint(8, 30));
+		switch (messageType) {
+			case 1: // Position Report Class A
+			case 2:
+			case 3:
+				aisRecord.setNavstatus(bits.uint(38, 4));
+				aisRecord.setRot(bits.sint(42, 8));
+				aisRecord.setSog(bits.uint(50, 10));
+				aisRecord.setPosAcc(bits.uint(60, 1));
+				aisRecord.setLongitude(bits.sint(61, 28));
+				aisRecord.setLatitude(bits.sint(89, 27));
+				aisRecord.setCog(bits.uint(116, 12));
+				aisRecord.setHdg(bits.uint(128, 9));
+				aisRecord.setUtc(bits.uint(137, 6));
+				break;
+			case 4: // Base Station Report
+			case 11: // UTC/Date Response
+				aisRecord.setBaseStationTime(bits.uint(38, 14), bits.uint(52, 4), bits.uint(56, 5), bits.uint(61, 5), bits.uint(66, 6), bits.uint(72, 6));
+				aisRecord.setUtc(bits.uint(72, 6));
+				aisRecord.setPosAcc(bits.uint(78, 1));
+				aisRecord.setLongitude(bits.sint(79, 28));
+				aisRecord.setLatitude(bits.sint(107, 27));
+				aisRecord.setEpfd(bits.uint(134, 4));
+				break;
+			case 5: // Static and Voyage Related Data
+				aisRecord.setImo(bits.uint(40, 30));
+				aisRecord.setCallSign(bits.text(70, 7));
+				aisRecord.setShipName(bits.text(112, 20));
+				aisRecord.setShipType(bits.uint(232, 8));
+				aisRecord.setDimensions(bits.uint(240, 9), bits.uint(249, 9), bits.uint(258, 6), bits.uint(264, 6));
+				aisRecord.setEpfd(bits.uint(270, 4));
+				aisRecord.setEta(bits.uint(274, 4), bits.uint(278, 5), bits.uint(283, 5), bits.uint(288, 6));
+				aisRecord.setDraught(bits.uint(294, 8));
+				aisRecord.setDestination(bits.text(302, 20));
+				break;
+			case 18: // Standard Class B CS Position Report
+			case 19: // Extended Class B Equipment Position Report
+				aisRecord.setSog(bits.uint(46, 10));
+				aisRecord.setPosAcc(bits.uint(56, 1));
+				aisRecord.setLongitude(bits.sint(57, 28));
+				aisRecord.setLatitude(bits.sint(85, 27));
+				aisRecord.setCog(bits.uint(112, 12));
+				aisRecord.setHdg(bits.uint(124, 9));
+				aisRecord.setUtc(bits.uint(133, 6));
+				if (messageType == 19) {
+					aisRecord.setShipName(bits.text(143, 20));
+					aisRecord.setShipType(bits.uint(263, 8));
+					aisRecord.setDimensions(bits.uint(271, 9), bits.uint(280, 9), bits.uint(289, 6), bits.uint(295, 6));
+					aisRecord.setEpfd(bits.uint(301, 4));
+				}
+				break;
+			case 21: // Aid-to-Navigation Report
+				aisRecord.setAidType(bits.uint(38, 5));
+				// Up to 14 more characters after the spare bit
+				aisRecord.setShipName(bits.text(43, 20) + bits.text(272, 14));
+				aisRecord.setPosAcc(bits.uint(163, 1));
+				aisRecord.setLongitude(bits.sint(164, 28));
+				aisRecord.setLatitude(bits.sint(192, 27));
+				aisRecord.setDimensions(bits.uint(219, 9), bits.uint(228, 9), bits.uint(237, 6), bits.uint(243, 6));
+				aisRecord.setEpfd(bits.uint(249, 4));
+				aisRecord.setUtc(bits.uint(253, 6));
+				break;
+			case 24: // Static Data Report
+				int partNumber = bits.uint(38, 2);
+				aisRecord.setPartNumber(partNumber);
+				if (partNumber == 0) {
+					aisRecord.setShipName(bits.text(40, 20));
+				} else {
+					aisRecord.setShipType(bits.uint(40, 8));
+					aisRecord.setVendorId(bits.text(48, 3));
+					aisRecord.setCallSign(bits.text(90, 7));
+					aisRecord.setDimensions(bits.uint(132, 9), bits.uint(141, 9), bits.uint(150, 6), bits.uint(156, 6));
+				}
+				break;
+			case 27: // Long Range AIS Broadcast message, positions in 1/10 minute, speed in knots, course in degrees
+				aisRecord.setPosAcc(bits.uint(38, 1));
+				aisRecord.setNavstatus(bits.uint(40, 4));
+				aisRecord.setLongitude(bits.sint(44, 18) * 1_000);
+				aisRecord.setLatitude(bits.sint(62, 17) * 1_000);
+				aisRecord.setSog(bits.uint(79, 6) * 10);
+				aisRecord.setCog(bits.uint(85, 9) * 10);
+				break;
+			default: // Only the header (type, repeat indicator, MMSI) is decoded
+				break;
+		}
+		if (verbose)
+			System.out.println(aisRecord);
+		return aisRecord;
 	}
 
 	public static class AISRecord {
@@ -217,6 +361,26 @@ AIS Message type 2:
 		private int hdg;
 		private int utc;
 		private long recordTimeStamp;
+		// Static data, types 5, 19, 21, 24. Base station, types 4, 11.
+		private int imo;
+		private String callSign;
+		private String shipName;
+		private int shipType;
+		private int toBow;
+		private int toStern;
+		private int toPort;
+		private int toStarboard;
+		private int epfd;
+		private int etaMonth;
+		private int etaDay;
+		private int etaHour;
+		private int etaMinute;
+		private float draught;
+		private String destination;
+		private int aidType;
+		private int partNumber;
+		private String vendorId;
+		private long baseStationTime;
 
 		public AISRecord(long now) {
 			super();
@@ -319,6 +483,184 @@ AIS Message type 2:
 			return utc;
 		}
 
+		public void setImo(int imo) {
+			this.imo = imo;
+		}
+
+		public int getImo() {
+			return imo;
+		}
+
+		public void setCallSign(String callSign) {
+			this.callSign = callSign;
+		}
+
+		public String getCallSign() {
+			return callSign;
+		}
+
+		/**
+		 * @param shipName the name of the vessel, or of the aid to navigation for a type 21
+		 */
+		public void setShipName(String shipName) {
+			this.shipName = shipName;
+		}
+
+		public String getShipName() {
+			return shipName;
+		}
+
+		public void setShipType(int shipType) {
+			this.shipType = shipType;
+		}
+
+		public int getShipType() {
+			return shipType;
+		}
+
+		/**
+		 * Distances from the GPS antenna, in meters.
+		 */
+		public void setDimensions(int toBow, int toStern, int toPort, int toStarboard) {
+			this.toBow = toBow;
+			this.toStern = toStern;
+			this.toPort = toPort;
+			this.toStarboard = toStarboard;
+		}
+
+		public int getToBow() {
+			return toBow;
+		}
+
+		public int getToStern() {
+			return toStern;
+		}
+
+		public int getToPort() {
+			return toPort;
+		}
+
+		public int getToStarboard() {
+			return toStarboard;
+		}
+
+		/**
+		 * @return the length of the vessel, in meters, 0 if not available
+		 */
+		public int getLength() {
+			return toBow + toStern;
+		}
+
+		/**
+		 * @return the beam of the vessel, in meters, 0 if not available
+		 */
+		public int getBeam() {
+			return toPort + toStarboard;
+		}
+
+		public void setEpfd(int epfd) {
+			this.epfd = epfd;
+		}
+
+		/**
+		 * @return the type of the position fixing device (1: GPS, 2: GLONASS, ...), 0 if not defined
+		 */
+		public int getEpfd() {
+			return epfd;
+		}
+
+		/**
+		 * Estimated time of arrival, UTC. 0 for not available.
+		 */
+		public void setEta(int month, int day, int hour, int minute) {
+			this.etaMonth = month;
+			this.etaDay = day;
+			this.etaHour = hour;
+			this.etaMinute = minute;
+		}
+
+		public int getEtaMonth() {
+			return etaMonth;
+		}
+
+		public int getEtaDay() {
+			return etaDay;
+		}
+
+		public int getEtaHour() {
+			return etaHour;
+		}
+
+		public int getEtaMinute() {
+			return etaMinute;
+		}
+
+		public void setDraught(int draught) {
+			this.draught = (draught / 10f);
+		}
+
+		/**
+		 * @return the draught, in meters
+		 */
+		public float getDraught() {
+			return draught;
+		}
+
+		public void setDestination(String destination) {
+			this.destination = destination;
+		}
+
+		public String getDestination() {
+			return destination;
+		}
+
+		public void setAidType(int aidType) {
+			this.aidType = aidType;
+		}
+
+		public int getAidType() {
+			return aidType;
+		}
+
+		public void setPartNumber(int partNumber) {
+			this.partNumber = partNumber;
+		}
+
+		/**
+		 * @return for a type 24, 0 for the part A (name), 1 for the part B (type, call sign, dimensions)
+		 */
+		public int getPartNumber() {
+			return partNumber;
+		}
+
+		public void setVendorId(String vendorId) {
+			this.vendorId = vendorId;
+		}
+
+		public String getVendorId() {
+			return vendorId;
+		}
+
+		/**
+		 * UTC date and time sent by a base station. Left to 0 if not available.
+		 */
+		public void setBaseStationTime(int year, int month, int day, int hour, int minute, int second) {
+			if (year > 0 && month >= 1 && month <= 12 && day >= 1 && day <= 31 && hour < 24 && minute < 60 && second < 60) {
+				try {
+					this.baseStationTime = LocalDateTime.of(year, month, day, hour, minute, second).toInstant(ZoneOffset.UTC).toEpochMilli();
+				} catch (DateTimeException dte) {
+					this.baseStationTime = 0L; // Like Feb 30
+				}
+			}
+		}
+
+		/**
+		 * @return epoch, in ms. 0 if not available.
+		 */
+		public long getBaseStationTime() {
+			return baseStationTime;
+		}
+
 		public static String decodeStatus(int stat) {
 			String status = "";
 			switch (stat) {
@@ -379,6 +721,12 @@ AIS Message type 2:
 			String str = "";
 			str = "Type:" + messageType + ", Repeat:" + repeatIndicator + ", MMSI:" + mmsi + ", status:" + decodeStatus(navstatus) + ", rot:" + rot +
 							", Pos:" + latitude + "/" + longitude + " (Acc:" + posAcc + "), COG:" + cog + ", SOG:" + sog + ", HDG:" + hdg;
+			if (shipName != null)
+				str += (", Name:" + shipName);
+			if (callSign != null)
+				str += (", Call sign:" + callSign);
+			if (destination != null)
+				str += (", Destination:" + destination);
 
 			return str;
 		}
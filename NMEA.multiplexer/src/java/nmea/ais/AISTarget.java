@@ -0,0 +1,347 @@
+package nmea.ais;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * What is known about a vessel (or a base station, an aid to navigation), from all the AIS messages received for its MMSI.
+ * <br>
+ * Immutable: {@link #merge(AISParser.AISRecord)} returns a new target, the readers of the {@link AISTargetTable}
+ * never see a half-updated one.
+ */
+public final class AISTarget {
+
+	private final static float NO_LATITUDE = 91f;
+	private final static float NO_LONGITUDE = 181f;
+	private final static float NO_SOG = 102.3f;
+	private final static float NO_COG = 360f;
+	private final static int NO_HDG = 511;
+
+	private final int mmsi;
+	private final long lastUpdate;
+	private final long lastPositionUpdate;
+	private final int lastMessageType;
+	// Dynamic data
+	private final boolean positionAvailable;
+	private final double latitude;
+	private final double longitude;
+	private final double sog;
+	private final double cog;
+	private final int hdg;
+	private final int navStatus;
+	// Static data
+	private final String name;
+	private final String callSign;
+	private final int imo;
+	private final int shipType;
+	private final int length;
+	private final int beam;
+	private final String destination;
+
+	private AISTarget(Builder builder) {
+		this.mmsi = builder.mmsi;
+		this.lastUpdate = builder.lastUpdate;
+		this.lastPositionUpdate = builder.lastPositionUpdate;
+		this.lastMessageType = builder.lastMessageType;
+		this.positionAvailable = builder.positionAvailable;
+		this.latitude = builder.latitude;
+		this.longitude = builder.longitude;
+		this.sog = builder.sog;
+		this.cog = builder.cog;
+		this.hdg = builder.hdg;
+		this.navStatus = builder.navStatus;
+		this.name = builder.name;
+		this.callSign = builder.callSign;
+		this.imo = builder.imo;
+		this.shipType = builder.shipType;
+		this.length = builder.length;
+		this.beam = builder.beam;
+		this.destination = builder.destination;
+	}
+
+	/**
+	 * @param record the first message received for this MMSI
+	 * @return the new target
+	 */
+	public static AISTarget from(AISParser.AISRecord record) {
+		return new Builder(record.getMmsi()).merge(record).build();
+	}
+
+	/**
+	 * @param record a new message for this MMSI
+	 * @return a new target, with the data of the record, and the ones of this target the record does not have.
+	 */
+	public AISTarget merge(AISParser.AISRecord record) {
+		return new Builder(this).merge(record).build();
+	}
+
+	private static boolean hasPosition(int messageType) {
+		switch (messageType) {
+			case 1:
+			case 2:
+			case 3:
+			case 4:
+			case 11:
+			case 18:
+			case 19:
+			case 21:
+			case 27:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private static boolean hasNavStatus(int messageType) {
+		return messageType == 1 || messageType == 2 || messageType == 3 || messageType == 27;
+	}
+
+	private static boolean hasVelocity(int messageType) {
+		return messageType == 1 || messageType == 2 || messageType == 3 || messageType == 18 || messageType == 19 || messageType == 27;
+	}
+
+	private static boolean notBlank(String str) {
+		return str != null && !str.isEmpty();
+	}
+
+	public int getMmsi() {
+		return mmsi;
+	}
+
+	/**
+	 * @return when the last message was received, epoch in ms
+	 */
+	public long getLastUpdate() {
+		return lastUpdate;
+	}
+
+	/**
+	 * @return when the last position was received, epoch in ms. 0 if none.
+	 */
+	public long getLastPositionUpdate() {
+		return lastPositionUpdate;
+	}
+
+	public int getLastMessageType() {
+		return lastMessageType;
+	}
+
+	/**
+	 * @return false if no valid position has been received for this target yet
+	 */
+	public boolean isPositionAvailable() {
+		return positionAvailable;
+	}
+
+	public double getLatitude() {
+		return latitude;
+	}
+
+	public double getLongitude() {
+		return longitude;
+	}
+
+	/**
+	 * @return the speed over ground, in knots. 0 if not available.
+	 */
+	public double getSog() {
+		return sog;
+	}
+
+	/**
+	 * @return the course over ground, in degrees. 0 if not available.
+	 */
+	public double getCog() {
+		return cog;
+	}
+
+	/**
+	 * @return the true heading, in degrees, 511 if not available
+	 */
+	public int getHdg() {
+		return hdg;
+	}
+
+	public int getNavStatus() {
+		return navStatus;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getCallSign() {
+		return callSign;
+	}
+
+	public int getImo() {
+		return imo;
+	}
+
+	public int getShipType() {
+		return shipType;
+	}
+
+	/**
+	 * @return in meters, 0 if not known
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return in meters, 0 if not known
+	 */
+	public int getBeam() {
+		return beam;
+	}
+
+	public String getDestination() {
+		return destination;
+	}
+
+	/**
+	 * @return the data of the target, for the REST interface. The unknown ones are not there.
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("mmsi", mmsi);
+		map.put("lastUpdate", lastUpdate);
+		map.put("lastMessageType", lastMessageType);
+		if (positionAvailable) {
+			map.put("latitude", latitude);
+			map.put("longitude", longitude);
+			map.put("lastPositionUpdate", lastPositionUpdate);
+		}
+		map.put("sog", sog);
+		map.put("cog", cog);
+		if (hdg != NO_HDG) {
+			map.put("hdg", hdg);
+		}
+		map.put("navStatus", AISParser.AISRecord.decodeStatus(navStatus));
+		if (name != null) {
+			map.put("name", name);
+		}
+		if (callSign != null) {
+			map.put("callSign", callSign);
+		}
+		if (imo != 0) {
+			map.put("imo", imo);
+		}
+		if (shipType != 0) {
+			map.put("shipType", shipType);
+		}
+		if (length != 0) {
+			map.put("length", length);
+		}
+		if (beam != 0) {
+			map.put("beam", beam);
+		}
+		if (destination != null) {
+			map.put("destination", destination);
+		}
+		return map;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("MMSI:%d%s, Pos:%s, SOG:%.1f, COG:%.1f", mmsi, (name != null ? " (" + name + ")" : ""),
+						(positionAvailable ? String.format("%.5f/%.5f", latitude, longitude) : "-"), sog, cog);
+	}
+
+	private static class Builder {
+		private int mmsi;
+		private long lastUpdate = 0L;
+		private long lastPositionUpdate = 0L;
+		private int lastMessageType = 0;
+		private boolean positionAvailable = false;
+		private double latitude = 0d;
+		private double longitude = 0d;
+		private double sog = 0d;
+		private double cog = 0d;
+		private int hdg = NO_HDG;
+		private int navStatus = 15; // Not defined
+		private String name = null;
+		private String callSign = null;
+		private int imo = 0;
+		private int shipType = 0;
+		private int length = 0;
+		private int beam = 0;
+		private String destination = null;
+
+		Builder(int mmsi) {
+			this.mmsi = mmsi;
+		}
+
+		Builder(AISTarget target) {
+			this.mmsi = target.mmsi;
+			this.lastUpdate = target.lastUpdate;
+			this.lastPositionUpdate = target.lastPositionUpdate;
+			this.lastMessageType = target.lastMessageType;
+			this.positionAvailable = target.positionAvailable;
+			this.latitude = target.latitude;
+			this.longitude = target.longitude;
+			this.sog = target.sog;
+			this.cog = target.cog;
+			this.hdg = target.hdg;
+			this.navStatus = target.navStatus;
+			this.name = target.name;
+			this.callSign = target.callSign;
+			this.imo = target.imo;
+			this.shipType = target.shipType;
+			this.length = target.length;
+			this.beam = target.beam;
+			this.destination = target.destination;
+		}
+
+		Builder merge(AISParser.AISRecord record) {
+			int type = record.getMessageType();
+			this.lastUpdate = record.getRecordTimeStamp();
+			this.lastMessageType = type;
+			if (hasPosition(type)) {
+				float lat = record.getLatitude();
+				float lng = record.getLongitude();
+				if (lat != NO_LATITUDE && lng != NO_LONGITUDE && Math.abs(lat) <= 90f && Math.abs(lng) <= 180f) {
+					this.positionAvailable = true;
+					this.latitude = lat;
+					this.longitude = lng;
+					this.lastPositionUpdate = record.getRecordTimeStamp();
+				}
+			}
+			if (hasVelocity(type)) {
+				this.sog = (record.getSog() >= NO_SOG) ? 0d : record.getSog();
+				this.cog = (record.getCog() >= NO_COG) ? 0d : record.getCog();
+				this.hdg = (type == 27) ? NO_HDG : record.getHdg();
+			}
+			if (hasNavStatus(type)) {
+				this.navStatus = record.getNavstatus();
+			}
+			if (notBlank(record.getShipName())) {
+				this.name = record.getShipName();
+			}
+			if (notBlank(record.getCallSign())) {
+				this.callSign = record.getCallSign();
+			}
+			if (record.getImo() != 0) {
+				this.imo = record.getImo();
+			}
+			if (record.getShipType() != 0) {
+				this.shipType = record.getShipType();
+			}
+			if (record.getLength() != 0) {
+				this.length = record.getLength();
+			}
+			if (record.getBeam() != 0) {
+				this.beam = record.getBeam();
+			}
+			if (notBlank(record.getDestination())) {
+				this.destination = record.getDestination();
+			}
+			return this;
+		}
+
+		AISTarget build() {
+			return new AISTarget(this);
+		}
+	}
+}
@@ -0,0 +1,392 @@
+package nmea.ais;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The AIS targets, by MMSI, fed by the {@link AISParser.AISRecord}s.
+ * <br>
+ * The targets are kept in an {@link IntObjectMap} (no boxing of the MMSIs), and indexed by position in a grid
+ * of {@link #CELL_SIZE} degrees: "the targets within N nm" only looks at the cells around the position, not at all the targets.
+ * <br>
+ * The targets not heard of for {@link #getMaxAge()} ms are evicted.
+ * <br>
+ * One writer (the thread feeding the cache) and many readers (REST, computers): the reads share a read lock,
+ * the targets are immutable ({@link AISTarget}), what is returned can be used without lock.
+ * <br>
+ * Distances, CPA and TCPA are computed on a plane tangent at the own position, good enough for the ranges AIS is received at.
+ */
+public class AISTargetTable {
+
+	/**
+	 * Size of the cells of the spatial index, in degrees. 0.1 degree, 6 nm in latitude.
+	 */
+	public final static double CELL_SIZE = 0.1;
+	private final static int NB_LNG_CELLS = (int) Math.round(360d / CELL_SIZE);
+	private final static int NB_LAT_CELLS = (int) Math.round(180d / CELL_SIZE) + 1;
+
+	private final static long EVICTION_INTERVAL = 10_000L;
+
+	private final IntObjectMap<AISTarget> targets = new IntObjectMap<>(256);
+	private final IntObjectMap<Cell> grid = new IntObjectMap<>(256);
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private long maxAge = Long.parseLong(System.getProperty("ais.target.max.age", "600000")); // 10 minutes
+	private long lastEviction = 0L;
+
+	/**
+	 * The MMSIs of the targets in a cell of the grid.
+	 */
+	private final static class Cell {
+		int[] mmsis = new int[4];
+		int size = 0;
+
+		void add(int mmsi) {
+			if (size == mmsis.length) {
+				mmsis = Arrays.copyOf(mmsis, size * 2);
+			}
+			mmsis[size++] = mmsi;
+		}
+
+		void remove(int mmsi) {
+			for (int i = 0; i < size; i++) {
+				if (mmsis[i] == mmsi) {
+					mmsis[i] = mmsis[--size];
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Where a target is, relative to the own position, and where it is going.
+	 */
+	public final static class Proximity {
+		private final AISTarget target;
+		private final double distance; // nm
+		private final double bearing;  // degrees true
+		private final double cpa;      // nm
+		private final double tcpa;     // minutes. Negative if the CPA is passed.
+
+		Proximity(AISTarget target, double distance, double bearing, double cpa, double tcpa) {
+			this.target = target;
+			this.distance = distance;
+			this.bearing = bearing;
+			this.cpa = cpa;
+			this.tcpa = tcpa;
+		}
+
+		public AISTarget getTarget() {
+			return target;
+		}
+
+		/**
+		 * @return in nm
+		 */
+		public double getDistance() {
+			return distance;
+		}
+
+		/**
+		 * @return from the own position, in degrees true
+		 */
+		public double getBearing() {
+			return bearing;
+		}
+
+		/**
+		 * @return Closest Point of Approach, in nm
+		 */
+		public double getCpa() {
+			return cpa;
+		}
+
+		/**
+		 * @return Time to the Closest Point of Approach, in minutes. Negative if the CPA is passed.
+		 */
+		public double getTcpa() {
+			return tcpa;
+		}
+
+		public Map<String, Object> toMap() {
+			Map<String, Object> map = target.toMap();
+			map.put("distance", distance);
+			map.put("bearing", bearing);
+			map.put("cpa", cpa);
+			map.put("tcpa", tcpa);
+			return map;
+		}
+	}
+
+	/**
+	 * @param record a decoded AIS message
+	 * @return the target, updated with the record
+	 */
+	public AISTarget update(AISParser.AISRecord record) {
+		int mmsi = record.getMmsi();
+		lock.writeLock().lock();
+		try {
+			AISTarget previous = targets.get(mmsi);
+			AISTarget target = (previous == null) ? AISTarget.from(record) : previous.merge(record);
+			targets.put(mmsi, target);
+			int previousCell = cellOf(previous);
+			int newCell = cellOf(target);
+			if (previousCell != newCell) {
+				if (previousCell >= 0) {
+					removeFromCell(previousCell, mmsi);
+				}
+				if (newCell >= 0) {
+					Cell cell = grid.get(newCell);
+					if (cell == null) {
+						cell = new Cell();
+						grid.put(newCell, cell);
+					}
+					cell.add(mmsi);
+				}
+			}
+			long now = record.getRecordTimeStamp();
+			if (now - lastEviction > EVICTION_INTERVAL) {
+				lastEviction = now;
+				evict(now);
+			}
+			return target;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void removeFromCell(int cellKey, int mmsi) {
+		Cell cell = grid.get(cellKey);
+		if (cell != null) {
+			cell.remove(mmsi);
+			if (cell.size == 0) {
+				grid.remove(cellKey);
+			}
+		}
+	}
+
+	/*
+	 * Under the write lock
+	 */
+	private void evict(long now) {
+		targets.removeIf(mmsi -> {
+			AISTarget target = targets.get(mmsi);
+			if (now - target.getLastUpdate() > maxAge) {
+				int cell = cellOf(target);
+				if (cell >= 0) {
+					removeFromCell(cell, mmsi);
+				}
+				return true;
+			}
+			return false;
+		});
+	}
+
+	private static int latCell(double lat) {
+		return Math.min(NB_LAT_CELLS - 1, Math.max(0, (int) Math.floor((lat + 90d) / CELL_SIZE)));
+	}
+
+	private static int lngCell(double lng) {
+		int idx = (int) Math.floor((lng + 180d) / CELL_SIZE) % NB_LNG_CELLS;
+		return idx < 0 ? idx + NB_LNG_CELLS : idx;
+	}
+
+	private static int cellKey(int latCell, int lngCell) {
+		return (latCell * NB_LNG_CELLS) + lngCell;
+	}
+
+	/**
+	 * @return the key of the cell of the target, -1 if it has no position
+	 */
+	private static int cellOf(AISTarget target) {
+		if (target == null || !target.isPositionAvailable()) {
+			return -1;
+		}
+		return cellKey(latCell(target.getLatitude()), lngCell(target.getLongitude()));
+	}
+
+	/**
+	 * @param mmsi the MMSI of the target
+	 * @return the target, null if not known (or evicted)
+	 */
+	public AISTarget get(int mmsi) {
+		lock.readLock().lock();
+		try {
+			AISTarget target = targets.get(mmsi);
+			return (target == null || isStale(target, System.currentTimeMillis())) ? null : target;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private boolean isStale(AISTarget target, long now) {
+		return now - target.getLastUpdate() > maxAge;
+	}
+
+	/**
+	 * @return all the targets, by MMSI
+	 */
+	public List<AISTarget> getTargets() {
+		long now = System.currentTimeMillis();
+		List<AISTarget> list = new ArrayList<>();
+		lock.readLock().lock();
+		try {
+			targets.forEach((mmsi, target) -> {
+				if (!isStale(target, now)) {
+					list.add(target);
+				}
+			});
+		} finally {
+			lock.readLock().unlock();
+		}
+		list.sort(Comparator.comparingInt(AISTarget::getMmsi));
+		return list;
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return targets.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			targets.clear();
+			grid.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * The targets around a position, with their CPA and TCPA.
+	 *
+	 * @param lat    own latitude, degrees
+	 * @param lng    own longitude, degrees
+	 * @param cog    own course over ground, degrees
+	 * @param sog    own speed over ground, knots
+	 * @param radius in nm
+	 * @return the targets with a position within the radius, the closest first
+	 */
+	public List<Proximity> getTargetsWithin(double lat, double lng, double cog, double sog, double radius) {
+		long now = System.currentTimeMillis();
+		List<Proximity> list = new ArrayList<>();
+		double cosLat = Math.max(0.01, Math.cos(Math.toRadians(lat)));
+		double latSpan = radius / 60d;
+		double lngSpan = Math.min(180d, radius / (60d * cosLat));
+		int fromLat = latCell(lat - latSpan);
+		int toLat = latCell(lat + latSpan);
+		int nbLng = Math.min(NB_LNG_CELLS, (int) Math.ceil((2 * lngSpan) / CELL_SIZE) + 1);
+		int fromLng = lngCell(lng - lngSpan);
+
+		lock.readLock().lock();
+		try {
+			IntObjectMap.Visitor<AISTarget> visitor = (mmsi, target) -> {
+				if (target.isPositionAvailable() && !isStale(target, now)) {
+					Proximity proximity = proximity(lat, lng, cosLat, cog, sog, target);
+					if (proximity.distance <= radius) {
+						list.add(proximity);
+					}
+				}
+			};
+			long nbCells = (long) (toLat - fromLat + 1) * nbLng;
+			if (nbCells > grid.size()) { // Cheaper to look at the occupied cells only, that is all the targets
+				targets.forEach(visitor);
+			} else {
+				for (int latIdx = fromLat; latIdx <= toLat; latIdx++) {
+					for (int i = 0; i < nbLng; i++) {
+						Cell cell = grid.get(cellKey(latIdx, (fromLng + i) % NB_LNG_CELLS));
+						if (cell != null) {
+							for (int j = 0; j < cell.size; j++) {
+								int mmsi = cell.mmsis[j];
+								visitor.visit(mmsi, targets.get(mmsi));
+							}
+						}
+					}
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		list.sort(Comparator.comparingDouble(Proximity::getDistance));
+		return list;
+	}
+
+	/**
+	 * The targets getting closer than <code>cpaLimit</code> in less than <code>tcpaLimit</code>.
+	 *
+	 * @param lat       own latitude, degrees
+	 * @param lng       own longitude, degrees
+	 * @param cog       own course over ground, degrees
+	 * @param sog       own speed over ground, knots
+	 * @param radius    only the targets within this radius are considered, in nm
+	 * @param cpaLimit  in nm
+	 * @param tcpaLimit in minutes
+	 * @return the threats, the closest in time first
+	 */
+	public List<Proximity> getThreats(double lat, double lng, double cog, double sog, double radius, double cpaLimit, double tcpaLimit) {
+		List<Proximity> threats = new ArrayList<>();
+		for (Proximity proximity : getTargetsWithin(lat, lng, cog, sog, radius)) {
+			if (proximity.cpa <= cpaLimit && proximity.tcpa >= 0 && proximity.tcpa <= tcpaLimit) {
+				threats.add(proximity);
+			}
+		}
+		threats.sort(Comparator.comparingDouble(Proximity::getTcpa));
+		return threats;
+	}
+
+	private static Proximity proximity(double lat, double lng, double cosLat, double cog, double sog, AISTarget target) {
+		double dLng = target.getLongitude() - lng;
+		if (dLng > 180d) {
+			dLng -= 360d;
+		} else if (dLng < -180d) {
+			dLng += 360d;
+		}
+		// Relative position, nm. x: East, y: North
+		double x = dLng * 60d * cosLat;
+		double y = (target.getLatitude() - lat) * 60d;
+		double distance = Math.sqrt((x * x) + (y * y));
+		double bearing = Math.toDegrees(Math.atan2(x, y));
+		if (bearing < 0) {
+			bearing += 360d;
+		}
+		// Relative velocity, knots
+		double vx = (target.getSog() * Math.sin(Math.toRadians(target.getCog()))) - (sog * Math.sin(Math.toRadians(cog)));
+		double vy = (target.getSog() * Math.cos(Math.toRadians(target.getCog()))) - (sog * Math.cos(Math.toRadians(cog)));
+		double v2 = (vx * vx) + (vy * vy);
+		double cpa = distance;
+		double tcpa = 0d;
+		if (v2 > 1E-9) {
+			double t = -((x * vx) + (y * vy)) / v2; // hours
+			double cx = x + (vx * t);
+			double cy = y + (vy * t);
+			cpa = Math.sqrt((cx * cx) + (cy * cy));
+			tcpa = t * 60d;
+		}
+		return new Proximity(target, distance, bearing, cpa, tcpa);
+	}
+
+	/**
+	 * @return how long (in ms) a target is kept without news from it
+	 */
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	/**
+	 * Can also be set at startup with <code>-Dais.target.max.age</code>, default 600000 (10 minutes).
+	 *
+	 * @param maxAge in ms
+	 */
+	public void setMaxAge(long maxAge) {
+		this.maxAge = maxAge;
+	}
+}
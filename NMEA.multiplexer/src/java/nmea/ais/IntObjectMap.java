@@ -0,0 +1,162 @@
+package nmea.ais;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * A map with <code>int</code> keys (like the MMSIs), without boxing: open addressing, linear probing.
+ * <br>
+ * Not thread-safe, see {@link AISTargetTable} for the locking.
+ *
+ * @param <V> the type of the values. null values are not supported.
+ */
+final class IntObjectMap<V> {
+
+	private int[] keys;
+	private Object[] values;
+	private int size = 0;
+	private int mask;
+
+	IntObjectMap(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(8, expected * 2) - 1) << 1;
+		keys = new int[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9; // Fibonacci hashing, the MMSIs are not random in their low bits
+		return h ^ (h >>> 16);
+	}
+
+	private int indexOf(int key) {
+		int idx = hash(key) & mask;
+		while (values[idx] != null) {
+			if (keys[idx] == key) {
+				return idx;
+			}
+			idx = (idx + 1) & mask;
+		}
+		return -(idx + 1);
+	}
+
+	@SuppressWarnings("unchecked")
+	V get(int key) {
+		int idx = indexOf(key);
+		return idx >= 0 ? (V) values[idx] : null;
+	}
+
+	/**
+	 * @return the previous value, or null
+	 */
+	@SuppressWarnings("unchecked")
+	V put(int key, V value) {
+		int idx = indexOf(key);
+		if (idx >= 0) {
+			V previous = (V) values[idx];
+			values[idx] = value;
+			return previous;
+		}
+		idx = -(idx + 1);
+		keys[idx] = key;
+		values[idx] = value;
+		if (++size > (keys.length * 3) / 4) {
+			resize(keys.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * @return the removed value, or null
+	 */
+	@SuppressWarnings("unchecked")
+	V remove(int key) {
+		int idx = indexOf(key);
+		if (idx < 0) {
+			return null;
+		}
+		V previous = (V) values[idx];
+		delete(idx);
+		return previous;
+	}
+
+	/**
+	 * Backward shift deletion, no tombstone: the entries after the removed one are moved back if they can.
+	 */
+	private void delete(int idx) {
+		int hole = idx;
+		int next = (hole + 1) & mask;
+		while (values[next] != null) {
+			int home = hash(keys[next]) & mask;
+			// Can the entry at 'next' move to the hole? Yes if its home is not in (hole, next] (circular)
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				keys[hole] = keys[next];
+				values[hole] = values[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		values[hole] = null;
+		size--;
+	}
+
+	/**
+	 * Removes the entries whose key matches the predicate.
+	 *
+	 * @return the number of removed entries
+	 */
+	int removeIf(IntPredicate predicate) {
+		int[] toRemove = new int[size];
+		int nb = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (values[i] != null && predicate.test(keys[i])) {
+				toRemove[nb++] = keys[i];
+			}
+		}
+		for (int i = 0; i < nb; i++) {
+			remove(toRemove[i]);
+		}
+		return nb;
+	}
+
+	@SuppressWarnings("unchecked")
+	void forEach(Visitor<V> visitor) {
+		for (int i = 0; i < keys.length; i++) {
+			if (values[i] != null) {
+				visitor.visit(keys[i], (V) values[i]);
+			}
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new int[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != null) {
+				int idx = hash(oldKeys[i]) & mask;
+				while (values[idx] != null) {
+					idx = (idx + 1) & mask;
+				}
+				keys[idx] = oldKeys[i];
+				values[idx] = oldValues[i];
+			}
+		}
+	}
+
+	@FunctionalInterface
+	interface Visitor<V> {
+		void visit(int key, V value);
+	}
+}
@@ -1,5 +1,7 @@
 package nmea.api;
 
+import nmea.mux.metrics.MuxMetrics;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
@@ -105,6 +107,7 @@ public abstract class NMEAClient {
 		parser = new NMEAParser(NMEAListeners);
 		parser.setDeviceFilters(this.getDevicePrefix());
 		parser.setSentenceFilters(this.getSentenceArray());
+		MuxMetrics.getInstance().addChannel(this.getClass().getSimpleName(), parser.getMetrics());
 	}
 
 	public void setProperties(Properties props) {
@@ -113,6 +116,9 @@ public abstract class NMEAClient {
 
 	public void setDevicePrefix(String[] s) {
 		this.devicePrefix = s;
+		if (this.parser != null) {
+			this.parser.setDeviceFilters(s);
+		}
 	}
 
 	public String[] getDevicePrefix() {
@@ -121,6 +127,9 @@ public abstract class NMEAClient {
 
 	public void setSentenceArray(String[] sa) {
 		this.sentenceArray = sa;
+		if (this.parser != null) {
+			this.parser.setSentenceFilters(sa);
+		}
 	}
 
 	public String[] getSentenceArray() {
@@ -162,6 +171,9 @@ public abstract class NMEAClient {
 		this.getListeners().stream().forEach(listener -> listener.stopReading(new NMEAEvent(this)));
 		// Remove listeners
 		removeAllListeners();
+		if (this.parser != null) {
+			MuxMetrics.getInstance().removeChannel(this.parser.getMetrics());
+		}
 
 		try {
 			this.getReader().closeReader();
@@ -1,5 +1,6 @@
 package nmea.api;
 
+import java.nio.charset.StandardCharsets;
 import java.util.EventObject;
 
 /**
@@ -9,13 +10,20 @@ import java.util.EventObject;
  * @version 1.0
  */
 public class NMEAEvent extends EventObject {
-	private String content = "";
+	private String content = null;
+
+	private CharSequence sentence = null;
+
+	private byte[] data = null;
+	private int offset = 0;
+	private int length = 0;
 
 	/*
 	 * To be used for the stop statement
 	 */
 	public NMEAEvent(Object source) {
 		super(source);
+		content = "";
 	}
 
 	/*
@@ -26,6 +34,26 @@ public class NMEAEvent extends EventObject {
 		content = s;
 	}
 
+	/*
+	 * To be used for the DataDetected events fired by the NMEAFramer.
+	 * The sentence is only valid during the event dispatch, the String is created on demand.
+	 */
+	public NMEAEvent(Object source, CharSequence sentence) {
+		super(source);
+		this.sentence = sentence;
+	}
+
+	/*
+	 * To be used for the DataRead events, by readers working on bytes.
+	 * The buffer can be reused by the reader once the event has been dispatched.
+	 */
+	public NMEAEvent(Object source, byte[] data, int offset, int length) {
+		super(source);
+		this.data = data;
+		this.offset = offset;
+		this.length = length;
+	}
+
 	/*
 	 * Once DataRead or DataDetected has been trapped, use this method to
 	 * get the concerned data String.
@@ -33,6 +61,41 @@ public class NMEAEvent extends EventObject {
 	 * @return the concerned data, as a String
 	 */
 	public String getContent() {
+		if (this.content == null) {
+			if (this.sentence != null) {
+				this.content = this.sentence.toString();
+			} else if (this.data != null) {
+				this.content = new String(this.data, this.offset, this.length, StandardCharsets.ISO_8859_1);
+			} else {
+				this.content = "";
+			}
+		}
 		return this.content;
 	}
-}
\ No newline at end of file
+
+	/*
+	 * @return the detected sentence, without creating a String (when fired by the NMEAFramer).
+	 */
+	public CharSequence getSentence() {
+		return (this.sentence != null) ? this.sentence : getContent();
+	}
+
+	/*
+	 * @return true if the event carries raw bytes, see getData, getOffset, getLength
+	 */
+	public boolean hasData() {
+		return this.data != null;
+	}
+
+	public byte[] getData() {
+		return this.data;
+	}
+
+	public int getOffset() {
+		return this.offset;
+	}
+
+	public int getLength() {
+		return this.length;
+	}
+}
@@ -0,0 +1,342 @@
+package nmea.api;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Byte level NMEA sentence framer.
+ * <br>
+ * This is the allocation-free alternative to the <code>String</code> based detection
+ * done in {@link NMEAParser#detectSentence()}.
+ * <br>
+ * The incoming bytes are appended to one reusable {@link ByteBuffer}. They are scanned only once,
+ * looking for a sentence start (<code>$</code> or <code>!</code>) and its end (<code>\n</code>).
+ * The checksum is computed (XOR) while scanning, and compared with the <code>*hh</code> trailer
+ * when the end of the sentence is reached. The trailer must be exactly two hexadecimal digits,
+ * followed only by the end of the sentence (<code>\r</code>, <code>\n</code>), or the sentence is not valid.
+ * <br>
+ * Every complete sentence is handed to the {@link SentenceHandler} through a {@link SentenceView}.
+ * This view is <b>reused</b> for all the sentences, it is only valid during the call to
+ * {@link SentenceHandler#onSentence(SentenceView)}. A <code>String</code> is created only if
+ * {@link SentenceView#toString()} is invoked.
+ * <br>
+ * This class is not thread safe, there is one framer per channel (i.e. per {@link NMEAParser}).
+ */
+public final class NMEAFramer {
+
+	@FunctionalInterface
+	public interface SentenceHandler {
+		void onSentence(SentenceView sentence);
+	}
+
+	public final static int DEFAULT_BUFFER_SIZE = 2_048;
+
+	private final static int SEEKING_START = 0;
+	private final static int IN_SENTENCE = 1;
+	private final static int IN_CHECKSUM = 2;
+
+	private final ByteBuffer buffer;
+	private final byte[] bytes;
+	private final SentenceView view;
+	private final SentenceHandler handler;
+
+	private int state = SEEKING_START;
+	private int scanPosition = 0;   // Next byte to scan
+	private int sentenceStart = -1; // Position of the '$' or '!'
+	private int checksumStart = -1; // Position of the '*'
+	private int calculatedChecksum = 0;
+	private int readChecksum = 0;
+	private int nbChecksumDigits = 0;
+	private boolean checksumMalformed = false; // Not a digit, or more than 2, or something after the \r
+	private boolean checksumEnded = false;     // \r met
+
+	private long nbSentences = 0L;
+	private long nbInvalid = 0L;
+	private long nbOverflows = 0L;
+
+	public NMEAFramer(SentenceHandler handler) {
+		this(handler, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param handler    Receives the detected sentences
+	 * @param bufferSize Max length of a sentence (in bytes). Longer ones are dropped.
+	 */
+	public NMEAFramer(SentenceHandler handler, int bufferSize) {
+		this.handler = handler;
+		this.buffer = ByteBuffer.allocate(bufferSize);
+		this.bytes = this.buffer.array();
+		this.view = new SentenceView(this.bytes);
+	}
+
+	/**
+	 * Feed the framer with raw bytes, as read from the channel.
+	 *
+	 * @param data   the bytes
+	 * @param offset where to start in data
+	 * @param length how many bytes to take
+	 */
+	public void feed(byte[] data, int offset, int length) {
+		int done = 0;
+		while (done < length) {
+			int chunk = Math.min(length - done, buffer.remaining());
+			buffer.put(data, offset + done, chunk);
+			done += chunk;
+			scan();
+		}
+	}
+
+	public void feed(byte[] data) {
+		feed(data, 0, data.length);
+	}
+
+	/**
+	 * Feed the framer with characters, for the readers producing <code>String</code>s.
+	 * Characters are assumed to be ISO-8859-1 (NMEA is ASCII).
+	 *
+	 * @param data the characters to feed
+	 */
+	public void feed(CharSequence data) {
+		int len = data.length();
+		for (int i = 0; i < len; i++) {
+			if (!buffer.hasRemaining()) {
+				scan();
+			}
+			buffer.put((byte) data.charAt(i));
+		}
+		scan();
+	}
+
+	/**
+	 * Forget the pending bytes, if any.
+	 */
+	public void reset() {
+		buffer.clear();
+		scanPosition = 0;
+		state = SEEKING_START;
+		sentenceStart = -1;
+	}
+
+	public long getNbSentences() {
+		return nbSentences;
+	}
+
+	public long getNbInvalid() {
+		return nbInvalid;
+	}
+
+	public long getNbOverflows() {
+		return nbOverflows;
+	}
+
+	/**
+	 * Scans the bytes not scanned yet, fires the sentences, and compacts the buffer
+	 * so the pending (incomplete) sentence - if any - begins at position 0.
+	 */
+	private void scan() {
+		int limit = buffer.position();
+		for (int i = scanPosition; i < limit; i++) {
+			byte b = bytes[i];
+			if (b == '$' || b == '!') { // Start (or re-start, the previous one was broken)
+				startSentence(i);
+				continue;
+			}
+			switch (state) {
+				case IN_SENTENCE:
+					if (b == '*') {
+						checksumStart = i;
+						state = IN_CHECKSUM;
+					} else if (b == '\n') {
+						endSentence(i);
+					} else if (b != '\r') {
+						calculatedChecksum ^= (b & 0xFF);
+					}
+					break;
+				case IN_CHECKSUM:
+					if (b == '\n') {
+						endSentence(i);
+					} else if (b == '\r') {
+						checksumEnded = true;
+					} else {
+						int digit = Character.digit(b, 16);
+						if (digit >= 0 && nbChecksumDigits < 2 && !checksumEnded) {
+							readChecksum = (readChecksum << 4) | digit;
+							nbChecksumDigits++;
+						} else {
+							checksumMalformed = true;
+						}
+					}
+					break;
+				case SEEKING_START:
+				default:
+					break;
+			}
+		}
+		compact(limit);
+	}
+
+	private void startSentence(int idx) {
+		state = IN_SENTENCE;
+		sentenceStart = idx;
+		checksumStart = -1;
+		calculatedChecksum = 0;
+		readChecksum = 0;
+		nbChecksumDigits = 0;
+		checksumMalformed = false;
+		checksumEnded = false;
+	}
+
+	private void endSentence(int idx) {
+		int end = idx;
+		while (end > sentenceStart && (bytes[end - 1] == '\r' || bytes[end - 1] == ' ' || bytes[end - 1] == '\n')) {
+			end--;
+		}
+		boolean valid = checksumStart > -1 &&
+						nbChecksumDigits == 2 &&
+						!checksumMalformed &&
+						readChecksum == calculatedChecksum;
+		nbSentences++;
+		if (!valid) {
+			nbInvalid++;
+		}
+		view.set(sentenceStart, end - sentenceStart, valid);
+		handler.onSentence(view);
+		view.clear();
+		state = SEEKING_START;
+		sentenceStart = -1;
+	}
+
+	private void compact(int limit) {
+		int keepFrom = (state == SEEKING_START) ? limit : sentenceStart;
+		if (keepFrom == 0 && limit == buffer.capacity()) { // Full, and no end in sight.
+			nbOverflows++;
+			buffer.clear();
+			scanPosition = 0;
+			state = SEEKING_START;
+			sentenceStart = -1;
+			return;
+		}
+		int pending = limit - keepFrom;
+		if (keepFrom > 0) {
+			if (pending > 0) {
+				System.arraycopy(bytes, keepFrom, bytes, 0, pending);
+			}
+			buffer.position(pending);
+			if (state != SEEKING_START) {
+				sentenceStart -= keepFrom;
+				if (checksumStart > -1) {
+					checksumStart -= keepFrom;
+				}
+			}
+		}
+		scanPosition = pending;
+	}
+
+	/**
+	 * A window on the framer's buffer, for one detected sentence.
+	 * From the start character (<code>$</code> or <code>!</code>) to the checksum, without the end-of-sentence characters.
+	 * <br>
+	 * Reused by the framer, do not keep a reference on it, keep {@link #toString()} instead.
+	 */
+	public final static class SentenceView implements CharSequence {
+		private final byte[] data;
+		private int offset = 0;
+		private int length = 0;
+		private boolean valid = false;
+		private String str = null;
+
+		private SentenceView(byte[] data) {
+			this.data = data;
+		}
+
+		private void set(int offset, int length, boolean valid) {
+			this.offset = offset;
+			this.length = length;
+			this.valid = valid;
+			this.str = null;
+		}
+
+		private void clear() {
+			this.length = 0;
+			this.str = null;
+		}
+
+		/**
+		 * @return true if the sentence has a checksum, and if this checksum is correct
+		 */
+		public boolean isValid() {
+			return this.valid;
+		}
+
+		/**
+		 * @param id the 2 character device ID, like "GP"
+		 * @return true if the sentence was emitted by this device
+		 */
+		public boolean isDevice(CharSequence id) {
+			return regionMatches(1, id);
+		}
+
+		/**
+		 * @param id the 3 character sentence ID, like "RMC"
+		 * @return true if this is the expected sentence
+		 */
+		public boolean isSentence(CharSequence id) {
+			return regionMatches(3, id);
+		}
+
+		private boolean regionMatches(int from, CharSequence id) {
+			if (from + id.length() > this.length) {
+				return false;
+			}
+			for (int i = 0; i < id.length(); i++) {
+				if (charAt(from + i) != id.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Copies the sentence bytes into a destination array.
+		 *
+		 * @param dest   where to copy
+		 * @param offset where to start in dest
+		 * @return the number of bytes copied, i.e. {@link #length()}
+		 */
+		public int copyTo(byte[] dest, int offset) {
+			System.arraycopy(this.data, this.offset, dest, offset, this.length);
+			return this.length;
+		}
+
+		@Override
+		public int length() {
+			return this.length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= this.length) {
+				throw new IndexOutOfBoundsException(String.format("%d, length %d", index, this.length));
+			}
+			return (char) (this.data[this.offset + index] & 0xFF);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return toString().substring(start, end);
+		}
+
+		/**
+		 * The String is created on the first invocation only.
+		 *
+		 * @return the sentence, as a String.
+		 */
+		@Override
+		public String toString() {
+			if (this.str == null) {
+				this.str = new String(this.data, this.offset, this.length, StandardCharsets.ISO_8859_1);
+			}
+			return this.str;
+		}
+	}
+}
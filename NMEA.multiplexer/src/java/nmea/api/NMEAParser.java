@@ -1,9 +1,8 @@
 package nmea.api;
 
 import http.utils.DumpUtil;
-import nmea.parser.StringParsers;
+import nmea.mux.metrics.ChannelMetrics;
 
-import java.util.Arrays;
 import java.util.List;
 
 
@@ -28,6 +27,7 @@ import java.util.List;
 public final class NMEAParser extends Thread {
 	protected String[] nmeaPrefix = null;
 	private String[] nmeaSentence = null;
+	private volatile SentenceFilter filter = null; // Compiled from the two above
 
 	private String nmeaStream = "";
 	private final static long MAX_STREAM_SIZE = 2048;
@@ -39,6 +39,10 @@ public final class NMEAParser extends Thread {
 
 	NMEAParser instance = null;
 
+	private volatile NMEAFramer framer = null; // Can be switched by setFraming while reading
+
+	private final ChannelMetrics metrics = new ChannelMetrics();
+
 	/**
 	 * @param al The ArrayList of the Listeners instantiated by the NMEAClient
 	 */
@@ -48,9 +52,24 @@ public final class NMEAParser extends Thread {
 			System.out.println(this.getClass().getName() + ":Creating parser");
 		instance = this;
 		NMEAListeners = al;
+		if ("true".equals(System.getProperty("nmea.parser.framing", "false"))) {
+			this.setFraming(true);
+		}
 		this.addNMEAListener(new NMEAListener() {
 			public void dataRead(NMEAEvent e) {
 //        System.out.println("Receieved Data:" + e.getContent());
+				metrics.markBytes(e.hasData() ? e.getLength() : e.getContent().length());
+				NMEAFramer currentFramer = framer;
+				if (currentFramer != null) {
+					synchronized (currentFramer) {
+						if (e.hasData()) {
+							currentFramer.feed(e.getData(), e.getOffset(), e.getLength());
+						} else {
+							currentFramer.feed(e.getContent());
+						}
+					}
+					return;
+				}
 				nmeaStream += e.getContent();
 				// Send to parser
 				String s = "";
@@ -59,41 +78,10 @@ public final class NMEAParser extends Thread {
 						s = instance.detectSentence();
 						if (s != null && s.length() > 6 && s.startsWith("$")) { // Potentially valid
 							// TODO ? RegExp on the full sentence. Maybe not too user friendly...
-							boolean broadcast = true;
-							if (nmeaPrefix != null) {
-								for (String device : nmeaPrefix) {
-									if (device.trim().length() > 0 &&
-													( (!device.startsWith("~") && !device.equals(StringParsers.getDeviceID(s))) ||
-																	device.startsWith("~") && device.substring(1).equals(StringParsers.getDeviceID(s)))) {
-										broadcast = false;
-										break;
-									}
-								}
-							}
-							// Negative filters
-							if (broadcast && nmeaSentence != null) {
-								String thisId = StringParsers.getSentenceID(s);
-								for (String prefix : nmeaSentence) {
-									if (prefix.trim().startsWith("~") && thisId.equals(prefix.trim().substring(1))) {
-										broadcast = false;
-										break;
-									}
-								}
-								// Positive filters
-								long pos = Arrays.stream(nmeaSentence).filter(id -> !id.trim().startsWith("~")).count();
-								if (broadcast && pos > 0) {
-									broadcast = false;
-									for (String prefix : nmeaSentence) {
-										if (!prefix.trim().startsWith("~") && thisId.equals(prefix.trim())) {
-											broadcast = true;
-											break;
-										}
-									}
-								}
-							}
-							if (broadcast) {
+							if (accept(s)) {
 								instance.fireDataDetected(new NMEAEvent(this, s));
 							} else {
+								metrics.markFilterReject();
 								if ("true".equals(System.getProperty("nmea.parser.verbose","false"))) {
 									System.out.println(String.format("  >>> Rejecting [%s] <<< ", s.trim()));
 								}
@@ -107,6 +95,57 @@ public final class NMEAParser extends Thread {
 		});
 	}
 
+	/**
+	 * Switches between the String based sentence detection ({@link #detectSentence()})
+	 * and the byte based one ({@link NMEAFramer}).
+	 * <br>
+	 * Can also be set at startup with <code>-Dnmea.parser.framing=true</code>.
+	 * <br>
+	 * In framing mode, the sentences with an invalid (or without) checksum are not broadcasted,
+	 * and the listeners receive an {@link NMEAEvent} wrapping the framer's reusable view: the String is
+	 * only created if {@link NMEAEvent#getContent()} is invoked during the dispatch.
+	 *
+	 * @param framing true to use the {@link NMEAFramer}
+	 */
+	public synchronized void setFraming(boolean framing) {
+		if (framing && this.framer == null) {
+			this.framer = new NMEAFramer(this::onFramedSentence);
+			this.nmeaStream = "";
+		} else if (!framing) {
+			this.framer = null;
+		}
+	}
+
+	public boolean isFraming() {
+		return this.framer != null;
+	}
+
+	private void onFramedSentence(NMEAFramer.SentenceView sentence) {
+		if (sentence.length() > 6 && sentence.isValid() && accept(sentence)) {
+			this.fireDataDetected(new NMEAEvent(this, sentence));
+		} else {
+			if (!sentence.isValid()) {
+				metrics.markChecksumFailure();
+			} else if (sentence.length() > 6) {
+				metrics.markFilterReject();
+			}
+			if ("true".equals(System.getProperty("nmea.parser.verbose","false"))) {
+				System.out.println(String.format("  >>> Rejecting [%s]%s <<< ", sentence, sentence.isValid() ? "" : " (checksum)"));
+			}
+		}
+	}
+
+	/**
+	 * Applies the device and sentence filters, compiled by {@link #setDeviceFilters(String[])} and {@link #setSentenceFilters(String[])}.
+	 *
+	 * @param s the sentence, beginning with '$' or '!'
+	 * @return true if the sentence is to be broadcasted
+	 */
+	private boolean accept(CharSequence s) {
+		SentenceFilter filter = this.filter;
+		return filter == null || filter.accept(s);
+	}
+
 	public String[] getDeviceFilters() {
 		return this.nmeaPrefix;
 	}
@@ -117,6 +156,7 @@ public final class NMEAParser extends Thread {
 		} else {
 			this.nmeaPrefix = s;
 		}
+		this.filter = SentenceFilter.compile(this.nmeaPrefix, this.nmeaSentence);
 	}
 
 	public String[] getSentenceFilters() {
@@ -129,6 +169,7 @@ public final class NMEAParser extends Thread {
 		} else {
 			this.nmeaSentence = sa;
 		}
+		this.filter = SentenceFilter.compile(this.nmeaPrefix, this.nmeaSentence);
 	}
 
 	public String getNmeaStream() {
@@ -207,7 +248,15 @@ public final class NMEAParser extends Thread {
 		}
 	}
 
+	/**
+	 * @return what this parser has seen, see {@link ChannelMetrics}
+	 */
+	public ChannelMetrics getMetrics() {
+		return this.metrics;
+	}
+
 	protected void fireDataDetected(NMEAEvent e) {
+		metrics.markSentence();
 		this.NMEAListeners.stream().forEach(listener -> listener.dataDetected(e));
 	}
 
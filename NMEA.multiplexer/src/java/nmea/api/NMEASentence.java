@@ -0,0 +1,201 @@
+package nmea.api;
+
+import nmea.parser.StringParsers;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * One sentence going through the Multiplexer, created once (by {@link nmea.mux.GenericNMEAMultiplexer#onData(String)}),
+ * and shared by the cache, the computers and the forwarders.
+ * <br>
+ * The checksum is validated, and the IDs extracted, once.
+ * The bytes sent to the forwarders (the sentence, followed by {@link NMEAParser#STANDARD_NMEA_EOS}),
+ * and the parsed data (see {@link #getParsed()}), are created the first time they are needed, and then shared.
+ * <br>
+ * Immutable. The parsed objects (like an {@link nmea.parser.RMC}) are shared too, and must not be modified.
+ *
+ * @see nmea.forwarders.SentenceForwarder
+ */
+public final class NMEASentence {
+
+	/**
+	 * The parsers used by {@link #getParsed()}, by sentence ID.
+	 */
+	private final static Map<String, Function<String, Object>> PARSERS = new HashMap<>();
+
+	static {
+		PARSERS.put("GGA", StringParsers::parseGGA);
+		PARSERS.put("GLL", StringParsers::parseGLL);
+		PARSERS.put("HDG", StringParsers::parseHDG);
+		PARSERS.put("HDM", StringParsers::parseHDM);
+		PARSERS.put("HDT", StringParsers::parseHDT);
+		PARSERS.put("MMB", StringParsers::parseMMB);
+		PARSERS.put("MTA", StringParsers::parseMTA);
+		PARSERS.put("MTW", StringParsers::parseMTW);
+		PARSERS.put("MWV", StringParsers::parseMWV);
+		PARSERS.put("RMC", StringParsers::parseRMC);
+		PARSERS.put("VHW", StringParsers::parseVHW);
+		PARSERS.put("VLW", StringParsers::parseVLW);
+		PARSERS.put("VTG", StringParsers::parseVTG);
+		PARSERS.put("VWR", StringParsers::parseVWR);
+		PARSERS.put("ZDA", StringParsers::parseZDA);
+	}
+
+	private final static Object NOT_PARSED = new Object();
+
+	/**
+	 * What a parser has thrown, thrown again to every caller of {@link #getParsed()}.
+	 */
+	private final static class Failure {
+		final RuntimeException exception;
+
+		Failure(RuntimeException exception) {
+			this.exception = exception;
+		}
+	}
+
+	private final String sentence;
+	private final long received;
+	private final long nanoTime = System.nanoTime();
+	private final boolean valid;
+	private final String deviceID;
+	private final String sentenceID;
+
+	// Created on demand. Races are harmless, the result is always the same.
+	private volatile byte[] bytes = null;
+	private volatile Object parsed = NOT_PARSED;
+
+	/**
+	 * @param sentence the sentence, like <code>$GPRMC,...*XX</code>. Leading and trailing white spaces (like CR-LF) are removed.
+	 */
+	public NMEASentence(String sentence) {
+		this(sentence, System.currentTimeMillis());
+	}
+
+	/**
+	 * @param sentence the sentence, like <code>$GPRMC,...*XX</code>. Leading and trailing white spaces (like CR-LF) are removed.
+	 * @param received when it was received, epoch in ms
+	 */
+	public NMEASentence(String sentence, long received) {
+		this.sentence = sentence.trim();
+		this.received = received;
+		this.valid = StringParsers.validCheckSum(this.sentence);
+		if (this.sentence.length() >= 7) {
+			this.deviceID = this.sentence.substring(1, 3);
+			this.sentenceID = this.sentence.substring(3, 6);
+		} else {
+			this.deviceID = null;
+			this.sentenceID = null;
+		}
+	}
+
+	/**
+	 * @return the sentence, without the trailing CR-LF
+	 */
+	public String getSentence() {
+		return sentence;
+	}
+
+	/**
+	 * @return the sentence, followed by CR-LF, as sent to the forwarders. Shared, must not be modified.
+	 */
+	public byte[] getBytes() {
+		byte[] data = bytes;
+		if (data == null) {
+			data = (sentence + NMEAParser.STANDARD_NMEA_EOS).getBytes();
+			bytes = data;
+		}
+		return data;
+	}
+
+	/**
+	 * @return when the sentence was received by the Multiplexer, epoch in ms
+	 */
+	public long getReceived() {
+		return received;
+	}
+
+	/**
+	 * @return when the sentence was received, {@link System#nanoTime()}. To measure latencies.
+	 */
+	public long getNanoTime() {
+		return nanoTime;
+	}
+
+	/**
+	 * @return true if the checksum is valid
+	 */
+	public boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * @return the device ID, like <code>GP</code> in <code>$GPRMC</code>. null if the sentence is too short.
+	 */
+	public String getDeviceID() {
+		return deviceID;
+	}
+
+	/**
+	 * @return the sentence ID, like <code>RMC</code> in <code>$GPRMC</code>. null if the sentence is too short.
+	 */
+	public String getSentenceID() {
+		return sentenceID;
+	}
+
+	/**
+	 * @param sentenceID like <code>RMC</code>
+	 * @return true if {@link #getParsed()} knows how to parse those sentences
+	 */
+	public static boolean isParsable(String sentenceID) {
+		return PARSERS.containsKey(sentenceID);
+	}
+
+	/**
+	 * Parses the sentence, the first time it is called, with the parser of {@link StringParsers} for its ID
+	 * (<code>parseRMC</code> for an RMC, etc).
+	 * The next calls (from the same consumer, or another one) return the same object.
+	 * <br>
+	 * If the parser throws an exception, it is thrown again by every call.
+	 *
+	 * @return the parsed data (a boxed value for the parsers returning a primitive),
+	 * null if the sentence is not valid, or cannot be parsed (see {@link #isParsable(String)}).
+	 */
+	public Object getParsed() {
+		Object value = parsed;
+		if (value == NOT_PARSED) {
+			Function<String, Object> parser = (valid && sentenceID != null) ? PARSERS.get(sentenceID) : null;
+			if (parser == null) {
+				value = null;
+			} else {
+				try {
+					value = parser.apply(sentence);
+				} catch (RuntimeException re) {
+					value = new Failure(re);
+				}
+			}
+			parsed = value;
+		}
+		if (value instanceof Failure) {
+			throw ((Failure) value).exception;
+		}
+		return value;
+	}
+
+	/**
+	 * @param type the expected type, like <code>RMC.class</code>, or <code>Double.class</code> for an MTW
+	 * @param <T> the expected type
+	 * @return the parsed data, or null if not there, or not of the expected type.
+	 */
+	public <T> T getParsed(Class<T> type) {
+		Object value = getParsed();
+		return type.isInstance(value) ? type.cast(value) : null;
+	}
+
+	@Override
+	public String toString() {
+		return sentence;
+	}
+}
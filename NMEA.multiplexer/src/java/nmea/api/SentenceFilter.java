@@ -0,0 +1,195 @@
+package nmea.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The device and sentence filters of a channel, compiled once.
+ * <br>
+ * A device ID (2 characters) or a sentence ID (3 characters) made of upper case letters and digits
+ * is packed in an int (base 36), used as an index in bitsets.
+ * Deciding if a sentence goes through is then a couple of bit lookups, without allocation.
+ * The (rare) IDs with other characters are compared as they are.
+ * <br>
+ * Filters can be negated with <b>~</b>. Positive filters are linked with an <b>or</b>, negative ones with an <b>and</b>
+ * (see {@link NMEAClient}). Device and sentence filters must both let the sentence through.
+ * Blank filters are ignored.
+ *
+ * @see NMEAParser#setDeviceFilters(String[])
+ * @see NMEAParser#setSentenceFilters(String[])
+ */
+public final class SentenceFilter {
+
+	private final static int DEVICE_FROM = 1;
+	private final static int DEVICE_LEN = 2;
+	private final static int SENTENCE_FROM = 3;
+	private final static int SENTENCE_LEN = 3;
+
+	private final static int OTHER = -1;     // Not only upper case letters and digits
+	private final static int TOO_SHORT = -2;
+
+	private final IdSet devices;
+	private final IdSet sentences;
+
+	private SentenceFilter(IdSet devices, IdSet sentences) {
+		this.devices = devices;
+		this.sentences = sentences;
+	}
+
+	/**
+	 * @param deviceFilters   like { "GP", "~II" }. Can be null.
+	 * @param sentenceFilters like { "RMC", "~GSV" }. Can be null.
+	 * @return the filter, null if there is nothing to filter.
+	 */
+	public static SentenceFilter compile(String[] deviceFilters, String[] sentenceFilters) {
+		IdSet devices = IdSet.compile(deviceFilters, DEVICE_FROM, DEVICE_LEN);
+		IdSet sentences = IdSet.compile(sentenceFilters, SENTENCE_FROM, SENTENCE_LEN);
+		if (devices == null && sentences == null) {
+			return null;
+		}
+		return new SentenceFilter(devices, sentences);
+	}
+
+	/**
+	 * @param sentence beginning with '$' or '!', like <code>$GPRMC,...</code>
+	 * @return true if the sentence is to be broadcasted
+	 */
+	public boolean accept(CharSequence sentence) {
+		return (devices == null || devices.accept(sentence)) &&
+						(sentences == null || sentences.accept(sentence));
+	}
+
+	/**
+	 * @return the packed ID found at <code>from</code> in <code>s</code>, {@link #OTHER}, or {@link #TOO_SHORT}
+	 */
+	private static int key(CharSequence s, int from, int len) {
+		if (s.length() < from + len) {
+			return TOO_SHORT;
+		}
+		int key = 0;
+		for (int i = from; i < from + len; i++) {
+			int digit = digit(s.charAt(i));
+			if (digit < 0) {
+				return OTHER;
+			}
+			key = (key * 36) + digit;
+		}
+		return key;
+	}
+
+	private static int digit(char c) {
+		if (c >= 'A' && c <= 'Z') {
+			return c - 'A';
+		}
+		if (c >= '0' && c <= '9') {
+			return 26 + (c - '0');
+		}
+		return -1;
+	}
+
+	/**
+	 * Positive and negative IDs, for one kind of ID (device or sentence).
+	 */
+	private final static class IdSet {
+		private final int from;
+		private final int len;
+		private final long[] positive;
+		private final long[] negative;
+		private final boolean hasPositive;
+		private final String[] otherPositive;
+		private final String[] otherNegative;
+
+		private IdSet(int from, int len, long[] positive, long[] negative, boolean hasPositive, String[] otherPositive, String[] otherNegative) {
+			this.from = from;
+			this.len = len;
+			this.positive = positive;
+			this.negative = negative;
+			this.hasPositive = hasPositive;
+			this.otherPositive = otherPositive;
+			this.otherNegative = otherNegative;
+		}
+
+		static IdSet compile(String[] filters, int from, int len) {
+			if (filters == null) {
+				return null;
+			}
+			int size = 1;
+			for (int i = 0; i < len; i++) {
+				size *= 36;
+			}
+			long[] positive = new long[(size + 63) >>> 6];
+			long[] negative = new long[(size + 63) >>> 6];
+			boolean hasPositive = false;
+			boolean hasNegative = false;
+			List<String> otherPositive = new ArrayList<>();
+			List<String> otherNegative = new ArrayList<>();
+			for (String filter : filters) {
+				if (filter == null) {
+					continue;
+				}
+				String id = filter.trim();
+				boolean negated = id.startsWith("~");
+				if (negated) {
+					id = id.substring(1).trim();
+				}
+				if (id.isEmpty()) {
+					continue;
+				}
+				if (negated) {
+					hasNegative = true;
+				} else {
+					hasPositive = true;
+				}
+				if (id.length() != len) {
+					continue; // Matches nothing, but a positive one still makes the others mandatory
+				}
+				int key = key(id, 0, len);
+				if (key == OTHER) {
+					(negated ? otherNegative : otherPositive).add(id);
+				} else {
+					long[] bits = negated ? negative : positive;
+					bits[key >>> 6] |= (1L << key);
+				}
+			}
+			if (!hasPositive && !hasNegative) {
+				return null;
+			}
+			return new IdSet(from, len,
+							hasPositive ? positive : null,
+							hasNegative ? negative : null,
+							hasPositive,
+							otherPositive.toArray(new String[otherPositive.size()]),
+							otherNegative.toArray(new String[otherNegative.size()]));
+		}
+
+		boolean accept(CharSequence sentence) {
+			int key = key(sentence, from, len);
+			if (key >= 0) {
+				if (negative != null && (negative[key >>> 6] & (1L << key)) != 0) {
+					return false;
+				}
+				return !hasPositive || (positive[key >>> 6] & (1L << key)) != 0;
+			}
+			if (key == TOO_SHORT) {
+				return !hasPositive;
+			}
+			if (matchesOne(sentence, otherNegative)) {
+				return false;
+			}
+			return !hasPositive || matchesOne(sentence, otherPositive);
+		}
+
+		private boolean matchesOne(CharSequence sentence, String[] ids) {
+			for (String id : ids) {
+				boolean match = true;
+				for (int i = 0; match && i < len; i++) {
+					match = (sentence.charAt(from + i) == id.charAt(i));
+				}
+				if (match) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package nmea.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads an NMEA archive, see {@link NMEAArchive} for the format.
+ * <br>
+ * A time range is read by going straight to the first block that can contain it (binary search in the index),
+ * and stops after the last one. The blocks that do not contain any of the requested sentence IDs are not read.
+ * <br>
+ * Sentences are given in the order they were written.
+ */
+public class ArchiveReader implements Closeable {
+
+	/**
+	 * Receives the sentences.
+	 */
+	@FunctionalInterface
+	public interface SentenceVisitor {
+		/**
+		 * @return false to stop reading.
+		 */
+		boolean visit(long time, String sentence);
+	}
+
+	/**
+	 * Receives the sentences, as they are in the archive, without creating any object.
+	 */
+	@FunctionalInterface
+	public interface RecordVisitor {
+		/**
+		 * @param time         when the sentence was received, epoch, in ms
+		 * @param data         contains the sentence. Only valid during the call.
+		 * @param offset       where the sentence begins in data
+		 * @param length       length of the sentence, no end of line
+		 * @param filePosition where the sentence is in the archive file
+		 * @return false to stop reading.
+		 */
+		boolean visit(long time, byte[] data, int offset, int length, long filePosition);
+	}
+
+	private final String fileName;
+	private final FileChannel channel;
+	private final BlockIndex index;
+	private final long[] maxLastTimes;  // Of the blocks before, and including this one
+	private final long[] minFirstTimes; // Of this block, and the ones after it
+
+	public ArchiveReader(String fileName) throws IOException {
+		this.fileName = fileName;
+		this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		try {
+			this.index = BlockIndex.read(channel, fileName);
+		} catch (IOException ioe) {
+			channel.close();
+			throw ioe;
+		}
+		int n = index.nbBlocks;
+		maxLastTimes = new long[n];
+		minFirstTimes = new long[n];
+		for (int i = 0; i < n; i++) {
+			maxLastTimes[i] = i == 0 ? index.lastTimes[i] : Math.max(maxLastTimes[i - 1], index.lastTimes[i]);
+		}
+		for (int i = n - 1; i >= 0; i--) {
+			minFirstTimes[i] = i == n - 1 ? index.firstTimes[i] : Math.min(minFirstTimes[i + 1], index.firstTimes[i]);
+		}
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public int getBlockSize() {
+		return index.blockSize;
+	}
+
+	public int getNbBlocks() {
+		return index.nbBlocks;
+	}
+
+	public long getCreated() {
+		return index.created;
+	}
+
+	public long getNbSentences() {
+		return index.nbSentences();
+	}
+
+	/**
+	 * @return the time of the first sentence, -1 if there is none.
+	 */
+	public long getFrom() {
+		return index.nbBlocks == 0 ? -1L : minFirstTimes[0];
+	}
+
+	/**
+	 * @return the time of the last sentence, -1 if there is none.
+	 */
+	public long getTo() {
+		return index.nbBlocks == 0 ? -1L : maxLastTimes[index.nbBlocks - 1];
+	}
+
+	/**
+	 * @return the number of sentences for each sentence ID (RMC, GLL, ...)
+	 */
+	public Map<String, Long> getSentenceCounts() {
+		Map<String, Long> counts = new LinkedHashMap<>();
+		index.idCounts.forEach((key, count) -> counts.put(NMEAArchive.idString(key), count[0]));
+		return counts;
+	}
+
+	/**
+	 * @param from      epoch, in ms, included
+	 * @param to        epoch, in ms, included
+	 * @param sentences the sentence IDs to read (like RMC, GLL), null for all
+	 * @param visitor   receives the sentences
+	 */
+	public void read(long from, long to, Collection<String> sentences, SentenceVisitor visitor) throws IOException {
+		forEach(from, to, sentences, (time, data, offset, length, filePosition) ->
+						visitor.visit(time, new String(data, offset, length, StandardCharsets.US_ASCII)));
+	}
+
+	/**
+	 * @param from      epoch, in ms, included
+	 * @param to        epoch, in ms, included
+	 * @param sentences the sentence IDs to read (like RMC, GLL), null for all
+	 * @param visitor   receives the sentences
+	 */
+	public void forEach(long from, long to, Collection<String> sentences, RecordVisitor visitor) throws IOException {
+		int[] keys = null;
+		long mask = -1L;
+		if (sentences != null) {
+			keys = sentences.stream().mapToInt(NMEAArchive::idKey).filter(key -> key != -1).toArray();
+			mask = 0L;
+			for (int key : keys) {
+				mask |= NMEAArchive.idMask(key);
+			}
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(index.blockSize);
+		byte[] block = buffer.array();
+		for (int i = firstBlock(from); i < index.nbBlocks && minFirstTimes[i] <= to; i++) {
+			if (index.lastTimes[i] < from || index.firstTimes[i] > to || (index.masks[i] & mask) == 0L) {
+				continue;
+			}
+			long position = index.blockPosition(i);
+			BlockIndex.readFully(channel, buffer, position);
+			if (buffer.limit() < NMEAArchive.BLOCK_HEADER_SIZE) {
+				break;
+			}
+			long firstTime = buffer.getLong(0);
+			int used = Math.min(buffer.getInt(20), buffer.limit());
+			BlockIndex.RecordCursor cursor = new BlockIndex.RecordCursor(block, used, firstTime);
+			while (cursor.next()) {
+				if (cursor.time < from || cursor.time > to) {
+					continue;
+				}
+				if (keys != null && !contains(keys, NMEAArchive.idKey(block, cursor.offset, cursor.length))) {
+					continue;
+				}
+				if (!visitor.visit(cursor.time, block, cursor.offset, cursor.length, position + cursor.offset)) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the first block with sentences at or after from.
+	 */
+	private int firstBlock(long from) {
+		int low = 0;
+		int high = index.nbBlocks;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (maxLastTimes[mid] < from) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private static boolean contains(int[] keys, int key) {
+		for (int k : keys) {
+			if (k == key) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,212 @@
+package nmea.archive;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes an NMEA archive, see {@link NMEAArchive} for the format.
+ * <br>
+ * The sentences are appended to the current block, in memory. A block is written when it is full,
+ * and the current one is also written (in place) every <code>-Darchive.flush.interval</code> ms (default 1000),
+ * so a crash loses at most that much. The index (footer) is written by {@link #close()}.
+ * <br>
+ * An existing archive can be appended to, its footer is then rewritten when it is closed.
+ */
+public class ArchiveWriter implements Closeable {
+
+	private final static long FLUSH_INTERVAL = Long.parseLong(System.getProperty("archive.flush.interval", "1000")); // ms
+
+	private final String fileName;
+	private final FileChannel channel;
+	private final BlockIndex index;
+
+	private final byte[] block;
+	private final ByteBuffer blockBuffer;
+	private int current = 0;      // Index of the block being filled
+	private int used = NMEAArchive.BLOCK_HEADER_SIZE;
+	private int count = 0;
+	private long firstTime = 0L;
+	private long lastTime = 0L;
+	private long mask = 0L;
+	private boolean dirty = false;
+	private long lastFlush = System.currentTimeMillis();
+	private boolean closed = false;
+
+	public ArchiveWriter(String fileName) throws IOException {
+		this(fileName, false, NMEAArchive.DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * @param fileName  the archive
+	 * @param append    if the archive exists, add to it. It is replaced otherwise.
+	 * @param blockSize for a new archive, the one of an existing one is used when appending.
+	 */
+	public ArchiveWriter(String fileName, boolean append, int blockSize) throws IOException {
+		this.fileName = fileName;
+		boolean existing = append && new File(fileName).exists() && new File(fileName).length() > 0;
+		if (existing && !NMEAArchive.isArchive(fileName)) {
+			throw new IOException(String.format("%s exists, and is not an NMEA archive", fileName));
+		}
+		if (existing) {
+			this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ, StandardOpenOption.WRITE);
+			this.index = BlockIndex.read(channel, fileName);
+		} else {
+			if (blockSize <= NMEAArchive.BLOCK_HEADER_SIZE + 256) {
+				throw new IllegalArgumentException(String.format("Block size %d is too small", blockSize));
+			}
+			this.channel = FileChannel.open(Paths.get(fileName),
+							StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			this.index = new BlockIndex(blockSize, System.currentTimeMillis());
+			write(BlockIndex.header(blockSize, index.created), 0L);
+		}
+		this.block = new byte[index.blockSize];
+		this.blockBuffer = ByteBuffer.wrap(block);
+		if (existing && index.nbBlocks > 0) { // Go on with the last block
+			current = index.nbBlocks - 1;
+			BlockIndex.readFully(channel, blockBuffer, index.blockPosition(current));
+			ByteBuffer header = ByteBuffer.wrap(block);
+			firstTime = header.getLong();
+			lastTime = header.getLong();
+			count = header.getInt();
+			used = header.getInt();
+			mask = header.getLong();
+			if (used < NMEAArchive.BLOCK_HEADER_SIZE || used > block.length) { // Should not happen, the index was built from it.
+				throw new IOException(String.format("%s: block %d is damaged", fileName, current));
+			}
+			Arrays.fill(block, used, block.length, (byte) 0);
+		}
+		channel.truncate(index.blockPosition(index.nbBlocks)); // Drops the footer, written again by close()
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public int getBlockSize() {
+		return index.blockSize;
+	}
+
+	/**
+	 * @param time     when the sentence was received, epoch, in ms
+	 * @param sentence the sentence, its end of line is not kept
+	 */
+	public void append(long time, String sentence) throws IOException {
+		byte[] bytes = sentence.getBytes(StandardCharsets.US_ASCII);
+		append(time, bytes, 0, bytes.length);
+	}
+
+	/**
+	 * @param time   when the sentence was received, epoch, in ms
+	 * @param data   contains the sentence
+	 * @param offset where it begins
+	 * @param length its length, its end of line is not kept
+	 */
+	public synchronized void append(long time, byte[] data, int offset, int length) throws IOException {
+		if (closed) {
+			throw new IOException(String.format("%s is closed", fileName));
+		}
+		while (length > 0 && (data[offset + length - 1] == '\n' || data[offset + length - 1] == '\r')) {
+			length--;
+		}
+		if (length == 0) {
+			return;
+		}
+		if (count > 0 && used + maxRecordSize(length) > block.length) {
+			writeBlock();
+			current++;
+			used = NMEAArchive.BLOCK_HEADER_SIZE;
+			count = 0;
+			mask = 0L;
+			Arrays.fill(block, (byte) 0);
+		}
+		if (count == 0) {
+			firstTime = time;
+		}
+		if (used + maxRecordSize(length) > block.length) {
+			throw new IllegalArgumentException(String.format("Sentence too long for a block of %d bytes (%d bytes)", block.length, length));
+		}
+		long delta = time - firstTime;
+		used = putVarLong(block, used, (delta << 1) ^ (delta >> 63)); // Zig-zag, the clock can go back
+		used = putVarLong(block, used, length);
+		System.arraycopy(data, offset, block, used, length);
+		used += length;
+		count++;
+		lastTime = time;
+		int key = NMEAArchive.idKey(data, offset, length);
+		if (key != -1) {
+			mask |= NMEAArchive.idMask(key);
+			index.count(key);
+		}
+		dirty = true;
+		if (System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes the current block to the file.
+	 */
+	public synchronized void flush() throws IOException {
+		if (dirty && !closed) {
+			writeBlock();
+		}
+		lastFlush = System.currentTimeMillis();
+	}
+
+	/**
+	 * Writes what is left, and the index.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			flush();
+			write(index.footer(), index.blockPosition(index.nbBlocks));
+			channel.force(true);
+		} finally {
+			closed = true;
+			channel.close();
+		}
+	}
+
+	private void writeBlock() throws IOException {
+		ByteBuffer header = ByteBuffer.wrap(block);
+		header.putLong(firstTime);
+		header.putLong(lastTime);
+		header.putInt(count);
+		header.putInt(used);
+		header.putLong(mask);
+		blockBuffer.clear();
+		write(blockBuffer, index.blockPosition(current));
+		index.set(current, firstTime, lastTime, count, mask);
+		dirty = false;
+	}
+
+	private void write(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	private static int maxRecordSize(int length) {
+		return 10 + 5 + length;
+	}
+
+	private static int putVarLong(byte[] buffer, int position, long value) {
+		while ((value & ~0x7FL) != 0L) {
+			buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[position++] = (byte) value;
+		return position;
+	}
+}
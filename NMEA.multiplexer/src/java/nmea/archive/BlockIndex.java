@@ -0,0 +1,266 @@
+package nmea.archive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What is known about the blocks of an archive: their times, number of sentences and ID masks, and the number of sentences per ID.
+ * <br>
+ * Written in the footer by the {@link ArchiveWriter}, read back by the {@link ArchiveReader},
+ * or rebuilt from the blocks if the archive was not closed.
+ */
+final class BlockIndex {
+
+	final int blockSize;
+	final long created;
+	int nbBlocks = 0;
+	long[] firstTimes = new long[16];
+	long[] lastTimes = new long[16];
+	int[] counts = new int[16];
+	long[] masks = new long[16];
+	final Map<Integer, long[]> idCounts = new TreeMap<>(); // Key: NMEAArchive.idKey
+
+	BlockIndex(int blockSize, long created) {
+		this.blockSize = blockSize;
+		this.created = created;
+	}
+
+	long blockPosition(int block) {
+		return NMEAArchive.HEADER_SIZE + ((long) block * blockSize);
+	}
+
+	/**
+	 * Sets (or adds) the description of a block.
+	 */
+	void set(int block, long firstTime, long lastTime, int count, long mask) {
+		if (block >= firstTimes.length) {
+			int newLength = Math.max(firstTimes.length * 2, block + 1);
+			firstTimes = Arrays.copyOf(firstTimes, newLength);
+			lastTimes = Arrays.copyOf(lastTimes, newLength);
+			counts = Arrays.copyOf(counts, newLength);
+			masks = Arrays.copyOf(masks, newLength);
+		}
+		firstTimes[block] = firstTime;
+		lastTimes[block] = lastTime;
+		counts[block] = count;
+		masks[block] = mask;
+		nbBlocks = Math.max(nbBlocks, block + 1);
+	}
+
+	void count(int idKey) {
+		long[] count = idCounts.get(idKey);
+		if (count == null) {
+			idCounts.put(idKey, new long[] { 1L });
+		} else {
+			count[0]++;
+		}
+	}
+
+	long nbSentences() {
+		long n = 0;
+		for (int i = 0; i < nbBlocks; i++) {
+			n += counts[i];
+		}
+		return n;
+	}
+
+	static ByteBuffer header(int blockSize, long created) {
+		ByteBuffer header = ByteBuffer.allocate(NMEAArchive.HEADER_SIZE);
+		header.put(NMEAArchive.MAGIC);
+		header.putInt(NMEAArchive.VERSION);
+		header.putInt(blockSize);
+		header.putLong(created);
+		header.clear();
+		return header;
+	}
+
+	/**
+	 * @return the footer and the trailer, ready to be written after the last block.
+	 */
+	ByteBuffer footer() {
+		long footerPosition = blockPosition(nbBlocks);
+		int size = NMEAArchive.FOOTER_MAGIC.length + 4 + (nbBlocks * 28) + 4 + (idCounts.size() * (2 + 3 + 8)) + NMEAArchive.TRAILER_SIZE;
+		ByteBuffer footer = ByteBuffer.allocate(size);
+		footer.put(NMEAArchive.FOOTER_MAGIC);
+		footer.putInt(nbBlocks);
+		for (int i = 0; i < nbBlocks; i++) {
+			footer.putLong(firstTimes[i]);
+			footer.putLong(lastTimes[i]);
+			footer.putInt(counts[i]);
+			footer.putLong(masks[i]);
+		}
+		footer.putInt(idCounts.size());
+		for (Map.Entry<Integer, long[]> idCount : idCounts.entrySet()) {
+			byte[] id = NMEAArchive.idString(idCount.getKey()).getBytes(StandardCharsets.US_ASCII);
+			footer.putShort((short) id.length);
+			footer.put(id);
+			footer.putLong(idCount.getValue()[0]);
+		}
+		footer.putLong(footerPosition);
+		footer.put(NMEAArchive.TRAILER_MAGIC);
+		footer.flip();
+		return footer;
+	}
+
+	/**
+	 * Reads the index of an archive: from its footer if it has one, else from its blocks.
+	 *
+	 * @param channel the archive
+	 * @param name    for the messages
+	 */
+	static BlockIndex read(FileChannel channel, String name) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(NMEAArchive.HEADER_SIZE);
+		readFully(channel, header, 0L);
+		byte[] magic = new byte[NMEAArchive.MAGIC.length];
+		if (header.limit() == NMEAArchive.HEADER_SIZE) {
+			header.get(magic);
+		}
+		if (!Arrays.equals(magic, NMEAArchive.MAGIC)) {
+			throw new IOException(String.format("%s is not an NMEA archive", name));
+		}
+		int version = header.getInt();
+		if (version != NMEAArchive.VERSION) {
+			throw new IOException(String.format("%s: unsupported archive version %d", name, version));
+		}
+		BlockIndex index = new BlockIndex(header.getInt(), header.getLong());
+		if (index.blockSize <= NMEAArchive.BLOCK_HEADER_SIZE) {
+			throw new IOException(String.format("%s: bad block size %d", name, index.blockSize));
+		}
+		if (!index.readFooter(channel)) {
+			index.scan(channel);
+		}
+		return index;
+	}
+
+	private boolean readFooter(FileChannel channel) throws IOException {
+		long size = channel.size();
+		if (size < NMEAArchive.HEADER_SIZE + NMEAArchive.TRAILER_SIZE) {
+			return false;
+		}
+		ByteBuffer trailer = ByteBuffer.allocate(NMEAArchive.TRAILER_SIZE);
+		readFully(channel, trailer, size - NMEAArchive.TRAILER_SIZE);
+		long footerPosition = trailer.getLong();
+		byte[] magic = new byte[NMEAArchive.TRAILER_MAGIC.length];
+		trailer.get(magic);
+		if (!Arrays.equals(magic, NMEAArchive.TRAILER_MAGIC) || footerPosition < NMEAArchive.HEADER_SIZE || footerPosition > size - NMEAArchive.TRAILER_SIZE) {
+			return false;
+		}
+		ByteBuffer footer = ByteBuffer.allocate((int) (size - NMEAArchive.TRAILER_SIZE - footerPosition));
+		readFully(channel, footer, footerPosition);
+		magic = new byte[NMEAArchive.FOOTER_MAGIC.length];
+		footer.get(magic);
+		if (!Arrays.equals(magic, NMEAArchive.FOOTER_MAGIC)) {
+			return false;
+		}
+		int n = footer.getInt();
+		for (int i = 0; i < n; i++) {
+			set(i, footer.getLong(), footer.getLong(), footer.getInt(), footer.getLong());
+		}
+		int nbIds = footer.getInt();
+		for (int i = 0; i < nbIds; i++) {
+			byte[] id = new byte[footer.getShort()];
+			footer.get(id);
+			idCounts.put(NMEAArchive.idKey(new String(id, StandardCharsets.US_ASCII)), new long[] { footer.getLong() });
+		}
+		return true;
+	}
+
+	/**
+	 * No footer, the archive was not closed. Rebuilds the index from the blocks, up to the first empty or truncated one.
+	 */
+	private void scan(FileChannel channel) throws IOException {
+		long size = channel.size();
+		ByteBuffer block = ByteBuffer.allocate(blockSize);
+		for (int i = 0; blockPosition(i) + NMEAArchive.BLOCK_HEADER_SIZE <= size; i++) {
+			readFully(channel, block, blockPosition(i));
+			if (block.limit() < NMEAArchive.BLOCK_HEADER_SIZE) {
+				break;
+			}
+			long firstTime = block.getLong();
+			long lastTime = block.getLong();
+			int count = block.getInt();
+			int used = block.getInt();
+			long mask = block.getLong();
+			if (count <= 0 || used > block.limit() || used < NMEAArchive.BLOCK_HEADER_SIZE) {
+				break;
+			}
+			set(i, firstTime, lastTime, count, mask);
+			RecordCursor cursor = new RecordCursor(block.array(), used, firstTime);
+			while (cursor.next()) {
+				int key = NMEAArchive.idKey(cursor.data, cursor.offset, cursor.length);
+				if (key != -1) {
+					count(key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads from position until the buffer is full, or the end of the file. The buffer is then ready to be read (flipped).
+	 */
+	static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		buffer.clear();
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				break;
+			}
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * Walks the sentences of a block.
+	 */
+	static final class RecordCursor {
+		final byte[] data;
+		private final int used;
+		private final long firstTime;
+		private int position = NMEAArchive.BLOCK_HEADER_SIZE;
+		long time;
+		int offset;
+		int length;
+
+		RecordCursor(byte[] data, int used, long firstTime) {
+			this.data = data;
+			this.used = used;
+			this.firstTime = firstTime;
+		}
+
+		boolean next() {
+			if (position >= used) {
+				return false;
+			}
+			long delta = readVarLong();
+			int len = (int) readVarLong();
+			if (len < 0 || position + len > used) {
+				position = used; // Corrupted, the rest of the block is ignored
+				return false;
+			}
+			time = firstTime + ((delta >>> 1) ^ -(delta & 1)); // Zig-zag
+			offset = position;
+			length = len;
+			position += len;
+			return true;
+		}
+
+		private long readVarLong() {
+			long value = 0L;
+			int shift = 0;
+			while (position < used) {
+				byte b = data[position++];
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					break;
+				}
+				shift += 7;
+			}
+			return value;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package nmea.archive;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The time-indexed NMEA archive format, written by {@link ArchiveWriter}, read by {@link ArchiveReader}.
+ * <br>
+ * <pre>
+ * +--------+---------+---------+-----+---------+--------+---------+
+ * | Header | Block 0 | Block 1 | ... | Block n | Footer | Trailer |
+ * +--------+---------+---------+-----+---------+--------+---------+
+ * </pre>
+ * <ul>
+ *   <li>Header ({@link #HEADER_SIZE} bytes): magic <code>NMEAARC1</code>, version (int), block size (int), creation time (long)</li>
+ *   <li>Blocks, all of the same size, so block <code>i</code> is at <code>HEADER_SIZE + (i * blockSize)</code>.
+ *   Each one begins with ({@link #BLOCK_HEADER_SIZE} bytes) the time of its first and last sentences (long, long),
+ *   its number of sentences (int), the number of bytes used (int, header included), and the mask of the sentence IDs it contains (long, see {@link #idMask(int)}).
+ *   Then the sentences: time (zig-zag varint, in ms, from the first one of the block), length (varint), and the sentence itself, without its end of line.</li>
+ *   <li>Footer, written when the archive is closed: magic <code>NMEAIDX1</code>, number of blocks (int), then for each block
+ *   its first and last times (long, long), its number of sentences (int), its ID mask (long);
+ *   then the number of sentence IDs (int), and for each of them, the ID (short length, bytes) and its count (long).</li>
+ *   <li>Trailer ({@link #TRAILER_SIZE} bytes): where the footer begins (long), magic <code>NMEAEND1</code>.</li>
+ * </ul>
+ * All numbers are big-endian. An archive that was not closed (no footer) can still be read, its blocks are then scanned when it is opened.
+ * <br>
+ * Times are epoch, in ms, when the sentence was received (capture time).
+ */
+public final class NMEAArchive {
+
+	public final static byte[] MAGIC = "NMEAARC1".getBytes(StandardCharsets.US_ASCII);
+	public final static byte[] FOOTER_MAGIC = "NMEAIDX1".getBytes(StandardCharsets.US_ASCII);
+	public final static byte[] TRAILER_MAGIC = "NMEAEND1".getBytes(StandardCharsets.US_ASCII);
+
+	public final static int VERSION = 1;
+	public final static int HEADER_SIZE = 64;
+	public final static int BLOCK_HEADER_SIZE = 32;
+	public final static int TRAILER_SIZE = 16;
+	public final static int DEFAULT_BLOCK_SIZE = 64 * 1_024;
+
+	private NMEAArchive() {
+	}
+
+	/**
+	 * @param fileName a file name
+	 * @return true if the file is an NMEA archive (begins with the magic)
+	 */
+	public static boolean isArchive(String fileName) {
+		try (RandomAccessFile raf = new RandomAccessFile(fileName, "r")) {
+			byte[] magic = new byte[MAGIC.length];
+			return raf.length() >= HEADER_SIZE && raf.read(magic) == magic.length && Arrays.equals(magic, MAGIC);
+		} catch (IOException ioe) {
+			return false;
+		}
+	}
+
+	/**
+	 * The 3-character sentence ID (like <code>RMC</code>) as an int, without creating a String.
+	 *
+	 * @return the ID key, -1 if this is not a sentence.
+	 */
+	public static int idKey(byte[] data, int offset, int length) {
+		if (length < 6 || (data[offset] != '$' && data[offset] != '!')) {
+			return -1;
+		}
+		return ((data[offset + 3] & 0xFF) << 16) | ((data[offset + 4] & 0xFF) << 8) | (data[offset + 5] & 0xFF);
+	}
+
+	public static int idKey(String id) {
+		byte[] bytes = id.getBytes(StandardCharsets.US_ASCII);
+		return bytes.length == 3 ? ((bytes[0] & 0xFF) << 16) | ((bytes[1] & 0xFF) << 8) | (bytes[2] & 0xFF) : -1;
+	}
+
+	public static String idString(int key) {
+		return new String(new byte[] { (byte) (key >> 16), (byte) (key >> 8), (byte) key }, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * @return the bit of this ID in a block mask. Several IDs can share a bit, the mask only says which ones are <i>not</i> in the block.
+	 */
+	public static long idMask(int key) {
+		return 1L << ((key * 0x9E3779B1) >>> 26);
+	}
+}
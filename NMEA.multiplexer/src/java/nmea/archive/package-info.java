@@ -0,0 +1,6 @@
+/**
+ * Time-indexed NMEA archives.
+ *
+ * Sentences stored with the time they were received, in blocks, with an index to read a time range without reading the whole archive.
+ */
+package nmea.archive;
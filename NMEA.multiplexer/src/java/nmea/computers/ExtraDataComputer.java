@@ -4,7 +4,9 @@ import context.ApplicationContext;
 import context.NMEADataCache;
 import nmea.api.Multiplexer;
 import nmea.api.NMEAParser;
+import nmea.api.NMEASentence;
 import nmea.computers.current.LongTimeCurrentCalculator;
+import nmea.forwarders.SentenceForwarder;
 import nmea.parser.Angle180;
 import nmea.parser.Angle180EW;
 import nmea.parser.Angle360;
@@ -21,7 +23,6 @@ import nmea.parser.UTCTime;
 import nmea.parser.Wind;
 import nmea.utils.NMEAUtils;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
@@ -52,12 +53,12 @@ import java.util.stream.Collectors;
  * <br>
  * See {@link ApplicationContext} and {@link NMEADataCache}
  */
-public class ExtraDataComputer extends Computer {
+public class ExtraDataComputer extends Computer implements SentenceForwarder {
 
 	private final static String DEFAULT_PREFIX = "OS"; // OlivSoft
 
 	private String generatedStringsPrefix = DEFAULT_PREFIX;
-	private List<LongTimeCurrentCalculator> longTimeCurrentCalculator = new ArrayList<>();
+	private LongTimeCurrentCalculator longTimeCurrentCalculator = null;
 
 	private final List<String> requiredStrings = Arrays.asList(new String[]{"RMC", "VHW", "VTG", "HDG", "HDM", "HDT", "MWV", "VWR"});
 
@@ -75,25 +76,25 @@ public class ExtraDataComputer extends Computer {
 			throw new RuntimeException("Prefix must exist, and be EXACTLY 2 character long.");
 		}
 		this.generatedStringsPrefix = prefix;
-		for (long bl : tbl) { // in seconds here.
-			LongTimeCurrentCalculator ltcc = new LongTimeCurrentCalculator(bl * 1_000); // In ms here.
-			ltcc.setVerbose(this.verbose);
-			ltcc.start();
-			this.longTimeCurrentCalculator.add(ltcc);
-		}
+		// One calculator (and one sample buffer) for all the buffer lengths
+		long[] bufferLengths = Arrays.stream(tbl).mapToLong(bl -> bl * 1_000).toArray(); // in seconds here, in ms there.
+		this.longTimeCurrentCalculator = new LongTimeCurrentCalculator(bufferLengths);
+		this.longTimeCurrentCalculator.setVerbose(this.verbose);
+		this.longTimeCurrentCalculator.start();
 	}
 
 	/**
 	 * Receives the data, and potentially produces new ones.
+	 * The sentences are parsed only once, see {@link NMEASentence#getParsed()}: the cache has already done it.
 	 *
-	 * @param mess The message to write
+	 * @param nmeaSentence The message to write
 	 */
 	@Override
-	public void write(byte[] mess) {
-		String sentence = new String(mess);
-		if (StringParsers.validCheckSum(sentence)) {
-			String sentenceID = StringParsers.getSentenceID(sentence);
-			if (!generatedStringsPrefix.equals(StringParsers.getDeviceID(sentence)) && // To prevent re-computing of computed data.
+	public void write(NMEASentence nmeaSentence) {
+		String sentence = nmeaSentence.getSentence();
+		if (nmeaSentence.isValid()) {
+			String sentenceID = nmeaSentence.getSentenceID();
+			if (!generatedStringsPrefix.equals(nmeaSentence.getDeviceID()) && // To prevent re-computing of computed data.
 							requiredStrings.contains(sentenceID)) { // Then process
 				if (this.verbose) {
 					System.out.println(">>> TrueWind computer using " + sentence);
@@ -101,7 +102,7 @@ public class ExtraDataComputer extends Computer {
 				NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
 				switch (sentenceID) {
 					case "RMC":
-						RMC rmc = StringParsers.parseRMC(sentence);
+						RMC rmc = nmeaSentence.getParsed(RMC.class);
 						if (rmc != null) {
 							Map<String, Object> rmcMap = new HashMap<>(5);
 							rmcMap.put(NMEADataCache.SOG, new Speed(rmc.getSog()));
@@ -137,7 +138,7 @@ public class ExtraDataComputer extends Computer {
 						}
 						break;
 					case "VTG":
-						OverGround overGround = StringParsers.parseVTG(sentence);
+						OverGround overGround = nmeaSentence.getParsed(OverGround.class);
 						if (overGround != null) {
 							Map<String, Object> map = new HashMap<>(2);
 							map.put(NMEADataCache.COG, new Angle360(overGround.getCourse()));
@@ -146,7 +147,7 @@ public class ExtraDataComputer extends Computer {
 						}
 						break;
 					case "VHW":
-						double[] vhw = StringParsers.parseVHW(sentence);
+						double[] vhw = nmeaSentence.getParsed(double[].class);
 						if (vhw == null)
 							return;
 						double bsp = vhw[StringParsers.BSP_in_VHW];
@@ -156,7 +157,7 @@ public class ExtraDataComputer extends Computer {
 						}
 						break;
 					case "HDG":
-						double[] hdgs = StringParsers.parseHDG(sentence);
+						double[] hdgs = nmeaSentence.getParsed(double[].class);
 						int hdg = (int) hdgs[StringParsers.HDG_in_HDG];
 						double dev = hdgs[StringParsers.DEV_in_HDG];
 						double var = hdgs[StringParsers.VAR_in_HDG];
@@ -173,14 +174,14 @@ public class ExtraDataComputer extends Computer {
 						}
 						break;
 					case "HDM":
-						int hdm = StringParsers.parseHDM(sentence);
+						int hdm = nmeaSentence.getParsed(Integer.class);
 						cache.put(NMEADataCache.HDG_COMPASS, new Angle360(hdm));
 						break;
 					case "HDT":
-						int hdt = StringParsers.parseHDT(sentence);
+						int hdt = nmeaSentence.getParsed(Integer.class);
 						cache.put(NMEADataCache.HDG_TRUE, new Angle360(hdt));
 					case "MWV":
-						Wind mwv = StringParsers.parseMWV(sentence);
+						Wind mwv = nmeaSentence.getParsed(Wind.class);
 						if (mwv != null && mwv instanceof ApparentWind) { // TrueWind not used for now
 							Map<String, Object> map = new HashMap<>(2);
 							map.put(NMEADataCache.AWS, new Speed(mwv.speed));
@@ -192,7 +193,7 @@ public class ExtraDataComputer extends Computer {
 						}
 						break;
 					case "VWR":
-						Wind vwr = StringParsers.parseVWR(sentence);
+						Wind vwr = nmeaSentence.getParsed(Wind.class);
 						if (vwr != null) {
 							Map<String, Object> map = new HashMap<>(2);
 							map.put(NMEADataCache.AWS, new Speed(vwr.speed));
@@ -213,7 +214,7 @@ public class ExtraDataComputer extends Computer {
 				double csp = 0d;
 				int cdr = 0;
 				synchronized (cache) {
-					NMEAUtils.computeAndSendValuesToCache(cache);
+					cache.update(() -> NMEAUtils.computeAndSendValuesToCache(cache));
 					// True Wind
 					try {
 						twa = ((Angle180) cache.get(NMEADataCache.TWA)).getValue();
@@ -286,19 +287,21 @@ public class ExtraDataComputer extends Computer {
 	@Override
 	public void setVerbose(boolean verbose) {
 		super.setVerbose(verbose);
-		this.longTimeCurrentCalculator.stream().forEach(ltcc -> ltcc.setVerbose(verbose));
+		if (this.longTimeCurrentCalculator != null) {
+			this.longTimeCurrentCalculator.setVerbose(verbose);
+		}
 	}
 
 	@Override
 	public void close() {
 		System.out.println("- Stop Computing True Wind, " + this.getClass().getName());
 		if (this.longTimeCurrentCalculator != null) {
-			this.longTimeCurrentCalculator.stream().forEach(ltcc -> ltcc.stop());
+			this.longTimeCurrentCalculator.stop();
 		}
 	}
 
 	public void resetCurrentComputers() {
-		this.longTimeCurrentCalculator.stream().forEach(ltcc -> ltcc.resetBuffers());
+		this.longTimeCurrentCalculator.resetBuffers();
 	}
 
 	public static class ComputerBean {
@@ -330,13 +333,11 @@ public class ExtraDataComputer extends Computer {
 			this.cls = instance.getClass().getName();
 			this.cacheSize = ApplicationContext.getInstance().getDataCache().size();
 			this.verbose = instance.isVerbose();
-			this.timeBufferLength = instance.longTimeCurrentCalculator
-							.stream()
-							.map(ltcc -> String.valueOf(ltcc.getBufferLength()))
+			this.timeBufferLength = Arrays.stream(instance.longTimeCurrentCalculator.getBufferLengths())
+							.mapToObj(String::valueOf)
 							.collect(Collectors.joining(", "));
-			this.tbSize = instance.longTimeCurrentCalculator
-							.stream()
-							.map(ltcc -> String.valueOf(ltcc.getBufferSize()))
+			this.tbSize = Arrays.stream(instance.longTimeCurrentCalculator.getBufferSizes())
+							.mapToObj(String::valueOf)
 							.collect(Collectors.joining(", "));
 			this.prefix = instance.generatedStringsPrefix;
 		}
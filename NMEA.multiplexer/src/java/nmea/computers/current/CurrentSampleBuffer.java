@@ -0,0 +1,132 @@
+package nmea.computers.current;
+
+/**
+ * The samples (time, position, dead reckoning leg) used by the {@link LongTimeCurrentCalculator}, shared by all its buffer lengths.
+ * <br>
+ * A ring buffer, one array per field (no object per sample). The samples are identified by a sequence number,
+ * that keeps growing, {@link #first()} is the oldest one still there, {@link #next()} the one the next sample will get.
+ * <br>
+ * The leg of a sample is the dead reckoning from the previous one: BSP (of this sample) during the time elapsed,
+ * along the CMG of the previous sample. In nautical miles, East and North, on the plane tangent at the sample.
+ * <br>
+ * Not thread-safe.
+ */
+final class CurrentSampleBuffer {
+
+	private final static int INITIAL_CAPACITY = 64;
+
+	private long[] time;
+	private double[] lat;
+	private double[] lng;
+	private double[] legEast;
+	private double[] legNorth;
+	private int mask;
+
+	private long first = 0L;
+	private long next = 0L;
+	private double lastCmg = 0d;
+
+	CurrentSampleBuffer() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	private void allocate(int capacity) {
+		time = new long[capacity];
+		lat = new double[capacity];
+		lng = new double[capacity];
+		legEast = new double[capacity];
+		legNorth = new double[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * @param t   epoch, in ms. Must be after the one of the previous sample.
+	 * @param lat latitude, degrees
+	 * @param lng longitude, degrees
+	 * @param cmg course made good, degrees, used for the leg of the next sample
+	 * @param bsp boat speed, knots
+	 * @return the sequence number of the sample
+	 */
+	long add(long t, double lat, double lng, double cmg, double bsp) {
+		if (next - first == time.length) {
+			grow();
+		}
+		double east = 0d;
+		double north = 0d;
+		if (next > first && bsp > 0) {
+			double dist = bsp * ((double) (t - time(next - 1)) / 3_600_000d); // in nm
+			east = dist * Math.sin(Math.toRadians(lastCmg));
+			north = dist * Math.cos(Math.toRadians(lastCmg));
+		}
+		int idx = (int) (next & mask);
+		this.time[idx] = t;
+		this.lat[idx] = lat;
+		this.lng[idx] = lng;
+		this.legEast[idx] = east;
+		this.legNorth[idx] = north;
+		this.lastCmg = cmg;
+		return next++;
+	}
+
+	private void grow() {
+		long[] oldTime = time;
+		double[] oldLat = lat;
+		double[] oldLng = lng;
+		double[] oldEast = legEast;
+		double[] oldNorth = legNorth;
+		int oldMask = mask;
+		allocate(oldTime.length * 2);
+		for (long seq = first; seq < next; seq++) {
+			int from = (int) (seq & oldMask);
+			int to = (int) (seq & mask);
+			time[to] = oldTime[from];
+			lat[to] = oldLat[from];
+			lng[to] = oldLng[from];
+			legEast[to] = oldEast[from];
+			legNorth[to] = oldNorth[from];
+		}
+	}
+
+	/**
+	 * Forgets the samples before <code>seq</code>.
+	 */
+	void dropBefore(long seq) {
+		first = Math.max(first, Math.min(seq, next));
+	}
+
+	void clear() {
+		first = next;
+	}
+
+	long first() {
+		return first;
+	}
+
+	long next() {
+		return next;
+	}
+
+	boolean isEmpty() {
+		return next == first;
+	}
+
+	long time(long seq) {
+		return time[(int) (seq & mask)];
+	}
+
+	double lat(long seq) {
+		return lat[(int) (seq & mask)];
+	}
+
+	double lng(long seq) {
+		return lng[(int) (seq & mask)];
+	}
+
+	double legEast(long seq) {
+		return legEast[(int) (seq & mask)];
+	}
+
+	double legNorth(long seq) {
+		return legNorth[(int) (seq & mask)];
+	}
+}
@@ -8,15 +8,13 @@ import nmea.parser.Speed;
 import nmea.parser.UTCDate;
 import nmea.parser.UTCHolder;
 import nmea.parser.UTCTime;
-import util.MercatorUtil;
-import util.greatcircle.GreatCirclePoint;
-import util.greatcircle.GreatCircle;
 
 import java.text.NumberFormat;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * Does the current - speed and direction - over a given period of time, rather than
@@ -25,34 +23,90 @@ import java.util.Map;
  *
  * It requires GPS Data, Apparent Wind Data, Heading, Deviation and Deviation.
  * There is a section dedicated to those details at http://www.lediouris.net/RaspberryPI/_Articles/readme.html.
+ * <br>
+ * The current is the difference between the ground track (GPS) and the dead reckoning track (BSP and CMG),
+ * from the oldest sample of the buffer to the latest one.
+ * The samples are kept in one {@link CurrentSampleBuffer}, shared by all the buffer lengths.
+ * For each buffer length, the sum of the dead reckoning legs is maintained incrementally
+ * (the leg of the new sample is added, the ones of the samples going out of the buffer are subtracted),
+ * every tick is O(1), whatever the length of the buffers.
  */
 public class LongTimeCurrentCalculator {
 	private boolean verbose = false;
 	// buffer.length in milliseconds
 	public final static long DEFAULT_BUFFER_LENGTH = 600_000L; // Milli Seconds
-	private long bufferLength = Long.parseLong(System.getProperty("buffer.length", String.valueOf(DEFAULT_BUFFER_LENGTH))); // Default 10 minutes
+
+	// The running sums are re-computed from the samples after that many updates, to not accumulate rounding errors.
+	private final static int EXACT_SUM_INTERVAL = 3_600;
 
 	private Thread watcher = null;
 	private boolean keepWatching = true;
 	private long betweenLoops = 1_000L; // 1 sec
 
-	// Time, Position, CMG, BSP.
-	private List<TimeCurrent> timeCurrent = new ArrayList<>();
-	private List<UTCHolder> timeBuffer = new ArrayList<>();
-	private List<GeoPos> positionBuffer = new ArrayList<>();
-	private List<Angle360> cmgBuffer = new ArrayList<>();
-	private List<Angle360> hdgBuffer = new ArrayList<>();
-	private List<Speed> bspBuffer = new ArrayList<>();
+	private final CurrentSampleBuffer samples = new CurrentSampleBuffer();
+	private Window[] windows;
+
+	/**
+	 * One buffer length: the samples from <code>start</code> to the latest one, and the sum of their legs.
+	 */
+	private final static class Window {
+		private final long bufferLength;
+		private long start;
+		private double sumEast = 0d;
+		private double sumNorth = 0d;
+		private int updates = 0;
+
+		Window(long bufferLength, long start) {
+			this.bufferLength = bufferLength;
+			this.start = start;
+		}
+
+		/**
+		 * The new sample is <code>samples.next() - 1</code>
+		 */
+		void add(CurrentSampleBuffer samples) {
+			long latest = samples.next() - 1;
+			if (latest > start) {
+				sumEast += samples.legEast(latest);
+				sumNorth += samples.legNorth(latest);
+			}
+			long oldestToKeep = samples.time(latest) - bufferLength;
+			while (start < latest && samples.time(start) < oldestToKeep) {
+				start++;
+				// The leg leading to the new oldest sample is not in the buffer anymore
+				sumEast -= samples.legEast(start);
+				sumNorth -= samples.legNorth(start);
+			}
+			if (++updates >= EXACT_SUM_INTERVAL) {
+				rebuild(samples);
+			}
+		}
+
+		void rebuild(CurrentSampleBuffer samples) {
+			start = Math.max(start, samples.first());
+			sumEast = 0d;
+			sumNorth = 0d;
+			for (long seq = start + 1; seq < samples.next(); seq++) {
+				sumEast += samples.legEast(seq);
+				sumNorth += samples.legNorth(seq);
+			}
+			updates = 0;
+		}
 
-	private GreatCirclePoint[] groundData = null;
-	private GreatCirclePoint[] drData = null;
+		int size(CurrentSampleBuffer samples) {
+			return (int) (samples.next() - start);
+		}
+	}
 
 	public LongTimeCurrentCalculator() {
 		this(DEFAULT_BUFFER_LENGTH);
 	}
 
-	public LongTimeCurrentCalculator(long bufferLength) {
-		this.bufferLength = bufferLength;
+	/**
+	 * @param bufferLengths the time buffer lengths to compute the current on, in ms. One sample buffer is shared by all of them.
+	 */
+	public LongTimeCurrentCalculator(long... bufferLengths) {
+		setBufferLengths(bufferLengths);
 	}
 
 	public boolean isVerbose() {
@@ -63,12 +117,32 @@ public class LongTimeCurrentCalculator {
 		this.verbose = verbose;
 	}
 
-	public long getBufferLength() {
-		return bufferLength;
+	/**
+	 * @return the longest buffer length, in ms
+	 */
+	public synchronized long getBufferLength() {
+		return windows[windows.length - 1].bufferLength;
+	}
+
+	/**
+	 * @return the buffer lengths, in ms, shortest first
+	 */
+	public synchronized long[] getBufferLengths() {
+		return Arrays.stream(windows).mapToLong(window -> window.bufferLength).toArray();
+	}
+
+	/**
+	 * @return the number of samples in the longest buffer
+	 */
+	public synchronized int getBufferSize() {
+		return windows[windows.length - 1].size(samples);
 	}
 
-	public int getBufferSize() {
-		return timeCurrent.size();
+	/**
+	 * @return the number of samples in each buffer, in the order of {@link #getBufferLengths()}
+	 */
+	public synchronized int[] getBufferSizes() {
+		return Arrays.stream(windows).mapToInt(window -> window.size(samples)).toArray();
 	}
 
 	/**
@@ -76,16 +150,28 @@ public class LongTimeCurrentCalculator {
 	 * @param bufferLength in ms.
 	 */
 	public void setBufferLength(long bufferLength) {
-		this.bufferLength = bufferLength;
+		setBufferLengths(bufferLength);
+	}
+
+	/**
+	 * @param bufferLengths in ms. The samples already there are kept.
+	 */
+	public synchronized void setBufferLengths(long... bufferLengths) {
+		if (bufferLengths == null || bufferLengths.length == 0) {
+			throw new IllegalArgumentException("At least one buffer length is required");
+		}
+		long[] sorted = bufferLengths.clone();
+		Arrays.sort(sorted);
+		Window[] newWindows = new Window[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			newWindows[i] = new Window(sorted[i], samples.first());
+			newWindows[i].rebuild(samples);
+		}
+		this.windows = newWindows;
 	}
 
-	public void resetBuffers() {
-		timeCurrent = new ArrayList<>();
-		timeBuffer = new ArrayList<>();
-		positionBuffer = new ArrayList<>();
-		cmgBuffer = new ArrayList<>();
-		hdgBuffer = new ArrayList<>();
-		bspBuffer = new ArrayList<>();
+	public synchronized void resetBuffers() {
+		resetDataBuffers();
 	}
 
 	public void start() {
@@ -104,154 +190,7 @@ public class LongTimeCurrentCalculator {
 						if (verbose)
 							System.out.println("There is a cache...");
 						try {
-				//    synchronized (cache)
-							{
-								Object ot = /*(UTCDate)*/cache.get(NMEADataCache.GPS_DATE_TIME);
-								if (ot == null) {
-									ot = /*(UTCTime)*/cache.get(NMEADataCache.GPS_TIME);
-									if (verbose) System.out.println("Time from NMEADataCache.GPS_TIME");
-								} else if (verbose)
-									System.out.println("Time from NMEADataCache.GPS_DATE_TIME");
-
-								UTCHolder utcDate = null;
-								if (ot instanceof UTCDate)
-									utcDate = new UTCHolder((UTCDate) ot);
-								else
-									utcDate = new UTCHolder((UTCTime) ot);
-								Angle360 cmg = null;
-								try { cmg = (Angle360) cache.get(NMEADataCache.CMG); } catch (Exception ex) {}
-								GeoPos position = null;
-								try { position = (GeoPos) cache.get(NMEADataCache.POSITION); } catch (Exception ex) {}
-								Speed bsp = null;
-								try { bsp = (Speed) cache.get(NMEADataCache.BSP); } catch (Exception ex) {}
-								Angle360 hdg = null;
-								try { hdg = (Angle360) cache.get(NMEADataCache.HDG_TRUE); } catch (Exception ex) {}
-								// From a file: reset?
-								//            if (timeBuffer.size() > 1 && ((timeBuffer.get(timeBuffer.size() - 1).getValue().getTime() > utcDate.getValue().getTime())))
-								if (timeBuffer != null &&
-												timeBuffer.size() > 1 &&
-												timeBuffer.get(timeBuffer.size() - 1) != null &&
-												!timeBuffer.get(timeBuffer.size() - 1).isNull() &&
-												utcDate != null &&
-												!utcDate.isNull() &&
-												utcDate.getValue() != null &&
-												((timeBuffer.get(timeBuffer.size() - 1).getValue().getTime() - utcDate.getValue().getTime()) > 1_000)) {
-									// Buffer Reset
-						//    System.out.println("== Reseting data buffers: last date in buffer=[" + SDF2.format(timeBuffer.get(timeBuffer.size() - 1).getValue()) + "] > current Date=[" + SDF2.format(utcDate.getValue()) + "]");
-									resetDataBuffers();
-								}
-
-								if (timeBuffer != null &&
-												utcDate != null &&
-												!utcDate.isNull() &&
-												utcDate.getValue() != null &&
-												(timeBuffer.size() == 0 ||
-																(timeBuffer.size() > 0 &&
-																				timeBuffer.get(timeBuffer.size() - 1).getValue() != null &&
-																				(timeBuffer.get(timeBuffer.size() - 1).getValue().getTime() < utcDate.getValue().getTime())))) {
-									if (utcDate != null && cmg != null && position != null && bsp != null && hdg != null) {
-										if (timeBuffer.size() > 0) {
-											UTCHolder oldest = timeBuffer.get(0);
-											boolean keepGoing = true;
-
-											while (keepGoing && oldest.getValue().getTime() < (utcDate.getValue().getTime() - bufferLength)) {
-												timeBuffer.remove(0);
-												positionBuffer.remove(0);
-												cmgBuffer.remove(0);
-												bspBuffer.remove(0);
-												hdgBuffer.remove(0);
-
-												if (timeBuffer.size() > 0)
-													oldest = timeBuffer.get(0);
-												else
-													keepGoing = false;
-											}
-										}
-
-										timeBuffer.add(utcDate);
-										positionBuffer.add(position);
-										//                System.out.println("Adding position:" + position.toString());
-										cmgBuffer.add(cmg);
-										bspBuffer.add(bsp);
-										hdgBuffer.add(hdg);
-										groundData = new GreatCirclePoint[positionBuffer.size()];
-										int index = 0;
-										for (GeoPos gp : positionBuffer) {
-											groundData[index++] = new GreatCirclePoint(gp.lat, gp.lng);
-										}
-										index = 0;
-										drData = new GreatCirclePoint[positionBuffer.size()];
-										GeoPos drPos = positionBuffer.get(0);
-										int size = positionBuffer.size();
-										for (int i = 0; i < size; i++) {
-											if (i > 0) {
-												long timeInterval = timeBuffer.get(i).getValue().getTime() - timeBuffer.get(i - 1).getValue().getTime();
-												double bspeed = bspBuffer.get(i).getDoubleValue();
-												//                    System.out.println("-- TimeInterval:" + timeInterval + ", bsp:" + bspeed);
-												if (bspeed > 0) {
-													double dist = bspeed * ((double) timeInterval / (double) 3_600_000L); // in minutes (miles)
-													double rv = cmgBuffer.get(i - 1).getValue();
-													//                      System.out.println("** In " + timeInterval + " ms, at " + bspeed + " kts, from " + drPos.toString() + " dist:" + dist + ", hdg:" + hdg + "... ");
-													if (dist > 0) {
-														GreatCirclePoint pt = MercatorUtil.deadReckoning(drPos.lat, drPos.lng, dist, rv);
-														//                        System.out.println("In " + timeInterval + " ms, from " + drPos.toString() + " dist:" + dist + ", hdg:" + hdg + ", ends up " + pt.toString());
-														drPos = new GeoPos(pt.getL(), pt.getG());
-													}
-												}
-											}
-											drData[i] = new GreatCirclePoint(drPos.lat, drPos.lng);
-										}
-										GreatCirclePoint geoFrom = new GreatCirclePoint(Math.toRadians(drData[drData.length - 1].getL()),
-														Math.toRadians(drData[drData.length - 1].getG()));
-										GreatCirclePoint geoTo = new GreatCirclePoint(Math.toRadians(groundData[groundData.length - 1].getL()),
-														Math.toRadians(groundData[groundData.length - 1].getG()));
-										double dist = GreatCircle.calculateRhumLineDistance(geoFrom, geoTo);
-										double dir = Math.toDegrees(GreatCircle.calculateRhumLineRoute(geoFrom, geoTo));
-										double hourRatio = (double) (timeBuffer.get(timeBuffer.size() - 1).getValue().getTime() - timeBuffer.get(0).getValue().getTime()) / (double) 3_600_000L;
-										double speed = dist / hourRatio;
-										timeCurrent.add(new TimeCurrent(timeBuffer.get(timeBuffer.size() - 1).getValue().getTime(), speed, dir));
-										// trim current buffer
-										long oldest = timeCurrent.get(0).getTime();
-										boolean keepGoing = true;
-										while (keepGoing && oldest < (timeCurrent.get(timeCurrent.size() - 1).getTime() - bufferLength)) {
-											timeCurrent.remove(0);
-											if (timeBuffer.size() > 0)
-												oldest = timeCurrent.get(0).getTime();
-											else
-												keepGoing = false;
-										}
-										if (verbose)
-											System.out.println("Inserting Current: on:" + NumberFormat.getInstance().format(bufferLength) + " ms, " + speed + " kts, dir:" + dir);
-
-										((Map<Long, NMEADataCache.CurrentDefinition>) ApplicationContext.getInstance().getDataCache().get(NMEADataCache.CALCULATED_CURRENT)).put(bufferLength,
-														new NMEADataCache.CurrentDefinition(
-																		bufferLength,
-																		new Speed(speed),
-																		new Angle360(dir),
-																		timeBuffer.size(),
-																		timeBuffer.get(0).toString(),
-																		timeBuffer.get(timeBuffer.size() - 1).toString(),
-																		timeBuffer.get(timeBuffer.size() - 1).getValue().getTime() - timeBuffer.get(0).getValue().getTime()));
-
-										if (verbose) {
-											Map<Long, NMEADataCache.CurrentDefinition> map = (Map<Long, NMEADataCache.CurrentDefinition>) ApplicationContext.getInstance().getDataCache().get(NMEADataCache.CALCULATED_CURRENT);
-											System.out.println("Calculated Current Map:" + map.size() + " entry(ies)");
-										}
-									}
-								} else if (verbose) {
-									//  if (!utcDate.isNull() && (timeBuffer.size() == 0 || (timeBuffer.size() > 0 && (timeBuffer.get(timeBuffer.size() - 1).getValue().getTime() < utcDate.getValue().getTime()))))
-									System.out.println("utcDate is " + (utcDate == null || utcDate.isNull() ? "" : "not ") + "null");
-									System.out.println("timeBuffer.size() = " + timeBuffer.size());
-									System.out.println("utcDate        :" + (utcDate.isNull() ? "" : new Date(utcDate.getValue().getTime()).toString()));
-									System.out.println("last timeBuffer:" + (timeBuffer.size() > 0 ? new Date(timeBuffer.get(timeBuffer.size() - 1).getValue().getTime()).toString() : "none"));
-									try {
-										if (timeBuffer.size() > 0)
-											System.out.println("-> " + ((timeBuffer.get(timeBuffer.size() - 1).getValue().getTime() < utcDate.getValue().getTime()) ? "true" : "false"));
-									} catch (Exception ex) {
-										ex.printStackTrace();
-									}
-								}
-							}
+							sample(cache);
 						} catch (Exception ex) {
 							ex.printStackTrace();
 						}
@@ -275,44 +214,123 @@ public class LongTimeCurrentCalculator {
 		watcher.start();
 	}
 
-	private void resetDataBuffers() {
-		timeBuffer = new ArrayList<>();
-		positionBuffer = new ArrayList<>();
-		cmgBuffer = new ArrayList<>();
-		hdgBuffer = new ArrayList<>();
-		bspBuffer = new ArrayList<>();
-		timeCurrent = new ArrayList<>();
-	}
+	/**
+	 * One tick: takes a sample from the cache, and puts the current for each buffer length in it.
+	 */
+	private synchronized void sample(NMEADataCache cache) {
+		Object ot = /*(UTCDate)*/cache.get(NMEADataCache.GPS_DATE_TIME);
+		if (ot == null) {
+			ot = /*(UTCTime)*/cache.get(NMEADataCache.GPS_TIME);
+			if (verbose) System.out.println("Time from NMEADataCache.GPS_TIME");
+		} else if (verbose)
+			System.out.println("Time from NMEADataCache.GPS_DATE_TIME");
 
-	public void stop() {
-		System.out.println("    " + this.getClass().getName() + "(" + NumberFormat.getInstance().format(this.bufferLength) + " ms) is terminating (at epoch " + System.currentTimeMillis() + ")");
-		keepWatching = false;
-		synchronized (watcher) {
-			watcher.notify();
-		}
-	}
+		UTCHolder utcDate = null;
+		if (ot instanceof UTCDate)
+			utcDate = new UTCHolder((UTCDate) ot);
+		else if (ot instanceof UTCTime)
+			utcDate = new UTCHolder((UTCTime) ot);
+		Angle360 cmg = null;
+		try { cmg = (Angle360) cache.get(NMEADataCache.CMG); } catch (Exception ex) {}
+		GeoPos position = null;
+		try { position = (GeoPos) cache.get(NMEADataCache.POSITION); } catch (Exception ex) {}
+		Speed bsp = null;
+		try { bsp = (Speed) cache.get(NMEADataCache.BSP); } catch (Exception ex) {}
+		Angle360 hdg = null;
+		try { hdg = (Angle360) cache.get(NMEADataCache.HDG_TRUE); } catch (Exception ex) {}
 
-	private static class TimeCurrent {
-		private final long time;
-		private final double speed;
-		private final double dir;
+		if (utcDate == null || utcDate.isNull() || utcDate.getValue() == null) {
+			if (verbose)
+				System.out.println("utcDate is null");
+			return;
+		}
+		long now = utcDate.getValue().getTime();
+		long latestTime = samples.isEmpty() ? Long.MIN_VALUE : samples.time(samples.next() - 1);
+		// From a file: reset?
+		if (samples.next() - samples.first() > 1 && (latestTime - now) > 1_000) {
+			// Buffer Reset
+			resetDataBuffers();
+			latestTime = Long.MIN_VALUE;
+		}
+		if (latestTime >= now) {
+			if (verbose) {
+				System.out.println("utcDate        :" + new Date(now).toString());
+				System.out.println("last in buffer :" + new Date(latestTime).toString());
+			}
+			return;
+		}
+		if (cmg == null || position == null || bsp == null || hdg == null) {
+			return;
+		}
 
-		public TimeCurrent(long time, double speed, double dir) {
-			this.time = time;
-			this.speed = speed;
-			this.dir = dir;
+		samples.add(now, position.lat, position.lng, cmg.getValue(), bsp.getDoubleValue());
+		for (Window window : windows) {
+			window.add(samples);
 		}
+		samples.dropBefore(Arrays.stream(windows).mapToLong(window -> window.start).min().getAsLong());
 
-		public long getTime() {
-			return time;
+		Map<Long, NMEADataCache.CurrentDefinition> cachedMap = (Map<Long, NMEADataCache.CurrentDefinition>) cache.get(NMEADataCache.CALCULATED_CURRENT);
+		// The cached map is immutable, shared by the snapshots. Modify a copy.
+		Map<Long, NMEADataCache.CurrentDefinition> currentMap = (cachedMap != null) ? new HashMap<>(cachedMap) : null;
+		long latest = samples.next() - 1;
+		for (Window window : windows) {
+			long oldestTime = samples.time(window.start);
+			double hourRatio = (double) (now - oldestTime) / (double) 3_600_000L;
+			if (hourRatio <= 0) {
+				continue; // Only one sample
+			}
+			// Ground track, minus dead reckoning track. On the plane tangent at the middle of the ground track.
+			double dLng = samples.lng(latest) - samples.lng(window.start);
+			if (dLng > 180d) {
+				dLng -= 360d;
+			} else if (dLng < -180d) {
+				dLng += 360d;
+			}
+			double midLat = Math.toRadians((samples.lat(latest) + samples.lat(window.start)) / 2d);
+			double east = (dLng * 60d * Math.cos(midLat)) - window.sumEast;
+			double north = ((samples.lat(latest) - samples.lat(window.start)) * 60d) - window.sumNorth;
+			double dist = Math.sqrt((east * east) + (north * north));
+			double dir = Math.toDegrees(Math.atan2(east, north));
+			if (dir < 0) {
+				dir += 360d;
+			}
+			double speed = dist / hourRatio;
+			if (verbose)
+				System.out.println("Inserting Current: on:" + NumberFormat.getInstance().format(window.bufferLength) + " ms, " + speed + " kts, dir:" + dir);
+			if (currentMap != null) {
+				currentMap.put(window.bufferLength,
+								new NMEADataCache.CurrentDefinition(
+												window.bufferLength,
+												new Speed(speed),
+												new Angle360(dir),
+												window.size(samples),
+												new UTCHolder(new UTCDate(new Date(oldestTime))).toString(),
+												utcDate.toString(),
+												now - oldestTime));
+			}
 		}
+		if (currentMap != null) {
+			cache.put(NMEADataCache.CALCULATED_CURRENT, currentMap);
+			if (verbose) {
+				System.out.println("Calculated Current Map:" + currentMap.size() + " entry(ies)");
+			}
+		}
+	}
 
-		public double getSpeed() {
-			return speed;
+	private void resetDataBuffers() {
+		samples.clear();
+		for (Window window : windows) {
+			window.rebuild(samples);
 		}
+	}
 
-		public double getDir() {
-			return dir;
+	public void stop() {
+		System.out.println("    " + this.getClass().getName() + "(" +
+						Arrays.stream(getBufferLengths()).mapToObj(bl -> NumberFormat.getInstance().format(bl)).collect(Collectors.joining(", ")) +
+						" ms) is terminating (at epoch " + System.currentTimeMillis() + ")");
+		keepWatching = false;
+		synchronized (watcher) {
+			watcher.notify();
 		}
 	}
 }
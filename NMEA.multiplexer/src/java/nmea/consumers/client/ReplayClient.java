@@ -0,0 +1,149 @@
+package nmea.consumers.client;
+
+import nmea.api.Multiplexer;
+import nmea.api.NMEAClient;
+import nmea.api.NMEAEvent;
+import nmea.consumers.reader.ReplayReader;
+
+/**
+ * Replays a log file, with the timing of the logged data. See {@link ReplayReader}.
+ */
+public class ReplayClient extends NMEAClient {
+	public ReplayClient() {
+		this(null, null, null);
+	}
+
+	public ReplayClient(Multiplexer mux) {
+		this(null, null, mux);
+	}
+
+	public ReplayClient(String[] s, String[] sa) {
+		this(s, sa, null);
+	}
+
+	public ReplayClient(String[] s, String[] sa, Multiplexer mux) {
+		super(s, sa, mux);
+		this.verbose = "true".equals(System.getProperty("replay.data.verbose", "false"));
+	}
+
+	@Override
+	public void dataDetectedEvent(NMEAEvent e) {
+		if (verbose)
+			System.out.println(">> ReplayClient >> Received from File:" + e.getContent());
+		if (multiplexer != null) {
+			multiplexer.onData(e.getContent());
+		}
+	}
+
+	private static ReplayClient nmeaClient = null;
+
+	public static class ReplayBean implements ClientBean {
+		private String cls;
+		private String file;
+		private String speed; // "max", or a factor
+		private Boolean loop; // null: unchanged
+		private String seek;  // Input only, see ReplayReader.seek
+		private int nbSentences;
+		private int position;
+		private String currentTime;
+		private String type = "replay";
+		private String[] deviceFilters;
+		private String[] sentenceFilters;
+		private boolean verbose;
+
+		public ReplayBean(ReplayClient instance) {
+			ReplayReader reader = (ReplayReader) instance.getReader();
+			cls = instance.getClass().getName();
+			file = reader.getFileName();
+			speed = reader.getSpeed() == ReplayReader.MAX_SPEED ? "max" : String.valueOf(reader.getSpeed());
+			loop = reader.isLoop();
+			nbSentences = reader.getNbSentences();
+			position = reader.getPosition();
+			currentTime = reader.getCurrentTime();
+			verbose = instance.isVerbose();
+			deviceFilters = instance.getDevicePrefix();
+			sentenceFilters = instance.getSentenceArray();
+		}
+
+		@Override
+		public String getType() {
+			return this.type;
+		}
+
+		public String getFile() {
+			return file;
+		}
+
+		public String getSpeed() {
+			return speed;
+		}
+
+		public Boolean getLoop() {
+			return loop;
+		}
+
+		public String getSeek() {
+			return seek;
+		}
+
+		@Override
+		public boolean getVerbose() {
+			return this.verbose;
+		}
+
+		@Override
+		public String[] getDeviceFilters() { return this.deviceFilters; };
+
+		@Override
+		public String[] getSentenceFilters() { return this.sentenceFilters; };
+	}
+
+	@Override
+	public Object getBean() {
+		return new ReplayBean(this);
+	}
+
+	/**
+	 * Applies what is set in the bean (speed, loop, seek) to the reader.
+	 *
+	 * @param bean as received by the REST interface
+	 */
+	public void setReplayParameters(ReplayBean bean) {
+		ReplayReader reader = (ReplayReader) this.getReader();
+		if (bean.getSpeed() != null) {
+			reader.setSpeed(bean.getSpeed());
+		}
+		if (bean.getLoop() != null) {
+			reader.setLoop(bean.getLoop());
+		}
+		if (bean.getSeek() != null) {
+			reader.seek(bean.getSeek());
+		}
+	}
+
+	public static void main(String[] args) {
+		System.out.println("ReplayClient invoked with " + args.length + " Parameter(s).");
+		for (String s : args)
+			System.out.println("ReplayClient prm:" + s);
+
+		String dataFile = "./sample.data/2017.06.10.nmea";
+		if (args.length > 0)
+			dataFile = args[0];
+
+		nmeaClient = new ReplayClient(null, new String[] { "RMC", "GLL" }, null);
+
+		Runtime.getRuntime().addShutdownHook(new Thread("ReplayClient shutdown hook") {
+			public void run() {
+				System.out.println("Shutting down nicely.");
+				nmeaClient.stopDataRead();
+			}
+		});
+
+		nmeaClient.initClient();
+		ReplayReader reader = new ReplayReader(nmeaClient.getListeners(), dataFile);
+		if (args.length > 1)
+			reader.setSpeed(args[1]);
+		nmeaClient.setReader(reader);
+		nmeaClient.startWorking();
+	}
+}
@@ -0,0 +1,551 @@
+package nmea.consumers.reader;
+
+import nmea.api.NMEAEvent;
+import nmea.api.NMEAListener;
+import nmea.api.NMEAReader;
+import nmea.archive.ArchiveReader;
+import nmea.archive.NMEAArchive;
+import nmea.parser.StringParsers;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replays a log file, with the timing of the logged data.
+ * <br>
+ * The file is memory-mapped, and indexed once: where each sentence is, and when it was logged.
+ * The time comes from
+ * <ul>
+ *   <li>the capture timestamp at the beginning of the line, if there is one (epoch, in ms, followed by a space, a tab, a comma, a semicolon or a pipe),</li>
+ *   <li>else from the RMC, ZDA, GGA sentences (the ones without time are spread evenly between two of those).</li>
+ * </ul>
+ * An archive (see {@link NMEAArchive}) is replayed with the times it was recorded with.
+ * <br>
+ * The gaps longer than <code>-Dreplay.max.gap</code> (in ms, default 10000), and the jumps back in time, are skipped.
+ * <br>
+ * The replay speed is a factor (1: real time, 10: ten times faster, max: as fast as possible).
+ * The replay can loop at the end of the file, and can be moved to a given time, see {@link #seek(String)}.
+ * Those can be changed while replaying.
+ * <br>
+ * Files up to 2 GB.
+ */
+public class ReplayReader extends NMEAReader {
+
+	public final static double MAX_SPEED = 0d;
+
+	private final static long MAX_GAP = Long.parseLong(System.getProperty("replay.max.gap", "10000")); // ms
+	private final static long UNKNOWN = Long.MIN_VALUE;
+	private final static long DAY = 86_400_000L;
+	private final static int BUFFER_SIZE = 8 * 1_024;
+
+	private final String dataFileName;
+	private volatile double speed = 1d; // MAX_SPEED: no wait
+	private volatile boolean loop = true;
+
+	private FileChannel channel = null;
+	private MappedByteBuffer mapped = null;
+	private int nbSentences = 0;
+	private int[] starts = new int[0];   // Of the sentence, after the capture timestamp, if any
+	private int[] lengths = new int[0];  // Without the end of line
+	private long[] times = new long[0];  // Epoch, in ms. From 1970-01-01 if there was no date in the log.
+	private boolean indexed = false;
+
+	private final Object lock = new Object();
+	private volatile int position = 0;  // Next sentence to replay
+	private int seekTo = -1;            // Requested position, applied by the replay thread
+	private String pendingSeek = null;  // Requested before the indexing is done
+	private boolean reanchor = false;   // The speed has changed
+
+	public ReplayReader(List<NMEAListener> al, String fName) {
+		super(al);
+		if (verbose)
+			System.out.println(this.getClass().getName() + ": There are " + al.size() + " listener(s)");
+		this.dataFileName = fName;
+	}
+
+	public String getFileName() {
+		return this.dataFileName;
+	}
+
+	/**
+	 * @return the speed factor, {@link #MAX_SPEED} for as fast as possible
+	 */
+	public double getSpeed() {
+		return this.speed;
+	}
+
+	/**
+	 * @param speed the speed factor, {@link #MAX_SPEED} (or <code>max</code>) for as fast as possible
+	 */
+	public void setSpeed(double speed) {
+		if (speed < 0 || Double.isNaN(speed)) {
+			throw new IllegalArgumentException(String.format("Bad speed [%f]", speed));
+		}
+		synchronized (lock) {
+			this.speed = speed;
+			this.reanchor = true;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * @param speed like <code>1</code>, <code>10</code>, <code>0.5</code>, or <code>max</code>
+	 */
+	public void setSpeed(String speed) {
+		try {
+			setSpeed("max".equalsIgnoreCase(speed.trim()) ? MAX_SPEED : Double.parseDouble(speed.trim()));
+		} catch (NumberFormatException nfe) {
+			throw new IllegalArgumentException(String.format("Bad speed [%s], expected a factor, or max", speed));
+		}
+	}
+
+	public boolean isLoop() {
+		return this.loop;
+	}
+
+	public void setLoop(boolean loop) {
+		this.loop = loop;
+	}
+
+	/**
+	 * Moves the replay.
+	 *
+	 * @param when an ISO-8601 UTC time, like <code>2017-06-10T22:40:00Z</code>,
+	 *             or a number of ms since the beginning of the log.
+	 * @throws IllegalArgumentException if <code>when</code> cannot be understood
+	 */
+	public void seek(String when) {
+		synchronized (lock) {
+			if (!indexed) { // Done when it is.
+				parseSeek(when); // Validates
+				pendingSeek = when;
+				return;
+			}
+			long target = parseSeek(when);
+			int idx = 0;
+			while (idx < nbSentences && times[idx] < target) {
+				idx++;
+			}
+			seekTo = idx;
+			lock.notifyAll();
+		}
+	}
+
+	private long parseSeek(String when) {
+		try {
+			long offset = Long.parseLong(when.trim());
+			return (nbSentences > 0 ? times[0] : 0L) + offset;
+		} catch (NumberFormatException nfe) {
+			try {
+				return Instant.parse(when.trim()).toEpochMilli();
+			} catch (DateTimeParseException dtpe) {
+				throw new IllegalArgumentException(String.format("Bad seek value [%s], expected a number of ms, or a UTC time like 2017-06-10T22:40:00Z", when));
+			}
+		}
+	}
+
+	public int getNbSentences() {
+		return nbSentences;
+	}
+
+	public int getPosition() {
+		return position;
+	}
+
+	/**
+	 * @return the log time of the next sentence to replay, null if not known yet.
+	 */
+	public String getCurrentTime() {
+		synchronized (lock) {
+			return nbSentences == 0 ? null : Instant.ofEpochMilli(times[Math.min(position, nbSentences - 1)]).toString();
+		}
+	}
+
+	@Override
+	public void startReader() {
+		super.enableReading();
+		try {
+			index();
+			if (pendingSeek != null) {
+				seek(pendingSeek);
+			}
+			replay();
+		} catch (Exception e) {
+			if (canRead()) {
+				e.printStackTrace();
+			}
+		} finally {
+			try {
+				closeReader();
+			} catch (Exception absorb) {
+			}
+		}
+	}
+
+	/**
+	 * Maps the file, finds the sentences, and their time.
+	 */
+	private void index() throws IOException {
+		long before = System.currentTimeMillis();
+		channel = FileChannel.open(Paths.get(dataFileName), StandardOpenOption.READ);
+		if (channel.size() > Integer.MAX_VALUE) {
+			throw new IOException(String.format("%s is too big to be replayed (%d bytes)", dataFileName, channel.size()));
+		}
+		mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		if (NMEAArchive.isArchive(dataFileName)) {
+			indexArchive(before);
+			return;
+		}
+		int size = (int) channel.size();
+
+		int capacity = Math.max(16, size / 40);
+		int[] s = new int[capacity];
+		int[] l = new int[capacity];
+		long[] t = new long[capacity];
+		int n = 0;
+
+		long epochDay = UNKNOWN;  // From RMC or ZDA
+		long lastTime = UNKNOWN;
+		int lineStart = 0;
+		while (lineStart < size) {
+			int lineEnd = lineStart;
+			while (lineEnd < size && mapped.get(lineEnd) != '\n') {
+				lineEnd++;
+			}
+			int end = lineEnd;
+			while (end > lineStart && (mapped.get(end - 1) == '\r' || mapped.get(end - 1) == ' ')) {
+				end--;
+			}
+			int start = lineStart;
+			long captured = UNKNOWN;
+			int prefixEnd = capturePrefixEnd(start, end);
+			if (prefixEnd > 0) {
+				captured = parseLong(start, prefixEnd - 1);
+				start = prefixEnd;
+			}
+			if (end > start) {
+				if (n == s.length) {
+					s = Arrays.copyOf(s, n * 2);
+					l = Arrays.copyOf(l, n * 2);
+					t = Arrays.copyOf(t, n * 2);
+				}
+				long time = captured;
+				if (time == UNKNOWN) {
+					long[] dayAndTime = sentenceTime(start, end);
+					if (dayAndTime != null) {
+						if (dayAndTime[0] != UNKNOWN) {
+							if (epochDay == UNKNOWN) { // First date. Date the time-only ones seen so far.
+								for (int i = 0; i < n; i++) {
+									if (t[i] != UNKNOWN && t[i] < 2 * DAY) { // Not a capture timestamp
+										t[i] += (dayAndTime[0] - (t[i] > dayAndTime[1] + (DAY / 2) ? 1 : 0)) * DAY;
+									}
+								}
+								if (lastTime != UNKNOWN) {
+									lastTime += dayAndTime[0] * DAY;
+								}
+							}
+							epochDay = dayAndTime[0];
+							time = epochDay * DAY + dayAndTime[1];
+						} else {
+							time = (epochDay == UNKNOWN ? 0L : epochDay * DAY) + dayAndTime[1];
+							if (lastTime != UNKNOWN && time < lastTime - (DAY / 2)) { // Past midnight
+								time += DAY;
+								if (epochDay != UNKNOWN) {
+									epochDay++;
+								}
+							}
+						}
+					}
+				}
+				if (time != UNKNOWN) {
+					lastTime = time;
+				}
+				s[n] = start;
+				l[n] = end - start;
+				t[n] = time;
+				n++;
+			}
+			lineStart = lineEnd + 1;
+		}
+		spread(t, n);
+
+		synchronized (lock) {
+			this.starts = s;
+			this.lengths = l;
+			this.times = t;
+			this.nbSentences = n;
+			this.indexed = true;
+		}
+		if (verbose) {
+			System.out.println(String.format("%s: %d sentences indexed in %d ms, from %s to %s",
+							dataFileName, n, System.currentTimeMillis() - before,
+							n > 0 ? Instant.ofEpochMilli(t[0]) : "-", n > 0 ? Instant.ofEpochMilli(t[n - 1]) : "-"));
+		}
+	}
+
+	/**
+	 * The file is an archive (see {@link NMEAArchive}): the sentences are where the archive says they are, with their capture time.
+	 */
+	private void indexArchive(long before) throws IOException {
+		try (ArchiveReader archive = new ArchiveReader(dataFileName)) {
+			int capacity = (int) Math.max(16, archive.getNbSentences());
+			int[][] sl = { new int[capacity], new int[capacity] };
+			long[][] t = { new long[capacity] };
+			int[] n = { 0 };
+			archive.forEach(Long.MIN_VALUE, Long.MAX_VALUE, null, (time, data, offset, length, filePosition) -> {
+				if (n[0] == t[0].length) { // Archive not closed, the count may be short
+					sl[0] = Arrays.copyOf(sl[0], n[0] * 2);
+					sl[1] = Arrays.copyOf(sl[1], n[0] * 2);
+					t[0] = Arrays.copyOf(t[0], n[0] * 2);
+				}
+				sl[0][n[0]] = (int) filePosition;
+				sl[1][n[0]] = length;
+				t[0][n[0]] = time;
+				n[0]++;
+				return true;
+			});
+			synchronized (lock) {
+				this.starts = sl[0];
+				this.lengths = sl[1];
+				this.times = t[0];
+				this.nbSentences = n[0];
+				this.indexed = true;
+			}
+			if (verbose) {
+				System.out.println(String.format("%s: archive, %d sentences indexed in %d ms, from %s to %s",
+								dataFileName, n[0], System.currentTimeMillis() - before,
+								n[0] > 0 ? Instant.ofEpochMilli(t[0][0]) : "-", n[0] > 0 ? Instant.ofEpochMilli(t[0][n[0] - 1]) : "-"));
+			}
+		}
+	}
+
+	/**
+	 * Gives a time to the sentences that do not have one, evenly between the previous and next timed ones.
+	 */
+	private static void spread(long[] t, int n) {
+		int previous = -1;
+		for (int i = 0; i <= n; i++) {
+			if (i < n && t[i] == UNKNOWN) {
+				continue;
+			}
+			if (i - previous > 1) {
+				if (previous < 0) { // Before the first timed one
+					long first = (i < n) ? t[i] : 0L;
+					for (int j = 0; j < i; j++) {
+						t[j] = first;
+					}
+				} else if (i == n) { // After the last one
+					for (int j = previous + 1; j < n; j++) {
+						t[j] = t[previous];
+					}
+				} else {
+					long gap = t[i] - t[previous];
+					for (int j = previous + 1; j < i; j++) {
+						t[j] = (gap > 0 && gap <= MAX_GAP) ? t[previous] + (gap * (j - previous)) / (i - previous) : t[previous];
+					}
+				}
+			}
+			previous = i;
+		}
+	}
+
+	/**
+	 * @return the position after the capture timestamp and its separator, -1 if there is none.
+	 */
+	private int capturePrefixEnd(int start, int end) {
+		int i = start;
+		while (i < end && i - start < 14 && mapped.get(i) >= '0' && mapped.get(i) <= '9') {
+			i++;
+		}
+		if (i - start >= 10 && i < end - 1) {
+			byte sep = mapped.get(i);
+			if ((sep == ' ' || sep == '\t' || sep == ',' || sep == ';' || sep == '|') &&
+							(mapped.get(i + 1) == '$' || mapped.get(i + 1) == '!')) {
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return { epoch day (or UNKNOWN), ms in the day } from RMC, ZDA and GGA, null for the other sentences, or the invalid ones.
+	 */
+	private long[] sentenceTime(int start, int end) {
+		if (end - start < 12 || mapped.get(start) != '$' || mapped.get(start + 6) != ',') {
+			return null;
+		}
+		byte a = mapped.get(start + 3), b = mapped.get(start + 4), c = mapped.get(start + 5);
+		boolean rmc = (a == 'R' && b == 'M' && c == 'C');
+		boolean zda = (a == 'Z' && b == 'D' && c == 'A');
+		boolean gga = (a == 'G' && b == 'G' && c == 'A');
+		if (!rmc && !zda && !gga) {
+			return null;
+		}
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = mapped.get(start + i);
+		}
+		String sentence = new String(bytes, StandardCharsets.US_ASCII);
+		if (!StringParsers.validCheckSum(sentence)) {
+			return null;
+		}
+		String[] fields = sentence.substring(0, sentence.indexOf('*') > 0 ? sentence.indexOf('*') : sentence.length()).split(",", -1);
+		try {
+			long timeOfDay = timeOfDay(fields[1]);
+			if (timeOfDay == UNKNOWN) {
+				return null;
+			}
+			long day = UNKNOWN;
+			if (rmc && fields.length > 9 && fields[9].length() == 6) {
+				int yy = Integer.parseInt(fields[9].substring(4, 6));
+				day = LocalDate.of(yy < 70 ? 2_000 + yy : 1_900 + yy,
+								Integer.parseInt(fields[9].substring(2, 4)),
+								Integer.parseInt(fields[9].substring(0, 2))).toEpochDay();
+			} else if (zda && fields.length > 4 && !fields[2].isEmpty() && !fields[3].isEmpty() && !fields[4].isEmpty()) {
+				day = LocalDate.of(Integer.parseInt(fields[4]), Integer.parseInt(fields[3]), Integer.parseInt(fields[2])).toEpochDay();
+			}
+			return new long[] { day, timeOfDay };
+		} catch (Exception ex) { // Bad date, bad number
+			return null;
+		}
+	}
+
+	/**
+	 * @param hhmmss like <code>223325.585</code>
+	 * @return ms in the day
+	 */
+	private static long timeOfDay(String hhmmss) {
+		if (hhmmss.length() < 6) {
+			return UNKNOWN;
+		}
+		long h = Long.parseLong(hhmmss.substring(0, 2));
+		long m = Long.parseLong(hhmmss.substring(2, 4));
+		double sec = Double.parseDouble(hhmmss.substring(4));
+		return (h * 3_600_000L) + (m * 60_000L) + Math.round(sec * 1_000d);
+	}
+
+	private long parseLong(int from, int to) {
+		long value = 0L;
+		for (int i = from; i < to; i++) {
+			value = (value * 10) + (mapped.get(i) - '0');
+		}
+		return value;
+	}
+
+	/**
+	 * Fires the sentences when their time has come.
+	 * The sentences due at the same time are sent in the same event.
+	 */
+	private void replay() throws InterruptedException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long elapsed = 0L;                            // Log time (without the gaps) of the next sentence, since the beginning of the replay
+		long anchorWall = System.currentTimeMillis(); // The wall time when the log time was anchorElapsed
+		long anchorElapsed = 0L;
+		double anchorSpeed = speed;                   // The speed since then
+		int idx = 0;
+		while (canRead() && nbSentences > 0) {
+			int len = 0;
+			synchronized (lock) {
+				if (seekTo >= 0) {
+					idx = seekTo;
+					seekTo = -1;
+					anchorWall = System.currentTimeMillis();
+					anchorElapsed = elapsed;
+				}
+				if (idx >= nbSentences) {
+					if (!loop) {
+						position = idx;
+						if (verbose) {
+							System.out.println(String.format("End of %s", dataFileName));
+						}
+						break;
+					}
+					idx = 0;
+					anchorWall = System.currentTimeMillis();
+					anchorElapsed = elapsed;
+				}
+				if (reanchor) { // Where the replay is now, at the previous speed, goes on at the new one
+					reanchor = false;
+					long now = System.currentTimeMillis();
+					if (anchorSpeed != MAX_SPEED) {
+						anchorElapsed = Math.min(elapsed, anchorElapsed + (long) ((now - anchorWall) * anchorSpeed));
+					} else {
+						anchorElapsed = elapsed;
+					}
+					anchorWall = now;
+					anchorSpeed = speed;
+				}
+				position = idx;
+				while (true) { // Wait for the next one
+					long wait = (anchorSpeed == MAX_SPEED) ? 0L :
+									(anchorWall + (long) ((elapsed - anchorElapsed) / anchorSpeed)) - System.currentTimeMillis();
+					if (wait <= 0 || !canRead()) {
+						break;
+					}
+					lock.wait(wait);
+					if (seekTo >= 0 || reanchor) {
+						break;
+					}
+				}
+				if (seekTo >= 0 || reanchor || !canRead()) {
+					continue;
+				}
+				// Send all the ones due now
+				long now = System.currentTimeMillis();
+				while (idx < nbSentences) {
+					int length = lengths[idx];
+					if (len > 0 && len + length + 2 > buffer.length) {
+						break;
+					}
+					if (len + length + 2 > buffer.length) {
+						buffer = new byte[length + 2];
+					}
+					for (int i = 0; i < length; i++) {
+						buffer[len + i] = mapped.get(starts[idx] + i);
+					}
+					len += length;
+					buffer[len++] = '\r';
+					buffer[len++] = '\n';
+					idx++;
+					if (idx < nbSentences) {
+						long gap = times[idx] - times[idx - 1];
+						if (gap > 0 && gap <= MAX_GAP) {
+							elapsed += gap;
+						}
+						if (anchorSpeed != MAX_SPEED && anchorWall + (long) ((elapsed - anchorElapsed) / anchorSpeed) > now) {
+							break;
+						}
+					}
+				}
+				position = idx;
+			}
+			if (verbose) {
+				System.out.println("Spitting out [" + new String(buffer, 0, len, StandardCharsets.US_ASCII) + "]");
+			}
+			fireDataRead(new NMEAEvent(this, buffer, 0, len));
+		}
+	}
+
+	@Override
+	public void closeReader() throws Exception {
+		synchronized (lock) {
+			lock.notifyAll();
+		}
+		if (this.channel != null) {
+			try {
+				this.channel.close();
+			} catch (IOException ioe) {
+				// Absorb.
+			}
+		}
+	}
+}
@@ -53,6 +53,7 @@ public class SerialReader
 	}
 
 	private InputStream theInput = null;
+	private final byte[] inputBuffer = new byte[4_096]; // Reused, see NMEAEvent
 
 	@Override
 	public void startReader() {
@@ -144,28 +145,27 @@ public class SerialReader
 			case SerialPortEvent.DATA_AVAILABLE:
 				if (canRead()) {
 					try {
-						StringBuffer inputBuffer = new StringBuffer();
+						int nbRead = 0;
 						int newData = 0;
-						while (newData != -1) {
+						while (newData != -1 && nbRead < inputBuffer.length) {
 							try {
 								if (theInput != null) {
-									newData = theInput.read();
-									if (newData == -1)
+									newData = theInput.read(inputBuffer, nbRead, inputBuffer.length - nbRead);
+									if (newData <= 0) // -1, or 0 on receive timeout
 										break;
-									inputBuffer.append((char) newData);
+									nbRead += newData;
 								}
 							} catch (IOException ex) {
 								System.err.println(ex);
 								return;
 							}
 						}
-						String s = new String(inputBuffer);
 						// Display the startReader string
 						boolean justDump = false;
 						if (justDump)
-							System.out.println(":: [" + s + "] ::");
-						else
-							super.fireDataRead(new NMEAEvent(this, s));
+							System.out.println(":: [" + new String(inputBuffer, 0, nbRead) + "] ::");
+						else if (nbRead > 0)
+							super.fireDataRead(new NMEAEvent(this, inputBuffer, 0, nbRead));
 					} catch (Exception ex) {
 						ex.printStackTrace();
 					}
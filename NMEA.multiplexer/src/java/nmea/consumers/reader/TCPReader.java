@@ -57,30 +57,24 @@ public class TCPReader extends NMEAReader {
 
 			InputStream theInput = skt.getInputStream();
 			byte buffer[] = new byte[4096];
-			String s;
 			int nbReadTest = 0;
 			while (canRead()) {
-				int bytesRead = theInput.read(buffer);
+				int bytesRead = theInput.read(buffer, 0, buffer.length - 1); // Room for the separator
 				if (bytesRead == -1) {
 					System.out.println("Nothing to read...");
 					if (nbReadTest++ > 10)
 						break;
 				} else {
 					int nn = bytesRead;
-					for (int i = 0; i < Math.min(buffer.length, bytesRead); i++) {
+					for (int i = 0; i < bytesRead; i++) {
 						if (buffer[i] != 0)
 							continue;
 						nn = i;
 						break;
 					}
-
-					byte toPrint[] = new byte[nn];
-					for (int i = 0; i < nn; i++)
-						toPrint[i] = buffer[i];
-
-					s = new String(toPrint) + NMEAParser.NMEA_SENTENCE_SEPARATOR;
-					//      System.out.println("TCP:" + s);
-					NMEAEvent n = new NMEAEvent(this, s);
+					buffer[nn] = (byte) NMEAParser.NMEA_SENTENCE_SEPARATOR.charAt(0);
+					//      System.out.println("TCP:" + new String(buffer, 0, nn));
+					NMEAEvent n = new NMEAEvent(this, buffer, 0, nn + 1);
 					super.fireDataRead(n);
 				}
 			}
@@ -2,20 +2,32 @@ package nmea.consumers.reader;
 
 import nmea.api.NMEAEvent;
 import nmea.api.NMEAListener;
-import nmea.api.NMEAParser;
 import nmea.api.NMEAReader;
 
-import java.net.DatagramPacket;
+import java.io.IOException;
 import java.net.DatagramSocket;
+import java.net.Inet6Address;
 import java.net.InetAddress;
-import java.net.MulticastSocket;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
 import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Collections;
 import java.util.List;
 
 public class UDPReader extends NMEAReader {
 	private int udpport = 8001;
 	private long timeout = 5_000L; // Default value
 	private String host = "localhost";
+	private String networkInterface = System.getProperty("udp.interface"); // For multicast, like wlan0. null: the one of the route to the group
 
 	public UDPReader(List<NMEAListener> al) {
 		super(al);
@@ -32,8 +44,9 @@ public class UDPReader extends NMEAReader {
 		this.host = host;
 	}
 
-	private InetAddress group = null;
-	private DatagramSocket dsocket = null;
+	private DatagramChannel channel = null;
+	private Selector selector = null;
+	private MembershipKey membership = null;
 
 	public int getPort() {
 		return this.udpport;
@@ -43,6 +56,26 @@ public class UDPReader extends NMEAReader {
 		return this.host;
 	}
 
+	/**
+	 * For a multicast group, the network interface to join it on.
+	 * Can also be set at startup with <code>-Dudp.interface</code>.
+	 * By default, the interface of the route to the group (the default route, most of the time),
+	 * like the system does.
+	 *
+	 * @param name the name of the interface, like <code>wlan0</code>, or null for the default.
+	 */
+	public void setNetworkInterface(String name) {
+		this.networkInterface = name;
+	}
+
+	public String getNetworkInterface() {
+		return this.networkInterface;
+	}
+
+	/**
+	 * One channel, one receive buffer, no thread per datagram.
+	 * The timeout is the one of the {@link Selector}. The datagrams are sent to the parser as bytes.
+	 */
 	@Override
 	public void startReader() {
 		System.out.println("From " + getClass().getName() + " Reading UDP Port " + udpport);
@@ -50,63 +83,58 @@ public class UDPReader extends NMEAReader {
 		try {
 			InetAddress address = InetAddress.getByName(host);
 			if (address.isMulticastAddress()) {
-				dsocket = new MulticastSocket(udpport);
-				((MulticastSocket) dsocket).joinGroup(address);
-				group = address;
+				channel = DatagramChannel.open(address instanceof Inet6Address ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET);
+				channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+				channel.bind(new InetSocketAddress(udpport));
+				NetworkInterface ni = multicastInterface(address, udpport, networkInterface);
+				System.out.println(String.format("Joining %s on %s", host, ni.getName()));
+				membership = channel.join(address, ni);
 			} else {
-				dsocket = new DatagramSocket(udpport, address);
+				channel = DatagramChannel.open();
+				channel.bind(new InetSocketAddress(address, udpport));
 			}
-
-			byte buffer[] = new byte[4096];
-			String s;
+			channel.configureBlocking(false);
+			selector = Selector.open();
+			channel.register(selector, SelectionKey.OP_READ);
+			DatagramChannel channel = this.channel;   // The fields are reset by closeReader
+			Selector selector = this.selector;
+
+			byte[] buffer = new byte[4096];
+			ByteBuffer bb = ByteBuffer.wrap(buffer, 0, buffer.length - 1); // Room for the separator
 			while (canRead()) {
-				DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-				// Wait here.
-				Thread waiter = Thread.currentThread();
-				DatagramReceiveThread drt = new DatagramReceiveThread(dsocket, packet, waiter);
-				drt.start();
-
-				synchronized (waiter) {
-					try {
-						long before = System.currentTimeMillis();
-						if (timeout > -1)
-							waiter.wait(timeout);
-						else
-							waiter.wait();
-						long after = System.currentTimeMillis();
-						if (drt.isAlive()) {
-//            System.out.println("Interrupting the DatagramReceiveThread");
-							drt.interrupt();
-							if (timeout != -1 && (after - before) >= timeout)
-								throw new RuntimeException("UDP took too long.");
-						}
-					} catch (InterruptedException ie) {
-						System.out.println("Waiter Interrupted! (before end of wait, good)");
+				int nbKeys = (timeout > -1) ? selector.select(timeout) : selector.select();
+				if (!canRead()) {
+					break;
+				}
+				if (nbKeys == 0) {
+					if (timeout > -1) {
+						throw new RuntimeException("UDP took too long.");
 					}
+					continue;
 				}
-				s = new String(buffer, 0, packet.getLength());
-				// For simulation from file:
-				if (System.getProperty("os.name").toUpperCase().contains("LINUX")) {
-					if (s.endsWith(NMEAParser.NMEA_SENTENCE_SEPARATOR))
-						s = s.substring(0, s.length() - NMEAParser.NMEA_SENTENCE_SEPARATOR.length());
+				selector.selectedKeys().clear();
+				while (true) { // Everything that has arrived
+					bb.clear();
+					if (channel.receive(bb) == null) {
+						break;
+					}
+					int len = bb.position();
+					if (len == 0 || buffer[len - 1] != '\n') {
+						buffer[len++] = '\n'; // NMEAParser.NMEA_SENTENCE_SEPARATOR
+					}
+					NMEAEvent n = new NMEAEvent(this, buffer, 0, len);
+					super.fireDataRead(n);
 				}
-				if (!s.endsWith(NMEAParser.NMEA_SENTENCE_SEPARATOR))
-					s += NMEAParser.NMEA_SENTENCE_SEPARATOR;
-				NMEAEvent n = new NMEAEvent(this, s);
-				super.fireDataRead(n);
 			}
+		} catch (ClosedChannelException | ClosedSelectorException closed) {
+			// closeReader was called
 		} catch (Exception e) {
 //    e.printStackTrace();
 //    JOptionPane.showMessageDialog(null, "No such UDP port " + udpport + "!", "Error opening port", JOptionPane.ERROR_MESSAGE);
 			manageError(e);
 		} finally {
 			try {
-				if (dsocket != null) {
-					if (dsocket instanceof MulticastSocket) {
-						((MulticastSocket) dsocket).leaveGroup(group);
-					}
-					dsocket.close();
-				}
+				close();
 			} catch (Exception ex) {
 				System.err.println(">> Error when Closing Socket...");
 				ex.printStackTrace();
@@ -115,21 +143,65 @@ public class UDPReader extends NMEAReader {
 		}
 	}
 
+	/*
+	 * The named one if any. Otherwise the interface of the route to the group, the one the system would pick.
+	 * And if there is no such route, the first interface that is up and supports multicast, not the loopback if possible.
+	 */
+	private static NetworkInterface multicastInterface(InetAddress group, int port, String name) throws SocketException {
+		if (name != null && !name.trim().isEmpty()) {
+			NetworkInterface named = NetworkInterface.getByName(name.trim());
+			if (named == null) {
+				throw new SocketException(String.format("No such network interface [%s]", name));
+			}
+			return named;
+		}
+		try (DatagramSocket route = new DatagramSocket()) {
+			route.connect(group, port); // No packet sent, just a route lookup
+			InetAddress local = route.getLocalAddress();
+			NetworkInterface routed = (local == null || local.isAnyLocalAddress()) ? null : NetworkInterface.getByInetAddress(local);
+			if (routed != null && routed.isUp() && routed.supportsMulticast()) {
+				return routed;
+			}
+		} catch (Exception noRoute) {
+			// Fall back on the first one
+		}
+		NetworkInterface loopback = null;
+		for (NetworkInterface ni : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+			if (ni.isUp() && ni.supportsMulticast()) {
+				if (!ni.isLoopback()) {
+					return ni;
+				} else if (loopback == null) {
+					loopback = ni;
+				}
+			}
+		}
+		if (loopback == null) {
+			throw new SocketException("No network interface supports multicast");
+		}
+		return loopback;
+	}
+
+	private synchronized void close() throws IOException {
+		if (membership != null) {
+			membership.drop();
+			membership = null;
+		}
+		if (selector != null) {
+			selector.close();
+			selector = null;
+		}
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
 	@Override
 	public void closeReader() throws Exception {
 //  System.out.println("(" + this.getClass().getName() + ") Stop Reading UDP Port");
 		try {
-			if (dsocket != null) {
-				this.goRead = false;
-				if (dsocket instanceof MulticastSocket) {
-					if (group != null)
-						((MulticastSocket) dsocket).leaveGroup(group);
-					else
-						System.out.println(">> Multicast Socket: Group is null.");
-				}
-				dsocket.close();
-				dsocket = null;
-			}
+			this.goRead = false;
+			close();
 		} catch (Exception ex) {
 			ex.printStackTrace();
 		}
@@ -146,34 +218,4 @@ public class UDPReader extends NMEAReader {
 	public long getTimeout() {
 		return timeout;
 	}
-
-	private class DatagramReceiveThread extends Thread {
-		private DatagramSocket ds = null;
-		private Thread waiter;
-		private DatagramPacket packet;
-
-		public DatagramReceiveThread(DatagramSocket ds, DatagramPacket packet, Thread from) {
-			super();
-			this.ds = ds;
-			this.waiter = from;
-			this.packet = packet;
-		}
-
-		public void run() {
-			try {
-//      dsocket.receive(packet);
-				ds.receive(packet);
-				synchronized (waiter) {
-//        System.out.println("Notifying waiter (Done).");
-					waiter.notify();
-				}
-			} catch (SocketException se) {
-				// Socket closed?
-				if (!"Socket closed".equals(se.getMessage()))
-					System.out.println(">>>>> " + this.getClass().getName() + ":" + se.getMessage());
-			} catch (Exception ex) {
-				ex.printStackTrace();
-			}
-		}
-	}
 }
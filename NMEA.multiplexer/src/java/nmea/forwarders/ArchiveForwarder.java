@@ -0,0 +1,109 @@
+package nmea.forwarders;
+
+import nmea.api.NMEASentence;
+import nmea.archive.ArchiveWriter;
+import nmea.archive.NMEAArchive;
+
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Like the {@link DataFileWriter}, into a time-indexed archive: each sentence is stored with the time it was received.
+ * See {@link NMEAArchive}.
+ * <br>
+ * Fed by the Multiplexer, the time is the one the sentence was received at (see {@link NMEASentence#getReceived()}),
+ * not the one it went out of the output queue.
+ */
+public class ArchiveForwarder implements SentenceForwarder {
+	private ArchiveWriter archive;
+	private String log;
+	private boolean append = false;
+
+	public ArchiveForwarder(String fName) throws Exception {
+		this(fName, false, NMEAArchive.DEFAULT_BLOCK_SIZE);
+	}
+	public ArchiveForwarder(String fName, boolean append, int blockSize) throws Exception {
+		this.log = fName;
+		this.append = append;
+		try {
+			this.archive = new ArchiveWriter(fName, append, blockSize);
+		} catch (Exception ex) {
+			System.err.println(String.format("When creating [%s]", fName));
+			throw ex;
+		}
+	}
+
+	@Override
+	public void write(NMEASentence sentence) {
+		try {
+			this.archive.append(sentence.getReceived(), sentence.getSentence());
+		} catch (IOException ioe) {
+			throw new RuntimeException(ioe);
+		}
+	}
+
+	@Override
+	public void write(byte[] message) {
+		long now = System.currentTimeMillis();
+		try {
+			int start = 0;
+			for (int i = 0; i <= message.length; i++) { // One or more sentences
+				if (i == message.length || message[i] == '\n') {
+					int s = start;
+					while (s < i && (message[s] == '\r' || message[s] == ' ')) {
+						s++;
+					}
+					if (i > s) {
+						this.archive.append(now, message, s, i - s);
+					}
+					start = i + 1;
+				}
+			}
+		} catch (IOException ioe) {
+			throw new RuntimeException(ioe);
+		}
+	}
+
+	@Override
+	public void close() {
+		System.out.println("- Stop writing to " + this.getClass().getName());
+		try {
+			this.archive.close();
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	public String getLog() {
+		return this.log;
+	}
+	public static class ArchiveBean {
+		private String cls;
+		private String log;
+		private boolean append;
+		private int blockSize;
+		private String type = "archive";
+
+		public ArchiveBean(ArchiveForwarder instance) {
+			cls = instance.getClass().getName();
+			log = instance.log;
+			append = instance.append;
+			blockSize = instance.archive.getBlockSize();
+		}
+
+		public String getLog() {
+			return log;
+		}
+		public boolean append() { return append; }
+		public int getBlockSize() { return blockSize; }
+	}
+
+	@Override
+	public Object getBean() {
+		return new ArchiveBean(this);
+	}
+
+	@Override
+	public void setProperties(Properties props) {
+	}
+}
@@ -1,70 +1,572 @@
 package nmea.forwarders;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.Properties;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
 
+/**
+ * Logs the NMEA data into a file, one sentence per line.
+ * <br>
+ * {@link #write(byte[])} never touches the disk: the data are added to a buffer in memory, written by a dedicated thread
+ * (group commit) every <code>commit.interval</code> ms, or as soon as <code>commit.size</code> bytes are waiting,
+ * and then synced to the disk (<code>fsync</code>), so a power cut loses at most that much.
+ * If the disk does not keep up, more than <code>max.pending</code> bytes waiting, the new data are dropped (and counted), the caller never waits.
+ * <br>
+ * The log can be rotated: the current file is closed and renamed with the time it was opened (like <code>data.2017-06-10_22-33-25.nmea</code>, UTC)
+ * when it reaches <code>rotate.size</code> bytes (of data, before compression), or has been open for <code>rotate.period</code> ms.
+ * Only the <code>rotate.keep</code> most recent ones are kept.
+ * <br>
+ * <code>compression</code> is
+ * <ul>
+ *   <li><code>none</code> (default)</li>
+ *   <li><code>gzip</code>: the log is compressed as it is written (<code>data.nmea.gz</code>), each commit is a complete gzip block, readable right away</li>
+ *   <li><code>gzip-closed</code>: the log is written as text, and compressed in the background once rotated</li>
+ * </ul>
+ * All those can be set with <code>forward.XX.rotate.size</code>, <code>forward.XX.commit.interval</code>, etc.
+ * (see {@link nmea.mux.MuxInitializer}), or through {@link #setProperties(Properties)}.
+ * A new compression applies from the next file.
+ * The sizes can be given in bytes, or like <code>512k</code>, <code>10m</code>, <code>1g</code>.
+ */
 public class DataFileWriter implements Forwarder {
-	private BufferedWriter dataFile;
+
+	public enum Compression {
+		NONE("none"),
+		GZIP("gzip"),
+		GZIP_CLOSED("gzip-closed");
+
+		private final String label;
+
+		Compression(String label) {
+			this.label = label;
+		}
+
+		public String label() {
+			return this.label;
+		}
+
+		public static Compression fromLabel(String label) {
+			for (Compression compression : values()) {
+				if (compression.label.equalsIgnoreCase(label.trim())) {
+					return compression;
+				}
+			}
+			throw new IllegalArgumentException(String.format("Unknown compression [%s], expected none, gzip, or gzip-closed", label));
+		}
+	}
+
+	public final static long DEFAULT_COMMIT_INTERVAL = 1_000L; // ms
+	public final static int DEFAULT_COMMIT_SIZE = 64 * 1_024;
+	public final static int DEFAULT_MAX_PENDING = 4 * 1_024 * 1_024;
+
+	private final static String GZ = ".gz";
+
 	private String log;
 	private boolean append = false;
 
+	private volatile long rotateSize = 0L;    // bytes, 0: no rotation on size
+	private volatile long rotatePeriod = 0L;  // ms, 0: no rotation on time
+	private volatile int rotateKeep = 0;      // 0: keep all
+	private volatile Compression compression = Compression.NONE;
+	private volatile long commitInterval = DEFAULT_COMMIT_INTERVAL;
+	private volatile int commitSize = DEFAULT_COMMIT_SIZE;
+	private volatile boolean fsync = true;
+	private volatile int maxPending = DEFAULT_MAX_PENDING;
+
+	// Filled by write, emptied by the committer
+	private final Object lock = new Object();
+	private byte[] pending = new byte[DEFAULT_COMMIT_SIZE];
+	private int pendingLength = 0;
+	private byte[] committing = new byte[DEFAULT_COMMIT_SIZE];
+	private boolean keepWorking = true;
+
+	// Owned by the committer (and the constructor)
+	private FileOutputStream segmentFile = null;
+	private OutputStream segment = null;
+	private volatile String segmentName = null;
+	private Compression segmentCompression = Compression.NONE;
+	private long segmentOpened = 0L;
+	private long segmentSize = 0L;
+
+	private final Thread committer;
+	private ExecutorService compressor = null;
+
+	private final AtomicLong dropped = new AtomicLong(0L);
+	private final AtomicLong commits = new AtomicLong(0L);
+	private final AtomicLong errors = new AtomicLong(0L);
+
 	public DataFileWriter(String fName) throws Exception {
 		this(fName, false);
 	}
 	public DataFileWriter(String fName, boolean append) throws Exception {
+		this(fName, append, null);
+	}
+	/**
+	 * @param props see {@link #setProperties(Properties)}, can be null.
+	 */
+	public DataFileWriter(String fName, boolean append, Properties props) throws Exception {
 		this.log = fName;
 		this.append = append;
+		if (props != null) {
+			setProperties(props);
+		}
 		try {
-			this.dataFile = new BufferedWriter(new FileWriter(fName, append));
+			openSegment(append);
 		} catch (Exception ex) {
 			System.err.println(String.format("When creating [%s]", fName));
 			throw ex;
 		}
+		committer = new Thread(this::commitLoop, "DataFileWriter:" + new File(fName).getName());
+		committer.setDaemon(true);
+		committer.start();
 	}
 
 	@Override
 	public void write(byte[] message) {
-		try {
-			String mess = new String(message).trim(); // trim removes \r\n
-			if (!mess.isEmpty()) {
-				this.dataFile.write(mess + '\n');
+		int from = 0;
+		int to = message.length;
+		while (from < to && message[from] <= ' ') { // Like trim, removes \r\n
+			from++;
+		}
+		while (to > from && message[to - 1] <= ' ') {
+			to--;
+		}
+		if (from == to) {
+			return;
+		}
+		int length = to - from;
+		synchronized (lock) {
+			if (pendingLength + length + 1 > maxPending) { // The disk does not keep up
+				dropped.incrementAndGet();
+				return;
+			}
+			if (pendingLength + length + 1 > pending.length) {
+				pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + length + 1));
+			}
+			System.arraycopy(message, from, pending, pendingLength, length);
+			pendingLength += length;
+			pending[pendingLength++] = '\n';
+			if (pendingLength >= commitSize) {
+				lock.notifyAll();
 			}
-		} catch (IOException ioe) {
-			throw new RuntimeException(ioe);
 		}
 	}
 
 	@Override
 	public void close() {
 		System.out.println("- Stop writing to " + this.getClass().getName());
+		synchronized (lock) {
+			keepWorking = false;
+			lock.notifyAll();
+		}
 		try {
-			this.dataFile.close();
-		} catch (Exception ex) {
-			throw new RuntimeException(ex);
+			committer.join(); // Commits what is left, closes the file
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+		if (compressor != null) {
+			compressor.shutdown();
+			try {
+				compressor.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
 		}
 	}
 
 	public String getLog() {
 		return this.log;
 	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public long getCommits() {
+		return commits.get();
+	}
+
+	/**
+	 * @return the file being written
+	 */
+	public String getSegment() {
+		return segmentName;
+	}
+
+	public void setRotateSize(long rotateSize) {
+		this.rotateSize = rotateSize;
+	}
+
+	public void setRotatePeriod(long rotatePeriod) {
+		this.rotatePeriod = rotatePeriod;
+	}
+
+	public void setRotateKeep(int rotateKeep) {
+		this.rotateKeep = rotateKeep;
+	}
+
+	public void setCompression(Compression compression) {
+		this.compression = compression;
+	}
+
+	public void setCommitInterval(long commitInterval) {
+		if (commitInterval <= 0) {
+			throw new IllegalArgumentException(String.format("commit.interval must be positive, not %d", commitInterval));
+		}
+		this.commitInterval = commitInterval;
+		synchronized (lock) {
+			lock.notifyAll();
+		}
+	}
+
+	public void setCommitSize(int commitSize) {
+		this.commitSize = commitSize;
+	}
+
+	public void setFsync(boolean fsync) {
+		this.fsync = fsync;
+	}
+
+	public void setMaxPending(int maxPending) {
+		this.maxPending = maxPending;
+	}
+
+	/**
+	 * Waits for the data, and writes them.
+	 */
+	private void commitLoop() {
+		boolean more = true;
+		while (more) {
+			synchronized (lock) {
+				long waitUntil = System.currentTimeMillis() + commitInterval;
+				long toWait;
+				while (keepWorking && pendingLength < commitSize && (toWait = waitUntil - System.currentTimeMillis()) > 0) {
+					try {
+						lock.wait(toWait);
+					} catch (InterruptedException ie) {
+						keepWorking = false;
+					}
+				}
+				more = keepWorking;
+			}
+			commit();
+		}
+		try {
+			closeSegment();
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes what is waiting, syncs it, and rotates the file if needed.
+	 */
+	private void commit() {
+		int length;
+		synchronized (lock) { // Swap the buffers, write can go on while this one is written.
+			byte[] full = pending;
+			pending = committing.length >= commitSize ? committing : new byte[commitSize];
+			committing = full;
+			length = pendingLength;
+			pendingLength = 0;
+		}
+		try {
+			if (segment == null) { // Could not be opened after the previous rotation
+				openSegment(true);
+			}
+			int offset = 0;
+			while (offset < length) {
+				int toWrite = length - offset;
+				if (rotateSize > 0 && segmentSize + toWrite > rotateSize) { // Cut on a line, where the file is full
+					int fits = lastLineEnd(committing, offset, offset + (int) Math.max(0L, rotateSize - segmentSize)) - offset;
+					if (fits > 0) {
+						toWrite = fits;
+					} else if (segmentSize > 0) {
+						rotate();
+						continue;
+					} else { // One line bigger than a file
+						toWrite = firstLineEnd(committing, offset, length) - offset;
+					}
+				}
+				segment.write(committing, offset, toWrite);
+				segment.flush(); // The gzip block is completed (SYNC_FLUSH)
+				if (fsync) {
+					segmentFile.getFD().sync();
+				}
+				segmentSize += toWrite;
+				offset += toWrite;
+				if (offset < length) {
+					rotate();
+				}
+			}
+			if (length > 0) {
+				commits.incrementAndGet();
+			}
+			if (committing.length > Math.max(commitSize, DEFAULT_COMMIT_SIZE) * 4) { // After a burst
+				committing = new byte[commitSize];
+			}
+			long now = System.currentTimeMillis();
+			if ((rotateSize > 0 && segmentSize >= rotateSize) || (rotatePeriod > 0 && now - segmentOpened >= rotatePeriod && segmentSize > 0)) {
+				rotate();
+			}
+		} catch (IOException ioe) {
+			if (errors.getAndIncrement() % 100 == 0) { // Do not flood the console, a full disk would.
+				ioe.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @return the position after the last new line in [from, to[, from if there is none.
+	 */
+	private static int lastLineEnd(byte[] data, int from, int to) {
+		for (int i = to - 1; i >= from; i--) {
+			if (data[i] == '\n') {
+				return i + 1;
+			}
+		}
+		return from;
+	}
+
+	private static int firstLineEnd(byte[] data, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (data[i] == '\n') {
+				return i + 1;
+			}
+		}
+		return to;
+	}
+
+	private void openSegment(boolean append) throws IOException {
+		segmentCompression = compression;
+		segmentName = log + (segmentCompression == Compression.GZIP ? GZ : "");
+		File file = new File(segmentName);
+		boolean existing = append && file.exists() && file.length() > 0;
+		segmentFile = new FileOutputStream(file, append);
+		segment = segmentCompression == Compression.GZIP ? new GZIPOutputStream(segmentFile, 8_192, true) : segmentFile;
+		segmentSize = existing ? file.length() : 0L;
+		segmentOpened = existing ? file.lastModified() : System.currentTimeMillis();
+	}
+
+	private void closeSegment() throws IOException {
+		if (segment != null) {
+			segment.close(); // Also closes the FileOutputStream
+			segment = null;
+		}
+	}
+
+	/**
+	 * Closes the current file, renames it, and opens a new one.
+	 */
+	private void rotate() throws IOException {
+		closeSegment();
+		File closed = new File(segmentName);
+		File rotated = rotatedName(closed);
+		Compression closedCompression = segmentCompression;
+		boolean moved = false;
+		try {
+			Files.move(closed.toPath(), rotated.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			moved = true;
+		} finally {
+			openSegment(!moved); // Go on with the same file if it could not be renamed
+		}
+		if (moved && closedCompression == Compression.GZIP_CLOSED) {
+			compressInBackground(rotated); // Prunes when done
+		} else {
+			prune();
+		}
+	}
+
+	/**
+	 * data.nmea becomes data.2017-06-10_22-33-25.nmea, data.nmea.gz becomes data.2017-06-10_22-33-25.nmea.gz
+	 */
+	private File rotatedName(File closed) {
+		File logFile = new File(log);
+		String name = logFile.getName();
+		int dot = name.lastIndexOf('.');
+		String base = dot > 0 ? name.substring(0, dot) : name;
+		String extension = dot > 0 ? name.substring(dot) : "";
+		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss");
+		sdf.setTimeZone(TimeZone.getTimeZone("Etc/UTC"));
+		String stamp = sdf.format(new Date(segmentOpened));
+		String suffix = extension + (segmentCompression == Compression.GZIP ? GZ : "");
+		File rotated = new File(closed.getParentFile(), String.format("%s.%s%s", base, stamp, suffix));
+		for (int i = 1; rotated.exists() || new File(rotated.getPath() + GZ).exists(); i++) {
+			rotated = new File(closed.getParentFile(), String.format("%s.%s-%03d%s", base, stamp, i, suffix)); // Sorts by name
+		}
+		return rotated;
+	}
+
+	private void compressInBackground(File file) {
+		if (compressor == null) {
+			compressor = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "DataFileWriter compressor");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			});
+		}
+		compressor.submit(() -> {
+			if (!file.exists()) { // Pruned in the meantime
+				return;
+			}
+			File compressed = new File(file.getPath() + GZ);
+			File temp = new File(file.getPath() + GZ + ".tmp");
+			try (InputStream in = new FileInputStream(file);
+			     FileOutputStream fos = new FileOutputStream(temp);
+			     GZIPOutputStream out = new GZIPOutputStream(fos, 64 * 1_024)) {
+				byte[] buffer = new byte[64 * 1_024];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+				}
+				out.finish();
+				fos.getFD().sync();
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+				temp.delete();
+				return;
+			}
+			try {
+				Files.move(temp.toPath(), compressed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				Files.deleteIfExists(file.toPath());
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+			}
+			prune();
+		});
+	}
+
+	/**
+	 * Deletes the oldest rotated files, beyond rotate.keep.
+	 */
+	private synchronized void prune() {
+		if (rotateKeep <= 0) {
+			return;
+		}
+		File logFile = new File(log).getAbsoluteFile();
+		String name = logFile.getName();
+		int dot = name.lastIndexOf('.');
+		String base = dot > 0 ? name.substring(0, dot) : name;
+		String extension = dot > 0 ? name.substring(dot) : "";
+		String pattern = String.format("\\Q%s.\\E\\d{4}-\\d{2}-\\d{2}_\\d{2}-\\d{2}-\\d{2}(-\\d+)?\\Q%s\\E(\\.gz)?", base, extension);
+		File[] rotated = logFile.getParentFile().listFiles((dir, fileName) -> fileName.matches(pattern));
+		if (rotated == null || rotated.length <= rotateKeep) {
+			return;
+		}
+		// Oldest first, the time is in the name. Without the extension, so data.(time).nmea comes before data.(time)-1.nmea
+		Arrays.sort(rotated, Comparator.comparing(file -> withoutExtension(file.getName(), extension)));
+		for (int i = 0; i < rotated.length - rotateKeep; i++) {
+			if (!rotated[i].delete()) {
+				System.err.println(String.format("Could not delete %s", rotated[i]));
+			}
+		}
+	}
+
+	private static String withoutExtension(String name, String extension) {
+		if (name.endsWith(GZ)) {
+			name = name.substring(0, name.length() - GZ.length());
+		}
+		return name.substring(0, name.length() - extension.length());
+	}
+
+	/**
+	 * @return the size, in bytes. Like 1024, 512k, 10m, 1g.
+	 */
+	private static long parseSize(String size) {
+		String s = size.trim().toLowerCase();
+		long factor = 1L;
+		if (s.endsWith("k")) {
+			factor = 1_024L;
+		} else if (s.endsWith("m")) {
+			factor = 1_024L * 1_024L;
+		} else if (s.endsWith("g")) {
+			factor = 1_024L * 1_024L * 1_024L;
+		}
+		if (factor > 1L) {
+			s = s.substring(0, s.length() - 1).trim();
+		}
+		return Long.parseLong(s) * factor;
+	}
+
 	public static class DataFileBean {
 		private String cls;
 		private String log;
 		private boolean append;
 		private String type = "file";
+		private String segment;
+		private Long rotateSize;
+		private Long rotatePeriod;
+		private Integer rotateKeep;
+		private String compression;
+		private Long commitInterval;
+		private Integer commitSize;
+		private Boolean fsync;
+		private long dropped;
 
 		public DataFileBean(DataFileWriter instance) {
 			cls = instance.getClass().getName();
 			log = instance.log;
 			append = instance.append;
+			segment = instance.segmentName;
+			rotateSize = instance.rotateSize;
+			rotatePeriod = instance.rotatePeriod;
+			rotateKeep = instance.rotateKeep;
+			compression = instance.compression.label();
+			commitInterval = instance.commitInterval;
+			commitSize = instance.commitSize;
+			fsync = instance.fsync;
+			dropped = instance.dropped.get();
 		}
 
 		public String getLog() {
 			return log;
 		}
 		public boolean append() { return append; }
+
+		/**
+		 * @return what is set in this bean, as {@link DataFileWriter#setProperties(Properties)} expects it.
+		 */
+		public Properties getProperties() {
+			Properties props = new Properties();
+			if (rotateSize != null) {
+				props.setProperty("rotate.size", String.valueOf(rotateSize));
+			}
+			if (rotatePeriod != null) {
+				props.setProperty("rotate.period", String.valueOf(rotatePeriod));
+			}
+			if (rotateKeep != null) {
+				props.setProperty("rotate.keep", String.valueOf(rotateKeep));
+			}
+			if (compression != null) {
+				props.setProperty("compression", compression);
+			}
+			if (commitInterval != null) {
+				props.setProperty("commit.interval", String.valueOf(commitInterval));
+			}
+			if (commitSize != null) {
+				props.setProperty("commit.size", String.valueOf(commitSize));
+			}
+			if (fsync != null) {
+				props.setProperty("fsync", String.valueOf(fsync));
+			}
+			return props;
+		}
 	}
 
 	@Override
@@ -72,7 +574,35 @@ public class DataFileWriter implements Forwarder {
 		return new DataFileBean(this);
 	}
 
+	/**
+	 * @param props <code>rotate.size</code>, <code>rotate.period</code> (in ms), <code>rotate.keep</code>, <code>compression</code>,
+	 *              <code>commit.interval</code> (in ms), <code>commit.size</code>, <code>fsync</code>, <code>max.pending</code>, all optional.
+	 */
 	@Override
 	public void setProperties(Properties props) {
+		if (props.getProperty("rotate.size") != null) {
+			setRotateSize(parseSize(props.getProperty("rotate.size")));
+		}
+		if (props.getProperty("rotate.period") != null) {
+			setRotatePeriod(Long.parseLong(props.getProperty("rotate.period").trim()));
+		}
+		if (props.getProperty("rotate.keep") != null) {
+			setRotateKeep(Integer.parseInt(props.getProperty("rotate.keep").trim()));
+		}
+		if (props.getProperty("compression") != null) {
+			setCompression(Compression.fromLabel(props.getProperty("compression")));
+		}
+		if (props.getProperty("commit.interval") != null) {
+			setCommitInterval(Long.parseLong(props.getProperty("commit.interval").trim()));
+		}
+		if (props.getProperty("commit.size") != null) {
+			setCommitSize((int) parseSize(props.getProperty("commit.size")));
+		}
+		if (props.getProperty("fsync") != null) {
+			setFsync("true".equals(props.getProperty("fsync").trim()));
+		}
+		if (props.getProperty("max.pending") != null) {
+			setMaxPending((int) parseSize(props.getProperty("max.pending")));
+		}
 	}
 }
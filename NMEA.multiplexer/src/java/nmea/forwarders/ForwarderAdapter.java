@@ -0,0 +1,42 @@
+package nmea.forwarders;
+
+import nmea.api.NMEASentence;
+
+import java.util.Properties;
+
+/**
+ * Feeds a legacy {@link Forwarder} with the {@link NMEASentence}s, see {@link SentenceForwarder#adapt(Forwarder)}.
+ */
+final class ForwarderAdapter implements SentenceForwarder {
+
+	private final Forwarder forwarder;
+
+	ForwarderAdapter(Forwarder forwarder) {
+		this.forwarder = forwarder;
+	}
+
+	@Override
+	public void write(NMEASentence sentence) {
+		forwarder.write(sentence.getBytes());
+	}
+
+	@Override
+	public void write(byte[] mess) {
+		forwarder.write(mess);
+	}
+
+	@Override
+	public void close() {
+		forwarder.close();
+	}
+
+	@Override
+	public void setProperties(Properties props) {
+		forwarder.setProperties(props);
+	}
+
+	@Override
+	public Object getBean() {
+		return forwarder.getBean();
+	}
+}
@@ -1,8 +1,8 @@
 package nmea.forwarders;
 
+import nmea.api.NMEASentence;
 import nmea.parser.GeoPos;
 import nmea.parser.RMC;
-import nmea.parser.StringParsers;
 import org.eclipse.paho.client.mqttv3.MqttClient;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
@@ -17,7 +17,7 @@ import java.util.Properties;
  * For dynamic loading
  * Requires a file like mqtt.properties to provide the broker url.
  */
-public class MQTTPublisher implements Forwarder {
+public class MQTTPublisher implements SentenceForwarder {
 	private MqttClient mqttClient = null;
 	private String brokerURL;
 
@@ -66,8 +66,13 @@ public class MQTTPublisher implements Forwarder {
 		return this.brokerURL;
 	}
 
+	/**
+	 * Only the valid sentences are published. They are parsed once, see {@link NMEASentence#getParsed()}.
+	 *
+	 * @param sentence the sentence
+	 */
 	@Override
-	public void write(byte[] message) {
+	public void write(NMEASentence sentence) {
 
 		if (mqttClient == null) {
 			try {
@@ -78,21 +83,19 @@ public class MQTTPublisher implements Forwarder {
 		}
 
 		try {
-			String mess = new String(message);
-			if (!mess.isEmpty()) {
-				String sentenceId = StringParsers.getSentenceID(mess);
-				switch (sentenceId) {
+			if (sentence.isValid() && sentence.getSentenceID() != null) {
+				switch (sentence.getSentenceID()) {
 					case "MTA":
-						double airTemp = StringParsers.parseMTA(mess);
-						publishAirTemperature(airTemp);
+						publishAirTemperature(sentence.getParsed(Double.class));
 						break;
 					case "MTW":
-						double waterTemp = StringParsers.parseMTW(mess);
-						publishWaterTemperature(waterTemp);
+						publishWaterTemperature(sentence.getParsed(Double.class));
 						break;
 					case "RMC":
-						RMC rmc = StringParsers.parseRMC(mess);
-						publishPosition(rmc.getGp());
+						RMC rmc = sentence.getParsed(RMC.class);
+						if (rmc != null && rmc.getGp() != null) {
+							publishPosition(rmc.getGp());
+						}
 						break;
 					default: // TODO: etc...
 						break;
@@ -0,0 +1,40 @@
+package nmea.forwarders;
+
+import nmea.api.NMEASentence;
+
+/**
+ * A {@link Forwarder} (or a {@link nmea.computers.Computer}) receiving the {@link NMEASentence}s
+ * created by the Multiplexer, instead of their bytes.
+ * The checksum, the IDs, and the parsed data are then shared with the cache, and the other consumers, instead of being computed again.
+ * <br>
+ * The Multiplexer feeds the legacy forwarders (the ones only implementing {@link Forwarder#write(byte[])})
+ * through a {@link #adapt(Forwarder) adapter}.
+ */
+public interface SentenceForwarder extends Forwarder {
+
+	/**
+	 * @param sentence the sentence. Shared with the other forwarders, immutable.
+	 */
+	void write(NMEASentence sentence);
+
+	/**
+	 * The bytes are turned into a sentence, for the ones still calling this method directly.
+	 *
+	 * @param mess the sentence
+	 */
+	@Override
+	default void write(byte[] mess) {
+		write(new NMEASentence(new String(mess)));
+	}
+
+	/**
+	 * @param forwarder any forwarder
+	 * @return the forwarder itself if it is a SentenceForwarder, or a SentenceForwarder writing {@link NMEASentence#getBytes()} to it.
+	 */
+	static SentenceForwarder adapt(Forwarder forwarder) {
+		if (forwarder instanceof SentenceForwarder) {
+			return (SentenceForwarder) forwarder;
+		}
+		return new ForwarderAdapter(forwarder);
+	}
+}
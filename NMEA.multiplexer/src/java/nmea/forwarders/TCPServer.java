@@ -1,90 +1,341 @@
 package nmea.forwarders;
 
-import java.io.DataOutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * TCP forwarder, non-blocking.
+ * <br>
+ * One thread (a {@link Selector}) accepts the clients, and writes to them.
+ * {@link #write(byte[])} does not do any I/O:
+ * <ul>
+ *   <li>The message is copied once, into a direct buffer shared by all the clients (see {@link #encode(byte[])}).</li>
+ *   <li>A read-only view of it is queued for each client.</li>
+ *   <li>The selector thread writes the queued messages of a client in one gathering write, as soon as the client can take them.</li>
+ * </ul>
+ * A client that does not read fast enough (more than <code>maxPendingBytes</code> waiting) does not receive the new messages
+ * (they are dropped for this client only). If it stays like that for more than <code>slowClientTimeout</code> ms,
+ * it is disconnected. The other clients are not impacted.
+ * <br>
+ * Those two values can be set with the properties <code>forward.XX.max.pending.bytes</code> and <code>forward.XX.slow.client.timeout</code>
+ * (see {@link nmea.mux.MuxInitializer}), or through {@link #setProperties(Properties)}.
+ */
 public class TCPServer implements Forwarder {
-	private TCPServer instance = this;
-	private List<Socket> clientSocketlist = new ArrayList<Socket>(1);
+
+	public final static int DEFAULT_MAX_PENDING_BYTES = 64 * 1_024;
+	public final static long DEFAULT_SLOW_CLIENT_TIMEOUT = 30_000L; // ms
+
+	private final static int SLAB_SIZE = 16 * 1_024;
+	private final static int MAX_GATHER = 1_024; // IOV_MAX on Linux
+
+	private final List<Client> clients = new CopyOnWriteArrayList<>();
+	private final Queue<Client> toFlush = new ConcurrentLinkedQueue<>();
 
 	private int tcpPort = 7001;
-	private ServerSocket serverSocket = null;
+	private ServerSocketChannel serverChannel = null;
+	private Selector selector = null;
+	private volatile boolean keepWorking = true;
+
+	private int maxPendingBytes = DEFAULT_MAX_PENDING_BYTES;
+	private long slowClientTimeout = DEFAULT_SLOW_CLIENT_TIMEOUT;
+
+	private ByteBuffer slab = null; // Shared encoding buffer
 
 	public TCPServer(int port) throws Exception {
 		this.tcpPort = port;
 
-		try {
-			SocketThread socketThread = new SocketThread(this);
-			socketThread.start();
-		} catch (Exception ex) {
-			throw ex;
-		}
+		this.selector = Selector.open();
+		this.serverChannel = ServerSocketChannel.open();
+		this.serverChannel.configureBlocking(false);
+		this.serverChannel.socket().setReuseAddress(true);
+		this.serverChannel.bind(new InetSocketAddress(port));
+		this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+		SelectorThread selectorThread = new SelectorThread();
+		selectorThread.start();
 	}
 
 	public int getTcpPort() {
 		return this.tcpPort;
 	}
 
-	protected void setSocket(Socket skt) {
-		this.clientSocketlist.add(skt);
+	public void setMaxPendingBytes(int maxPendingBytes) {
+		this.maxPendingBytes = maxPendingBytes;
+	}
+
+	public void setSlowClientTimeout(long slowClientTimeout) {
+		this.slowClientTimeout = slowClientTimeout;
 	}
 
 	@Override
 	public void write(byte[] message) {
-		List<Socket> toRemove = new ArrayList<Socket>();
-		synchronized( clientSocketlist) {
-			clientSocketlist.stream().forEach(tcpSocket -> { // TODO Synchronize the stream?
-				synchronized (tcpSocket) {
-					try {
-						DataOutputStream out = null;
-						if (out == null)
-							out = new DataOutputStream(tcpSocket.getOutputStream());
-						out.write(message);
-						out.flush();
-					} catch (SocketException se) {
-						toRemove.add(tcpSocket);
-					} catch (Exception ex) {
-						System.err.println("TCPWriter.write:" + ex.getLocalizedMessage());
-						ex.printStackTrace();
-					}
-				}
-			});
+		if (clients.isEmpty()) {
+			return;
 		}
-
-		if (toRemove.size() > 0) {
-			synchronized (clientSocketlist) {
-				toRemove.stream().forEach(this.clientSocketlist::remove);
+		ByteBuffer encoded = encode(message);
+		long now = System.currentTimeMillis();
+		boolean wakeup = false;
+		for (Client client : clients) {
+			if (client.enqueue(encoded.duplicate(), now)) {
+				toFlush.add(client);
+				wakeup = true;
 			}
 		}
+		if (wakeup) {
+			selector.wakeup();
+		}
 	}
 
-	private int getNbClients() {
-		return clientSocketlist.size();
+	/**
+	 * Copies the message in the shared direct buffer. A new one is allocated when the current one is full,
+	 * the previous ones are garbage-collected when all the clients have written them.
+	 *
+	 * @param message the message
+	 * @return a read-only view on the message
+	 */
+	private synchronized ByteBuffer encode(byte[] message) {
+		if (slab == null || slab.remaining() < message.length) {
+			slab = ByteBuffer.allocateDirect(Math.max(SLAB_SIZE, message.length));
+		}
+		int start = slab.position();
+		slab.put(message);
+		ByteBuffer view = slab.duplicate();
+		view.position(start);
+		view.limit(start + message.length);
+		return view.slice().asReadOnlyBuffer();
 	}
 
-	private String formatByteHexa(byte b) {
-		String s = Integer.toHexString(b).toUpperCase();
-		while (s.length() < 2)
-			s = "0" + s;
-		return s;
+	private int getNbClients() {
+		return clients.size();
 	}
 
 	@Override
 	public void close() {
 		System.out.println("- Stop writing to " + this.getClass().getName());
+		keepWorking = false;
 		try {
-			for (Socket tcpSocket : clientSocketlist)
-				tcpSocket.close();
+			selector.wakeup();
+			for (Client client : clients) {
+				client.close();
+			}
+			clients.clear();
+			serverChannel.close();
 		} catch (Exception ex) {
 			throw new RuntimeException(ex);
 		}
 	}
 
+	/**
+	 * One connected client, with its queue of messages to write.
+	 * <br>
+	 * {@link #enqueue(ByteBuffer, long)} is called by the writers, all the rest by the selector thread. No lock.
+	 */
+	private class Client {
+		private final SocketChannel channel;
+		private final SelectionKey key;
+		private final Queue<ByteBuffer> incoming = new ConcurrentLinkedQueue<>();
+		private final ArrayDeque<ByteBuffer> inFlight = new ArrayDeque<>(); // Selector thread only
+		private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+		private final AtomicInteger pendingBytes = new AtomicInteger(0);
+		private final AtomicBoolean scheduled = new AtomicBoolean(false); // Already in toFlush, or waiting for OP_WRITE
+		private volatile long slowSince = 0L; // 0: not slow
+		private final AtomicLong dropped = new AtomicLong(0L);
+
+		Client(SocketChannel channel, SelectionKey key) {
+			this.channel = channel;
+			this.key = key;
+		}
+
+		/**
+		 * @return true if the client has to be scheduled for a flush
+		 */
+		boolean enqueue(ByteBuffer message, long now) {
+			int len = message.remaining();
+			if (pendingBytes.addAndGet(len) > maxPendingBytes) {
+				pendingBytes.addAndGet(-len);
+				dropped.incrementAndGet();
+				if (slowSince == 0L) {
+					slowSince = now;
+				}
+				return false;
+			}
+			incoming.add(message);
+			return scheduled.compareAndSet(false, true);
+		}
+
+		/**
+		 * Writes as much as possible, without blocking.
+		 *
+		 * @return true if everything has been written.
+		 */
+		boolean flush() throws IOException {
+			while (true) {
+				ByteBuffer bb;
+				while (inFlight.size() < MAX_GATHER && (bb = incoming.poll()) != null) {
+					inFlight.add(bb);
+				}
+				if (inFlight.isEmpty()) {
+					slowSince = 0L;
+					scheduled.set(false);
+					if (incoming.isEmpty() || !scheduled.compareAndSet(false, true)) { // Nothing arrived in between, or someone else has scheduled it.
+						return true;
+					}
+					continue;
+				}
+				int nb = 0;
+				long toWrite = 0L;
+				for (ByteBuffer buffer : inFlight) {
+					gather[nb++] = buffer;
+					toWrite += buffer.remaining();
+				}
+				long written = channel.write(gather, 0, nb);
+				Arrays.fill(gather, 0, nb, null);
+				pendingBytes.addAndGet((int) -written);
+				while (!inFlight.isEmpty() && !inFlight.peek().hasRemaining()) {
+					inFlight.poll();
+				}
+				if (written < toWrite) {
+					return false; // Socket buffer full, still scheduled, OP_WRITE will tell when to go on.
+				}
+			}
+		}
+
+		boolean isTooSlow(long now) {
+			long since = slowSince;
+			return since != 0L && (now - since) > slowClientTimeout;
+		}
+
+		void close() {
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException ignore) {
+			}
+		}
+	}
+
+	private class SelectorThread extends Thread {
+		private final ByteBuffer readBuffer = ByteBuffer.allocate(1_024);
+
+		public SelectorThread() {
+			super("TCPServer");
+			this.setDaemon(true);
+		}
+
+		public void run() {
+			System.out.println(".......... serverSocket waiting (TCP:" + tcpPort + ").");
+			while (keepWorking) {
+				try {
+					selector.select(1_000L);
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						try {
+							if (key.isAcceptable()) {
+								accept();
+							} else {
+								Client client = (Client) key.attachment();
+								if (key.isReadable()) {
+									read(client);
+								}
+								if (key.isValid() && key.isWritable()) {
+									flush(client);
+								}
+							}
+						} catch (CancelledKeyException cke) {
+							// Client gone
+						}
+					}
+					Client client;
+					while ((client = toFlush.poll()) != null) {
+						flush(client);
+					}
+					long now = System.currentTimeMillis();
+					for (Client c : clients) {
+						if (c.isTooSlow(now)) {
+							System.out.println(String.format(".......... Disconnecting slow client (TCP:%d), %d message(s) dropped.", tcpPort, c.dropped.get()));
+							remove(c);
+						}
+					}
+				} catch (Exception ex) {
+					if (keepWorking) {
+						System.err.println("SelectorThread:" + ex.getLocalizedMessage());
+					}
+				}
+			}
+			try {
+				selector.close();
+			} catch (IOException ignore) {
+			}
+			System.out.println("..... End of TCP SocketThread.");
+		}
+
+		private void accept() throws IOException {
+			SocketChannel channel = serverChannel.accept();
+			if (channel != null) {
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+				Client client = new Client(channel, key);
+				key.attach(client);
+				clients.add(client);
+				System.out.println(".......... serverSocket accepted (TCP:" + tcpPort + ").");
+			}
+		}
+
+		/*
+		 * The clients are not supposed to talk, this is to know when they are gone.
+		 */
+		private void read(Client client) {
+			try {
+				readBuffer.clear();
+				if (client.channel.read(readBuffer) < 0) {
+					remove(client);
+				}
+			} catch (IOException ioe) {
+				remove(client);
+			}
+		}
+
+		private void flush(Client client) {
+			if (!client.key.isValid()) {
+				return;
+			}
+			try {
+				if (client.flush()) {
+					client.key.interestOps(SelectionKey.OP_READ);
+				} else {
+					client.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				}
+			} catch (IOException ioe) {
+				remove(client);
+			}
+		}
+
+		private void remove(Client client) {
+			clients.remove(client);
+			client.close();
+		}
+	}
+
 	public static void main(String[] args) {
 //	String gpsd = "{\"class\":\"TVP\",\"tag\":\"MID2\",\"time\":\"2010-04-30T11:48:20.10Z\",\"ept\":0.005,\"lat\":46.498204497,\"lon\":7.568061439,\"alt\":1327.689,\"epx\":15.319,\"epy\":17.054,\"epv\":124.484,\"track\":10.3797,\"speed\":0.091,\"climb\":-0.085,\"eps\",34.11,\"mode\":3}";
 		String gpsd = "?WATCH={...};";
@@ -111,31 +362,6 @@ public class TCPServer implements Forwarder {
 		}
 	}
 
-	private class SocketThread extends Thread {
-		private TCPServer parent = null;
-
-		public SocketThread(TCPServer parent) {
-			super("TCPServer");
-			this.parent = parent;
-		}
-
-		public void run() {
-			try {
-				parent.serverSocket = new ServerSocket(tcpPort);
-				while (true) // Wait for the clients
-				{
-          System.out.println(".......... serverSocket waiting (TCP:" + tcpPort + ").");
-					Socket clientSkt = serverSocket.accept();
-          System.out.println(".......... serverSocket accepted (TCP:" + tcpPort + ").");
-					parent.setSocket(clientSkt);
-				}
-			} catch (Exception ex) {
-				System.err.println("SocketThread:" + ex.getLocalizedMessage());
-			}
-			System.out.println("..... End of TCP SocketThread.");
-		}
-	}
-
 	public static class TCPBean {
 		private String cls;
 		private int port;
@@ -158,7 +384,12 @@ public class TCPServer implements Forwarder {
 		return new TCPBean(this);
 	}
 
+	/**
+	 * @param props <code>max.pending.bytes</code> and <code>slow.client.timeout</code> (in ms), both optional.
+	 */
 	@Override
 	public void setProperties(Properties props) {
+		this.maxPendingBytes = Integer.parseInt(props.getProperty("max.pending.bytes", String.valueOf(this.maxPendingBytes)));
+		this.slowClientTimeout = Long.parseLong(props.getProperty("slow.client.timeout", String.valueOf(this.slowClientTimeout)));
 	}
 }
@@ -1,11 +1,29 @@
 package nmea.forwarders;
 
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.io.IOException;
 import java.net.InetAddress;
-import java.net.MulticastSocket;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.util.Properties;
 
+/**
+ * UDP forwarder, unicast, broadcast, or multicast (depending on the address).
+ * <br>
+ * One {@link DatagramChannel} is opened when the forwarder is created, and used for all the messages.
+ * <br>
+ * Optionally, several messages can be sent in the same datagram:
+ * <ul>
+ *   <li><code>linger</code>: how long (in ms) a message can wait for others. 0 (default) means one datagram per message, as before.</li>
+ *   <li><code>mtu</code>: the max size of a datagram. When the next message does not fit, what is waiting is sent right away.</li>
+ * </ul>
+ * For multicast, <code>ttl</code> and <code>interface</code> (a network interface name, like <code>wlan0</code>) can be set.
+ * <br>
+ * All those can be set with <code>forward.XX.linger</code>, <code>forward.XX.mtu</code>, <code>forward.XX.ttl</code>, <code>forward.XX.interface</code>
+ * (see {@link nmea.mux.MuxInitializer}), or through {@link #setProperties(Properties)}.
+ */
 public class UDPServer implements Forwarder {
 	private int udpPort = 8001;
 	private InetAddress address = null;
@@ -13,6 +31,19 @@ public class UDPServer implements Forwarder {
 	private final static String DEFAULT_HOST = "127.0.0.1"; // "230.0.0.1"
 	private String hostName = DEFAULT_HOST;
 
+	public final static int DEFAULT_MTU = 1_472; // 1500 - IP and UDP headers
+	public final static int DEFAULT_TTL = 1;
+
+	private DatagramChannel channel = null;
+	private InetSocketAddress target = null;
+
+	private int mtu = DEFAULT_MTU;
+	private long linger = 0L; // ms, 0: no batching
+	private ByteBuffer batch = null;
+	private long firstInBatch = 0L;
+	private Thread flusher = null;
+	private boolean keepWorking = true;
+
 	public UDPServer(int port) throws Exception {
 		this(port, DEFAULT_HOST);
 	}
@@ -26,25 +57,78 @@ public class UDPServer implements Forwarder {
 			throw ex;
 //    ex.printStackTrace();
 		}
+		this.target = new InetSocketAddress(address, udpPort);
+		this.channel = DatagramChannel.open();
+		this.channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+		if (address.isMulticastAddress()) {
+			this.channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, DEFAULT_TTL);
+		}
+		this.batch = ByteBuffer.allocateDirect(mtu);
+	}
+
+	/**
+	 * @param linger in ms. 0 to send each message in its own datagram.
+	 */
+	public synchronized void setLinger(long linger) {
+		flush();
+		this.linger = linger;
+		if (linger > 0 && flusher == null) {
+			flusher = new Thread(this::lingerLoop, "UDPServer:" + udpPort);
+			flusher.setDaemon(true);
+			flusher.start();
+		}
+		this.notifyAll();
+	}
+
+	public synchronized void setMtu(int mtu) {
+		flush();
+		this.mtu = mtu;
+		this.batch = ByteBuffer.allocateDirect(mtu);
+	}
+
+	public void setTtl(int ttl) throws IOException {
+		this.channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, ttl);
+	}
+
+	public void setNetworkInterface(String name) throws IOException {
+		NetworkInterface networkInterface = NetworkInterface.getByName(name);
+		if (networkInterface == null) {
+			throw new IllegalArgumentException(String.format("No such network interface [%s]", name));
+		}
+		this.channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
 	}
 
 	@Override
-	public void write(byte[] message) {
+	public synchronized void write(byte[] message) {
+		if (linger <= 0 || message.length > mtu) {
+			flush();
+			send(ByteBuffer.wrap(message));
+			return;
+		}
+		if (batch.remaining() < message.length) {
+			flush();
+		}
+		if (batch.position() == 0) {
+			firstInBatch = System.currentTimeMillis();
+			this.notifyAll(); // Wake up the flusher
+		}
+		batch.put(message);
+	}
+
+	/**
+	 * Sends what is waiting, if anything. Must be called with the monitor held.
+	 */
+	private void flush() {
+		if (batch.position() > 0) {
+			batch.flip();
+			send(batch);
+			batch.clear();
+		}
+	}
+
+	private void send(ByteBuffer datagram) {
 		try {
-			// Create datagram socket
-			DatagramSocket dsocket = null;
-			if (address.isMulticastAddress()) {
-				dsocket = new MulticastSocket(udpPort);
-				((MulticastSocket) dsocket).joinGroup(address);
-			} else
-				dsocket = new DatagramSocket(udpPort, address);
-
-			// Initialize a datagram
-			DatagramPacket packet = new DatagramPacket(message, message.length, address, udpPort);
-			dsocket.send(packet);
-			if (address.isMulticastAddress())
-				((MulticastSocket) dsocket).leaveGroup(address);
-			dsocket.close();
+			channel.send(datagram, target);
 		} catch (Exception ex) {
 			if ("No such device".equals(ex.getMessage()))
 				System.out.println("No such devide [" + address + "] (from " + this.getClass().getName() + ")");
@@ -53,9 +137,41 @@ public class UDPServer implements Forwarder {
 		}
 	}
 
+	/**
+	 * Sends the batch when its first message has waited <code>linger</code> ms.
+	 */
+	private synchronized void lingerLoop() {
+		while (keepWorking) {
+			try {
+				if (batch.position() == 0 || linger <= 0) {
+					this.wait();
+				} else {
+					long toWait = (firstInBatch + linger) - System.currentTimeMillis();
+					if (toWait > 0) {
+						this.wait(toWait);
+					} else {
+						flush();
+					}
+				}
+			} catch (InterruptedException ie) {
+				break;
+			}
+		}
+	}
+
 	@Override
 	public void close() {
 		System.out.println("- Stop writing to " + this.getClass().getName());
+		synchronized (this) {
+			flush();
+			keepWorking = false;
+			this.notifyAll();
+		}
+		try {
+			channel.close();
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
 	}
 
 	public static class UDPBean {
@@ -78,8 +194,26 @@ public class UDPServer implements Forwarder {
 		return new UDPBean(this);
 	}
 
+	/**
+	 * @param props <code>mtu</code>, <code>linger</code> (in ms), <code>ttl</code>, <code>interface</code>, all optional.
+	 */
 	@Override
 	public void setProperties(Properties props) {
+		try {
+			if (props.getProperty("mtu") != null) {
+				setMtu(Integer.parseInt(props.getProperty("mtu")));
+			}
+			if (props.getProperty("linger") != null) {
+				setLinger(Long.parseLong(props.getProperty("linger")));
+			}
+			if (props.getProperty("ttl") != null) {
+				setTtl(Integer.parseInt(props.getProperty("ttl")));
+			}
+			if (props.getProperty("interface") != null) {
+				setNetworkInterface(props.getProperty("interface"));
+			}
+		} catch (IOException ioe) {
+			throw new RuntimeException(ioe);
+		}
 	}
 }
-
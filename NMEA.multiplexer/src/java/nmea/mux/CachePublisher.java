@@ -0,0 +1,368 @@
+package nmea.mux;
+
+import com.google.gson.Gson;
+import context.ApplicationContext;
+import context.NMEADataCache;
+import nmea.utils.NMEAJsonWriter;
+import nmea.utils.NMEAUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Pushes the content of the {@link NMEADataCache} to its subscribers (Server-Sent Events, WebSockets),
+ * instead of having them polling <code>GET /cache</code>.
+ * <br>
+ * A subscriber first receives the full cache, then only what has changed, at most once per <code>period</code> ms.
+ * The messages look like
+ * <pre>
+ *   { "version": 1234, "full": false, "changes": { "BSP": {...}, "Position": {...} }, "removed": [] }
+ * </pre>
+ * Each value is serialized once per change (see {@link NMEADataCache.CacheEntry#getVersion()}),
+ * and the subscribers that are at the same version share the same message.
+ * <br>
+ * One thread, started with the first subscriber. It must not block on a subscriber:
+ * the ones that write to a stream are wrapped in a {@link QueuedSubscriber}.
+ * A subscriber that cannot keep up, or is stuck in a write for more than {@link #WRITE_TIMEOUT} ms, is dropped.
+ */
+public class CachePublisher {
+
+	public final static long DEFAULT_PERIOD = Long.parseLong(System.getProperty("cache.push.period", "1000")); // ms
+	public final static long WRITE_TIMEOUT = Long.parseLong(System.getProperty("cache.push.write.timeout", "10000")); // ms
+	private final static int QUEUE_SIZE = Integer.parseInt(System.getProperty("cache.push.queue.size", "16"));
+	private final static long TICK = 50L;          // ms
+	private final static long HEARTBEAT = 15_000L; // ms
+
+	private final static Set<String> NOT_PUBLISHED = Collections.singleton(NMEADataCache.DEVIATION_DATA); // Useless for the clients.
+
+	/**
+	 * Where the messages go.
+	 */
+	public interface Subscriber {
+		/**
+		 * @param message the JSON message
+		 * @throws IOException when the subscriber is gone. It is then unsubscribed.
+		 */
+		void send(String message) throws IOException;
+
+		/**
+		 * Called when nothing has been sent for a while, to find out if the subscriber is still there.
+		 */
+		default void heartbeat() throws IOException {
+		}
+
+		void close();
+	}
+
+	/**
+	 * For the subscribers that write to a stream, with a blocking write, like Server-Sent Events.
+	 * <br>
+	 * The messages are queued (at most <code>cache.push.queue.size</code>, default 16), and written by the subscriber's own thread.
+	 * A message cannot be skipped, the next ones are only the changes. So when the queue is full,
+	 * or when a write has been going on for more than {@link #WRITE_TIMEOUT} ms, the subscriber is dropped.
+	 */
+	public static class QueuedSubscriber implements Subscriber {
+		private final static String HEARTBEAT_MARKER = new String("heartbeat"); // Compared by reference
+
+		private final Subscriber stream;
+		private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+		private final Thread writer;
+		private volatile long writingSince = 0L; // 0 when not writing
+		private volatile IOException failure = null;
+		private volatile boolean closed = false;
+
+		/**
+		 * @param stream the subscriber that does the blocking writes
+		 */
+		public QueuedSubscriber(Subscriber stream) {
+			this.stream = stream;
+			this.writer = new Thread(this::write, "CachePublisher writer");
+			this.writer.setDaemon(true);
+			this.writer.start();
+		}
+
+		private void write() {
+			while (!closed) {
+				try {
+					String message = queue.take();
+					writingSince = System.currentTimeMillis();
+					if (message == HEARTBEAT_MARKER) {
+						stream.heartbeat();
+					} else {
+						stream.send(message);
+					}
+				} catch (InterruptedException ie) {
+					break;
+				} catch (IOException ioe) {
+					failure = ioe;
+					break;
+				} finally {
+					writingSince = 0L;
+				}
+			}
+		}
+
+		private void enqueue(String message) throws IOException {
+			if (closed) {
+				throw new IOException("Closed");
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			long since = writingSince;
+			if (since != 0L && System.currentTimeMillis() - since > WRITE_TIMEOUT) {
+				throw new IOException(String.format("Write pending for more than %d ms", WRITE_TIMEOUT));
+			}
+			if (!queue.offer(message)) {
+				throw new IOException(String.format("Too slow, %d messages pending", queue.size()));
+			}
+		}
+
+		@Override
+		public void send(String message) throws IOException {
+			enqueue(message);
+		}
+
+		@Override
+		public void heartbeat() throws IOException {
+			enqueue(HEARTBEAT_MARKER);
+		}
+
+		/**
+		 * Also releases a pending write, the connection is closed under it.
+		 */
+		@Override
+		public void close() {
+			closed = true;
+			writer.interrupt();
+			queue.clear();
+			stream.close();
+		}
+	}
+
+	private static class Subscription {
+		final Subscriber subscriber;
+		final long period;
+		long lastVersion = -1L;
+		Set<String> knownKeys = Collections.emptySet();
+		long lastSent = 0L;
+
+		Subscription(Subscriber subscriber, long period) {
+			this.subscriber = subscriber;
+			this.period = period;
+		}
+	}
+
+	private static class Fragment {
+		final long version;
+		final String json;
+
+		Fragment(long version, String json) {
+			this.version = version;
+			this.json = json;
+		}
+	}
+
+	private static class Delta {
+		final String message;
+		final long sentUpTo; // All the changes up to this version are in the message
+
+		Delta(String message, long sentUpTo) {
+			this.message = message;
+			this.sentUpTo = sentUpTo;
+		}
+	}
+
+	/**
+	 * Where a subscriber is: its version, and the key set it was sent with.
+	 * The key sets come from the cache snapshots, one instance per snapshot, compared by reference.
+	 */
+	private static class From {
+		final long version;
+		final Set<String> knownKeys;
+
+		From(long version, Set<String> knownKeys) {
+			this.version = version;
+			this.knownKeys = knownKeys;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof From)) {
+				return false;
+			}
+			From other = (From) o;
+			return version == other.version && knownKeys == other.knownKeys;
+		}
+
+		@Override
+		public int hashCode() {
+			return (31 * Long.hashCode(version)) + System.identityHashCode(knownKeys);
+		}
+	}
+
+	private static CachePublisher instance = null;
+
+	public static synchronized CachePublisher getInstance() {
+		if (instance == null) {
+			instance = new CachePublisher();
+		}
+		return instance;
+	}
+
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+	private final Gson gson = new Gson();
+	private final Map<String, Fragment> fragments = new HashMap<>(); // Publisher thread only
+	private Thread publisher = null;
+	private long vmgVersion = -1L;
+
+	private CachePublisher() {
+	}
+
+	/**
+	 * @param subscriber the subscriber
+	 * @param period     min time between two messages, in ms
+	 */
+	public synchronized void subscribe(Subscriber subscriber, long period) {
+		subscriptions.add(new Subscription(subscriber, Math.max(TICK, period)));
+		if (publisher == null) {
+			publisher = new Thread(this::publish, "CachePublisher");
+			publisher.setDaemon(true);
+			publisher.start();
+		}
+		this.notifyAll();
+	}
+
+	public void unsubscribe(Subscriber subscriber) {
+		subscriptions.removeIf(subscription -> subscription.subscriber == subscriber);
+	}
+
+	public int getNbSubscribers() {
+		return subscriptions.size();
+	}
+
+	private void publish() {
+		while (true) {
+			try {
+				synchronized (this) {
+					while (subscriptions.isEmpty()) {
+						this.wait();
+					}
+				}
+				NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
+				if (cache != null) {
+					publish(cache, System.currentTimeMillis());
+				}
+				Thread.sleep(TICK);
+			} catch (InterruptedException ie) {
+				break;
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		}
+	}
+
+	private void publish(NMEADataCache cache, long now) {
+		if (subscriptions.stream().noneMatch(subscription -> now - subscription.lastSent >= subscription.period)) {
+			return;
+		}
+		if (cache.getVersion() != vmgVersion) { // Like GET /cache
+			NMEAUtils.calculateVMGs(cache);
+			vmgVersion = cache.getVersion();
+		}
+		Map<String, NMEADataCache.CacheEntry> entries = cache.entrySnapshot();
+		long version = entries.values().stream().mapToLong(NMEADataCache.CacheEntry::getVersion).max().orElse(0L);
+		fragments.keySet().retainAll(entries.keySet());
+
+		Map<From, Delta> messages = new HashMap<>(); // Subscribers at the same point share the message
+		for (Subscription subscription : subscriptions) {
+			if (now - subscription.lastSent < subscription.period) {
+				continue;
+			}
+			try {
+				if (subscription.lastVersion == version && subscription.knownKeys.equals(entries.keySet())) {
+					if (now - subscription.lastSent > HEARTBEAT) {
+						subscription.subscriber.heartbeat();
+						subscription.lastSent = now;
+					}
+					continue;
+				}
+				Delta delta = messages.computeIfAbsent(new From(subscription.lastVersion, subscription.knownKeys),
+								from -> delta(entries, version, from.version, from.knownKeys));
+				subscription.subscriber.send(delta.message);
+				subscription.lastVersion = delta.sentUpTo; // Below version if a value could not be serialized, it is sent again next time
+				subscription.knownKeys = entries.keySet();
+				subscription.lastSent = now;
+			} catch (IOException ioe) {
+				subscriptions.remove(subscription);
+				subscription.subscriber.close();
+			}
+		}
+	}
+
+	/**
+	 * @return the message with the changes since <code>since</code>, and the version it brings the subscriber to.
+	 * That is <code>version</code>, or less when a value could not be serialized.
+	 */
+	private Delta delta(Map<String, NMEADataCache.CacheEntry> entries, long version, long since, Set<String> knownKeys) {
+		long sentUpTo = version;
+		StringBuilder sb = new StringBuilder(1_024);
+		sb.append("{\"version\":").append(version)
+						.append(",\"full\":").append(since < 0)
+						.append(",\"changes\":{");
+		boolean first = true;
+		for (Map.Entry<String, NMEADataCache.CacheEntry> entry : entries.entrySet()) {
+			if (entry.getValue().getVersion() <= since || NOT_PUBLISHED.contains(entry.getKey())) {
+				continue;
+			}
+			String json = fragment(entry.getKey(), entry.getValue());
+			if (json == null) {
+				sentUpTo = Math.min(sentUpTo, entry.getValue().getVersion() - 1);
+				continue;
+			}
+			if (!first) {
+				sb.append(',');
+			}
+			sb.append(gson.toJson(entry.getKey())).append(':').append(json);
+			first = false;
+		}
+		sb.append("},\"removed\":[");
+		first = true;
+		for (String key : knownKeys) {
+			if (!entries.containsKey(key)) {
+				if (!first) {
+					sb.append(',');
+				}
+				sb.append(gson.toJson(key));
+				first = false;
+			}
+		}
+		return new Delta(sb.append("]}").toString(), sentUpTo);
+	}
+
+	/**
+	 * @return the JSON of the value, serialized only once per version.
+	 */
+	private String fragment(String key, NMEADataCache.CacheEntry entry) {
+		Fragment fragment = fragments.get(key);
+		if (fragment == null || fragment.version != entry.getVersion()) {
+			String json;
+			try {
+				json = new String(NMEAJsonWriter.toJson(entry.getValue()), StandardCharsets.UTF_8);
+			} catch (Exception ex) { // Concurrent modification of a map value, for example. Skipped, retried with the next message.
+				return null;
+			}
+			fragment = new Fragment(entry.getVersion(), json);
+			fragments.put(key, fragment);
+		}
+		return fragment.json;
+	}
+}
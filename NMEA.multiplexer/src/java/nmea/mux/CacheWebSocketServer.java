@@ -0,0 +1,102 @@
+package nmea.mux;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link CachePublisher} messages, over WebSocket.
+ * <br>
+ * Started by the {@link GenericNMEAMultiplexer} if <code>cache.push.ws.port</code> is set in its properties.
+ * Connect to <code>ws://host:port/</code>, or <code>ws://host:port/?period=500</code> to get at most 2 messages per second.
+ * What the clients send is ignored.
+ */
+public class CacheWebSocketServer extends WebSocketServer {
+
+	private final Map<WebSocket, CachePublisher.Subscriber> subscribers = new ConcurrentHashMap<>();
+
+	public CacheWebSocketServer(int port) {
+		super(new InetSocketAddress(port));
+	}
+
+	@Override
+	public void onOpen(WebSocket conn, ClientHandshake handshake) {
+		CachePublisher.Subscriber subscriber = new CachePublisher.Subscriber() {
+			private long bufferedSince = 0L; // The sends are asynchronous. Since when the client has not read everything.
+
+			private void check() throws IOException {
+				if (!conn.isOpen()) {
+					throw new IOException("WebSocket closed");
+				}
+				if (!conn.hasBufferedData()) {
+					bufferedSince = 0L;
+				} else if (bufferedSince == 0L) {
+					bufferedSince = System.currentTimeMillis();
+				} else if (System.currentTimeMillis() - bufferedSince > CachePublisher.WRITE_TIMEOUT) {
+					throw new IOException(String.format("Client behind for more than %d ms", CachePublisher.WRITE_TIMEOUT));
+				}
+			}
+
+			@Override
+			public void send(String message) throws IOException {
+				check();
+				conn.send(message);
+			}
+
+			@Override
+			public void heartbeat() throws IOException {
+				check();
+			}
+
+			@Override
+			public void close() {
+				subscribers.remove(conn);
+				conn.close(1000);
+			}
+		};
+		subscribers.put(conn, subscriber);
+		CachePublisher.getInstance().subscribe(subscriber, getPeriod(handshake.getResourceDescriptor()));
+	}
+
+	@Override
+	public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+		CachePublisher.Subscriber subscriber = subscribers.remove(conn);
+		if (subscriber != null) {
+			CachePublisher.getInstance().unsubscribe(subscriber);
+		}
+	}
+
+	@Override
+	public void onMessage(WebSocket conn, String message) {
+	}
+
+	@Override
+	public void onError(WebSocket conn, Exception ex) {
+		ex.printStackTrace();
+	}
+
+	/**
+	 * @param resource like <code>/?period=500</code>
+	 * @return the period, in ms, {@link CachePublisher#DEFAULT_PERIOD} if not there.
+	 */
+	static long getPeriod(String resource) {
+		if (resource != null && resource.contains("?")) {
+			for (String nv : resource.substring(resource.indexOf("?") + 1).split("&")) {
+				String[] nameValue = nv.split("=");
+				if ("period".equals(nameValue[0]) && nameValue.length > 1) {
+					try {
+						return Long.parseLong(nameValue[1]);
+					} catch (NumberFormatException nfe) {
+						break;
+					}
+				}
+			}
+		}
+		return CachePublisher.DEFAULT_PERIOD;
+	}
+}
@@ -7,16 +7,20 @@ import http.HTTPServerInterface;
 import http.utils.DumpUtil;
 import nmea.api.Multiplexer;
 import nmea.api.NMEAClient;
-import nmea.api.NMEAParser;
+import nmea.api.NMEASentence;
 import nmea.forwarders.Forwarder;
 import nmea.mux.context.Context;
+import nmea.mux.metrics.MuxMetrics;
 
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.stream.Collectors;
 
 /**
  * <b>NMEA Multiplexer.</b><br>
@@ -26,11 +30,15 @@ import java.util.Properties;
  */
 public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface {
 	private HTTPServer adminServer = null;
+	private CacheWebSocketServer cacheWebSocketServer = null;
 
 	private List<NMEAClient> nmeaDataClients = new ArrayList<>();
 	private List<Forwarder> nmeaDataForwarders = new ArrayList<>();
 	private List<Computer> nmeaDataComputers = new ArrayList<>();
 
+	// One queue per forwarder and per computer, see OutputQueue
+	private final Map<Forwarder, OutputQueue> outputQueues = new IdentityHashMap<>();
+
 	private RESTImplementation restImplementation;
 
 	/**
@@ -53,10 +61,20 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 		return response;
 	}
 
+	/**
+	 * Not synchronized, this is called by all the input channels (and the computers).
+	 * The forwarders and computers are fed through their own {@link OutputQueue},
+	 * so this method does not wait for them.
+	 * <br>
+	 * The sentence is wrapped once in an {@link NMEASentence}, shared by the cache, the computers and the forwarders:
+	 * its checksum is validated, and its data parsed, only once.
+	 *
+	 * @param mess the NMEA sentence
+	 */
 	@Override
-	public synchronized void onData(String mess) {
+	public void onData(String mess) {
 		// To measure the flow (in bytes per time)
-    Context.getInstance().addManagedBytes(mess.length());
+		Context.getInstance().addManagedBytes(mess.length());
 
 		// Last sentence (inbound)
 		Context.getInstance().setLastDataSentence(mess);
@@ -66,27 +84,99 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 			DumpUtil.displayDualDump(mess);
 			System.out.println("==== End Mux =============");
 		}
+		NMEASentence sentence = new NMEASentence(mess);
+		MuxMetrics.getInstance().markSentence(mess.length(), sentence.isValid());
 		// Cache, if initialized
 		if (ApplicationContext.getInstance().getDataCache() != null) {
-			ApplicationContext.getInstance().getDataCache().parseAndFeed(mess);
+			ApplicationContext.getInstance().getDataCache().parseAndFeed(sentence);
 		}
-		// Computers. Must go first, as a computer may refeed the present onData method.
+		// The lists are copied, and the sentence offered outside of their lock: with the 'block' policy, offer can wait for
+		// a consumer that is itself re-feeding the present onData method (a computer), and would then wait for this lock.
+		Computer[] computers;
 		synchronized (nmeaDataComputers) {
-			nmeaDataComputers.stream()
-							.forEach(computer -> {
-								computer.write(mess.getBytes());
-							});
+			computers = nmeaDataComputers.toArray(new Computer[nmeaDataComputers.size()]);
+		}
+		Forwarder[] forwarders;
+		synchronized (nmeaDataForwarders) {
+			forwarders = nmeaDataForwarders.toArray(new Forwarder[nmeaDataForwarders.size()]);
+		}
+		// Computers. Must go first, as a computer may refeed the present onData method.
+		for (Computer computer : computers) {
+			outputQueue(computer).offer(sentence);
 		}
 		// Forwarders
+		for (Forwarder fwd : forwarders) {
+			outputQueue(fwd).offer(sentence);
+		}
+		pruneOutputQueues(computers.length + forwarders.length);
+	}
+
+	/**
+	 * Sets the queue size and overflow policy of a forwarder (or computer).
+	 * Must be called before the forwarder receives its first message.
+	 *
+	 * @param target the forwarder, or computer
+	 * @param size   the size of the queue, 0 for no queue
+	 * @param policy what to do when the queue is full
+	 */
+	public void setOutputQueue(Forwarder target, int size, OutputQueue.OverflowPolicy policy) {
+		synchronized (outputQueues) {
+			OutputQueue previous = outputQueues.remove(target);
+			if (previous != null) {
+				previous.stop(true);
+			}
+			outputQueues.put(target, new OutputQueue(target, size, policy));
+		}
+	}
+
+	private OutputQueue outputQueue(Forwarder target) {
+		synchronized (outputQueues) {
+			OutputQueue queue = outputQueues.get(target);
+			if (queue == null) { // Forwarder added through REST, for example.
+				queue = new OutputQueue(target, OutputQueue.DEFAULT_SIZE, OutputQueue.DEFAULT_POLICY);
+				outputQueues.put(target, queue);
+			}
+			return queue;
+		}
+	}
+
+	/*
+	 * Stops the queues of the forwarders and computers that have been removed (through REST).
+	 * Each collection is read under its own lock, one at a time (like onData does).
+	 *
+	 * nbTargets: the number of forwarders and computers seen by onData, for a cheap check first.
+	 */
+	private void pruneOutputQueues(int nbTargets) {
+		synchronized (outputQueues) {
+			if (outputQueues.size() <= nbTargets) {
+				return;
+			}
+		}
+		List<Forwarder> targets = new ArrayList<>();
 		synchronized (nmeaDataForwarders) {
-			nmeaDataForwarders.stream()
-							.forEach(fwd -> {
-								try {
-									fwd.write((mess.trim() + NMEAParser.STANDARD_NMEA_EOS).getBytes());
-								} catch (Exception e) {
-									e.printStackTrace();
-								}
-							});
+			targets.addAll(nmeaDataForwarders);
+		}
+		synchronized (nmeaDataComputers) {
+			targets.addAll(nmeaDataComputers);
+		}
+		synchronized (outputQueues) {
+			if (outputQueues.size() > targets.size()) {
+				List<Forwarder> removed = outputQueues.keySet().stream()
+								.filter(target -> targets.stream().noneMatch(t -> t == target))
+								.collect(Collectors.toList());
+				removed.forEach(target -> outputQueues.remove(target).stop(false));
+			}
+		}
+	}
+
+	/**
+	 * @return the status (depth, drops, latency) of the output queues.
+	 */
+	public List<OutputQueue.Status> getOutputQueueStatus() {
+		synchronized (outputQueues) {
+			return outputQueues.values().stream()
+							.map(OutputQueue::getStatus)
+							.collect(Collectors.toList());
 		}
 	}
 
@@ -115,6 +205,9 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 				System.out.println("Shutting down multiplexer nicely.");
 				nmeaDataClients.stream()
 								.forEach(client -> client.stopDataRead());
+				synchronized (outputQueues) {
+					outputQueues.values().forEach(queue -> queue.stop(true));
+				}
 				nmeaDataForwarders.stream()
 								.forEach(fwd -> fwd.close());
 				nmeaDataComputers.stream()
@@ -122,6 +215,13 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 				if (adminServer != null) {
 					adminServer.stopRunning();
 				}
+				if (cacheWebSocketServer != null) {
+					try {
+						cacheWebSocketServer.stop();
+					} catch (Exception ex) {
+						ex.printStackTrace();
+					}
+				}
 			}
 		});
 
@@ -143,6 +243,17 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 		}
 	}
 
+	/**
+	 * Pushes the cache content to WebSocket clients, see {@link CachePublisher}.
+	 * The same is available as Server-Sent Events on the admin server, <code>GET /cache/events</code>.
+	 *
+	 * @param port the WebSocket port
+	 */
+	public void startCacheWebSocketServer(int port) {
+		this.cacheWebSocketServer = new CacheWebSocketServer(port);
+		this.cacheWebSocketServer.start();
+	}
+
 	/**
 	 * Start the Multiplexer from here.
 	 *
@@ -171,5 +282,9 @@ public class GenericNMEAMultiplexer implements Multiplexer, HTTPServerInterface
 		if ("yes".equals(definitions.getProperty("with.http.server", "no"))) {
 			mux.startAdminServer(Integer.parseInt(definitions.getProperty("http.port", "9999")));
 		}
+		// cache.push.ws.port=9876
+		if (definitions.getProperty("cache.push.ws.port") != null) {
+			mux.startCacheWebSocketServer(Integer.parseInt(definitions.getProperty("cache.push.ws.port")));
+		}
 	}
 }
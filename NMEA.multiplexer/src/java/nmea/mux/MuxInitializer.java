@@ -11,6 +11,7 @@ import java.util.stream.Collectors;
 import nmea.api.Multiplexer;
 import nmea.api.NMEAClient;
 import nmea.api.NMEAReader;
+import nmea.archive.NMEAArchive;
 import nmea.computers.Computer;
 import nmea.computers.ExtraDataComputer;
 import nmea.consumers.client.BME280Client;
@@ -19,6 +20,7 @@ import nmea.consumers.client.DataFileClient;
 import nmea.consumers.client.HTU21DFClient;
 import nmea.consumers.client.LSM303Client;
 import nmea.consumers.client.RandomClient;
+import nmea.consumers.client.ReplayClient;
 import nmea.consumers.client.SerialClient;
 import nmea.consumers.client.TCPClient;
 import nmea.consumers.client.WebSocketClient;
@@ -29,16 +31,19 @@ import nmea.consumers.reader.DataFileReader;
 import nmea.consumers.reader.HTU21DFReader;
 import nmea.consumers.reader.LSM303Reader;
 import nmea.consumers.reader.RandomReader;
+import nmea.consumers.reader.ReplayReader;
 import nmea.consumers.reader.SerialReader;
 import nmea.consumers.reader.TCPReader;
 import nmea.consumers.reader.WebSocketReader;
 import nmea.consumers.reader.ZDAReader;
+import nmea.forwarders.ArchiveForwarder;
 import nmea.forwarders.ConsoleWriter;
 import nmea.forwarders.DataFileWriter;
 import nmea.forwarders.Forwarder;
 import nmea.forwarders.GPSdServer;
 import nmea.forwarders.SerialWriter;
 import nmea.forwarders.TCPServer;
+import nmea.forwarders.UDPServer;
 import nmea.forwarders.WebSocketProcessor;
 import nmea.forwarders.WebSocketWriter;
 import nmea.forwarders.rmi.RMIServer;
@@ -196,6 +201,30 @@ public class MuxInitializer {
 								e.printStackTrace();
 							}
 							break;
+						case "replay": // Log file, with the logged timing
+							try {
+								String filename = muxProps.getProperty(String.format("mux.%s.filename", MUX_IDX_FMT.format(muxIdx)));
+								deviceFilters = muxProps.getProperty(String.format("mux.%s.device.filters", MUX_IDX_FMT.format(muxIdx)), "");
+								sentenceFilters = muxProps.getProperty(String.format("mux.%s.sentence.filters", MUX_IDX_FMT.format(muxIdx)), "");
+								NMEAClient replayClient = new ReplayClient(
+												deviceFilters.trim().length() > 0 ? deviceFilters.split(",") : null,
+												sentenceFilters.trim().length() > 0 ? sentenceFilters.split(",") : null,
+												mux);
+								replayClient.initClient();
+								ReplayReader replayReader = new ReplayReader(replayClient.getListeners(), filename);
+								replayReader.setSpeed(muxProps.getProperty(String.format("mux.%s.speed", MUX_IDX_FMT.format(muxIdx)), "1"));
+								replayReader.setLoop(!"false".equals(muxProps.getProperty(String.format("mux.%s.loop", MUX_IDX_FMT.format(muxIdx)), "true")));
+								String seek = muxProps.getProperty(String.format("mux.%s.seek", MUX_IDX_FMT.format(muxIdx)));
+								if (seek != null) {
+									replayReader.seek(seek);
+								}
+								replayClient.setReader(replayReader);
+								replayClient.setVerbose("true".equals(muxProps.getProperty(String.format("mux.%s.verbose", MUX_IDX_FMT.format(muxIdx)), "false")));
+								nmeaDataClients.add(replayClient);
+							} catch (Exception e) {
+								e.printStackTrace();
+							}
+							break;
 						case "ws":
 							try {
 								String wsUri = muxProps.getProperty(String.format("mux.%s.wsuri", MUX_IDX_FMT.format(muxIdx)));
@@ -377,7 +406,8 @@ public class MuxInitializer {
 				double hdgOffset = Double.parseDouble(muxProps.getProperty("hdg.offset", "0"));
 				double defaultDeclination = Double.parseDouble(muxProps.getProperty("default.declination", "0"));
 				int damping = Integer.parseInt(muxProps.getProperty("damping", "1"));
-				ApplicationContext.getInstance().initCache(deviationFile, maxLeeway, bspFactor, awsFactor, awaOffset, hdgOffset, defaultDeclination, damping);
+				double dampingWindow = Double.parseDouble(muxProps.getProperty("damping.window", "0")); // in seconds
+				ApplicationContext.getInstance().initCache(deviationFile, maxLeeway, bspFactor, awsFactor, awaOffset, hdgOffset, defaultDeclination, damping, Math.round(dampingWindow * 1_000));
 			} catch (Exception ex) {
 				ex.printStackTrace();
 			}
@@ -387,6 +417,7 @@ public class MuxInitializer {
 		int fwdIdx = 1;
 		// 2 - Output channels, aka forwarders
 		while (thereIsMore) {
+			int nbForwarders = nmeaDataForwarders.size();
 			String classProp = String.format("forward.%s.cls", MUX_IDX_FMT.format(fwdIdx));
 			String cls = muxProps.getProperty(classProp);
 			if (cls != null) { // Dynamic loading
@@ -432,12 +463,38 @@ public class MuxInitializer {
 						case "tcp":
 							String tcpPort = muxProps.getProperty(String.format("forward.%s.port", MUX_IDX_FMT.format(fwdIdx)));
 							try {
-								Forwarder tcpForwarder = new TCPServer(Integer.parseInt(tcpPort));
+								TCPServer tcpForwarder = new TCPServer(Integer.parseInt(tcpPort));
+								String maxPending = muxProps.getProperty(String.format("forward.%s.max.pending.bytes", MUX_IDX_FMT.format(fwdIdx)));
+								if (maxPending != null) {
+									tcpForwarder.setMaxPendingBytes(Integer.parseInt(maxPending));
+								}
+								String slowTimeout = muxProps.getProperty(String.format("forward.%s.slow.client.timeout", MUX_IDX_FMT.format(fwdIdx)));
+								if (slowTimeout != null) {
+									tcpForwarder.setSlowClientTimeout(Long.parseLong(slowTimeout));
+								}
 								nmeaDataForwarders.add(tcpForwarder);
 							} catch (Exception ex) {
 								ex.printStackTrace();
 							}
 							break;
+						case "udp":
+							String udpPort = muxProps.getProperty(String.format("forward.%s.port", MUX_IDX_FMT.format(fwdIdx)));
+							String udpHost = muxProps.getProperty(String.format("forward.%s.host", MUX_IDX_FMT.format(fwdIdx)), "127.0.0.1");
+							try {
+								UDPServer udpForwarder = new UDPServer(Integer.parseInt(udpPort), udpHost);
+								Properties udpProps = new Properties();
+								for (String prop : Arrays.asList("mtu", "linger", "ttl", "interface")) {
+									String value = muxProps.getProperty(String.format("forward.%s.%s", MUX_IDX_FMT.format(fwdIdx), prop));
+									if (value != null) {
+										udpProps.setProperty(prop, value);
+									}
+								}
+								udpForwarder.setProperties(udpProps);
+								nmeaDataForwarders.add(udpForwarder);
+							} catch (Exception ex) {
+								ex.printStackTrace();
+							}
+							break;
 						case "gpsd":
 							String gpsdPort = muxProps.getProperty(String.format("forward.%s.port", MUX_IDX_FMT.format(fwdIdx)));
 							try {
@@ -451,12 +508,30 @@ public class MuxInitializer {
 							String fName = muxProps.getProperty(String.format("forward.%s.filename", MUX_IDX_FMT.format(fwdIdx)));
 							boolean append = "true".equals(muxProps.getProperty(String.format("forward.%s.append", MUX_IDX_FMT.format(fwdIdx)), "false"));
 							try {
-								Forwarder fileForwarder = new DataFileWriter(fName, append);
+								Properties fileProps = new Properties();
+								for (String prop : Arrays.asList("rotate.size", "rotate.period", "rotate.keep", "compression", "commit.interval", "commit.size", "fsync", "max.pending")) {
+									String value = muxProps.getProperty(String.format("forward.%s.%s", MUX_IDX_FMT.format(fwdIdx), prop));
+									if (value != null) {
+										fileProps.setProperty(prop, value);
+									}
+								}
+								Forwarder fileForwarder = new DataFileWriter(fName, append, fileProps);
 								nmeaDataForwarders.add(fileForwarder);
 							} catch (Exception ex) {
 								ex.printStackTrace();
 							}
 							break;
+						case "archive": // Time-indexed, see nmea.archive.NMEAArchive
+							String archiveName = muxProps.getProperty(String.format("forward.%s.filename", MUX_IDX_FMT.format(fwdIdx)));
+							boolean appendArchive = "true".equals(muxProps.getProperty(String.format("forward.%s.append", MUX_IDX_FMT.format(fwdIdx)), "false"));
+							try {
+								int blockSize = Integer.parseInt(muxProps.getProperty(String.format("forward.%s.block.size", MUX_IDX_FMT.format(fwdIdx)), String.valueOf(NMEAArchive.DEFAULT_BLOCK_SIZE)));
+								Forwarder archiveForwarder = new ArchiveForwarder(archiveName, appendArchive, blockSize);
+								nmeaDataForwarders.add(archiveForwarder);
+							} catch (Exception ex) {
+								ex.printStackTrace();
+							}
+							break;
 						case "ws":
 							String wsUri = muxProps.getProperty(String.format("forward.%s.wsuri", MUX_IDX_FMT.format(fwdIdx)));
 							try {
@@ -503,6 +578,9 @@ public class MuxInitializer {
 					}
 				}
 			}
+			if (nmeaDataForwarders.size() > nbForwarders) {
+				setOutputQueue(muxProps, String.format("forward.%s", MUX_IDX_FMT.format(fwdIdx)), nmeaDataForwarders.get(nmeaDataForwarders.size() - 1), mux);
+			}
 			fwdIdx++;
 		}
 		// Init cache (for Computers).
@@ -513,6 +591,7 @@ public class MuxInitializer {
 				int cptrIdx = 1;
 				// 3 - Computers
 				while (thereIsMore) {
+					int nbComputers = nmeaDataComputers.size();
 					String classProp = String.format("computer.%s.cls", MUX_IDX_FMT.format(cptrIdx));
 					String cls = muxProps.getProperty(classProp);
 					if (cls != null) { // Dynamic loading
@@ -570,6 +649,9 @@ public class MuxInitializer {
 							}
 						}
 					}
+					if (nmeaDataComputers.size() > nbComputers) {
+						setOutputQueue(muxProps, String.format("computer.%s", MUX_IDX_FMT.format(cptrIdx)), nmeaDataComputers.get(nmeaDataComputers.size() - 1), mux);
+					}
 					cptrIdx++;
 				}
 			} catch (Exception ex) {
@@ -577,4 +659,30 @@ public class MuxInitializer {
 			}
 		}
 	}
+
+	/**
+	 * Output queue of a forwarder or a computer, see {@link OutputQueue}.
+	 * <pre>
+	 *   forward.01.queue.size=1000          # 0: no queue, written by the input channel's thread.
+	 *   forward.01.queue.policy=drop-oldest # or drop-newest, or block
+	 * </pre>
+	 *
+	 * @param muxProps the properties
+	 * @param prefix   like "forward.01", or "computer.01"
+	 * @param target   the forwarder or computer just created
+	 * @param mux      the Multiplexer
+	 */
+	private static void setOutputQueue(Properties muxProps, String prefix, Forwarder target, Multiplexer mux) {
+		if (mux instanceof GenericNMEAMultiplexer) {
+			try {
+				int size = Integer.parseInt(muxProps.getProperty(String.format("%s.queue.size", prefix), String.valueOf(OutputQueue.DEFAULT_SIZE)));
+				String policy = muxProps.getProperty(String.format("%s.queue.policy", prefix));
+				((GenericNMEAMultiplexer) mux).setOutputQueue(target,
+								size,
+								policy != null ? OutputQueue.OverflowPolicy.fromLabel(policy) : OutputQueue.DEFAULT_POLICY);
+			} catch (Exception ex) {
+				ex.printStackTrace();
+			}
+		}
+	}
 }
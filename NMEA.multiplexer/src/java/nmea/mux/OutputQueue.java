@@ -0,0 +1,283 @@
+package nmea.mux;
+
+import nmea.api.NMEASentence;
+import nmea.computers.Computer;
+import nmea.forwarders.Forwarder;
+import nmea.forwarders.SentenceForwarder;
+import nmea.mux.metrics.MuxMetrics;
+import nmea.mux.metrics.TargetMetrics;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decouples a {@link Forwarder} (or a {@link nmea.computers.Computer}) from the Multiplexer.
+ * <br>
+ * The messages are put in a bounded queue, and written to the forwarder by a dedicated thread.
+ * This way, a slow forwarder (a TCP client on a bad network, a blocked serial port, an MQTT reconnection...) only slows down itself,
+ * not the input channels, nor the other forwarders.
+ * <br>
+ * When the queue is full, the {@link OverflowPolicy} applies.
+ * <br>
+ * A queue of size 0 means no queue: the messages are written by the thread calling {@link #offer(NMEASentence)},
+ * as it was done before.
+ * <br>
+ * The forwarders implementing {@link SentenceForwarder} receive the {@link NMEASentence}, the others its bytes
+ * (see {@link SentenceForwarder#adapt(Forwarder)}).
+ * <br>
+ * The time spent in the forwarder, and since the sentence was received, are recorded in its {@link TargetMetrics}.
+ * <br>
+ * Configured in <code>nmea.mux.properties</code> by
+ * <pre>
+ *   forward.01.queue.size=1000
+ *   forward.01.queue.policy=drop-oldest
+ * </pre>
+ * (or <code>computer.01.queue...</code>), see {@link MuxInitializer}.
+ */
+public class OutputQueue {
+
+	public enum OverflowPolicy {
+		DROP_OLDEST("drop-oldest"), // Discard the oldest message in the queue, keep the data fresh.
+		DROP_NEWEST("drop-newest"), // Discard the incoming message.
+		BLOCK("block");             // Wait for room in the queue. The caller (and all the other forwarders) wait too.
+
+		private final String label;
+
+		OverflowPolicy(String label) {
+			this.label = label;
+		}
+
+		public String label() {
+			return this.label;
+		}
+
+		public static OverflowPolicy fromLabel(String label) {
+			for (OverflowPolicy policy : values()) {
+				if (policy.label.equalsIgnoreCase(label.trim())) {
+					return policy;
+				}
+			}
+			throw new IllegalArgumentException(String.format("Unknown overflow policy [%s], expected drop-oldest, drop-newest, or block", label));
+		}
+	}
+
+	public final static int DEFAULT_SIZE = 1_000;
+	public final static OverflowPolicy DEFAULT_POLICY = OverflowPolicy.DROP_OLDEST;
+
+	private final static long STOP_TIMEOUT = 1_000L; // ms, to drain the queue when stopping
+
+	/*
+	 * Set on the consumer threads of all the queues. A computer re-feeding the Multiplexer from such a thread
+	 * must not wait for room in a queue: two computers feeding each other would wait for ever.
+	 */
+	private final static ThreadLocal<Boolean> IN_CONSUMER = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+	private final Forwarder target;
+	private final SentenceForwarder sink;
+	private final int size;
+	private final OverflowPolicy policy;
+	private final BlockingQueue<Message> queue;
+	private final Thread consumer;
+	private volatile boolean keepWorking = true;
+
+	private final AtomicLong offered = new AtomicLong(0L);
+	private final AtomicLong dropped = new AtomicLong(0L);
+	private final AtomicLong delivered = new AtomicLong(0L);
+	private final AtomicLong errors = new AtomicLong(0L);
+	private final AtomicLong totalLatency = new AtomicLong(0L); // nano seconds
+	private final AtomicLong maxLatency = new AtomicLong(0L);   // nano seconds
+
+	private final TargetMetrics metrics;
+
+	private final static class Message {
+		final NMEASentence sentence;
+		final long offeredAt;
+
+		Message(NMEASentence sentence) {
+			this.sentence = sentence;
+			this.offeredAt = System.nanoTime();
+		}
+	}
+
+	/**
+	 * @param target the forwarder to write to
+	 * @param size   the capacity of the queue. 0 means no queue.
+	 * @param policy what to do when the queue is full
+	 */
+	public OutputQueue(Forwarder target, int size, OverflowPolicy policy) {
+		this.target = target;
+		this.sink = SentenceForwarder.adapt(target);
+		this.size = Math.max(0, size);
+		this.policy = policy;
+		this.metrics = new TargetMetrics(target instanceof Computer ? TargetMetrics.COMPUTER : TargetMetrics.FORWARDER, this::getDepth, this.dropped::get);
+		MuxMetrics.getInstance().addTarget(target.getClass().getSimpleName(), this.metrics);
+		if (this.size > 0) {
+			this.queue = new ArrayBlockingQueue<>(this.size);
+			this.consumer = new Thread(this::consume, String.format("Output queue for %s", target.getClass().getSimpleName()));
+			this.consumer.setDaemon(true);
+			this.consumer.start();
+		} else {
+			this.queue = null;
+			this.consumer = null;
+		}
+	}
+
+	public Forwarder getTarget() {
+		return target;
+	}
+
+	/**
+	 * Never blocks, unless the policy is {@link OverflowPolicy#BLOCK}.
+	 * Even then, it does not block when called from the consumer thread of a queue (a computer re-feeding the Multiplexer),
+	 * the message is then dropped if the queue is full.
+	 *
+	 * @param sentence the message to write to the forwarder
+	 */
+	public void offer(NMEASentence sentence) {
+		offered.incrementAndGet();
+		Message message = new Message(sentence);
+		if (queue == null) {
+			write(message);
+			return;
+		}
+		switch (policy) {
+			case BLOCK:
+				if (IN_CONSUMER.get()) { // A computer re-feeding the Multiplexer. Waiting could be for ever.
+					if (!queue.offer(message)) {
+						dropped.incrementAndGet();
+					}
+				} else {
+					try {
+						queue.put(message);
+					} catch (InterruptedException ie) {
+						dropped.incrementAndGet();
+						Thread.currentThread().interrupt();
+					}
+				}
+				break;
+			case DROP_NEWEST:
+				if (!queue.offer(message)) {
+					dropped.incrementAndGet();
+				}
+				break;
+			case DROP_OLDEST:
+			default:
+				while (!queue.offer(message)) {
+					if (queue.poll() != null) {
+						dropped.incrementAndGet();
+					}
+				}
+				break;
+		}
+	}
+
+	private void consume() {
+		IN_CONSUMER.set(Boolean.TRUE);
+		while (keepWorking || !queue.isEmpty()) {
+			try {
+				Message message = queue.poll(500L, TimeUnit.MILLISECONDS);
+				if (message != null) {
+					write(message);
+				}
+			} catch (InterruptedException ie) {
+				break;
+			}
+		}
+	}
+
+	private void write(Message message) {
+		long started = System.nanoTime();
+		try {
+			sink.write(message.sentence);
+			metrics.recordWrite(started, message.sentence.getNanoTime());
+			delivered.incrementAndGet();
+		} catch (Exception ex) {
+			errors.incrementAndGet();
+			ex.printStackTrace();
+		}
+		long latency = System.nanoTime() - message.offeredAt;
+		totalLatency.addAndGet(latency);
+		long max;
+		while (latency > (max = maxLatency.get()) && !maxLatency.compareAndSet(max, latency)) ;
+	}
+
+	/**
+	 * Stops the consumer thread, once the queue is drained (or after a timeout).
+	 * The forwarder is not closed.
+	 *
+	 * @param drain true to write the pending messages before stopping.
+	 */
+	public void stop(boolean drain) {
+		keepWorking = false;
+		MuxMetrics.getInstance().removeTarget(metrics);
+		if (consumer != null) {
+			if (!drain) {
+				queue.clear();
+			}
+			try {
+				consumer.join(STOP_TIMEOUT);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			consumer.interrupt();
+		}
+	}
+
+	public int getDepth() {
+		return (queue != null) ? queue.size() : 0;
+	}
+
+	/**
+	 * @return a snapshot of the queue statistics, as a bean (for the REST admin interface).
+	 */
+	public Status getStatus() {
+		Status status = new Status();
+		status.target = target.getClass().getName();
+		status.size = size;
+		status.policy = (size > 0) ? policy.label() : "none";
+		status.depth = getDepth();
+		status.offered = offered.get();
+		status.delivered = delivered.get();
+		status.dropped = dropped.get();
+		status.errors = errors.get();
+		long nb = delivered.get() + errors.get();
+		status.avgLatency = (nb > 0) ? (totalLatency.get() / nb) / 1E6 : 0d;
+		status.maxLatency = maxLatency.get() / 1E6;
+		return status;
+	}
+
+	public static class Status {
+		String target;
+		int size;
+		String policy;
+		int depth;
+		long offered;
+		long delivered;
+		long dropped;
+		long errors;
+		double avgLatency; // in ms
+		double maxLatency; // in ms
+
+		public String getTarget() {
+			return target;
+		}
+
+		public int getDepth() {
+			return depth;
+		}
+
+		public long getDropped() {
+			return dropped;
+		}
+
+		public double getAvgLatency() {
+			return avgLatency;
+		}
+
+		public double getMaxLatency() {
+			return maxLatency;
+		}
+	}
+}
@@ -3,7 +3,6 @@ package nmea.mux;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
 import context.ApplicationContext;
 import context.NMEADataCache;
 import gnu.io.CommPortIdentifier;
@@ -11,22 +10,35 @@ import http.HTTPServer;
 import http.HTTPServer.Request;
 import http.HTTPServer.Response;
 import http.RESTProcessorUtil;
+import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
+import nmea.ais.AISTarget;
+import nmea.ais.AISTargetTable;
 import nmea.api.Multiplexer;
 import nmea.api.NMEAClient;
+import nmea.api.NMEAParser;
 import nmea.api.NMEAReader;
+import nmea.archive.ArchiveReader;
+import nmea.archive.NMEAArchive;
 import nmea.computers.Computer;
 import nmea.computers.ExtraDataComputer;
 import nmea.consumers.client.BME280Client;
@@ -35,6 +47,7 @@ import nmea.consumers.client.DataFileClient;
 import nmea.consumers.client.HTU21DFClient;
 import nmea.consumers.client.LSM303Client;
 import nmea.consumers.client.RandomClient;
+import nmea.consumers.client.ReplayClient;
 import nmea.consumers.client.SerialClient;
 import nmea.consumers.client.TCPClient;
 import nmea.consumers.client.WebSocketClient;
@@ -45,10 +58,12 @@ import nmea.consumers.reader.DataFileReader;
 import nmea.consumers.reader.HTU21DFReader;
 import nmea.consumers.reader.LSM303Reader;
 import nmea.consumers.reader.RandomReader;
+import nmea.consumers.reader.ReplayReader;
 import nmea.consumers.reader.SerialReader;
 import nmea.consumers.reader.TCPReader;
 import nmea.consumers.reader.WebSocketReader;
 import nmea.consumers.reader.ZDAReader;
+import nmea.forwarders.ArchiveForwarder;
 import nmea.forwarders.ConsoleWriter;
 import nmea.forwarders.DataFileWriter;
 import nmea.forwarders.Forwarder;
@@ -60,6 +75,8 @@ import nmea.forwarders.WebSocketWriter;
 import nmea.forwarders.rmi.RMIServer;
 import nmea.mux.context.Context;
 import nmea.mux.context.Context.StringAndTimeStamp;
+import nmea.mux.metrics.MuxMetrics;
+import nmea.utils.NMEAJsonWriter;
 import nmea.utils.NMEAUtils;
 
 /**
@@ -77,6 +94,24 @@ public class RESTImplementation {
 	private List<Computer> nmeaDataComputers;
 	private Multiplexer mux;
 
+	/**
+	 * The last serialized cache, with the version of the cache it was built from.
+	 * Polls on an unchanged cache get the same bytes.
+	 */
+	private static class CacheBody {
+		final long version;
+		final byte[] content;
+
+		CacheBody(long version, byte[] content) {
+			this.version = version;
+			this.content = content;
+		}
+	}
+
+	private volatile CacheBody cacheBody = null;
+
+	private final static Set<String> NOT_SERIALIZED = Collections.singleton(NMEADataCache.DEVIATION_DATA);
+
 	public RESTImplementation(List<NMEAClient> nmeaDataClients,
 	                          List<Forwarder> nmeaDataForwarders,
 	                          List<Computer> nmeaDataComputers,
@@ -222,6 +257,16 @@ public class RESTImplementation {
 									"/cache",
 									this::resetCache,
 									"Reset the cache"),
+					new Operation(
+									"PUT",
+									"/cache/deviation",
+									this::putDeviation,
+									"Reload the deviation curve. From the file in query parameter 'file', or the current one"),
+					new Operation(
+									"GET",
+									"/cache/events",
+									this::getCacheEvents,
+									"Server-Sent Events: the full cache, then what has changed. Optional query parameter 'period' (ms)"),
 					new Operation(
 									"GET",
 									"/nmea-volume",
@@ -231,7 +276,42 @@ public class RESTImplementation {
 									"GET",
 									"/last-sentence",
 									this::getLastNMEASentence,
-									"Get the last available inbound sentence"));
+									"Get the last available inbound sentence"),
+					new Operation(
+									"GET",
+									"/queues",
+									this::getOutputQueues,
+									"Get the output queues status: depth, drops, latency, for each forwarder and computer"),
+					new Operation(
+									"GET",
+									"/mux/metrics",
+									this::getMetrics,
+									"Get the metrics of the Multiplexer, its channels, forwarders and computers. JSON, or Prometheus text format with query parameter 'format=prometheus' (or header 'Accept: text/plain')"),
+					new Operation(
+									"GET",
+									"/ais/targets",
+									this::getAISTargets,
+									"Get the AIS targets. With query parameter 'radius' (nm), only the ones within this radius from the own position, with distance, bearing, CPA and TCPA, the closest first"),
+					new Operation(
+									"GET",
+									"/ais/targets/{mmsi}",
+									this::getAISTarget,
+									"Get one AIS target, by MMSI"),
+					new Operation(
+									"GET",
+									"/ais/threats",
+									this::getAISThreats,
+									"Get the AIS targets with a CPA and TCPA below the limits, the closest in time first"),
+					new Operation(
+									"GET",
+									"/archive",
+									this::getArchive,
+									"Read a time range from an NMEA archive. Query parameters 'file', optional 'from' and 'to' (ISO-8601, or epoch ms), 'sentences' (like RMC,GLL), 'timestamps' (true|false)"),
+					new Operation(
+									"GET",
+									"/archive/info",
+									this::getArchiveInfo,
+									"Get the time range, and the number of sentences per ID, of an NMEA archive. Query parameter 'file'"));
 
 	/**
 	 * This is the method to invoke to have a REST request processed as defined above.
@@ -278,9 +358,7 @@ public class RESTImplementation {
 						.collect(Collectors.toList())
 						.toArray(new Object[channelList.size()]);
 
-		String content = new Gson().toJson(channelArray);
-		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
-		response.setPayload(content.getBytes());
+		setJsonPayload(response, channelArray);
 
 		return response;
 	}
@@ -292,9 +370,7 @@ public class RESTImplementation {
 						.collect(Collectors.toList())
 						.toArray(new Object[forwarderList.size()]);
 
-		String content = new Gson().toJson(forwarderArray);
-		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
-		response.setPayload(content.getBytes());
+		setJsonPayload(response, forwarderArray);
 
 		return response;
 	}
@@ -306,13 +382,25 @@ public class RESTImplementation {
 						.collect(Collectors.toList())
 						.toArray(new Object[computerList.size()]);
 
-		String content = new Gson().toJson(forwarderArray);
-		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
-		response.setPayload(content.getBytes());
+		setJsonPayload(response, forwarderArray);
 
 		return response;
 	}
 
+	/**
+	 * Serializes the content with the {@link NMEAJsonWriter}, and sets the happy headers.
+	 */
+	private static void setJsonPayload(HTTPServer.Response response, Object content) {
+		byte[] json = new byte[0];
+		try {
+			json = NMEAJsonWriter.toJson(content);
+		} catch (Exception ex) {
+			Context.getInstance().getLogger().log(Level.INFO, "Managed >>> setJsonPayload", ex);
+		}
+		RESTProcessorUtil.generateHappyResponseHeaders(response, json.length);
+		response.setPayload(json);
+	}
+
 	private HTTPServer.Response deleteForwarder(HTTPServer.Request request) {
 		Optional<Forwarder> opFwd = null;
 		Gson gson = null;
@@ -357,6 +445,21 @@ public class RESTImplementation {
 						RESTProcessorUtil.addErrorMessageToResponse(response, "missing payload");
 					}
 					break;
+				case "archive":
+					gson = new GsonBuilder().create();
+					if (request.getContent() != null) {
+						StringReader stringReader = new StringReader(new String(request.getContent()));
+						ArchiveForwarder.ArchiveBean archiveBean = gson.fromJson(stringReader, ArchiveForwarder.ArchiveBean.class);
+						opFwd = nmeaDataForwarders.stream()
+										.filter(fwd -> fwd instanceof ArchiveForwarder &&
+														((ArchiveForwarder) fwd).getLog().equals(archiveBean.getLog()))
+										.findFirst();
+						response = removeForwarderIfPresent(request, opFwd);
+					} else {
+						response.setStatus(HTTPServer.Response.BAD_REQUEST);
+						RESTProcessorUtil.addErrorMessageToResponse(response, "missing payload");
+					}
+					break;
 				case "tcp":
 					gson = new GsonBuilder().create();
 					if (request.getContent() != null) {
@@ -464,6 +567,21 @@ public class RESTImplementation {
 		if (prmValues.size() == 1) {
 			String id = prmValues.get(0);
 			switch (id) {
+				case "replay":
+					gson = new GsonBuilder().create();
+					if (request.getContent() != null) {
+						StringReader stringReader = new StringReader(new String(request.getContent()));
+						ReplayClient.ReplayBean replayBean = gson.fromJson(stringReader, ReplayClient.ReplayBean.class);
+						opClient = nmeaDataClients.stream()
+										.filter(channel -> channel instanceof ReplayClient &&
+														((ReplayClient.ReplayBean) ((ReplayClient) channel).getBean()).getFile().equals(replayBean.getFile()))
+										.findFirst();
+						response = removeChannelIfPresent(request, opClient);
+					} else {
+						response.setStatus(HTTPServer.Response.BAD_REQUEST);
+						RESTProcessorUtil.addErrorMessageToResponse(response, "missing payload");
+					}
+					break;
 				case "file":
 					gson = new GsonBuilder().create();
 					if (request.getContent() != null) {
@@ -770,7 +888,7 @@ public class RESTImplementation {
 								.findFirst();
 				if (!opFwd.isPresent()) {
 					try {
-						Forwarder fileForwarder = new DataFileWriter(fileJson.getLog(), fileJson.append());
+						Forwarder fileForwarder = new DataFileWriter(fileJson.getLog(), fileJson.append(), fileJson.getProperties());
 						nmeaDataForwarders.add(fileForwarder);
 						String content = new Gson().toJson(fileForwarder.getBean());
 						RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
@@ -785,6 +903,31 @@ public class RESTImplementation {
 					RESTProcessorUtil.addErrorMessageToResponse(response, "this 'file' alreacy exists");
 				}
 				break;
+			case "archive":
+				ArchiveForwarder.ArchiveBean archiveJson = new Gson().fromJson(new String(request.getContent()), ArchiveForwarder.ArchiveBean.class);
+				// Check if not there yet.
+				opFwd = nmeaDataForwarders.stream()
+								.filter(fwd -> fwd instanceof ArchiveForwarder &&
+												((ArchiveForwarder) fwd).getLog().equals(archiveJson.getLog()))
+								.findFirst();
+				if (!opFwd.isPresent()) {
+					try {
+						Forwarder archiveForwarder = new ArchiveForwarder(archiveJson.getLog(), archiveJson.append(),
+										archiveJson.getBlockSize() > 0 ? archiveJson.getBlockSize() : NMEAArchive.DEFAULT_BLOCK_SIZE);
+						nmeaDataForwarders.add(archiveForwarder);
+						String content = new Gson().toJson(archiveForwarder.getBean());
+						RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
+						response.setPayload(content.getBytes());
+					} catch (Exception ex) {
+						response.setStatus(HTTPServer.Response.BAD_REQUEST);
+						RESTProcessorUtil.addErrorMessageToResponse(response, ex.toString());
+						ex.printStackTrace();
+					}
+				} else {
+					response.setStatus(HTTPServer.Response.BAD_REQUEST);
+					RESTProcessorUtil.addErrorMessageToResponse(response, "this 'archive' already exists");
+				}
+				break;
 			case "ws":
 				WebSocketWriter.WSBean wsJson = new Gson().fromJson(new String(request.getContent()), WebSocketWriter.WSBean.class);
 				// Check if not there yet.
@@ -1001,6 +1144,35 @@ public class RESTImplementation {
 					RESTProcessorUtil.addErrorMessageToResponse(response, "this 'ws' already exists");
 				}
 				break;
+			case "replay":
+				ReplayClient.ReplayBean replayJson = new Gson().fromJson(new String(request.getContent()), ReplayClient.ReplayBean.class);
+				// Check if not there yet.
+				opClient = nmeaDataClients.stream()
+								.filter(channel -> channel instanceof ReplayClient &&
+												((ReplayClient.ReplayBean) ((ReplayClient) channel).getBean()).getFile().equals(replayJson.getFile()))
+								.findFirst();
+				if (!opClient.isPresent()) {
+					try {
+						ReplayClient replayClient = new ReplayClient(replayJson.getDeviceFilters(), replayJson.getSentenceFilters(), this.mux);
+						replayClient.initClient();
+						replayClient.setReader(new ReplayReader(replayClient.getListeners(), replayJson.getFile()));
+						replayClient.setReplayParameters(replayJson);
+						nmeaDataClients.add(replayClient);
+						replayClient.startWorking();
+						String content = new Gson().toJson(replayClient.getBean());
+						RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
+						response.setPayload(content.getBytes());
+					} catch (Exception ex) {
+						response.setStatus(HTTPServer.Response.BAD_REQUEST);
+						RESTProcessorUtil.addErrorMessageToResponse(response, ex.toString());
+						ex.printStackTrace();
+					}
+				} else {
+					// Already there
+					response.setStatus(HTTPServer.Response.BAD_REQUEST);
+					RESTProcessorUtil.addErrorMessageToResponse(response, "this 'replay' already exists");
+				}
+				break;
 			case "file":
 				DataFileClient.DataFileBean fileJson = new Gson().fromJson(new String(request.getContent()), DataFileClient.DataFileBean.class);
 				// Check if not there yet.
@@ -1504,6 +1676,29 @@ public class RESTImplementation {
 					response.setPayload(content.getBytes());
 				}
 				break;
+			case "replay":
+				ReplayClient.ReplayBean replayJson = new Gson().fromJson(new String(request.getContent()), ReplayClient.ReplayBean.class);
+				opClient = nmeaDataClients.stream()
+								.filter(channel -> channel instanceof ReplayClient &&
+												((ReplayClient.ReplayBean) ((ReplayClient) channel).getBean()).getFile().equals(replayJson.getFile()))
+								.findFirst();
+				if (!opClient.isPresent()) {
+					response.setStatus(HTTPServer.Response.NOT_FOUND);
+					RESTProcessorUtil.addErrorMessageToResponse(response, "this 'replay' was not found");
+				} else { // Then update: speed, loop, seek
+					ReplayClient replayClient = (ReplayClient) opClient.get();
+					try {
+						replayClient.setReplayParameters(replayJson);
+						replayClient.setVerbose(replayJson.getVerbose());
+						String content = new Gson().toJson(replayClient.getBean());
+						RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
+						response.setPayload(content.getBytes());
+					} catch (IllegalArgumentException iae) { // Bad speed, bad seek
+						response.setStatus(HTTPServer.Response.BAD_REQUEST);
+						RESTProcessorUtil.addErrorMessageToResponse(response, iae.getMessage());
+					}
+				}
+				break;
 			case "file":
 				DataFileClient.DataFileBean fileJson = new Gson().fromJson(new String(request.getContent()), DataFileClient.DataFileBean.class);
 				opClient = nmeaDataClients.stream()
@@ -1801,23 +1996,201 @@ public class RESTImplementation {
 
 		NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
 
-		JsonElement jsonElement = null;
-		try {
-			// Calculate VMG(s)
-			NMEAUtils.calculateVMGs(cache);
+		byte[] content = new byte[0];
+		CacheBody body = cacheBody;
+		if (body != null && cache != null && body.version == cache.getVersion()) {
+			content = body.content; // Nothing has changed since
+		} else {
+			try {
+				// Calculate VMG(s)
+				NMEAUtils.calculateVMGs(cache);
+
+				long version = cache.getVersion(); // Before the snapshot, which cannot be older.
+				content = NMEAJsonWriter.toJson(cache.snapshot(), NOT_SERIALIZED); // Deviation data, useless for the client.
+				cacheBody = new CacheBody(version, content);
+			} catch (Exception ex) {
+				Context.getInstance().getLogger().log(Level.INFO, "Managed >>> getCache", ex);
+			}
+		}
+		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length);
+		response.setPayload(content);
 
-			jsonElement = new Gson().toJsonTree(cache);
-			((JsonObject) jsonElement).remove(NMEADataCache.DEVIATION_DATA); // Useless for the client.
-		} catch (Exception ex) {
-			Context.getInstance().getLogger().log(Level.INFO, "Managed >>> getCache", ex);
+		return response;
+	}
+
+	/**
+	 * The cache content, as a stream of Server-Sent Events, see {@link CachePublisher}.
+	 * <br>
+	 * Use <code>new EventSource("/cache/events?period=500")</code> from a browser.
+	 * The writes are done by the subscriber's own thread, see {@link CachePublisher.QueuedSubscriber}.
+	 */
+	private HTTPServer.Response getCacheEvents(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+
+		if (ApplicationContext.getInstance().getDataCache() == null) {
+			response.setStatus(HTTPServer.Response.NOT_FOUND);
+			RESTProcessorUtil.addErrorMessageToResponse(response, "No cache");
+			return response;
 		}
-		String content = jsonElement != null ? jsonElement.toString() : "";
-		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
-		response.setPayload(content.getBytes());
+		long period = CachePublisher.DEFAULT_PERIOD;
+		Map<String, String> prms = request.getQueryStringParameters();
+		if (prms != null && prms.get("period") != null) {
+			try {
+				period = Long.parseLong(prms.get("period"));
+			} catch (NumberFormatException nfe) {
+				response.setStatus(HTTPServer.Response.BAD_REQUEST);
+				RESTProcessorUtil.addErrorMessageToResponse(response, String.format("Bad period [%s]", prms.get("period")));
+				return response;
+			}
+		}
+		Map<String, String> headers = new HashMap<>();
+		headers.put("Content-Type", "text/event-stream");
+		headers.put("Cache-Control", "no-cache");
+		headers.put("Access-Control-Allow-Origin", "*");
+		response.setHeaders(headers);
+		long subscriptionPeriod = period;
+		response.setStreamHandler((out, connection) -> CachePublisher.getInstance().subscribe(new CachePublisher.QueuedSubscriber(new CachePublisher.Subscriber() {
+			@Override
+			public void send(String message) throws IOException {
+				out.write(("data: " + message + "\n\n").getBytes(StandardCharsets.UTF_8));
+				out.flush();
+			}
+
+			@Override
+			public void heartbeat() throws IOException {
+				out.write(": keep-alive\n\n".getBytes(StandardCharsets.UTF_8)); // An SSE comment
+				out.flush();
+			}
+
+			@Override
+			public void close() {
+				try {
+					connection.close();
+				} catch (IOException ioe) {
+					// Already gone
+				}
+			}
+		}), subscriptionPeriod));
+		return response;
+	}
+
+	/**
+	 * The sentences of an archive (see {@link NMEAArchive}), in a time range, as text, one per line.
+	 * <br>
+	 * With <code>timestamps=true</code> (the default), each line begins with the time the sentence was received (epoch, ms), and a semicolon,
+	 * like <code>1497095533000;$GPRMC,...</code>, as the replay channel reads them.
+	 * <br>
+	 * Example: <code>GET /archive?file=passage.nmea.arc&amp;from=2017-06-10T11:50:00Z&amp;to=2017-06-10T12:10:00Z&amp;sentences=RMC,MWV</code>
+	 */
+	private HTTPServer.Response getArchive(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
 
+		Map<String, String> prms = request.getQueryStringParameters();
+		String fileName = checkArchive(prms, response);
+		if (fileName == null) {
+			return response;
+		}
+		long from, to;
+		try {
+			from = prms.get("from") != null ? parseArchiveTime(prms.get("from")) : Long.MIN_VALUE;
+			to = prms.get("to") != null ? parseArchiveTime(prms.get("to")) : Long.MAX_VALUE;
+		} catch (IllegalArgumentException iae) {
+			response.setStatus(HTTPServer.Response.BAD_REQUEST);
+			RESTProcessorUtil.addErrorMessageToResponse(response, iae.getMessage());
+			return response;
+		}
+		List<String> sentences = prms.get("sentences") != null && !prms.get("sentences").trim().isEmpty() ?
+						Arrays.asList(prms.get("sentences").trim().split(",")) :
+						null;
+		boolean timestamps = !"false".equals(prms.get("timestamps"));
+
+		Map<String, String> headers = new HashMap<>();
+		headers.put("Content-Type", "text/plain");
+		headers.put("Access-Control-Allow-Origin", "*");
+		response.setHeaders(headers);
+		response.setPayloadWriter(out -> {
+			try (ArchiveReader archive = new ArchiveReader(fileName)) {
+				archive.forEach(from, to, sentences, (time, data, offset, length, filePosition) -> {
+					try {
+						if (timestamps) {
+							out.write(String.valueOf(time).getBytes(StandardCharsets.US_ASCII));
+							out.write(';');
+						}
+						out.write(data, offset, length);
+						out.write(NMEAParser.STANDARD_NMEA_EOS.getBytes(StandardCharsets.US_ASCII));
+						return true;
+					} catch (IOException ioe) { // Client gone
+						return false;
+					}
+				});
+			}
+		});
 		return response;
 	}
 
+	private HTTPServer.Response getArchiveInfo(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+
+		String fileName = checkArchive(request.getQueryStringParameters(), response);
+		if (fileName == null) {
+			return response;
+		}
+		try (ArchiveReader archive = new ArchiveReader(fileName)) {
+			Map<String, Object> map = new LinkedHashMap<>();
+			map.put("file", fileName);
+			map.put("created", Instant.ofEpochMilli(archive.getCreated()).toString());
+			map.put("from", archive.getNbSentences() > 0 ? Instant.ofEpochMilli(archive.getFrom()).toString() : null);
+			map.put("to", archive.getNbSentences() > 0 ? Instant.ofEpochMilli(archive.getTo()).toString() : null);
+			map.put("nbSentences", archive.getNbSentences());
+			map.put("nbBlocks", archive.getNbBlocks());
+			map.put("blockSize", archive.getBlockSize());
+			map.put("sentences", archive.getSentenceCounts());
+			setJsonPayload(response, map);
+		} catch (IOException ioe) {
+			response.setStatus(HTTPServer.Response.BAD_REQUEST);
+			RESTProcessorUtil.addErrorMessageToResponse(response, ioe.toString());
+		}
+		return response;
+	}
+
+	/**
+	 * @return the archive named by the 'file' query parameter, null if it is missing, or not an archive (the response then says why).
+	 */
+	private static String checkArchive(Map<String, String> prms, HTTPServer.Response response) {
+		String fileName = prms != null ? prms.get("file") : null;
+		if (fileName == null || fileName.trim().isEmpty()) {
+			response.setStatus(HTTPServer.Response.BAD_REQUEST);
+			RESTProcessorUtil.addErrorMessageToResponse(response, "Missing 'file' query parameter");
+			return null;
+		}
+		if (!new File(fileName).exists()) {
+			response.setStatus(HTTPServer.Response.NOT_FOUND);
+			RESTProcessorUtil.addErrorMessageToResponse(response, String.format("%s not found", fileName));
+			return null;
+		}
+		if (!NMEAArchive.isArchive(fileName)) { // Only the archives can be read from here
+			response.setStatus(HTTPServer.Response.BAD_REQUEST);
+			RESTProcessorUtil.addErrorMessageToResponse(response, String.format("%s is not an NMEA archive", fileName));
+			return null;
+		}
+		return fileName;
+	}
+
+	/**
+	 * @param time ISO-8601 (like 2017-06-10T11:50:00Z), or epoch in ms
+	 */
+	private static long parseArchiveTime(String time) {
+		try {
+			return Long.parseLong(time.trim());
+		} catch (NumberFormatException nfe) {
+			try {
+				return Instant.parse(time.trim()).toEpochMilli();
+			} catch (DateTimeParseException dtpe) {
+				throw new IllegalArgumentException(String.format("Bad time [%s], expected ISO-8601, or epoch ms", time));
+			}
+		}
+	}
+
 	private HTTPServer.Response resetCache(HTTPServer.Request request) {
 		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.NO_CONTENT);
 
@@ -1832,6 +2205,34 @@ public class RESTImplementation {
 		return response;
 	}
 
+	private HTTPServer.Response putDeviation(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+		NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
+		if (cache == null) {
+			response.setStatus(HTTPServer.Response.NOT_FOUND);
+			RESTProcessorUtil.addErrorMessageToResponse(response, "No cache");
+			return response;
+		}
+		Map<String, String> prms = request.getQueryStringParameters();
+		String fileName = (prms != null && prms.get("file") != null) ? prms.get("file") : (String) cache.get(NMEADataCache.DEVIATION_FILE);
+		if (fileName == null) {
+			response.setStatus(HTTPServer.Response.BAD_REQUEST);
+			RESTProcessorUtil.addErrorMessageToResponse(response, "No deviation file");
+			return response;
+		}
+		List<double[]> curve = ApplicationContext.getInstance().loadDeviationCurve(fileName);
+		if (curve == null) {
+			response.setStatus(HTTPServer.Response.NOT_FOUND);
+			RESTProcessorUtil.addErrorMessageToResponse(response, String.format("Cannot load the deviation curve from [%s]", fileName));
+			return response;
+		}
+		Map<String, Object> map = new HashMap<>(2);
+		map.put("file", cache.get(NMEADataCache.DEVIATION_FILE));
+		map.put("points", cache.getDeviationTable().getNbPoints());
+		setJsonPayload(response, map);
+		return response;
+	}
+
 	private HTTPServer.Response getNMEAVolumeStatus(HTTPServer.Request request) {
 		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
 
@@ -1839,15 +2240,14 @@ public class RESTImplementation {
 		map.put("started", Context.getInstance().getStartTime());
 		map.put("nmea-bytes", Context.getInstance().getManagedBytes());
 
-		JsonElement jsonElement = null;
+		byte[] content = new byte[0];
 		try {
-			jsonElement = new Gson().toJsonTree(map);
+			content = NMEAJsonWriter.toJson(map);
 		} catch (Exception ex) {
 			Context.getInstance().getLogger().log(Level.INFO, "Managed >>> getNMEAVolumeStatus", ex);
 		}
-		String content = jsonElement != null ? jsonElement.toString() : "";
-		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
-		response.setPayload(content.getBytes());
+		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length);
+		response.setPayload(content);
 
 		return response;
 	}
@@ -1860,19 +2260,129 @@ public class RESTImplementation {
 		map.put("timestamp", lastData.getTimestamp());
 		map.put("last-data", lastData.getString());
 
-		JsonElement jsonElement = null;
+		byte[] content = new byte[0];
 		try {
-			jsonElement = new Gson().toJsonTree(map);
+			content = NMEAJsonWriter.toJson(map);
 		} catch (Exception ex) {
 			Context.getInstance().getLogger().log(Level.INFO, "Managed >>> getLastNMEASentence", ex);
 		}
-		String content = jsonElement != null ? jsonElement.toString() : "";
+		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length);
+		response.setPayload(content);
+
+		return response;
+	}
+
+	private HTTPServer.Response getOutputQueues(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+
+		List<OutputQueue.Status> queues = (mux instanceof GenericNMEAMultiplexer) ?
+						((GenericNMEAMultiplexer) mux).getOutputQueueStatus() :
+						new ArrayList<>();
+		String content = new Gson().toJson(queues.toArray(new OutputQueue.Status[queues.size()]));
 		RESTProcessorUtil.generateHappyResponseHeaders(response, content.length());
 		response.setPayload(content.getBytes());
 
 		return response;
 	}
 
+	private HTTPServer.Response getMetrics(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+
+		Map<String, String> prms = request.getQueryStringParameters();
+		boolean prometheus = (prms != null && "prometheus".equals(prms.get("format")));
+		if (!prometheus && request.getHeaders() != null) {
+			prometheus = request.getHeaders().entrySet().stream()
+							.anyMatch(header -> "Accept".equalsIgnoreCase(header.getKey()) &&
+											header.getValue().contains("text/plain") &&
+											!header.getValue().contains("application/json"));
+		}
+		if (prometheus) {
+			byte[] content = MuxMetrics.getInstance().toPrometheus().getBytes(StandardCharsets.UTF_8);
+			RESTProcessorUtil.generateHappyResponseHeaders(response, "text/plain; version=0.0.4; charset=utf-8", content.length);
+			response.setPayload(content);
+		} else {
+			setJsonPayload(response, MuxMetrics.getInstance().toMap());
+		}
+		return response;
+	}
+
+	private HTTPServer.Response getAISTargets(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+		NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
+		if (cache == null) {
+			response.setStatus(HTTPServer.Response.NOT_FOUND);
+			RESTProcessorUtil.addErrorMessageToResponse(response, "No cache");
+			return response;
+		}
+		Map<String, String> prms = request.getQueryStringParameters();
+		if (prms != null && prms.get("radius") != null) {
+			double radius;
+			try {
+				radius = Double.parseDouble(prms.get("radius"));
+			} catch (NumberFormatException nfe) {
+				response.setStatus(HTTPServer.Response.BAD_REQUEST);
+				RESTProcessorUtil.addErrorMessageToResponse(response, String.format("Bad radius [%s]", prms.get("radius")));
+				return response;
+			}
+			List<AISTargetTable.Proximity> within = cache.getAISTargetsWithin(radius);
+			if (within == null) {
+				response.setStatus(HTTPServer.Response.NOT_FOUND);
+				RESTProcessorUtil.addErrorMessageToResponse(response, "Own position not available");
+				return response;
+			}
+			List<Map<String, Object>> targets = within.stream()
+							.map(AISTargetTable.Proximity::toMap)
+							.collect(Collectors.toList());
+			setJsonPayload(response, targets);
+		} else {
+			List<Map<String, Object>> targets = cache.getAISTargets()
+							.getTargets()
+							.stream()
+							.map(AISTarget::toMap)
+							.collect(Collectors.toList());
+			setJsonPayload(response, targets);
+		}
+		return response;
+	}
+
+	private HTTPServer.Response getAISTarget(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+		NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
+		List<String> prmValues = RESTProcessorUtil.getPrmValues(request.getRequestPattern(), request.getPath());
+		AISTarget target = null;
+		if (cache != null && prmValues.size() == 1) {
+			try {
+				target = cache.getAISTargets().get(Integer.parseInt(prmValues.get(0)));
+			} catch (NumberFormatException nfe) {
+				response.setStatus(HTTPServer.Response.BAD_REQUEST);
+				RESTProcessorUtil.addErrorMessageToResponse(response, String.format("Bad MMSI [%s]", prmValues.get(0)));
+				return response;
+			}
+		}
+		if (target == null) {
+			response.setStatus(HTTPServer.Response.NOT_FOUND);
+			RESTProcessorUtil.addErrorMessageToResponse(response, String.format("AIS target %s not found", prmValues.isEmpty() ? "" : prmValues.get(0)));
+		} else {
+			setJsonPayload(response, target.toMap());
+		}
+		return response;
+	}
+
+	private HTTPServer.Response getAISThreats(HTTPServer.Request request) {
+		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
+		NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
+		List<AISTargetTable.Proximity> threats = (cache != null) ? cache.getAISThreats() : null;
+		if (threats == null) {
+			response.setStatus(HTTPServer.Response.NOT_FOUND);
+			RESTProcessorUtil.addErrorMessageToResponse(response, "Own position not available");
+		} else {
+			setJsonPayload(response, threats.stream()
+							.map(AISTargetTable.Proximity::toMap)
+							.collect(Collectors.toList()));
+		}
+		return response;
+	}
+
 	private HTTPServer.Response getOperationList(HTTPServer.Request request) {
 		HTTPServer.Response response = new HTTPServer.Response(request.getProtocol(), HTTPServer.Response.STATUS_OK);
 		Operation[] channelArray = operations.stream()
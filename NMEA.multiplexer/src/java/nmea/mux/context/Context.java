@@ -1,5 +1,6 @@
 package nmea.mux.context;
 
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -13,17 +14,14 @@ public class Context {
 	}
 
 	private long startTime = 0L;
-	private long managedBytes = 0L;
+	private final AtomicLong managedBytes = new AtomicLong(0L); // The Multiplexer is fed by several threads
 
 	private String lastDataSentence = "";
 	private long lastSentenceTimestamp = 0L;
 
-	private static Context instance;
+	private final static Context instance = new Context(); // Used for every sentence, no lock to get it.
 
-	public synchronized static Context getInstance() {
-		if (instance == null) {
-			instance = new Context();
-		}
+	public static Context getInstance() {
 		return instance;
 	}
 
@@ -40,11 +38,11 @@ public class Context {
 	}
 
 	public long getManagedBytes() {
-		return managedBytes;
+		return managedBytes.get();
 	}
 
 	public void addManagedBytes(long managedBytes) {
-		this.managedBytes += managedBytes;
+		this.managedBytes.addAndGet(managedBytes);
 	}
 
 	public void setLastDataSentence(String sentence) {
@@ -0,0 +1,94 @@
+package nmea.mux.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What an input channel (its {@link nmea.api.NMEAParser}) has seen:
+ * the bytes read, the sentences broadcasted, the ones rejected by the filters, or because of their checksum.
+ * <br>
+ * The checksum is only checked by the channels using the <code>NMEAFramer</code> (<code>-Dnmea.parser.framing=true</code>),
+ * the Multiplexer counts the others, see {@link MuxMetrics#getChecksumFailures()}.
+ */
+public final class ChannelMetrics implements ChannelMetricsMBean {
+
+	private volatile String name = "";
+
+	private final Meter sentences = new Meter();
+	private final Meter bytes = new Meter();
+	private final LongAdder checksumFailures = new LongAdder();
+	private final LongAdder filterRejects = new LongAdder();
+
+	public void markSentence() {
+		sentences.mark();
+	}
+
+	public void markBytes(long n) {
+		bytes.mark(n);
+	}
+
+	public void markChecksumFailure() {
+		checksumFailures.increment();
+	}
+
+	public void markFilterReject() {
+		filterRejects.increment();
+	}
+
+	void setName(String name) {
+		this.name = name;
+	}
+
+	void tick(long now) {
+		sentences.tick(now);
+		bytes.tick(now);
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getSentences() {
+		return sentences.getCount();
+	}
+
+	@Override
+	public double getSentenceRate() {
+		return sentences.getRate();
+	}
+
+	@Override
+	public long getBytes() {
+		return bytes.getCount();
+	}
+
+	@Override
+	public double getByteRate() {
+		return bytes.getRate();
+	}
+
+	@Override
+	public long getChecksumFailures() {
+		return checksumFailures.sum();
+	}
+
+	@Override
+	public long getFilterRejects() {
+		return filterRejects.sum();
+	}
+
+	Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("name", name);
+		map.put("sentences", getSentences());
+		map.put("sentenceRate", getSentenceRate());
+		map.put("bytes", getBytes());
+		map.put("byteRate", getByteRate());
+		map.put("checksumFailures", getChecksumFailures());
+		map.put("filterRejects", getFilterRejects());
+		return map;
+	}
+}
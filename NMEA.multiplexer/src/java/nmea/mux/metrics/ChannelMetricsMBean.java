@@ -0,0 +1,14 @@
+package nmea.mux.metrics;
+
+/**
+ * JMX view of a {@link ChannelMetrics}.
+ */
+public interface ChannelMetricsMBean {
+	String getName();
+	long getSentences();
+	double getSentenceRate();
+	long getBytes();
+	double getByteRate();
+	long getChecksumFailures();
+	long getFilterRejects();
+}
@@ -0,0 +1,162 @@
+package nmea.mux.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of durations, in nano seconds, like an HDR histogram: recording is lock-free, and O(1).
+ * <br>
+ * The buckets are log-linear: each power of 2 is cut into {@link #SUB_BUCKETS} buckets,
+ * the values are then known within 1/16 (6.25%), from 1 ns to more than a century, in less than 1000 buckets.
+ * <br>
+ * The percentiles are computed on demand, by {@link #snapshot()}.
+ */
+public final class LatencyHistogram {
+
+	private final static int SUB_BITS = 4;
+	private final static int SUB_BUCKETS = 1 << SUB_BITS;
+	private final static int NB_BUCKETS = SUB_BUCKETS + ((64 - SUB_BITS) * SUB_BUCKETS);
+
+	private final AtomicLongArray counts = new AtomicLongArray(NB_BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong(0L);
+
+	/**
+	 * @param nanos the duration to record, in ns
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0L, nanos);
+		counts.incrementAndGet(index(value));
+		count.increment();
+		sum.add(value);
+		long previous;
+		while (value > (previous = max.get()) && !max.compareAndSet(previous, value)) ;
+	}
+
+	static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + ((exponent - SUB_BITS) * SUB_BUCKETS) + sub;
+	}
+
+	/**
+	 * @return the highest value that goes in the bucket
+	 */
+	static long highest(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = ((index - SUB_BUCKETS) / SUB_BUCKETS) + SUB_BITS;
+		long sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+		long lowest = (1L << exponent) | (sub << (exponent - SUB_BITS));
+		return lowest + (1L << (exponent - SUB_BITS)) - 1;
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * The recording goes on during the snapshot, it may be off by the few values recorded meanwhile.
+	 */
+	public Snapshot snapshot() {
+		long[] copy = new long[NB_BUCKETS];
+		long total = 0L;
+		for (int i = 0; i < NB_BUCKETS; i++) {
+			copy[i] = counts.get(i);
+			total += copy[i];
+		}
+		Snapshot snapshot = new Snapshot();
+		snapshot.count = total;
+		snapshot.sum = sum.sum();
+		snapshot.max = max.get();
+		if (total > 0) {
+			snapshot.mean = (double) snapshot.sum / count.sum();
+			snapshot.p50 = percentile(copy, total, 0.5, snapshot.max);
+			snapshot.p90 = percentile(copy, total, 0.9, snapshot.max);
+			snapshot.p99 = percentile(copy, total, 0.99, snapshot.max);
+			snapshot.p999 = percentile(copy, total, 0.999, snapshot.max);
+		}
+		return snapshot;
+	}
+
+	private static long percentile(long[] counts, long total, double quantile, long max) {
+		long rank = Math.max(1L, (long) Math.ceil(quantile * total));
+		long seen = 0L;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(highest(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * The distribution at a given time. In ns.
+	 */
+	public static class Snapshot {
+		long count;
+		long sum;
+		double mean;
+		long p50;
+		long p90;
+		long p99;
+		long p999;
+		long max;
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getSum() {
+			return sum;
+		}
+
+		public double getMean() {
+			return mean;
+		}
+
+		public long getP50() {
+			return p50;
+		}
+
+		public long getP90() {
+			return p90;
+		}
+
+		public long getP99() {
+			return p99;
+		}
+
+		public long getP999() {
+			return p999;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * @return the values in ms, for the REST interface
+		 */
+		public Map<String, Object> toMap() {
+			Map<String, Object> map = new LinkedHashMap<>();
+			map.put("count", count);
+			map.put("mean", mean / 1E6);
+			map.put("p50", p50 / 1E6);
+			map.put("p90", p90 / 1E6);
+			map.put("p99", p99 / 1E6);
+			map.put("p999", p999 / 1E6);
+			map.put("max", max / 1E6);
+			return map;
+		}
+	}
+}
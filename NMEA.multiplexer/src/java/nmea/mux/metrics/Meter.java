@@ -0,0 +1,62 @@
+package nmea.mux.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events (sentences, bytes...), and their rate.
+ * <br>
+ * {@link #mark(long)} is a {@link LongAdder#add(long)}: no lock, no contention between the threads recording.
+ * The rate is computed by {@link MuxMetrics}, every {@link MuxMetrics#TICK_INTERVAL} ms,
+ * and averaged over about one minute (exponentially weighted, like the load average of a Unix system).
+ */
+public final class Meter {
+
+	private final static double ALPHA = 1d - Math.exp(-((double) MuxMetrics.TICK_INTERVAL) / 60_000d);
+
+	private final LongAdder total = new LongAdder();
+
+	// Written by the ticker only
+	private long lastTotal = 0L;
+	private long lastTick = System.nanoTime();
+	private boolean initialized = false;
+	private volatile double rate = 0d;
+
+	public void mark() {
+		total.increment();
+	}
+
+	public void mark(long n) {
+		total.add(n);
+	}
+
+	/**
+	 * @return the number of events since the beginning
+	 */
+	public long getCount() {
+		return total.sum();
+	}
+
+	/**
+	 * @return the number of events per second, over the last minute (about)
+	 */
+	public double getRate() {
+		return rate;
+	}
+
+	void tick(long now) {
+		long count = total.sum();
+		double elapsed = (now - lastTick) / 1E9;
+		if (elapsed <= 0d) {
+			return;
+		}
+		double instantRate = (count - lastTotal) / elapsed;
+		if (initialized) {
+			rate += (ALPHA * (instantRate - rate));
+		} else {
+			rate = instantRate;
+			initialized = true;
+		}
+		lastTotal = count;
+		lastTick = now;
+	}
+}
@@ -0,0 +1,322 @@
+package nmea.mux.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The metrics of the Multiplexer. A singleton.
+ * <ul>
+ *   <li>for the Multiplexer: sentences and bytes (and their rates), checksum failures</li>
+ *   <li>for each channel: see {@link ChannelMetrics}</li>
+ *   <li>for each forwarder and computer: see {@link TargetMetrics}</li>
+ * </ul>
+ * Recording is lock-free ({@link java.util.concurrent.atomic.LongAdder}s, {@link LatencyHistogram}s), and can be left on.
+ * The rates are computed every {@link #TICK_INTERVAL} ms by a background thread.
+ * <br>
+ * Available
+ * <ul>
+ *   <li>through REST, <code>GET /mux/metrics</code> (JSON, see {@link #toMap()}),
+ *   or <code>GET /mux/metrics?format=prometheus</code> (see {@link #toPrometheus()})</li>
+ *   <li>through JMX, as <code>nmea.mux:type=Multiplexer</code>, <code>nmea.mux:type=Channel,name=...</code>,
+ *   <code>nmea.mux:type=Forwarder,name=...</code> and <code>nmea.mux:type=Computer,name=...</code>.
+ *   Can be turned off with <code>-Dmux.metrics.jmx=false</code>.</li>
+ * </ul>
+ */
+public final class MuxMetrics implements MuxMetricsMBean {
+
+	public final static long TICK_INTERVAL = 5_000L; // ms
+
+	private final static String DOMAIN = "nmea.mux";
+
+	private final static MuxMetrics instance = new MuxMetrics();
+
+	private final boolean jmx = "true".equals(System.getProperty("mux.metrics.jmx", "true"));
+
+	private final long startTime = System.currentTimeMillis();
+	private final Meter sentences = new Meter();
+	private final Meter bytes = new Meter();
+	private final LongAdder checksumFailures = new LongAdder();
+
+	private final List<ChannelMetrics> channels = new CopyOnWriteArrayList<>();
+	private final List<TargetMetrics> targets = new CopyOnWriteArrayList<>();
+
+	private MuxMetrics() {
+		ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "Mux metrics");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ticker.scheduleAtFixedRate(this::tick, TICK_INTERVAL, TICK_INTERVAL, TimeUnit.MILLISECONDS);
+		register(this, String.format("%s:type=Multiplexer", DOMAIN));
+	}
+
+	public static MuxMetrics getInstance() {
+		return instance;
+	}
+
+	/**
+	 * A sentence received by the Multiplexer.
+	 *
+	 * @param length its length
+	 * @param valid  true if its checksum is valid
+	 */
+	public void markSentence(int length, boolean valid) {
+		sentences.mark();
+		bytes.mark(length);
+		if (!valid) {
+			checksumFailures.increment();
+		}
+	}
+
+	/**
+	 * @param name    like the class name of the channel. Made unique (<code>TCPClient</code>, <code>TCPClient-2</code>...)
+	 * @param metrics the metrics of the channel
+	 */
+	public void addChannel(String name, ChannelMetrics metrics) {
+		synchronized (channels) {
+			if (channels.contains(metrics)) {
+				return;
+			}
+			metrics.setName(uniqueName(name, channels.stream().map(ChannelMetrics::getName).collect(Collectors.toList())));
+			channels.add(metrics);
+		}
+		register(metrics, String.format("%s:type=Channel,name=%s", DOMAIN, ObjectName.quote(metrics.getName())));
+	}
+
+	public void removeChannel(ChannelMetrics metrics) {
+		if (channels.remove(metrics)) {
+			unregister(String.format("%s:type=Channel,name=%s", DOMAIN, ObjectName.quote(metrics.getName())));
+		}
+	}
+
+	/**
+	 * @param name    like the class name of the forwarder, or computer. Made unique.
+	 * @param metrics the metrics of the forwarder, or computer
+	 */
+	public void addTarget(String name, TargetMetrics metrics) {
+		synchronized (targets) {
+			if (targets.contains(metrics)) {
+				return;
+			}
+			metrics.setName(uniqueName(name, targets.stream().map(TargetMetrics::getName).collect(Collectors.toList())));
+			targets.add(metrics);
+		}
+		register(metrics, objectName(metrics));
+	}
+
+	public void removeTarget(TargetMetrics metrics) {
+		if (targets.remove(metrics)) {
+			unregister(objectName(metrics));
+		}
+	}
+
+	private static String objectName(TargetMetrics metrics) {
+		return String.format("%s:type=%s,name=%s", DOMAIN,
+						TargetMetrics.COMPUTER.equals(metrics.getKind()) ? "Computer" : "Forwarder",
+						ObjectName.quote(metrics.getName()));
+	}
+
+	private static String uniqueName(String name, List<String> taken) {
+		String unique = name;
+		for (int i = 2; taken.contains(unique); i++) {
+			unique = String.format("%s-%d", name, i);
+		}
+		return unique;
+	}
+
+	private void register(Object mbean, String name) {
+		if (!jmx) {
+			return;
+		}
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(name);
+			if (!server.isRegistered(objectName)) {
+				server.registerMBean(mbean, objectName);
+			}
+		} catch (Exception ex) {
+			System.err.println(String.format("Registering MBean %s: %s", name, ex.toString()));
+		}
+	}
+
+	private void unregister(String name) {
+		if (!jmx) {
+			return;
+		}
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(name);
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		} catch (Exception ex) {
+			System.err.println(String.format("Unregistering MBean %s: %s", name, ex.toString()));
+		}
+	}
+
+	private void tick() {
+		long now = System.nanoTime();
+		sentences.tick(now);
+		bytes.tick(now);
+		channels.forEach(channel -> channel.tick(now));
+	}
+
+	@Override
+	public long getUptime() {
+		return System.currentTimeMillis() - startTime;
+	}
+
+	@Override
+	public long getSentences() {
+		return sentences.getCount();
+	}
+
+	@Override
+	public double getSentenceRate() {
+		return sentences.getRate();
+	}
+
+	@Override
+	public long getBytes() {
+		return bytes.getCount();
+	}
+
+	@Override
+	public double getByteRate() {
+		return bytes.getRate();
+	}
+
+	@Override
+	public long getChecksumFailures() {
+		return checksumFailures.sum();
+	}
+
+	@Override
+	public int getNbChannels() {
+		return channels.size();
+	}
+
+	@Override
+	public int getNbTargets() {
+		return targets.size();
+	}
+
+	public List<ChannelMetrics> getChannels() {
+		return new ArrayList<>(channels);
+	}
+
+	public List<TargetMetrics> getTargets() {
+		return new ArrayList<>(targets);
+	}
+
+	/**
+	 * @return all the metrics, for the REST interface (as JSON). The rates are per second, the latencies in ms.
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("uptime", getUptime());
+		map.put("sentences", getSentences());
+		map.put("sentenceRate", getSentenceRate());
+		map.put("bytes", getBytes());
+		map.put("byteRate", getByteRate());
+		map.put("checksumFailures", getChecksumFailures());
+		map.put("channels", channels.stream().map(ChannelMetrics::toMap).collect(Collectors.toList()));
+		map.put("forwarders", targets.stream()
+						.filter(target -> TargetMetrics.FORWARDER.equals(target.getKind()))
+						.map(TargetMetrics::toMap)
+						.collect(Collectors.toList()));
+		map.put("computers", targets.stream()
+						.filter(target -> TargetMetrics.COMPUTER.equals(target.getKind()))
+						.map(TargetMetrics::toMap)
+						.collect(Collectors.toList()));
+		return map;
+	}
+
+	/**
+	 * @return all the metrics, in the Prometheus text format (version 0.0.4). The latencies are in seconds.
+	 */
+	public String toPrometheus() {
+		StringBuilder sb = new StringBuilder();
+		family(sb, "nmea_mux_uptime_seconds", "gauge", "Time since the Multiplexer started");
+		sample(sb, "nmea_mux_uptime_seconds", "", getUptime() / 1E3);
+		family(sb, "nmea_mux_sentences_total", "counter", "Sentences received by the Multiplexer");
+		sample(sb, "nmea_mux_sentences_total", "", getSentences());
+		family(sb, "nmea_mux_bytes_total", "counter", "Bytes received by the Multiplexer");
+		sample(sb, "nmea_mux_bytes_total", "", getBytes());
+		family(sb, "nmea_mux_checksum_failures_total", "counter", "Sentences with an invalid checksum");
+		sample(sb, "nmea_mux_checksum_failures_total", "", getChecksumFailures());
+
+		List<ChannelMetrics> channelList = getChannels();
+		family(sb, "nmea_channel_sentences_total", "counter", "Sentences broadcasted by a channel");
+		channelList.forEach(channel -> sample(sb, "nmea_channel_sentences_total", label("channel", channel.getName()), channel.getSentences()));
+		family(sb, "nmea_channel_sentence_rate", "gauge", "Sentences per second, over the last minute");
+		channelList.forEach(channel -> sample(sb, "nmea_channel_sentence_rate", label("channel", channel.getName()), channel.getSentenceRate()));
+		family(sb, "nmea_channel_bytes_total", "counter", "Bytes read by a channel");
+		channelList.forEach(channel -> sample(sb, "nmea_channel_bytes_total", label("channel", channel.getName()), channel.getBytes()));
+		family(sb, "nmea_channel_byte_rate", "gauge", "Bytes per second, over the last minute");
+		channelList.forEach(channel -> sample(sb, "nmea_channel_byte_rate", label("channel", channel.getName()), channel.getByteRate()));
+		family(sb, "nmea_channel_checksum_failures_total", "counter", "Sentences rejected by a channel because of their checksum");
+		channelList.forEach(channel -> sample(sb, "nmea_channel_checksum_failures_total", label("channel", channel.getName()), channel.getChecksumFailures()));
+		family(sb, "nmea_channel_filter_rejects_total", "counter", "Sentences rejected by the filters of a channel");
+		channelList.forEach(channel -> sample(sb, "nmea_channel_filter_rejects_total", label("channel", channel.getName()), channel.getFilterRejects()));
+
+		List<TargetMetrics> targetList = getTargets();
+		family(sb, "nmea_output_queue_depth", "gauge", "Sentences waiting in the queue of a forwarder, or computer");
+		targetList.forEach(target -> sample(sb, "nmea_output_queue_depth", targetLabels(target), target.getDepth()));
+		family(sb, "nmea_output_dropped_total", "counter", "Sentences dropped by the queue of a forwarder, or computer");
+		targetList.forEach(target -> sample(sb, "nmea_output_dropped_total", targetLabels(target), target.getDropped()));
+		family(sb, "nmea_output_write_seconds", "summary", "Time spent writing a sentence to a forwarder, or computer");
+		targetList.forEach(target -> summary(sb, "nmea_output_write_seconds", targetLabels(target), target.getWriteLatency().snapshot()));
+		family(sb, "nmea_output_end_to_end_seconds", "summary", "Time from the reception of a sentence to the end of its write to a forwarder, or computer");
+		targetList.forEach(target -> summary(sb, "nmea_output_end_to_end_seconds", targetLabels(target), target.getEndToEndLatency().snapshot()));
+		return sb.toString();
+	}
+
+	private static void family(StringBuilder sb, String name, String type, String help) {
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void sample(StringBuilder sb, String name, String labels, double value) {
+		sb.append(name);
+		if (!labels.isEmpty()) {
+			sb.append('{').append(labels).append('}');
+		}
+		sb.append(' ');
+		if (value == Math.rint(value) && Math.abs(value) < 1E15) {
+			sb.append((long) value);
+		} else {
+			sb.append(value); // Like 1.59E-4, Prometheus reads it
+		}
+		sb.append('\n');
+	}
+
+	private static void summary(StringBuilder sb, String name, String labels, LatencyHistogram.Snapshot snapshot) {
+		String separator = labels.isEmpty() ? "" : ",";
+		sample(sb, name, labels + separator + label("quantile", "0.5"), snapshot.getP50() / 1E9);
+		sample(sb, name, labels + separator + label("quantile", "0.9"), snapshot.getP90() / 1E9);
+		sample(sb, name, labels + separator + label("quantile", "0.99"), snapshot.getP99() / 1E9);
+		sample(sb, name, labels + separator + label("quantile", "0.999"), snapshot.getP999() / 1E9);
+		sample(sb, name + "_sum", labels, snapshot.getSum() / 1E9);
+		sample(sb, name + "_count", labels, snapshot.getCount());
+	}
+
+	private static String targetLabels(TargetMetrics target) {
+		return label("target", target.getName()) + "," + label("kind", target.getKind());
+	}
+
+	private static String label(String name, String value) {
+		return String.format("%s=\"%s\"", name, value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"));
+	}
+}
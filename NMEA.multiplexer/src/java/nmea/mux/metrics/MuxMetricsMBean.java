@@ -0,0 +1,15 @@
+package nmea.mux.metrics;
+
+/**
+ * JMX view of the {@link MuxMetrics}.
+ */
+public interface MuxMetricsMBean {
+	long getUptime();
+	long getSentences();
+	double getSentenceRate();
+	long getBytes();
+	double getByteRate();
+	long getChecksumFailures();
+	int getNbChannels();
+	int getNbTargets();
+}
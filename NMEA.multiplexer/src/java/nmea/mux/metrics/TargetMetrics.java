@@ -0,0 +1,126 @@
+package nmea.mux.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * What a forwarder, or a computer, has been fed with, recorded by its <code>OutputQueue</code>:
+ * <ul>
+ *   <li>the time spent in its <code>write</code> method</li>
+ *   <li>the time between the reception of the sentence by the Multiplexer, and the end of that <code>write</code> (end to end)</li>
+ *   <li>the depth of its queue, and the number of sentences dropped</li>
+ * </ul>
+ */
+public final class TargetMetrics implements TargetMetricsMBean {
+
+	public final static String FORWARDER = "forwarder";
+	public final static String COMPUTER = "computer";
+
+	private volatile String name = "";
+	private final String kind;
+	private final IntSupplier depth;
+	private final LongSupplier dropped;
+
+	private final LatencyHistogram writeLatency = new LatencyHistogram();
+	private final LatencyHistogram endToEndLatency = new LatencyHistogram();
+
+	/**
+	 * @param kind    {@link #FORWARDER} or {@link #COMPUTER}
+	 * @param depth   the depth of the queue
+	 * @param dropped the number of sentences dropped by the queue
+	 */
+	public TargetMetrics(String kind, IntSupplier depth, LongSupplier dropped) {
+		this.kind = kind;
+		this.depth = depth;
+		this.dropped = dropped;
+	}
+
+	/**
+	 * @param started  when the write began, {@link System#nanoTime()}
+	 * @param received when the sentence was received, {@link System#nanoTime()}
+	 */
+	public void recordWrite(long started, long received) {
+		long now = System.nanoTime();
+		writeLatency.record(now - started);
+		endToEndLatency.record(now - received);
+	}
+
+	void setName(String name) {
+		this.name = name;
+	}
+
+	public LatencyHistogram getWriteLatency() {
+		return writeLatency;
+	}
+
+	public LatencyHistogram getEndToEndLatency() {
+		return endToEndLatency;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String getKind() {
+		return kind;
+	}
+
+	@Override
+	public int getDepth() {
+		return depth.getAsInt();
+	}
+
+	@Override
+	public long getDropped() {
+		return dropped.getAsLong();
+	}
+
+	@Override
+	public long getWrites() {
+		return writeLatency.getCount();
+	}
+
+	@Override
+	public double getWriteLatencyMean() {
+		return writeLatency.snapshot().getMean() / 1E6;
+	}
+
+	@Override
+	public double getWriteLatencyP99() {
+		return writeLatency.snapshot().getP99() / 1E6;
+	}
+
+	@Override
+	public double getWriteLatencyMax() {
+		return writeLatency.snapshot().getMax() / 1E6;
+	}
+
+	@Override
+	public double getEndToEndLatencyMean() {
+		return endToEndLatency.snapshot().getMean() / 1E6;
+	}
+
+	@Override
+	public double getEndToEndLatencyP99() {
+		return endToEndLatency.snapshot().getP99() / 1E6;
+	}
+
+	@Override
+	public double getEndToEndLatencyMax() {
+		return endToEndLatency.snapshot().getMax() / 1E6;
+	}
+
+	Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("name", name);
+		map.put("depth", getDepth());
+		map.put("dropped", getDropped());
+		map.put("writeLatency", writeLatency.snapshot().toMap());
+		map.put("endToEndLatency", endToEndLatency.snapshot().toMap());
+		return map;
+	}
+}
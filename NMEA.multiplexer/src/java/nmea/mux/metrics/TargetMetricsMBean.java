@@ -0,0 +1,18 @@
+package nmea.mux.metrics;
+
+/**
+ * JMX view of a {@link TargetMetrics}. Latencies in ms.
+ */
+public interface TargetMetricsMBean {
+	String getName();
+	String getKind();
+	int getDepth();
+	long getDropped();
+	long getWrites();
+	double getWriteLatencyMean();
+	double getWriteLatencyP99();
+	double getWriteLatencyMax();
+	double getEndToEndLatencyMean();
+	double getEndToEndLatencyP99();
+	double getEndToEndLatencyMax();
+}
@@ -0,0 +1,7 @@
+/**
+ * Metrics of the Multiplexer.
+ *
+ * Sentences, bytes and rates per channel, latencies per forwarder and computer, recorded without lock.
+ * Available through REST (JSON, Prometheus) and JMX, see {@link nmea.mux.metrics.MuxMetrics}.
+ */
+package nmea.mux.metrics;
@@ -0,0 +1,408 @@
+package nmea.parser;
+
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/**
+ * Cursor-style tokenizer over an NMEA sentence.
+ * <br>
+ * Replaces the <code>data.substring(0, data.indexOf("*")).split(",")</code> done in the
+ * {@link StringParsers}: the sentence is scanned once, and only the field offsets are kept.
+ * Fields are then accessed by index, like the elements of the array returned by <code>split</code>,
+ * and the numeric ones can be parsed without creating any <code>String</code>.
+ * <br>
+ * To stay compatible with <code>split</code>, {@link #size()} does not count the trailing empty fields,
+ * and accessing a field beyond it throws an {@link ArrayIndexOutOfBoundsException}.
+ * <br>
+ * An instance can be reused (see {@link #reset(CharSequence)}), but is not thread safe.
+ * The {@link StringParsers} use one instance per thread.
+ */
+public final class NMEAFieldTokenizer {
+
+	private final static double[] POWERS_OF_TEN = {
+					1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+					1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	private final static int MAX_FAST_DIGITS = 15; // Mantissa below 2^53
+
+	private CharSequence data = null;
+	private int[] starts = new int[32];
+	private int[] ends = new int[32];
+	private int nbFields = 0;
+
+	/**
+	 * Tokenizes the fields of a sentence, up to its checksum.
+	 *
+	 * @param sentence the sentence, like "$GPRMC,123519,A,4807.038,N,...,W*6A"
+	 * @return this tokenizer
+	 * @throws StringIndexOutOfBoundsException if there is no '*', like <code>substring(0, indexOf("*"))</code> would.
+	 */
+	public NMEAFieldTokenizer reset(CharSequence sentence) {
+		int star = indexOf(sentence, '*', 0);
+		if (star < 0) {
+			throw new StringIndexOutOfBoundsException(star);
+		}
+		return reset(sentence, star);
+	}
+
+	/**
+	 * Tokenizes the fields of a sentence, up to a given position.
+	 *
+	 * @param sentence the sentence
+	 * @param end      the end of the part to tokenize (exclusive)
+	 * @return this tokenizer
+	 */
+	public NMEAFieldTokenizer reset(CharSequence sentence, int end) {
+		this.data = sentence;
+		int nb = 0;
+		int lastNotEmpty = -1;
+		int from = 0;
+		for (int i = 0; i <= end; i++) {
+			if (i == end || sentence.charAt(i) == ',') {
+				if (nb == starts.length) {
+					grow();
+				}
+				starts[nb] = from;
+				ends[nb] = i;
+				if (i > from) {
+					lastNotEmpty = nb;
+				}
+				nb++;
+				from = i + 1;
+			}
+		}
+		// Like String.split, trailing empty strings are not included.
+		this.nbFields = (end == 0) ? 1 : lastNotEmpty + 1;
+		return this;
+	}
+
+	/**
+	 * Tokenizes the whole sentence (not stopping at the '*').
+	 *
+	 * @param sentence the sentence
+	 * @return this tokenizer
+	 */
+	public NMEAFieldTokenizer resetAll(CharSequence sentence) {
+		return reset(sentence, sentence.length());
+	}
+
+	private void grow() {
+		int[] newStarts = new int[starts.length * 2];
+		int[] newEnds = new int[ends.length * 2];
+		System.arraycopy(starts, 0, newStarts, 0, starts.length);
+		System.arraycopy(ends, 0, newEnds, 0, ends.length);
+		starts = newStarts;
+		ends = newEnds;
+	}
+
+	private static int indexOf(CharSequence s, char c, int from) {
+		int len = s.length();
+		for (int i = from; i < len; i++) {
+			if (s.charAt(i) == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the number of fields, same as the length of the array returned by <code>split(",")</code>.
+	 */
+	public int size() {
+		return this.nbFields;
+	}
+
+	private void check(int idx) {
+		if (idx < 0 || idx >= this.nbFields) {
+			throw new ArrayIndexOutOfBoundsException(idx);
+		}
+	}
+
+	public int start(int idx) {
+		check(idx);
+		return starts[idx];
+	}
+
+	public int end(int idx) {
+		check(idx);
+		return ends[idx];
+	}
+
+	public int length(int idx) {
+		check(idx);
+		return ends[idx] - starts[idx];
+	}
+
+	public boolean isEmpty(int idx) {
+		return length(idx) == 0;
+	}
+
+	/**
+	 * @param idx the field index
+	 * @return true if the field contains only whitespaces (or nothing), like <code>field.trim().length() == 0</code>
+	 */
+	public boolean isBlank(int idx) {
+		check(idx);
+		for (int i = starts[idx]; i < ends[idx]; i++) {
+			if (data.charAt(i) > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param idx   the field index
+	 * @param value the expected content
+	 * @return same as <code>value.equals(field)</code>
+	 */
+	public boolean equals(int idx, String value) {
+		check(idx);
+		int len = ends[idx] - starts[idx];
+		if (len != value.length()) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			if (data.charAt(starts[idx] + i) != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public char charAt(int idx, int pos) {
+		check(idx);
+		if (pos < 0 || starts[idx] + pos >= ends[idx]) {
+			throw new StringIndexOutOfBoundsException(pos);
+		}
+		return data.charAt(starts[idx] + pos);
+	}
+
+	/**
+	 * @param idx the field index
+	 * @return the field content. Allocates a String, use only when needed.
+	 */
+	public String toString(int idx) {
+		check(idx);
+		return data.subSequence(starts[idx], ends[idx]).toString();
+	}
+
+	/**
+	 * Same result as <code>NumberFormat.getInstance(Locale.ENGLISH).parse(field).doubleValue()</code>,
+	 * that parses the longest numeric prefix of the field.
+	 *
+	 * @param idx the field index
+	 * @return the value
+	 * @throws NumberFormatException if the field does not begin with a number
+	 */
+	public double parseNMEADouble(int idx) throws NumberFormatException {
+		check(idx);
+		return parseNMEADouble(data, starts[idx], ends[idx]);
+	}
+
+	public float parseNMEAFloat(int idx) throws NumberFormatException {
+		return (float) parseNMEADouble(idx);
+	}
+
+	/**
+	 * Same result as <code>Double.parseDouble(field)</code>.
+	 *
+	 * @param idx the field index
+	 * @return the value
+	 * @throws NumberFormatException if the field is not a number
+	 */
+	public double parseDouble(int idx) throws NumberFormatException {
+		return parseDouble(idx, 0, length(idx));
+	}
+
+	/**
+	 * Same result as <code>Double.parseDouble(field.substring(from, to))</code>.
+	 *
+	 * @param idx  the field index
+	 * @param from start in the field
+	 * @param to   end in the field (exclusive)
+	 * @return the value
+	 * @throws NumberFormatException if this part of the field is not a number
+	 */
+	public double parseDouble(int idx, int from, int to) throws NumberFormatException {
+		int start = checkRange(idx, from, to);
+		int end = start + (to - from);
+		if (isPlainDecimal(data, start, end)) {
+			double value = parse(data, start, end, false);
+			if (!Double.isNaN(value)) {
+				return value;
+			}
+		}
+		return Double.parseDouble(data.subSequence(start, end).toString());
+	}
+
+	/**
+	 * Same result as <code>Integer.parseInt(field)</code>.
+	 *
+	 * @param idx the field index
+	 * @return the value
+	 * @throws NumberFormatException if the field is not an int
+	 */
+	public int parseInt(int idx) throws NumberFormatException {
+		check(idx);
+		return parseInt(data, starts[idx], ends[idx]);
+	}
+
+	/**
+	 * Same result as <code>Integer.parseInt(field.substring(from, to))</code>.
+	 *
+	 * @param idx  the field index
+	 * @param from start in the field
+	 * @param to   end in the field (exclusive)
+	 * @return the value
+	 * @throws NumberFormatException if this part of the field is not an int
+	 */
+	public int parseInt(int idx, int from, int to) throws NumberFormatException {
+		int start = checkRange(idx, from, to);
+		return parseInt(data, start, start + (to - from));
+	}
+
+	/*
+	 * Checks a substring range in a field, returns its start in the sentence.
+	 */
+	private int checkRange(int idx, int from, int to) {
+		check(idx);
+		int len = ends[idx] - starts[idx];
+		if (from < 0 || to > len || from > to) {
+			throw new StringIndexOutOfBoundsException(String.format("begin %d, end %d, length %d", from, to, len));
+		}
+		return starts[idx] + from;
+	}
+
+	/**
+	 * Parses the numeric prefix of a char sequence, like NumberFormat (Locale.ENGLISH) does, for the plain
+	 * decimal notation (<code>-ddd.ddd</code>). The other notations fall back on NumberFormat.
+	 *
+	 * @param s    the char sequence
+	 * @param from start index
+	 * @param to   end index (exclusive)
+	 * @return the parsed value
+	 * @throws NumberFormatException if there is no digit to parse
+	 */
+	public static double parseNMEADouble(CharSequence s, int from, int to) throws NumberFormatException {
+		return parse(s, from, to, true);
+	}
+
+	/*
+	 * Returns NaN when the fast path cannot be used, and numberFormatFallback is false.
+	 */
+	private static double parse(CharSequence s, int from, int to, boolean numberFormatFallback) throws NumberFormatException {
+		int i = from;
+		boolean negative = false;
+		if (i < to && s.charAt(i) == '-') {
+			negative = true;
+			i++;
+		}
+		long mantissa = 0L;
+		int nbDigits = 0;
+		int nbDecimals = 0;
+		boolean sawDot = false;
+		for (; i < to; i++) {
+			char c = s.charAt(i);
+			if (c >= '0' && c <= '9') {
+				if (mantissa == 0L && c == '0') { // Leading zeros are not significant
+					if (sawDot) {
+						nbDecimals++;
+					}
+					nbDigits = Math.max(nbDigits, 1);
+					continue;
+				}
+				mantissa = (mantissa * 10) + (c - '0');
+				nbDigits++;
+				if (sawDot) {
+					nbDecimals++;
+				}
+				if (nbDigits > MAX_FAST_DIGITS) {
+					return numberFormatFallback ? slowParse(s, from, to) : Double.NaN;
+				}
+			} else if (c == '.' && !sawDot) {
+				sawDot = true;
+			} else if (c == 'E' || c > 0x7F) { // Exponent, or non-ASCII digits.
+				return numberFormatFallback ? slowParse(s, from, to) : Double.NaN;
+			} else {
+				break; // End of the numeric prefix
+			}
+		}
+		if (nbDigits == 0) {
+			throw new NumberFormatException(String.format("Unparseable number: \"%s\"", s.subSequence(from, to)));
+		}
+		if (nbDecimals >= POWERS_OF_TEN.length) {
+			return numberFormatFallback ? slowParse(s, from, to) : Double.NaN;
+		}
+		double value = (double) mantissa / POWERS_OF_TEN[nbDecimals];
+		return negative ? -value : value;
+	}
+
+	private static double slowParse(CharSequence s, int from, int to) throws NumberFormatException {
+		try {
+			return NumberFormat.getInstance(Locale.ENGLISH).parse(s.subSequence(from, to).toString()).doubleValue();
+		} catch (java.text.ParseException pe) {
+			throw new NumberFormatException(pe.getMessage());
+		}
+	}
+
+	/*
+	 * [+-]ddd[.ddd], nothing else.
+	 */
+	private static boolean isPlainDecimal(CharSequence s, int from, int to) {
+		int i = from;
+		if (i < to && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+			i++;
+		}
+		boolean sawDot = false;
+		boolean sawDigit = false;
+		for (; i < to; i++) {
+			char c = s.charAt(i);
+			if (c >= '0' && c <= '9') {
+				sawDigit = true;
+			} else if (c == '.' && !sawDot) {
+				sawDot = true;
+			} else {
+				return false;
+			}
+		}
+		return sawDigit && s.charAt(from) != '+'; // Let Double.parseDouble deal with the '+'
+	}
+
+	public static int parseInt(CharSequence s, int from, int to) throws NumberFormatException {
+		if (from >= to) {
+			throw new NumberFormatException("For input string: \"\"");
+		}
+		int i = from;
+		boolean negative = false;
+		char first = s.charAt(i);
+		if (first == '-' || first == '+') {
+			negative = (first == '-');
+			i++;
+			if (i == to) {
+				throw new NumberFormatException(String.format("For input string: \"%s\"", s.subSequence(from, to)));
+			}
+		}
+		long result = 0L;
+		for (; i < to; i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9') {
+				if (Character.digit(c, 10) >= 0) { // Non-ASCII digit
+					return Integer.parseInt(s.subSequence(from, to).toString());
+				}
+				throw new NumberFormatException(String.format("For input string: \"%s\"", s.subSequence(from, to)));
+			}
+			result = (result * 10) + (c - '0');
+			if (result > (long) Integer.MAX_VALUE + 1) {
+				throw new NumberFormatException(String.format("For input string: \"%s\"", s.subSequence(from, to)));
+			}
+		}
+		if (negative) {
+			result = -result;
+		}
+		if (result > Integer.MAX_VALUE || result < Integer.MIN_VALUE) {
+			throw new NumberFormatException(String.format("For input string: \"%s\"", s.subSequence(from, to)));
+		}
+		return (int) result;
+	}
+}
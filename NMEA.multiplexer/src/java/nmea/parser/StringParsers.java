@@ -1,20 +1,15 @@
 package nmea.parser;
 
-import java.text.NumberFormat;
-
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
 
 import java.util.Map;
 import java.util.TimeZone;
 
-import util.GeomUtil;
-
 public class StringParsers {
   /* 
    * Generic form is
@@ -29,34 +24,45 @@ public class StringParsers {
 
 	private static Map<Integer, SVData> gsvMap = null;
 
-	public static List<StringGenerator.XDRElement> parseXDR(String data) {
+	/*
+	 * One tokenizer per thread, the parsers below are static, and reentrant.
+	 */
+	private final static ThreadLocal<NMEAFieldTokenizer> TOKENIZER = ThreadLocal.withInitial(NMEAFieldTokenizer::new);
+
+	private static NMEAFieldTokenizer tokenize(CharSequence data) {
+		return TOKENIZER.get().reset(data);
+	}
+
+	private final static StringGenerator.XDRTypes[] XDR_TYPES = StringGenerator.XDRTypes.values();
+
+	public static List<StringGenerator.XDRElement> parseXDR(CharSequence data) {
 		List<StringGenerator.XDRElement> lxdr = new ArrayList<StringGenerator.XDRElement>();
-		String sa[] = data.substring(0, data.indexOf("*")).split(",");
-		if ((sa.length - 1) % 4 != 0) // Mismatch
+		NMEAFieldTokenizer sa = tokenize(data);
+		if ((sa.size() - 1) % 4 != 0) // Mismatch
 		{
-			System.out.println("XDR String invalid (" + sa.length + " element(s) found, expected a multiple of 4)");
+			System.out.println("XDR String invalid (" + sa.size() + " element(s) found, expected a multiple of 4)");
 			return lxdr;
 		}
-		for (int i = 1; i < sa.length; i += 4) {
-			String type = sa[i];
-			String valStr = sa[i + 1];
-			String unit = sa[i + 2];
-			String tname = sa[i + 3];
+		for (int i = 1; i < sa.size(); i += 4) {
+			final int type = i;
+			final int valStr = i + 1;
+			final int unit = i + 2;
+			final int tname = i + 3;
 			// Valid unit and type
 			boolean foundType = false;
 			boolean foundUnit = false;
-			for (StringGenerator.XDRTypes xdrt : StringGenerator.XDRTypes.values()) {
-				if (xdrt.type().equals(type)) {
+			for (StringGenerator.XDRTypes xdrt : XDR_TYPES) {
+				if (sa.equals(type, xdrt.type())) {
 					foundType = true;
-					if (xdrt.unit().equals(unit)) {
+					if (sa.equals(unit, xdrt.unit())) {
 						foundUnit = true;
 						try {
-							if (valStr.trim().length() > 0) {
-								double value = Double.parseDouble(valStr);
-								lxdr.add(new StringGenerator.XDRElement(xdrt, value, tname));
+							if (!sa.isBlank(valStr)) {
+								double value = sa.parseDouble(valStr);
+								lxdr.add(new StringGenerator.XDRElement(xdrt, value, sa.toString(tname)));
 							}
 						} catch (NumberFormatException nfe) {
-							if (valStr.trim().length() > 0) {
+							if (!sa.isBlank(valStr)) {
 								throw new RuntimeException(nfe);
 							}
 						}
@@ -65,11 +71,11 @@ public class StringParsers {
 				}
 			}
 			if (!foundType) {
-				System.out.println("Unknown XDR type [" + type + "], in [" + data + "]");
+				System.out.println("Unknown XDR type [" + sa.toString(type) + "], in [" + data + "]");
 				return lxdr;
 			}
 			if (!foundUnit) {
-				System.out.println("Invalid XDR unit [" + unit + "] for type [" + type + "], in [" + data + "]");
+				System.out.println("Invalid XDR unit [" + sa.toString(unit) + "] for type [" + sa.toString(type) + "], in [" + data + "]");
 				return lxdr;
 			}
 		}
@@ -103,7 +109,7 @@ public class StringParsers {
 	private final static int WS_KNOTS = 19;
 	private final static int WS_MS = 21;
 
-	public static MDA parseMDA(String data) {
+	public static MDA parseMDA(CharSequence data) {
 	  /*
      * $--MDA,x.x,I,x.x,B,x.x,C,x.x,C,x.x,x.x,x.x,C,x.x,T,x.x,M,x.x,N,x.x,M*hh<CR><LF>
      *        |     |     |     |     |   |   |     |     |     |     Wind speed, m/s
@@ -120,14 +126,13 @@ public class StringParsers {
      * 
      * Example: $WIMDA,29.4473,I,0.9972,B,17.2,C,,,,,,,,,,,,,,*3E
      */
-		String sa[] = data.substring(0, data.indexOf("*")).split(",");
+		NMEAFieldTokenizer sa = tokenize(data);
 		MDA mda = new MDA();
-		for (int i = 0; i < sa.length; i++) {
-			//  System.out.println(sa[i]);
-			if (i % 2 == 1 && sa[i].trim().length() > 0) {
+		for (int i = 0; i < sa.size(); i++) {
+			if (i % 2 == 1 && !sa.isBlank(i)) {
 				double d = 0;
 				try {
-					d = Double.parseDouble(sa[i]);
+					d = sa.parseDouble(i);
 					switch (i) {
 						case PRESS_INCH:
 							mda.pressInch = d;
@@ -177,7 +182,7 @@ public class StringParsers {
 	 * @param data the one to parse
 	 * @return Pressure in Mb / hPa
 	 */
-	public static double parseMMB(String data) {
+	public static double parseMMB(CharSequence data) {
     /*
      * Structure is $IIMMB,29.9350,I,1.0136,B*7A
      *                     |       | |      |
@@ -187,16 +192,16 @@ public class StringParsers {
      *                     Pressure in inches of Hg
      */
 		double d = 0d;
-		String sa[] = data.substring(0, data.indexOf("*")).split(",");
+		NMEAFieldTokenizer sa = tokenize(data);
 		try {
-			d = Double.parseDouble(sa[3]);
+			d = sa.parseDouble(3);
 			d *= 1_000d;
 		} catch (NumberFormatException nfe) {
 		}
 		return d;
 	}
 
-	public static double parseMTA(String data) {
+	public static double parseMTA(CharSequence data) {
     /*
      * Structure is $IIMTA,020.5,C*30
      *                     |     |
@@ -204,9 +209,9 @@ public class StringParsers {
      *                     Temperature in Celcius
      */
 		double d = 0d;
-		String sa[] = data.substring(0, data.indexOf("*")).split(",");
+		NMEAFieldTokenizer sa = tokenize(data);
 		try {
-			d = Double.parseDouble(sa[1]);
+			d = sa.parseDouble(1);
 		} catch (NumberFormatException nfe) {
 		}
 		return d;
@@ -357,7 +362,7 @@ public class StringParsers {
 	public static final int GGA_NBSAT_IDX = 2;
 	public static final int GGA_ALT_IDX = 3;
 
-	public static List<Object> parseGGA(String data) {
+	public static List<Object> parseGGA(CharSequence data) {
 		final int KEY_POS = 0;
 		final int UTC_POS = 1;
 		final int LAT_POS = 2;
@@ -369,8 +374,7 @@ public class StringParsers {
 		final int ANTENNA_ALT = 9;
 
 		ArrayList<Object> al = null;
-		String s = data.trim();
-		if (s.length() < 6)
+		if (trimmedLength(data) < 6)
 			return al;
     /* Structure is 
      *  $GPGGA,014457,3739.853,N,12222.821,W,1,03,5.4,1.1,M,-28.2,M,,*7E         
@@ -389,36 +393,36 @@ public class StringParsers {
      *         |         Latitude
      *         UTC of position
      */
-		String sa[] = s.substring(0, s.indexOf("*")).split(",");
+		NMEAFieldTokenizer sa = tokenize(data);
 		double utc = 0L, lat = 0L, lng = 0L;
 		int nbsat = 0;
 		try {
-			utc = parseNMEADouble(sa[UTC_POS]);
+			utc = sa.parseNMEADouble(UTC_POS);
 		} catch (Exception ex) {
 		}
 
 		try {
-			double l = parseNMEADouble(sa[LAT_POS]);
+			double l = sa.parseNMEADouble(LAT_POS);
 			int intL = (int) l / 100;
 			double m = ((l / 100.0) - intL) * 100.0;
 			m *= (100.0 / 60.0);
 			lat = intL + (m / 100.0);
-			if ("S".equals(sa[LAT_SGN_POS]))
+			if (sa.equals(LAT_SGN_POS, "S"))
 				lat = -lat;
 		} catch (Exception ex) {
 		}
 		try {
-			double g = parseNMEADouble(sa[LONG_POS]);
+			double g = sa.parseNMEADouble(LONG_POS);
 			int intG = (int) g / 100;
 			double m = ((g / 100.0) - intG) * 100.0;
 			m *= (100.0 / 60.0);
 			lng = intG + (m / 100.0);
-			if ("W".equals(sa[LONG_SGN_POS]))
+			if (sa.equals(LONG_SGN_POS, "W"))
 				lng = -lng;
 		} catch (Exception ex) {
 		}
 		try {
-			nbsat = Integer.parseInt(sa[NBSAT_POS]);
+			nbsat = sa.parseInt(NBSAT_POS);
 		} catch (Exception ex) {
 		}
 
@@ -433,7 +437,7 @@ public class StringParsers {
 
 		double alt = 0;
 		try {
-			alt = parseNMEADouble(sa[ANTENNA_ALT]);
+			alt = sa.parseNMEADouble(ANTENNA_ALT);
 		} catch (Exception ex) {
 		}
 
@@ -494,13 +498,12 @@ public class StringParsers {
 	public final static int HDM_in_VHW = 1;
 	public final static int HDG_in_VHW = 2;
 
-	public static double[] parseVHW(String data) {
+	public static double[] parseVHW(CharSequence data) {
 		return parseVHW(data, 0d);
 	}
 
-	public static double[] parseVHW(String data, double defaultBSP) {
-		String s = data.trim();
-		if (s.length() < 6)
+	public static double[] parseVHW(CharSequence data, double defaultBSP) {
+		if (trimmedLength(data) < 6)
 			return (double[]) null;
     /* Structure is 
      *         1   2 3   4 5   6 7   8
@@ -517,17 +520,17 @@ public class StringParsers {
 		double hdg = 0d;
 
 		try {
-			String[] nmeaElements = data.substring(0, data.indexOf("*")).split(",");
+			NMEAFieldTokenizer nmeaElements = tokenize(data);
 			try {
-				speed = parseNMEADouble(nmeaElements[5]);
+				speed = nmeaElements.parseNMEADouble(5);
 			} catch (Exception ex) {
 			}
 			try {
-				hdm = parseNMEADouble(nmeaElements[3]);
+				hdm = nmeaElements.parseNMEADouble(3);
 			} catch (Exception ex) {
 			}
 			try {
-				hdg = parseNMEADouble(nmeaElements[1]);
+				hdg = nmeaElements.parseNMEADouble(1);
 			} catch (Exception ex) {
 			}
 		} catch (Exception ex) {
@@ -550,9 +553,8 @@ public class StringParsers {
 	public final static int LOG_in_VLW = 0;
 	public final static int DAILYLOG_in_VLW = 1;
 
-	public static double[] parseVLW(String data) {
-		String s = data.trim();
-		if (s.length() < 6)
+	public static double[] parseVLW(CharSequence data) {
+		if (trimmedLength(data) < 6)
 			return (double[]) null;
 
 		double cumulative = 0d;
@@ -566,9 +568,9 @@ public class StringParsers {
      *        Total cumulative distance
      */
 		try {
-			String[] nmeaElements = data.substring(0, data.indexOf("*")).split(",");
-			cumulative = parseNMEADouble(nmeaElements[1]);
-			sinceReset = parseNMEADouble(nmeaElements[3]);
+			NMEAFieldTokenizer nmeaElements = tokenize(data);
+			cumulative = nmeaElements.parseNMEADouble(1);
+			sinceReset = nmeaElements.parseNMEADouble(3);
 		} catch (Exception ex) {
 			ex.printStackTrace();
 			return (double[]) null;
@@ -576,21 +578,20 @@ public class StringParsers {
 		return new double[]{cumulative, sinceReset};
 	}
 
-	public static double parseMTW(String data) {
+	public static double parseMTW(CharSequence data) {
     /* Structure
      * $xxMTW,+18.0,C*hh
      * 
      */
-		String s = data.trim();
-		if (s.length() < 6)
+		if (trimmedLength(data) < 6)
 			return 0d;
 
 		double temp = 0d;
 		try {
-			String[] nmeaElements = data.substring(0, data.indexOf("*")).split(",");
-			String _s = nmeaElements[1];
-			if (_s.startsWith("+")) _s = _s.substring(1);
-			temp = parseNMEADouble(_s);
+			NMEAFieldTokenizer nmeaElements = tokenize(data);
+			int from = nmeaElements.start(1);
+			if (nmeaElements.length(1) > 0 && nmeaElements.charAt(1, 0) == '+') from++;
+			temp = NMEAFieldTokenizer.parseNMEADouble(data, from, nmeaElements.end(1));
 		} catch (Exception ex) {
 			ex.printStackTrace();
 			return 0d;
@@ -602,11 +603,10 @@ public class StringParsers {
 	public static final int APPARENT_WIND = 1;
 
 	// AWA, AWS (R), possibly TWA, TWS (T)
-	public static Wind parseMWV(String data) {
+	public static Wind parseMWV(CharSequence data) {
 		int flavor = -1;
 
-		String s = data.trim();
-		if (s.length() < 6)
+		if (trimmedLength(data) < 6)
 			return null;
     /* Structure is 
      *  $aaMWV,x.x,a,x.x,a,A*hh
@@ -618,37 +618,47 @@ public class StringParsers {
      *         Wind angle 0 to 360 degrees 
      */
 		// We're interested only in Speed in knots.
+		// The fields are located like the String based version did, with indexOf(",R,"), indexOf(",N,"), etc,
+		// not by position: a sentence with missing or extra fields gives the same result.
 		Wind aw = null;
 		try {
-			if (s.indexOf("A*") == -1) // Data invalid
+			if (indexOf(data, "A*") == -1) // Data invalid
 				return aw;
 			else {
-				String speed = "", angle = "";
-				if (s.indexOf("MWV,") > -1 && s.indexOf(",R,") > -1) // Apparent
+				int mwv = indexOf(data, "MWV,");
+				int relativeRef = indexOf(data, ",R,");
+				int knots = indexOf(data, ",N,");
+				int angleFrom = 0, angleTo = 0, speedFrom = 0, speedTo = 0; // Empty
+				if (mwv > -1 && relativeRef > -1) // Apparent
 				{
 					flavor = APPARENT_WIND;
-					angle = s.substring(s.indexOf("MWV,") + "MWV,".length(), s.indexOf(",R,"));
+					angleFrom = checkRange(data, mwv + "MWV,".length(), relativeRef);
+					angleTo = relativeRef;
 				}
-				if (s.indexOf(",R,") > -1 && s.indexOf(",N,") > -1) {
-					speed = s.substring(s.indexOf(",R,") + ",R,".length(), s.indexOf(",N,"));
+				if (relativeRef > -1 && knots > -1) {
+					speedFrom = checkRange(data, relativeRef + ",R,".length(), knots);
+					speedTo = knots;
 				}
-				if (speed.trim().length() == 0 && angle.trim().length() == 0) {
-					if (s.indexOf("MWV,") > -1 && s.indexOf(",T,") > -1) {
+				if (isBlank(data, speedFrom, speedTo) && isBlank(data, angleFrom, angleTo)) {
+					int trueRef = indexOf(data, ",T,");
+					if (mwv > -1 && trueRef > -1) {
 						flavor = TRUE_WIND;
-						angle = s.substring(s.indexOf("MWV,") + "MWV,".length(), s.indexOf(",T,"));    // True
+						angleFrom = checkRange(data, mwv + "MWV,".length(), trueRef);    // True
+						angleTo = trueRef;
 					}
-					if (s.indexOf(",T,") > -1 && s.indexOf(",N,") > -1) {
-						speed = s.substring(s.indexOf(",T,") + ",T,".length(), s.indexOf(",N,"));
+					if (trueRef > -1 && knots > -1) {
+						speedFrom = checkRange(data, trueRef + ",T,".length(), knots);
+						speedTo = knots;
 					}
 				}
 				float awa = 0f;
 				double aws = 0d;
 				try {
-					awa = parseNMEAFloat(angle);
+					awa = (float) NMEAFieldTokenizer.parseNMEADouble(data, angleFrom, angleTo);
 				} catch (Exception ex) {
 				}
 				try {
-					aws = parseNMEADouble(speed);
+					aws = NMEAFieldTokenizer.parseNMEADouble(data, speedFrom, speedTo);
 				} catch (Exception ex) {
 				}
 				if (flavor == APPARENT_WIND)
@@ -659,7 +669,7 @@ public class StringParsers {
 					System.out.println("UNKNOWN wind type!");
 			}
 		} catch (Exception e) {
-			System.err.println("parseMWV for " + s + ", " + e.toString());
+			System.err.println("parseMWV for " + data.toString().trim() + ", " + e.toString());
 //    e.printStackTrace();
 		}
 		return aw;
@@ -834,10 +844,9 @@ public class StringParsers {
 		return aws;
 	}
 
-	public static OverGround parseVTG(String data) {
-		String s = data.trim();
+	public static OverGround parseVTG(CharSequence data) {
 		OverGround og = null;
-		if (s.length() < 6)
+		if (trimmedLength(data) < 6)
 			return null;
     /* Structure is 
      * $IIVTG,x.x,T,x.x,M,x.x,N,x.x,K,A*hh
@@ -856,44 +865,51 @@ public class StringParsers {
      */
 		// We're interested only in Speed in knots.
 		try {
-			if (false && s.indexOf("A*") == -1) // Data invalid, only for NMEA 2.3 and later
+			if (false && indexOf(data, "A*") == -1) // Data invalid, only for NMEA 2.3 and later
 				return og;
 			else {
-				String speed = "", angle = "";
-				String[] sa = s.split(",");
+				NMEAFieldTokenizer sa = TOKENIZER.get().reset(data, trimmedEnd(data)); // Not only up to the '*'
 
 				int tIndex = -1;
-				for (int i = 0; i < sa.length; i++) {
-					if ("T".equals(sa[i])) {
+				for (int i = 0; i < sa.size(); i++) {
+					if (sa.equals(i, "T")) {
 						tIndex = i;
 						break;
 					}
 				}
 				int nIndex = -1;
-				for (int i = 0; i < sa.length; i++) {
-					if ("N".equals(sa[i])) {
+				for (int i = 0; i < sa.size(); i++) {
+					if (sa.equals(i, "N")) {
 						nIndex = i;
 						break;
 					}
 				}
-				angle = sa[tIndex - 1];
-				speed = sa[nIndex - 1];
-				if (speed.endsWith("."))
-					speed += "0";
-				double sog = parseNMEADouble(speed);
-				if (angle.endsWith("."))
-					angle += "0";
-				int cog = (int) Math.round(parseNMEADouble(angle));
+				int angle = tIndex - 1;
+				int speed = nIndex - 1;
+				double sog = parseVTGValue(sa, speed);
+				int cog = (int) Math.round(parseVTGValue(sa, angle));
 				og = new OverGround(sog, cog);
 			}
 		} catch (Exception e) {
 			if ("true".equals(System.getProperty("nmea.parser.verbose", "false")))
-				System.err.println("parseVTG for " + s + ", " + e.toString());
+				System.err.println("parseVTG for " + data.toString().trim() + ", " + e.toString());
 //    e.printStackTrace();
 		}
 		return og;
 	}
 
+	/*
+	 * Some devices emit values like "17." (see above). Parsed as if it was "17.0", "." being then "0.0".
+	 */
+	private static double parseVTGValue(NMEAFieldTokenizer sa, int idx) throws NumberFormatException {
+		if (sa.equals(idx, ".")) {
+			return 0d;
+		} else if (sa.equals(idx, "-.")) {
+			return -0d;
+		}
+		return sa.parseNMEADouble(idx);
+	}
+
 	public static String parseVTGtoString(String s) {
 		String ret = "";
 		try {
@@ -1039,12 +1055,11 @@ public class StringParsers {
 		return result;
 	}
 
-	public static int parseHDT(String data) {
+	public static int parseHDT(CharSequence data) {
 		final int KEY_POS = 0;
 		final int HDG_POS = 1;
 		final int MT_POS = 2;
-		String s = data.trim();
-		if (s.length() < 6)
+		if (trimmedLength(data) < 6)
 			return -1;
     /* Structure is 
      *  $aaHDT,xxx,M*hh(CR)(LF)
@@ -1054,29 +1069,28 @@ public class StringParsers {
      */
 		int hdg = 0;
 
-		String[] elmts = data.substring(0, data.indexOf("*")).split(",");
+		NMEAFieldTokenizer elmts = tokenize(data);
 		try {
-			if (elmts[KEY_POS].indexOf("HDT") > -1) {
-				if ("T".equals(elmts[MT_POS]))
-					hdg = Math.round(parseNMEAFloat(elmts[HDG_POS]));
+			if (indexOf(data, "HDT", elmts.end(KEY_POS)) > -1) {
+				if (elmts.equals(MT_POS, "T"))
+					hdg = Math.round(elmts.parseNMEAFloat(HDG_POS));
 				else
-					throw new RuntimeException("Wrong type [" + elmts[HDG_POS] + "] in parseHDT.");
+					throw new RuntimeException("Wrong type [" + elmts.toString(HDG_POS) + "] in parseHDT.");
 			} else
 				System.err.println("Wrong chain in parseHDT [" + data + "]");
 		} catch (Exception e) {
-			System.err.println("parseHDT for " + s + ", " + e.toString());
+			System.err.println("parseHDT for " + data.toString().trim() + ", " + e.toString());
 //    e.printStackTrace();
 		}
 		return hdg;
 	}
 
 	// Heading (Mag.)
-	public static int parseHDM(String data) {
+	public static int parseHDM(CharSequence data) {
 		final int KEY_POS = 0;
 		final int HDG_POS = 1;
 		final int MT_POS = 2;
-		String s = data.trim();
-		if (s.length() < 6)
+		if (trimmedLength(data) < 6)
 			return -1;
     /* Structure is 
      *  $aaHDG,xxx,M*hh(CR)(LF)
@@ -1086,17 +1100,17 @@ public class StringParsers {
      */
 		int hdg = 0;
 
-		String[] elmts = data.substring(0, data.indexOf("*")).split(",");
+		NMEAFieldTokenizer elmts = tokenize(data);
 		try {
-			if (elmts[KEY_POS].indexOf("HDM") > -1) {
-				if ("M".equals(elmts[MT_POS]))
-					hdg = Math.round(parseNMEAFloat(elmts[HDG_POS]));
+			if (indexOf(data, "HDM", elmts.end(KEY_POS)) > -1) {
+				if (elmts.equals(MT_POS, "M"))
+					hdg = Math.round(elmts.parseNMEAFloat(HDG_POS));
 				else
-					throw new RuntimeException("Wrong type [" + elmts[HDG_POS] + "] in parseHDM.");
+					throw new RuntimeException("Wrong type [" + elmts.toString(HDG_POS) + "] in parseHDM.");
 			} else
 				System.err.println("Wrong chain in parseHDM [" + data + "]");
 		} catch (Exception e) {
-			System.err.println("parseHDM for " + s + ", " + e.toString());
+			System.err.println("parseHDM for " + data.toString().trim() + ", " + e.toString());
 //    e.printStackTrace();
 		}
 		return hdg;
@@ -1115,10 +1129,9 @@ public class StringParsers {
 	public final static int DEV_in_HDG = 1;
 	public final static int VAR_in_HDG = 2;
 
-	public static double[] parseHDG(String data) {
+	public static double[] parseHDG(CharSequence data) {
 		double[] ret = null;
-		String s = data.trim();
-		if (s.length() < 6)
+		if (trimmedLength(data) < 6)
 			return ret;
 
 		double hdg = 0d;
@@ -1135,22 +1148,22 @@ public class StringParsers {
      *        Magnetic Sensor heading in degrees
      */
 		try {
-			String[] nmeaElements = data.substring(0, data.indexOf("*")).split(",");
+			NMEAFieldTokenizer nmeaElements = tokenize(data);
 			try {
-				hdg = parseNMEADouble(nmeaElements[1]);
+				hdg = nmeaElements.parseNMEADouble(1);
 			} catch (Exception ex) {
 			}
 			try {
-				dev = parseNMEADouble(nmeaElements[2]);
+				dev = nmeaElements.parseNMEADouble(2);
 			} catch (Exception ex) {
 			}
-			if (nmeaElements.length > 3 && nmeaElements[3] != null && "W".equals(nmeaElements[3]))
+			if (nmeaElements.size() > 3 && nmeaElements.equals(3, "W"))
 				dev = -dev;
 			try {
-				var = parseNMEADouble(nmeaElements[4]);
+				var = nmeaElements.parseNMEADouble(4);
 			} catch (Exception ex) {
 			}
-			if (nmeaElements.length > 5 && nmeaElements[5] != null && "W".equals(nmeaElements[5]))
+			if (nmeaElements.size() > 5 && nmeaElements.equals(5, "W"))
 				var = -var;
 		} catch (Exception ex) {
 			ex.printStackTrace();
@@ -1252,14 +1265,12 @@ public class StringParsers {
 	}
 
 	// Recommended minimum specific GPS/Transit data
-	public static RMC parseRMC(String str) {
+	public static RMC parseRMC(CharSequence str) {
 		RMC rmc = null;
-		String s = str.trim();
-		if (s.length() < 6 || s.indexOf("*") < 0)
+		if (trimmedLength(str) < 6 || indexOf(str, "*") < 0)
 			return null;
 		if (!validCheckSum(str))
 			return null;
-		s = s.substring(0, s.indexOf("*"));
     /* Structure is 
      *         1      2 3        4 5         6 7     8     9      10    11
      *  $GPRMC,123519,A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W*6A
@@ -1277,16 +1288,16 @@ public class StringParsers {
      *         UTC
      */
 		try {
-			if (s.indexOf("RMC,") > -1) {
+			if (indexOf(str, "RMC,", indexOf(str, "*")) > -1) {
 				rmc = new RMC();
-				String[] data = str.substring(0, str.indexOf("*")).split(",");
-				if (data[2].equals("V")) // Void
+				NMEAFieldTokenizer data = tokenize(str);
+				if (data.equals(2, "V")) // Void
 					return rmc;
-				if (data[1].length() > 0) // Time and Date
+				if (data.length(1) > 0) // Time and Date
 				{
 					double utc = 0D;
 					try {
-						utc = parseNMEADouble(data[1]);
+						utc = data.parseNMEADouble(1);
 					} catch (Exception ex) {
 						System.out.println("data[1] in StringParsers.parseRMC");
 					}
@@ -1302,20 +1313,20 @@ public class StringParsers {
 					local.set(Calendar.MINUTE, m);
 					local.set(Calendar.SECOND, (int) Math.round(sec));
 					local.set(Calendar.MILLISECOND, 0);
-					if (data[9].length() > 0) {
+					if (data.length(9) > 0) {
 						int d = 1;
 						try {
-							d = Integer.parseInt(data[9].substring(0, 2));
+							d = data.parseInt(9, 0, 2);
 						} catch (Exception ex) {
 						}
 						int mo = 0;
 						try {
-							mo = Integer.parseInt(data[9].substring(2, 4)) - 1;
+							mo = data.parseInt(9, 2, 4) - 1;
 						} catch (Exception ex) {
 						}
 						int y = 0;
 						try {
-							y = Integer.parseInt(data[9].substring(4));
+							y = data.parseInt(9, 4, data.length(9));
 						} catch (Exception ex) {
 						}
 						if (y > 50)
@@ -1333,48 +1344,44 @@ public class StringParsers {
 					rmc.setRmcTime(rmcTime);
 //        System.out.println("GPS date:" + rmcDate.toString());
 				}
-				if (data[3].length() > 0 && data[5].length() > 0) {
-					String deg = data[3].substring(0, 2);
-					String min = data[3].substring(2);
-					double l = GeomUtil.sexToDec(deg, min);
-					if ("S".equals(data[4]))
+				if (data.length(3) > 0 && data.length(5) > 0) {
+					double l = sexToDec(data, 3, 2);
+					if (data.equals(4, "S"))
 						l = -l;
-					deg = data[5].substring(0, 3);
-					min = data[5].substring(3);
-					double g = GeomUtil.sexToDec(deg, min);
-					if ("W".equals(data[6]))
+					double g = sexToDec(data, 5, 3);
+					if (data.equals(6, "W"))
 						g = -g;
 					rmc.setGp(new GeoPos(l, g));
 				}
-				if (data[7].length() > 0) {
+				if (data.length(7) > 0) {
 					double speed = 0;
 					try {
-						speed = parseNMEADouble(data[7]);
+						speed = data.parseNMEADouble(7);
 					} catch (Exception ex) {
 					}
 					rmc.setSog(speed);
 				}
-				if (data[8].length() > 0) {
+				if (data.length(8) > 0) {
 					double cog = 0;
 					try {
-						cog = parseNMEADouble(data[8]);
+						cog = data.parseNMEADouble(8);
 					} catch (Exception ex) {
 					}
 					rmc.setCog(cog);
 				}
-				if (data[10].length() > 0 && data[11].length() > 0) {
+				if (data.length(10) > 0 && data.length(11) > 0) {
 					double d = -Double.MAX_VALUE;
 					try {
-						d = parseNMEADouble(data[10]);
+						d = data.parseNMEADouble(10);
 					} catch (Exception ex) {
 					}
-					if ("W".equals(data[11]))
+					if (data.equals(11, "W"))
 						d = -d;
 					rmc.setDeclination(d);
 				}
 			}
 		} catch (Exception e) {
-			System.err.println("parseRMC for " + s + ", " + e.toString());
+			System.err.println("parseRMC for " + str.toString().trim() + ", " + e.toString());
 			// e.printStackTrace();
 		}
 		return rmc;
@@ -1619,11 +1626,40 @@ public class StringParsers {
 			return feet;
 	}
 
-	public static boolean validCheckSum(String sentence) {
+	public static boolean validCheckSum(CharSequence sentence) {
 		return validCheckSum(sentence, false);
 	}
 
-	public static boolean validCheckSum(String data, boolean verb) {
+	public static boolean validCheckSum(CharSequence data, boolean verb) {
+		// Fast path, no String created.
+		int from = trimmedStart(data);
+		int to = trimmedEnd(data);
+		int starIndex = indexOf(data, "*");
+		if (starIndex < 0)
+			return false;
+		if (starIndex > from + 1 && to - (starIndex + 1) > 0 && to - (starIndex + 1) < 8) {
+			int csk = 0;
+			boolean hexOnly = true;
+			for (int i = starIndex + 1; i < to && hexOnly; i++) {
+				char c = data.charAt(i);
+				int digit = (c < 0x80) ? Character.digit(c, 16) : -1;
+				if (digit < 0) {
+					hexOnly = false;
+				} else {
+					csk = (csk << 4) | digit;
+				}
+			}
+			if (hexOnly) {
+				int calcCheckSum = data.charAt(from + 1);
+				for (int i = from + 2; i < starIndex; i++)
+					calcCheckSum = calcCheckSum ^ data.charAt(i); // XOR
+				return (calcCheckSum == csk);
+			}
+		}
+		return checkSumFromString(data.toString(), verb);
+	}
+
+	private static boolean checkSumFromString(String data, boolean verb) {
 		String sentence = data.trim();
 		boolean b = false;
 		try {
@@ -1658,6 +1694,91 @@ public class StringParsers {
 		return cs;
 	}
 
+	private static int trimmedStart(CharSequence s) {
+		int start = 0;
+		int len = s.length();
+		while (start < len && s.charAt(start) <= ' ')
+			start++;
+		return start;
+	}
+
+	private static int trimmedEnd(CharSequence s) {
+		int end = s.length();
+		while (end > 0 && s.charAt(end - 1) <= ' ')
+			end--;
+		return end;
+	}
+
+	/**
+	 * @param s the char sequence
+	 * @return same as <code>s.toString().trim().length()</code>
+	 */
+	private static int trimmedLength(CharSequence s) {
+		int end = trimmedEnd(s);
+		return (end == 0) ? 0 : end - trimmedStart(s);
+	}
+
+	private static int indexOf(CharSequence s, String what) {
+		return indexOf(s, what, s.length());
+	}
+
+	/**
+	 * @param s    the char sequence to look into
+	 * @param what what to find
+	 * @param to   the end of the part of s to look into (exclusive)
+	 * @return the index of what in s, -1 if not found before to.
+	 */
+	private static int indexOf(CharSequence s, String what, int to) {
+		int len = what.length();
+		for (int i = 0; i + len <= to; i++) {
+			int j = 0;
+			while (j < len && s.charAt(i + j) == what.charAt(j))
+				j++;
+			if (j == len)
+				return i;
+		}
+		return -1;
+	}
+
+	/*
+	 * Throws like String.substring(from, to) would.
+	 */
+	private static int checkRange(CharSequence s, int from, int to) {
+		if (from > to || to > s.length())
+			throw new StringIndexOutOfBoundsException(String.format("begin %d, end %d, length %d", from, to, s.length()));
+		return from;
+	}
+
+	/*
+	 * Same as s.substring(from, to).trim().isEmpty()
+	 */
+	private static boolean isBlank(CharSequence s, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (s.charAt(i) > ' ')
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Same as GeomUtil.sexToDec(field.substring(0, degLen), field.substring(degLen)),
+	 * for the NMEA positions like 3739.853 (ddmm.mm) or 12222.821 (dddmm.mm).
+	 */
+	private static double sexToDec(NMEAFieldTokenizer tokenizer, int idx, int degLen) throws RuntimeException {
+		int len = tokenizer.length(idx);
+		if (degLen > len)
+			throw new StringIndexOutOfBoundsException(String.format("begin 0, end %d, length %d", degLen, len));
+		double deg, min;
+		try {
+			deg = tokenizer.parseDouble(idx, 0, degLen);
+			min = tokenizer.parseDouble(idx, degLen, len);
+		} catch (NumberFormatException nfe) {
+			throw new RuntimeException("Bad number [" + tokenizer.toString(idx).substring(0, degLen) + "] [" + tokenizer.toString(idx).substring(degLen) + "]");
+		}
+		min *= (10.0 / 6.0);
+		return deg + min / 100D;
+	}
+
 	/**
 	 * @param sentence a VALID NMEA Semtence
 	 * @return the device ID
@@ -1685,26 +1806,18 @@ public class StringParsers {
 	}
 
 	/**
-	 * Enforce the parsing using the Locale.ENGLISH
+	 * Enforce the parsing using the Locale.ENGLISH (same result as NumberFormat, see {@link NMEAFieldTokenizer})
 	 *
 	 * @param str the string to parse
 	 * @return the double value
 	 * @throws Exception, in case it fails
 	 */
 	private static double parseNMEADouble(String str) throws Exception {
-		NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
-		Number number = nf.parse(str);
-		double d = number.doubleValue();
-//  System.out.println("Number is " + Double.toString(d));
-		return d;
+		return NMEAFieldTokenizer.parseNMEADouble(str, 0, str.length());
 	}
 
 	private static float parseNMEAFloat(String str) throws Exception {
-		NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
-		Number number = nf.parse(str);
-		float f = number.floatValue();
-		//  System.out.println("Number is " + Double.toString(d));
-		return f;
+		return (float) parseNMEADouble(str);
 	}
 
 	/*
@@ -0,0 +1,106 @@
+package nmea.utils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * The deviation curve, pre-computed every 0.1&deg; of compass heading.
+ * <br>
+ * Built once from the curve (see {@link NMEAUtils#loadDeviationCurve(String)}), a lookup is then an index computation,
+ * and a linear interpolation between two cells, whatever the number of points of the curve.
+ * <br>
+ * The curve wraps around: between its last point and 360&deg;, and between 0&deg; and its first point,
+ * the deviation is interpolated between the last point and the first one (+ 360&deg;).
+ * <br>
+ * Immutable. A new curve means a new table (see {@link context.NMEADataCache#getDeviationTable()}).
+ */
+public final class DeviationTable {
+
+	private final static int CELLS_PER_DEGREE = 10;
+	private final static int NB_CELLS = 360 * CELLS_PER_DEGREE;
+
+	public final static DeviationTable ZERO = new DeviationTable(new double[NB_CELLS + 1], 0);
+
+	// NB_CELLS + 1 cells, the last one is the first one, for the interpolation between 359.9 and 360.
+	private final double[] cells;
+	private final int nbPoints;
+
+	private DeviationTable(double[] cells, int nbPoints) {
+		this.cells = cells;
+		this.nbPoints = nbPoints;
+	}
+
+	/**
+	 * @param curve the points of the curve, [compass heading, deviation], in degrees. Any order.
+	 * @return the table. {@link #ZERO} if the curve is null or empty.
+	 */
+	public static DeviationTable from(List<double[]> curve) {
+		if (curve == null || curve.isEmpty()) {
+			return ZERO;
+		}
+		TreeMap<Double, Double> points = new TreeMap<>();
+		curve.forEach(point -> points.put(normalize(point[0]), point[1]));
+
+		int nb = points.size();
+		double[] headings = new double[nb + 2];
+		double[] deviations = new double[nb + 2];
+		int idx = 1;
+		for (double heading : points.keySet()) {
+			headings[idx] = heading;
+			deviations[idx] = points.get(heading);
+			idx++;
+		}
+		// Wrap-around, the last point before the first one, the first one after the last one.
+		headings[0] = headings[nb] - 360d;
+		deviations[0] = deviations[nb];
+		headings[nb + 1] = headings[1] + 360d;
+		deviations[nb + 1] = deviations[1];
+
+		double[] cells = new double[NB_CELLS + 1];
+		int segment = 0;
+		for (int i = 0; i < NB_CELLS; i++) {
+			double heading = (double) i / CELLS_PER_DEGREE;
+			while (headings[segment + 1] < heading) {
+				segment++;
+			}
+			double width = headings[segment + 1] - headings[segment];
+			cells[i] = (width == 0d) ?
+							deviations[segment + 1] :
+							deviations[segment] + ((deviations[segment + 1] - deviations[segment]) * ((heading - headings[segment]) / width));
+		}
+		cells[NB_CELLS] = cells[0];
+		return new DeviationTable(cells, nb);
+	}
+
+	private static double normalize(double heading) {
+		double h = heading % 360d;
+		return (h < 0d) ? h + 360d : h;
+	}
+
+	/**
+	 * @param cc compass heading, in degrees, any value
+	 * @return the deviation, in degrees. 0 for NaN.
+	 */
+	public double getDeviation(double cc) {
+		if (Double.isNaN(cc) || Double.isInfinite(cc)) {
+			return 0d;
+		}
+		double position = normalize(cc) * CELLS_PER_DEGREE;
+		int idx = Math.min((int) position, NB_CELLS - 1);
+		return cells[idx] + ((cells[idx + 1] - cells[idx]) * (position - idx));
+	}
+
+	/**
+	 * @return the number of points of the curve the table was built from
+	 */
+	public int getNbPoints() {
+		return nbPoints;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("DeviationTable: %d point(s), min %.02f, max %.02f", nbPoints,
+						Arrays.stream(cells).min().getAsDouble(), Arrays.stream(cells).max().getAsDouble());
+	}
+}
@@ -0,0 +1,345 @@
+package nmea.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+import context.NMEADataCache;
+import nmea.ais.AISTargetTable;
+import nmea.parser.Angle180;
+import nmea.parser.Angle180EW;
+import nmea.parser.Angle180LR;
+import nmea.parser.Angle360;
+import nmea.parser.Current;
+import nmea.parser.Depth;
+import nmea.parser.Distance;
+import nmea.parser.GeoPos;
+import nmea.parser.Pressure;
+import nmea.parser.SVData;
+import nmea.parser.Speed;
+import nmea.parser.Temperature;
+import nmea.parser.TrueWindDirection;
+import nmea.parser.TrueWindSpeed;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streaming JSON encoder for the REST responses, and the content of the {@link NMEADataCache}.
+ * <br>
+ * Produces the same JSON as <code>new Gson().toJsonTree(value).toString()</code>, without building the tree:
+ * the NMEA value types ({@link Angle360}, {@link Speed}, {@link GeoPos}, {@link SVData}, {@link NMEADataCache.CurrentDefinition}, ...)
+ * are written field by field, the maps, collections and primitives are written as they are walked,
+ * anything else goes through Gson, on the same stream.
+ * <br>
+ * The JSON is encoded (UTF-8) directly into a buffer reused by each thread. Only the final <code>byte[]</code> is allocated.
+ */
+public final class NMEAJsonWriter {
+
+	private final static Gson GSON = new GsonBuilder().disableHtmlEscaping().create(); // For what is not known here. Like JsonElement.toString(), no HTML escaping.
+
+	private final static int INITIAL_BUFFER_SIZE = 8 * 1_024;
+	private final static int MAX_KEPT_BUFFER_SIZE = 1_024 * 1_024;
+
+	@FunctionalInterface
+	private interface ValueWriter {
+		void write(JsonWriter out, Object value) throws IOException;
+	}
+
+	/*
+	 * The exact class is used, a subclass could have more fields.
+	 * The member names are the ones of the fields, as Gson would write them.
+	 */
+	private final static Map<Class<?>, ValueWriter> WRITERS = new HashMap<>();
+
+	static {
+		WRITERS.put(Angle360.class, (out, value) -> writeDoubleMember(out, "angle", ((Angle360) value).getValue()));
+		WRITERS.put(TrueWindDirection.class, (out, value) -> writeDoubleMember(out, "angle", ((TrueWindDirection) value).getValue()));
+		WRITERS.put(Angle180.class, (out, value) -> writeDoubleMember(out, "angle", ((Angle180) value).getValue()));
+		WRITERS.put(Angle180EW.class, (out, value) -> writeDoubleMember(out, "angle", ((Angle180EW) value).getValue()));
+		WRITERS.put(Angle180LR.class, (out, value) -> writeDoubleMember(out, "angle", ((Angle180LR) value).getValue()));
+		WRITERS.put(Speed.class, (out, value) -> writeDoubleMember(out, "speed", ((Speed) value).getValue()));
+		WRITERS.put(TrueWindSpeed.class, (out, value) -> writeDoubleMember(out, "speed", ((TrueWindSpeed) value).getValue()));
+		WRITERS.put(Distance.class, (out, value) -> writeDoubleMember(out, "distance", ((Distance) value).getValue()));
+		WRITERS.put(Depth.class, (out, value) -> writeDoubleMember(out, "depthInMeters", ((Depth) value).getValue()));
+		WRITERS.put(Temperature.class, (out, value) -> writeDoubleMember(out, "temperature", ((Temperature) value).getValue()));
+		WRITERS.put(Pressure.class, (out, value) -> writeDoubleMember(out, "pressure", ((Pressure) value).getValue()));
+		WRITERS.put(GeoPos.class, (out, value) -> {
+			GeoPos pos = (GeoPos) value;
+			out.beginObject();
+			out.name("lat");
+			writeDouble(out, pos.lat);
+			out.name("lng");
+			writeDouble(out, pos.lng);
+			out.endObject();
+		});
+		WRITERS.put(Current.class, (out, value) -> {
+			Current current = (Current) value;
+			out.beginObject();
+			out.name("speed");
+			writeDouble(out, current.speed);
+			out.name("angle").value(current.angle);
+			out.endObject();
+		});
+		WRITERS.put(SVData.class, (out, value) -> {
+			SVData sv = (SVData) value;
+			out.beginObject();
+			out.name("svID").value(sv.getSvID());
+			out.name("elevation").value(sv.getElevation());
+			out.name("azimuth").value(sv.getAzimuth());
+			out.name("snr").value(sv.getSnr());
+			out.endObject();
+		});
+		WRITERS.put(NMEADataCache.CurrentDefinition.class, (out, value) -> {
+			NMEADataCache.CurrentDefinition current = (NMEADataCache.CurrentDefinition) value;
+			out.beginObject();
+			out.name("bufferLength").value(current.getBufferLength());
+			out.name("speed");
+			write(out, current.getSpeed());
+			out.name("direction");
+			write(out, current.getDirection());
+			out.name("nbPoints").value(current.getNbPoints());
+			out.name("oldest").value(current.getOldest());
+			out.name("latest").value(current.getLatest());
+			out.name("len").value(current.getLen());
+			out.endObject();
+		});
+		WRITERS.put(AISTargetTable.Proximity.class, (out, value) -> write(out, ((AISTargetTable.Proximity) value).toMap()));
+	}
+
+	private final static ThreadLocal<Utf8Buffer> BUFFER = ThreadLocal.withInitial(() -> new Utf8Buffer(INITIAL_BUFFER_SIZE));
+
+	private NMEAJsonWriter() {
+	}
+
+	/**
+	 * @param value what to serialize
+	 * @return its JSON representation, UTF-8 encoded
+	 * @throws IOException when Gson would fail, on a NaN for example
+	 */
+	public static byte[] toJson(Object value) throws IOException {
+		return toJson(value, Collections.emptySet());
+	}
+
+	/**
+	 * @param value    what to serialize
+	 * @param excluded if value is a map, the keys not to write (like {@link NMEADataCache#DEVIATION_DATA})
+	 * @return its JSON representation, UTF-8 encoded
+	 * @throws IOException when Gson would fail, on a NaN for example
+	 */
+	public static byte[] toJson(Object value, Set<String> excluded) throws IOException {
+		Utf8Buffer buffer = BUFFER.get();
+		buffer.reset();
+		try {
+			JsonWriter out = newJsonWriter(buffer);
+			if (value instanceof Map && !excluded.isEmpty()) {
+				writeMap(out, (Map<?, ?>) value, excluded);
+			} else {
+				write(out, value);
+			}
+			out.flush();
+			buffer.close();
+			return buffer.toByteArray();
+		} finally {
+			buffer.shrink();
+		}
+	}
+
+	/**
+	 * @param out   where to write
+	 * @param value what to write
+	 */
+	public static void write(JsonWriter out, Object value) throws IOException {
+		if (value == null) {
+			out.nullValue();
+		} else if (value instanceof String) {
+			out.value((String) value);
+		} else if (value instanceof Double || value instanceof Float) {
+			writeDouble(out, (Number) value);
+		} else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+			out.value((Number) value);
+		} else if (value instanceof Boolean) {
+			out.value((Boolean) value);
+		} else if (value instanceof Map) {
+			writeMap(out, (Map<?, ?>) value, Collections.emptySet());
+		} else if (value instanceof Collection) {
+			out.beginArray();
+			for (Object element : (Collection<?>) value) {
+				write(out, element);
+			}
+			out.endArray();
+		} else if (value instanceof Object[]) {
+			out.beginArray();
+			for (Object element : (Object[]) value) {
+				write(out, element);
+			}
+			out.endArray();
+		} else {
+			ValueWriter writer = WRITERS.get(value.getClass());
+			if (writer != null) {
+				writer.write(out, value);
+			} else {
+				GSON.toJson(value, value.getClass(), out);
+			}
+		}
+	}
+
+	/**
+	 * A new writer, set like the one used by <code>JsonElement.toString()</code>: lenient, no HTML escaping.
+	 * Null values are not written, like Gson does by default.
+	 */
+	public static JsonWriter newJsonWriter(Writer writer) {
+		JsonWriter out = new JsonWriter(writer);
+		out.setLenient(true);
+		out.setHtmlSafe(false);
+		out.setSerializeNulls(false);
+		return out;
+	}
+
+	private static void writeMap(JsonWriter out, Map<?, ?> map, Set<String> excluded) throws IOException {
+		out.beginObject();
+		for (Map.Entry<?, ?> entry : map.entrySet()) {
+			String key = String.valueOf(entry.getKey());
+			if (excluded.contains(key)) {
+				continue;
+			}
+			out.name(key);
+			write(out, entry.getValue()); // A null value drops the name
+		}
+		out.endObject();
+	}
+
+	private static void writeDoubleMember(JsonWriter out, String name, double value) throws IOException {
+		out.beginObject();
+		out.name(name);
+		writeDouble(out, value);
+		out.endObject();
+	}
+
+	/**
+	 * Gson rejects the NaNs and infinities, so do we.
+	 */
+	private static void writeDouble(JsonWriter out, Number value) throws IOException {
+		double d = value.doubleValue();
+		if (Double.isNaN(d) || Double.isInfinite(d)) {
+			throw new IllegalArgumentException(value + " is not a valid double value as per JSON specification.");
+		}
+		out.value(value);
+	}
+
+	/**
+	 * A growable byte array, the chars are UTF-8 encoded as they are written.
+	 */
+	private static class Utf8Buffer extends Writer {
+		private byte[] bytes;
+		private int count = 0;
+		private char highSurrogate = 0;
+
+		Utf8Buffer(int size) {
+			this.bytes = new byte[size];
+		}
+
+		void reset() {
+			count = 0;
+			highSurrogate = 0;
+		}
+
+		/**
+		 * Do not keep a huge buffer for a thread because of one huge document.
+		 */
+		void shrink() {
+			if (bytes.length > MAX_KEPT_BUFFER_SIZE) {
+				bytes = new byte[INITIAL_BUFFER_SIZE];
+			}
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(bytes, count);
+		}
+
+		private void ensureCapacity(int more) {
+			if (count + more > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, count + more));
+			}
+		}
+
+		@Override
+		public void write(int c) {
+			char ch = (char) c;
+			if (highSurrogate != 0) {
+				char high = highSurrogate;
+				highSurrogate = 0;
+				if (Character.isLowSurrogate(ch)) {
+					int codePoint = Character.toCodePoint(high, ch);
+					ensureCapacity(4);
+					bytes[count++] = (byte) (0xF0 | (codePoint >> 18));
+					bytes[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+					bytes[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+					bytes[count++] = (byte) (0x80 | (codePoint & 0x3F));
+					return;
+				}
+				ensureCapacity(1);
+				bytes[count++] = '?'; // Lone surrogate, like String.getBytes
+			}
+			if (ch < 0x80) {
+				ensureCapacity(1);
+				bytes[count++] = (byte) ch;
+			} else if (ch < 0x800) {
+				ensureCapacity(2);
+				bytes[count++] = (byte) (0xC0 | (ch >> 6));
+				bytes[count++] = (byte) (0x80 | (ch & 0x3F));
+			} else if (Character.isHighSurrogate(ch)) {
+				highSurrogate = ch;
+			} else if (Character.isLowSurrogate(ch)) {
+				ensureCapacity(1);
+				bytes[count++] = '?';
+			} else {
+				ensureCapacity(3);
+				bytes[count++] = (byte) (0xE0 | (ch >> 12));
+				bytes[count++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+				bytes[count++] = (byte) (0x80 | (ch & 0x3F));
+			}
+		}
+
+		@Override
+		public void write(char[] chars, int off, int len) {
+			for (int i = off; i < off + len; i++) {
+				write(chars[i]);
+			}
+		}
+
+		@Override
+		public void write(String str, int off, int len) {
+			ensureCapacity(len);
+			for (int i = off; i < off + len; i++) {
+				char ch = str.charAt(i);
+				if (ch < 0x80 && highSurrogate == 0) { // Most of them
+					if (count == bytes.length) {
+						ensureCapacity(len - (i - off));
+					}
+					bytes[count++] = (byte) ch;
+				} else {
+					write(ch);
+				}
+			}
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+			if (highSurrogate != 0) { // Lone surrogate at the end
+				highSurrogate = 0;
+				ensureCapacity(1);
+				bytes[count++] = '?';
+			}
+		}
+	}
+}
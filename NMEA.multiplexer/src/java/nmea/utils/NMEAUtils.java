@@ -105,7 +105,7 @@ public class NMEAUtils {
 			if (dec == -Double.MAX_VALUE)
 				dec = ((Angle180EW) cache.get(NMEADataCache.DEFAULT_DECLINATION)).getValue();
 			//  System.out.println("Declination:" + dec);
-			double dev = getDeviation(heading, (List<double[]>)cache.get(NMEADataCache.DEVIATION_DATA));
+			double dev = cache.getDeviationTable().getDeviation(hdc);
 			cache.put(NMEADataCache.DEVIATION, new Angle180EW(dev));
 
 			heading = hdc + dev; // Magnetic
@@ -431,6 +431,13 @@ public class NMEAUtils {
 		return ret;
 	}
 
+	/**
+	 * Scans the curve, for each call. See {@link DeviationTable} for a lookup table, and {@link NMEADataCache#getDeviationTable()}.
+	 *
+	 * @param cc compass heading, in degrees
+	 * @param deviationAL the deviation curve, sorted
+	 * @return the deviation, in degrees
+	 */
 	public static double getDeviation(double cc, List<double[]> deviationAL) {
 		double deviation = 0d;
 		if (deviationAL != null) {
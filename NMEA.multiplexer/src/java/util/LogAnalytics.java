@@ -0,0 +1,242 @@
+package util;
+
+import nmea.archive.ArchiveReader;
+import nmea.archive.NMEAArchive;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Analyzes logs, in parallel. See {@link LogStats} for what is computed.
+ * <br>
+ * The logs are cut into chunks (<code>-Dlog.analytics.chunk.size</code>, in bytes, default 8 MB), on line boundaries.
+ * The chunks are analyzed in a {@link ForkJoinPool}, each one into its own {@link LogStats}, merged in the order of the logs,
+ * so the distance and the gaps between two chunks (or two logs) are counted too.
+ * <br>
+ * The archives (see {@link NMEAArchive}) are read with their index, the period to analyze can then be given.
+ * <br>
+ * Usage:
+ * <pre>
+ * LogStats stats = new LogAnalytics().analyze(Paths.get("2017.06.10.nmea"), Paths.get("2017.06.17.nmea"));
+ * </pre>
+ * See {@link LogAnalyzer} for the command line.
+ */
+public class LogAnalytics {
+
+	public final static int DEFAULT_CHUNK_SIZE = Integer.parseInt(System.getProperty("log.analytics.chunk.size", String.valueOf(8 * 1_024 * 1_024)));
+
+	private final static int PROBE_SIZE = 4_096;
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private long gapThreshold = LogStats.DEFAULT_GAP_THRESHOLD;
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	private long from = Long.MIN_VALUE;
+	private long to = Long.MAX_VALUE;
+
+	private final ThreadLocal<byte[]> buffers = new ThreadLocal<>();
+
+	/**
+	 * @param chunkSize in bytes. A chunk is analyzed by one thread.
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < PROBE_SIZE) {
+			throw new IllegalArgumentException(String.format("Chunk size %d is too small, min %d", chunkSize, PROBE_SIZE));
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @param gapThreshold in ms, see {@link LogStats#getNbGaps()}
+	 */
+	public void setGapThreshold(long gapThreshold) {
+		this.gapThreshold = gapThreshold;
+	}
+
+	/**
+	 * @param parallelism the number of threads. The common pool is used by default.
+	 */
+	public void setParallelism(int parallelism) {
+		this.pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * The period to analyze, for the archives. The text logs are analyzed entirely.
+	 *
+	 * @param from epoch, in ms, included
+	 * @param to   epoch, in ms, included
+	 */
+	public void setPeriod(long from, long to) {
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * @param logs log files, or directories (all their files, sorted by name). Analyzed as one log, in this order.
+	 */
+	public LogStats analyze(Path... logs) throws IOException {
+		return analyze(Arrays.asList(logs));
+	}
+
+	/**
+	 * @param logs log files, or directories (all their files, sorted by name). Analyzed as one log, in this order.
+	 */
+	public LogStats analyze(List<Path> logs) throws IOException {
+		List<Chunk> chunks = new ArrayList<>();
+		for (Path log : logs) {
+			if (Files.isDirectory(log)) {
+				try (Stream<Path> files = Files.list(log)) {
+					for (Path file : files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+						split(file, chunks);
+					}
+				}
+			} else {
+				split(log, chunks);
+			}
+		}
+		if (chunks.isEmpty()) {
+			return new LogStats(gapThreshold);
+		}
+		try {
+			return pool.invoke(new ChunkTask(chunks, 0, chunks.size()));
+		} catch (UncheckedIOException uioe) {
+			throw uioe.getCause();
+		}
+	}
+
+	/**
+	 * Cuts a log in chunks, ending with a new line (or the end of the file).
+	 */
+	private void split(Path file, List<Chunk> chunks) throws IOException {
+		if (NMEAArchive.isArchive(file.toString())) {
+			chunks.add(new Chunk(file, 0L, Files.size(file), true));
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			ByteBuffer probe = ByteBuffer.allocate(PROBE_SIZE);
+			long start = 0L;
+			while (start < size) {
+				long end = Math.min(size, start + chunkSize);
+				while (end < size) { // Up to the next new line
+					probe.clear();
+					int read = channel.read(probe, end);
+					if (read <= 0) {
+						end = size;
+						break;
+					}
+					int nl = -1;
+					for (int i = 0; i < read && nl < 0; i++) {
+						if (probe.get(i) == '\n') {
+							nl = i;
+						}
+					}
+					if (nl >= 0) {
+						end += nl + 1;
+						break;
+					}
+					end += read;
+				}
+				chunks.add(new Chunk(file, start, end, false));
+				start = end;
+			}
+		}
+	}
+
+	private LogStats analyze(Chunk chunk) throws IOException {
+		LogStats stats = new LogStats(gapThreshold);
+		if (chunk.archive) {
+			try (ArchiveReader archive = new ArchiveReader(chunk.file.toString())) {
+				archive.forEach(from, to, null, (time, data, offset, length, filePosition) -> {
+					stats.accept(data, offset, length);
+					return true;
+				});
+			}
+			return stats;
+		}
+		int length = (int) (chunk.end - chunk.start);
+		byte[] data = buffers.get();
+		if (data == null || data.length < length) {
+			data = new byte[Math.max(length, chunkSize)];
+			buffers.set(data);
+		}
+		try (FileChannel channel = FileChannel.open(chunk.file, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, chunk.start + buffer.position()) < 0) {
+					break;
+				}
+			}
+			length = buffer.position();
+		}
+		int lineStart = 0;
+		for (int i = 0; i < length; i++) {
+			if (data[i] == '\n') {
+				stats.accept(data, lineStart, i - lineStart);
+				lineStart = i + 1;
+			}
+		}
+		if (lineStart < length) {
+			stats.accept(data, lineStart, length - lineStart);
+		}
+		return stats;
+	}
+
+	private static class Chunk {
+		final Path file;
+		final long start;
+		final long end;
+		final boolean archive;
+
+		Chunk(Path file, long start, long end, boolean archive) {
+			this.file = file;
+			this.start = start;
+			this.end = end;
+			this.archive = archive;
+		}
+	}
+
+	/**
+	 * Analyzes the chunks [lo, hi[, splitting them in two as long as there is more than one.
+	 */
+	private class ChunkTask extends RecursiveTask<LogStats> {
+		private static final long serialVersionUID = 1L;
+
+		private final List<Chunk> chunks;
+		private final int lo;
+		private final int hi;
+
+		ChunkTask(List<Chunk> chunks, int lo, int hi) {
+			this.chunks = chunks;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected LogStats compute() {
+			if (hi - lo == 1) {
+				try {
+					return analyze(chunks.get(lo));
+				} catch (IOException ioe) {
+					throw new UncheckedIOException(ioe);
+				}
+			}
+			int mid = (lo + hi) >>> 1;
+			ChunkTask left = new ChunkTask(chunks, lo, mid);
+			left.fork();
+			LogStats right = new ChunkTask(chunks, mid, hi).compute();
+			return left.join().merge(right);
+		}
+	}
+}
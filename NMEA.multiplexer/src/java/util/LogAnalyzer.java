@@ -1,35 +1,38 @@
 package util;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import nmea.archive.NMEAArchive;
 import nmea.parser.GeoPos;
-import nmea.parser.RMC;
-import nmea.parser.StringParsers;
 
 /**
- * Analyze a log file
- * Time, distance
+ * Analyze log files
+ * Time, distance, speeds, sentences, gaps.
+ * <br>
+ * The command line of {@link LogAnalytics}.
+ * The parameters are log files (text, or NMEA archives, see {@link NMEAArchive}), or directories, analyzed as one log, in this order.
+ * For the archives, they can be followed by the beginning and the end of the period to analyze (ISO-8601, like 2017-06-10T11:50:00Z).
+ * <br>
+ * System properties:
+ * <ul>
+ *   <li><code>-Dlog.analytics.threads</code>, default the number of processors</li>
+ *   <li><code>-Dlog.analytics.chunk.size</code>, in bytes, default 8 MB</li>
+ *   <li><code>-Dlog.analytics.gap</code>, in ms, default 10000. Two RMCs further apart than this are a gap in the log</li>
+ * </ul>
  */
 public class LogAnalyzer {
 
 	private static SimpleDateFormat SDF = new SimpleDateFormat("dd-MMM-yyyy HH:mm:ss z");
 
-	private final static double kmEquatorialEarthRadius = 6378.1370D;
-
-	private static double haversineKm(double lat1, double long1, double lat2, double long2) {
-		double dlong = Math.toRadians(long2 - long1);
-		double dlat = Math.toRadians(lat2 - lat1);
-		double a = Math.pow(Math.sin(dlat / 2.0), 2) + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.pow(Math.sin(dlong / 2.0), 2);
-		double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
-		double d = /* 6367 */ kmEquatorialEarthRadius * c;
-
-		return d;
-	}
-
 	private final static long SEC  = 1000L;
 	private final static long MIN  = 60 * SEC;
 	private final static long HOUR = 60 * MIN;
@@ -57,81 +60,68 @@ public class LogAnalyzer {
 
 	public static void main(String... args) {
 		if (args.length == 0) {
-			throw new IllegalArgumentException("Provide the name of the file to analyze as first parameter");
+			throw new IllegalArgumentException("Provide the name of the file(s) to analyze as parameters");
+		}
+		List<Path> logs = new ArrayList<>();
+		List<Long> period = new ArrayList<>();
+		for (String arg : args) {
+			try {
+				period.add(Instant.parse(arg).toEpochMilli());
+			} catch (DateTimeParseException notATime) {
+				logs.add(Paths.get(arg));
+			}
+		}
+		LogAnalytics analytics = new LogAnalytics();
+		if (System.getProperty("log.analytics.threads") != null) {
+			analytics.setParallelism(Integer.parseInt(System.getProperty("log.analytics.threads")));
 		}
+		analytics.setGapThreshold(Long.parseLong(System.getProperty("log.analytics.gap", String.valueOf(LogStats.DEFAULT_GAP_THRESHOLD))));
+		analytics.setPeriod(period.size() > 0 ? period.get(0) : Long.MIN_VALUE, period.size() > 1 ? period.get(1) : Long.MAX_VALUE);
 		try {
-			BufferedReader br = new BufferedReader(new FileReader(args[0]));
-			// Accumulators and others
-			GeoPos previousPos = null;
-			double distanceInKm = 0d;
-			double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
-			double minLng = Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
-			double maxSpeed = -Double.MAX_VALUE;
-			long nbRec = 0L, totalNbRec = 0L;
-			Date start = null;
-			Date arrival = null;
-			String line = "";
-			boolean keepReading = true;
-			while (keepReading) {
-				line = br.readLine();
-				if (line == null) {
-					keepReading = false;
-				} else {
-					if (StringParsers.validCheckSum(line)) {
-						totalNbRec++;
-						String id = StringParsers.getSentenceID(line);
-						if (id.equals("RMC")) {
-							nbRec++;
-							RMC rmc = StringParsers.parseRMC(line);
-							// Get date, speed, position (for distance)
-							Date rmcDate = rmc.getRmcDate();
-							Date rmcTime = rmc.getRmcTime();
+			long before = System.currentTimeMillis();
+			LogStats stats = analytics.analyze(logs);
+			long elapsed = System.currentTimeMillis() - before;
 
-							if (start == null) {
-								start = rmcTime;
-							} else {
-								arrival = rmcTime;
-							}
-							GeoPos gp = rmc.getGp();
-							if (gp != null) {
-								minLat = Math.min(minLat, gp.lat);
-								maxLat = Math.max(maxLat, gp.lat);
-								minLng = Math.min(minLng, gp.lng);
-								maxLng = Math.max(maxLng, gp.lng);
-								if (previousPos != null) {
-									double distance = haversineKm(previousPos.lat, previousPos.lng, gp.lat, gp.lng);
-//									System.out.println(String.format("Step: %.03f km between %s and %s (%s)",
-//													distance,
-//													previousPos.toString(),
-//													gp.toString(),
-//													SDF.format(rmcTime)));
-									distanceInKm += distance;
-								}
-								previousPos = gp;
-							}
-							maxSpeed = Math.max(maxSpeed, rmc.getSog());
-						}
-						// More Sentence IDs ?..
-					} else {
-						System.out.println(String.format("Invalid data [%s]", line));
-					}
-				}
+			NumberFormat nf = NumberFormat.getInstance();
+			System.out.println(String.format("%s line(s) analyzed in %s ms. %s invalid (%.03f%%)",
+							nf.format(stats.getNbLines()),
+							nf.format(elapsed),
+							nf.format(stats.getNbInvalid()),
+							stats.getChecksumErrorRate() * 100));
+			for (Map.Entry<String, Long> count : stats.getSentenceCounts().entrySet()) {
+				System.out.println(String.format("  %s: %s", count.getKey(), nf.format(count.getValue())));
+			}
+			if (stats.getStart() == -1L || stats.getArrival() == stats.getStart()) {
+				System.out.println("Not enough RMC data");
+				return;
 			}
-			br.close();
-
 			// Display summary
-			System.out.println(String.format("Started %s", SDF.format(start)));
-			System.out.println(String.format("Arrived %s", SDF.format(arrival)));
+			long duration = stats.getArrival() - stats.getStart();
+			System.out.println(String.format("Started %s", SDF.format(new Date(stats.getStart()))));
+			System.out.println(String.format("Arrived %s", SDF.format(new Date(stats.getArrival()))));
 			System.out.println(String.format("%s record(s) out of %s. Total distance: %.03f km, in %s. Avg speed:%.03f km/h",
-							NumberFormat.getInstance().format(nbRec),
-							NumberFormat.getInstance().format(totalNbRec),
-							distanceInKm,
-							msToHMS(arrival.getTime() - start.getTime()),
-							distanceInKm / ((arrival.getTime() - start.getTime()) / ((double)HOUR))));
-			System.out.println(String.format("Max Speed: %.03f km/h", maxSpeed * 1.852));
-			System.out.println(String.format("Top-Left    :%s", new GeoPos(maxLat, minLng).toString()));
-			System.out.println(String.format("Bottom-Right:%s", new GeoPos(minLat, maxLng).toString()));
-
+							nf.format(stats.getNbRMC()),
+							nf.format(stats.getNbSentences()),
+							stats.getDistanceInKm(),
+							msToHMS(duration),
+							stats.getDistanceInKm() / (duration / ((double)HOUR))));
+			System.out.println(String.format("Max Speed: %.03f km/h", stats.getMaxSpeed() * 1.852));
+			if (stats.hasPosition()) {
+				System.out.println(String.format("Top-Left    :%s", new GeoPos(stats.getMaxLat(), stats.getMinLng()).toString()));
+				System.out.println(String.format("Bottom-Right:%s", new GeoPos(stats.getMinLat(), stats.getMaxLng()).toString()));
+			}
+			System.out.println(String.format("%s gap(s) of more than %s ms, %s in total, the longest: %s",
+							nf.format(stats.getNbGaps()),
+							nf.format(stats.getGapThreshold()),
+							msToHMS(stats.getTotalGapTime()),
+							msToHMS(stats.getLongestGap())));
+			System.out.println("Speeds (knots):");
+			long[] histogram = stats.getSpeedHistogram();
+			for (int i = 0; i < histogram.length; i++) {
+				if (histogram[i] > 0) {
+					System.out.println(String.format("  %s%2d: %s", i == LogStats.SPEED_BUCKETS ? ">=" : "  ", i, nf.format(histogram[i])));
+				}
+			}
 		} catch (IOException ioe) {
 			ioe.printStackTrace();
 		}
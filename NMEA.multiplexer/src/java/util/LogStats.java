@@ -0,0 +1,514 @@
+package util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What {@link LogAnalytics} computes from a log: number of lines, of sentences per ID, checksum errors,
+ * and from the RMC sentences, the time range, distance, bounding box, speeds and time gaps.
+ * <br>
+ * One is fed with the lines of one part of a log, see {@link #accept(byte[], int, int)}, and the ones of two consecutive parts are merged
+ * with {@link #merge(LogStats)}, as if all the lines had been fed to one of them.
+ * <br>
+ * The RMC sentences are read from the bytes, only the fields used here are parsed. Not thread-safe, one per part.
+ */
+public class LogStats {
+
+	public final static long DEFAULT_GAP_THRESHOLD = 10_000L; // ms
+	public final static int SPEED_BUCKETS = 50; // 1 knot each, the last one for 50 knots and more
+
+	private final static double kmEquatorialEarthRadius = 6378.1370D;
+	private final static long DAY = 86_400_000L;
+	private final static long UNKNOWN = Long.MIN_VALUE;
+
+	private final long gapThreshold;
+
+	private long nbLines = 0L;
+	private long nbInvalid = 0L;  // No checksum, bad checksum, not NMEA
+	private final IdCounts idCounts = new IdCounts();
+
+	private long nbRMC = 0L;
+	private long firstTime = UNKNOWN;
+	private long lastTime = UNKNOWN;
+	private double firstLat = Double.NaN, firstLng = Double.NaN;
+	private double lastLat = Double.NaN, lastLng = Double.NaN;
+	private double distanceInKm = 0d;
+	private double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+	private double minLng = Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
+	private double maxSpeed = -Double.MAX_VALUE;
+	private final long[] speedHistogram = new long[SPEED_BUCKETS + 1];
+	private long nbGaps = 0L;
+	private long longestGap = 0L;
+	private long totalGapTime = 0L;
+
+	private final int[] commas = new int[16];
+
+	public LogStats() {
+		this(DEFAULT_GAP_THRESHOLD);
+	}
+
+	/**
+	 * @param gapThreshold in ms. Two consecutive RMCs further apart than this are a gap in the log.
+	 */
+	public LogStats(long gapThreshold) {
+		this.gapThreshold = gapThreshold;
+	}
+
+	public static double haversineKm(double lat1, double long1, double lat2, double long2) {
+		double dlong = Math.toRadians(long2 - long1);
+		double dlat = Math.toRadians(lat2 - lat1);
+		double a = Math.pow(Math.sin(dlat / 2.0), 2) + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.pow(Math.sin(dlong / 2.0), 2);
+		double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
+		double d = /* 6367 */ kmEquatorialEarthRadius * c;
+
+		return d;
+	}
+
+	/**
+	 * @param data   contains the line
+	 * @param offset where it begins
+	 * @param length its length, end of line excluded or not. A capture timestamp at the beginning (like <code>1497134005123;$GPRMC,...</code>) is skipped.
+	 */
+	public void accept(byte[] data, int offset, int length) {
+		int start = offset;
+		int end = offset + length;
+		while (end > start && data[end - 1] <= ' ') {
+			end--;
+		}
+		while (start < end && data[start] <= ' ') {
+			start++;
+		}
+		if (start == end) {
+			return;
+		}
+		nbLines++;
+		start = skipCapturePrefix(data, start, end);
+		int star = checksumStart(data, start, end);
+		if (star < 0) {
+			nbInvalid++;
+			return;
+		}
+		if (star - start < 6) {
+			nbInvalid++;
+			return;
+		}
+		idCounts.increment(((data[start + 3] & 0xFF) << 16) | ((data[start + 4] & 0xFF) << 8) | (data[start + 5] & 0xFF));
+		if (data[start + 3] == 'R' && data[start + 4] == 'M' && data[start + 5] == 'C') {
+			rmc(data, start, star);
+		}
+	}
+
+	/**
+	 * Appends what comes right after this part of the log.
+	 *
+	 * @param next the stats of the next part
+	 * @return this
+	 */
+	public LogStats merge(LogStats next) {
+		nbLines += next.nbLines;
+		nbInvalid += next.nbInvalid;
+		idCounts.add(next.idCounts);
+		nbRMC += next.nbRMC;
+		if (next.firstTime != UNKNOWN) {
+			if (lastTime != UNKNOWN) {
+				gap(next.firstTime - lastTime);
+			} else {
+				firstTime = next.firstTime;
+			}
+			lastTime = next.lastTime;
+		}
+		if (!Double.isNaN(next.firstLat)) {
+			if (!Double.isNaN(lastLat)) {
+				distanceInKm += haversineKm(lastLat, lastLng, next.firstLat, next.firstLng);
+			} else {
+				firstLat = next.firstLat;
+				firstLng = next.firstLng;
+			}
+			lastLat = next.lastLat;
+			lastLng = next.lastLng;
+		}
+		distanceInKm += next.distanceInKm;
+		minLat = Math.min(minLat, next.minLat);
+		maxLat = Math.max(maxLat, next.maxLat);
+		minLng = Math.min(minLng, next.minLng);
+		maxLng = Math.max(maxLng, next.maxLng);
+		maxSpeed = Math.max(maxSpeed, next.maxSpeed);
+		for (int i = 0; i < speedHistogram.length; i++) {
+			speedHistogram[i] += next.speedHistogram[i];
+		}
+		nbGaps += next.nbGaps;
+		longestGap = Math.max(longestGap, next.longestGap);
+		totalGapTime += next.totalGapTime;
+		return this;
+	}
+
+	public long getNbLines() {
+		return nbLines;
+	}
+
+	/**
+	 * @return the number of lines that are not a valid NMEA sentence (no checksum, or a wrong one).
+	 */
+	public long getNbInvalid() {
+		return nbInvalid;
+	}
+
+	public long getNbSentences() {
+		return nbLines - nbInvalid;
+	}
+
+	public double getChecksumErrorRate() {
+		return nbLines == 0 ? 0d : (double) nbInvalid / nbLines;
+	}
+
+	/**
+	 * @return the number of valid sentences per sentence ID (RMC, GLL, ...), sorted by ID.
+	 */
+	public Map<String, Long> getSentenceCounts() {
+		return idCounts.toMap();
+	}
+
+	public long getNbRMC() {
+		return nbRMC;
+	}
+
+	/**
+	 * @return the time of the first RMC, epoch, in ms. -1 if none.
+	 */
+	public long getStart() {
+		return firstTime == UNKNOWN ? -1L : firstTime;
+	}
+
+	/**
+	 * @return the time of the last RMC, epoch, in ms. -1 if none.
+	 */
+	public long getArrival() {
+		return lastTime == UNKNOWN ? -1L : lastTime;
+	}
+
+	public double getDistanceInKm() {
+		return distanceInKm;
+	}
+
+	public boolean hasPosition() {
+		return !Double.isNaN(firstLat);
+	}
+
+	public double getMinLat() {
+		return minLat;
+	}
+
+	public double getMaxLat() {
+		return maxLat;
+	}
+
+	public double getMinLng() {
+		return minLng;
+	}
+
+	public double getMaxLng() {
+		return maxLng;
+	}
+
+	/**
+	 * @return in knots
+	 */
+	public double getMaxSpeed() {
+		return maxSpeed;
+	}
+
+	/**
+	 * @return the number of RMCs per speed: index 0 for [0, 1[ knot, index 1 for [1, 2[, etc. The last one for {@link #SPEED_BUCKETS} knots and more.
+	 */
+	public long[] getSpeedHistogram() {
+		return Arrays.copyOf(speedHistogram, speedHistogram.length);
+	}
+
+	public long getGapThreshold() {
+		return gapThreshold;
+	}
+
+	/**
+	 * @return the number of times two consecutive RMCs were more than the gap threshold apart.
+	 */
+	public long getNbGaps() {
+		return nbGaps;
+	}
+
+	/**
+	 * @return in ms
+	 */
+	public long getLongestGap() {
+		return longestGap;
+	}
+
+	/**
+	 * @return in ms, the sum of all the gaps
+	 */
+	public long getTotalGapTime() {
+		return totalGapTime;
+	}
+
+	private void rmc(byte[] data, int start, int end) {
+		nbRMC++;
+		int nbCommas = 0;
+		for (int i = start; i < end && nbCommas < commas.length; i++) {
+			if (data[i] == ',') {
+				commas[nbCommas++] = i;
+			}
+		}
+		if (nbCommas < 9 || fieldEquals(data, 2, nbCommas, end, 'V')) { // Void
+			return;
+		}
+		long time = UNKNOWN;
+		if (fieldLength(1, nbCommas, end) >= 6 && fieldLength(9, nbCommas, end) == 6) {
+			int t = commas[0] + 1;
+			int d = commas[8] + 1;
+			double seconds = parseDecimal(data, t + 4, fieldEnd(1, nbCommas, end));
+			int day = digits(data, d, 2);
+			int month = digits(data, d + 2, 2);
+			int year = digits(data, d + 4, 2);
+			int hours = digits(data, t, 2);
+			int minutes = digits(data, t + 2, 2);
+			if (!Double.isNaN(seconds) && day > 0 && month > 0 && year >= 0 && hours >= 0 && minutes >= 0) {
+				year += (year > 50 ? 1_900 : 2_000);
+				time = (daysFromCivil(year, month, day) * DAY) + (((hours * 60L) + minutes) * 60_000L) + Math.round(seconds * 1_000);
+			}
+		}
+		if (time != UNKNOWN) {
+			if (firstTime == UNKNOWN) {
+				firstTime = time;
+			} else {
+				gap(time - lastTime);
+			}
+			lastTime = time;
+		}
+		if (fieldLength(3, nbCommas, end) > 0 && fieldLength(5, nbCommas, end) > 0) {
+			double lat = sexToDec(data, commas[2] + 1, fieldEnd(3, nbCommas, end), 2);
+			double lng = sexToDec(data, commas[4] + 1, fieldEnd(5, nbCommas, end), 3);
+			if (!Double.isNaN(lat) && !Double.isNaN(lng)) {
+				if (fieldEquals(data, 4, nbCommas, end, 'S')) {
+					lat = -lat;
+				}
+				if (fieldEquals(data, 6, nbCommas, end, 'W')) {
+					lng = -lng;
+				}
+				minLat = Math.min(minLat, lat);
+				maxLat = Math.max(maxLat, lat);
+				minLng = Math.min(minLng, lng);
+				maxLng = Math.max(maxLng, lng);
+				if (!Double.isNaN(lastLat)) {
+					distanceInKm += haversineKm(lastLat, lastLng, lat, lng);
+				} else {
+					firstLat = lat;
+					firstLng = lng;
+				}
+				lastLat = lat;
+				lastLng = lng;
+			}
+		}
+		if (fieldLength(7, nbCommas, end) > 0) {
+			double speed = parseDecimal(data, commas[6] + 1, fieldEnd(7, nbCommas, end));
+			if (!Double.isNaN(speed) && speed >= 0) {
+				maxSpeed = Math.max(maxSpeed, speed);
+				speedHistogram[(int) Math.min(speed, SPEED_BUCKETS)]++;
+			}
+		}
+	}
+
+	private void gap(long delta) {
+		if (delta > gapThreshold) { // Back in time is not a gap
+			nbGaps++;
+			longestGap = Math.max(longestGap, delta);
+			totalGapTime += delta;
+		}
+	}
+
+	/*
+	 * Field n (1-based, after the sentence ID) is between commas[n - 1] and commas[n] (or the checksum).
+	 */
+	private int fieldEnd(int n, int nbCommas, int end) {
+		return n < nbCommas ? commas[n] : end;
+	}
+
+	private int fieldLength(int n, int nbCommas, int end) {
+		return n <= nbCommas ? fieldEnd(n, nbCommas, end) - (commas[n - 1] + 1) : 0;
+	}
+
+	private boolean fieldEquals(byte[] data, int n, int nbCommas, int end, char c) {
+		return fieldLength(n, nbCommas, end) == 1 && data[commas[n - 1] + 1] == c;
+	}
+
+	/**
+	 * @return where the sentence begins, after a capture timestamp (10 to 14 digits, and a separator), if any.
+	 */
+	private static int skipCapturePrefix(byte[] data, int start, int end) {
+		int i = start;
+		while (i < end && i - start < 15 && data[i] >= '0' && data[i] <= '9') {
+			i++;
+		}
+		int nbDigits = i - start;
+		if (nbDigits >= 10 && nbDigits <= 14 && i + 1 < end &&
+						(data[i] == ' ' || data[i] == '\t' || data[i] == ',' || data[i] == ';' || data[i] == '|') &&
+						(data[i + 1] == '$' || data[i + 1] == '!')) {
+			return i + 1;
+		}
+		return start;
+	}
+
+	/**
+	 * @return the position of the '*' if the sentence and its checksum are valid, -1 otherwise.
+	 */
+	private static int checksumStart(byte[] data, int start, int end) {
+		if (data[start] != '$' && data[start] != '!') {
+			return -1;
+		}
+		int checksum = 0;
+		int i = start + 1;
+		while (i < end && data[i] != '*') {
+			checksum ^= data[i];
+			i++;
+		}
+		int star = i;
+		int digits = end - (star + 1);
+		if (star == end || digits < 1 || digits > 2) {
+			return -1;
+		}
+		int expected = 0;
+		for (int j = star + 1; j < end; j++) {
+			int digit = Character.digit(data[j], 16);
+			if (digit < 0) {
+				return -1;
+			}
+			expected = (expected << 4) | digit;
+		}
+		return checksum == expected ? star : -1;
+	}
+
+	private static int digits(byte[] data, int from, int nb) {
+		int value = 0;
+		for (int i = from; i < from + nb; i++) {
+			if (data[i] < '0' || data[i] > '9') {
+				return -1;
+			}
+			value = (value * 10) + (data[i] - '0');
+		}
+		return value;
+	}
+
+	/**
+	 * @return the value of [-]digits[.digits], NaN if this is not one.
+	 */
+	private static double parseDecimal(byte[] data, int from, int to) {
+		boolean negative = from < to && data[from] == '-';
+		if (negative || (from < to && data[from] == '+')) {
+			from++;
+		}
+		if (from >= to) {
+			return Double.NaN;
+		}
+		long mantissa = 0L;
+		int decimals = -1;
+		for (int i = from; i < to; i++) {
+			byte b = data[i];
+			if (b == '.' && decimals < 0) {
+				decimals = 0;
+			} else if (b >= '0' && b <= '9' && mantissa < 100_000_000_000_000L) {
+				mantissa = (mantissa * 10) + (b - '0');
+				if (decimals >= 0) {
+					decimals++;
+				}
+			} else {
+				return Double.NaN;
+			}
+		}
+		double value = mantissa / Math.pow(10, Math.max(decimals, 0));
+		return negative ? -value : value;
+	}
+
+	/**
+	 * (d)ddmm.mmmm to decimal degrees
+	 */
+	private static double sexToDec(byte[] data, int from, int to, int degreeDigits) {
+		if (to - from <= degreeDigits) {
+			return Double.NaN;
+		}
+		int degrees = digits(data, from, degreeDigits);
+		double minutes = parseDecimal(data, from + degreeDigits, to);
+		return degrees < 0 ? Double.NaN : degrees + (minutes / 60d);
+	}
+
+	/**
+	 * @return the number of days since 1970-01-01, proleptic Gregorian calendar.
+	 */
+	private static long daysFromCivil(int year, int month, int day) {
+		year -= month <= 2 ? 1 : 0;
+		long era = (year >= 0 ? year : year - 399) / 400;
+		long yoe = year - (era * 400);
+		long doy = ((153 * (month + (month > 2 ? -3 : 9))) + 2) / 5 + day - 1;
+		long doe = (yoe * 365) + (yoe / 4) - (yoe / 100) + doy;
+		return (era * 146_097) + doe - 719_468;
+	}
+
+	/**
+	 * Number of sentences per ID, the ID being its 3 characters in an int. No object created to count.
+	 */
+	private static class IdCounts {
+		private int[] keys = new int[64];
+		private long[] counts = new long[64];
+		private int size = 0;
+
+		void increment(int key) {
+			add(key, 1L);
+		}
+
+		void add(int key, long count) {
+			int mask = keys.length - 1;
+			int i = (key * 0x9E3779B1) & mask;
+			while (counts[i] != 0 && keys[i] != key) {
+				i = (i + 1) & mask;
+			}
+			if (counts[i] == 0) {
+				keys[i] = key;
+				if (++size > keys.length / 2) {
+					counts[i] = count;
+					grow();
+					return;
+				}
+			}
+			counts[i] += count;
+		}
+
+		void add(IdCounts other) {
+			for (int i = 0; i < other.keys.length; i++) {
+				if (other.counts[i] != 0) {
+					add(other.keys[i], other.counts[i]);
+				}
+			}
+		}
+
+		private void grow() {
+			int[] oldKeys = keys;
+			long[] oldCounts = counts;
+			keys = new int[oldKeys.length * 2];
+			counts = new long[oldKeys.length * 2];
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldCounts[i] != 0) {
+					add(oldKeys[i], oldCounts[i]);
+				}
+			}
+		}
+
+		Map<String, Long> toMap() {
+			Map<String, Long> map = new TreeMap<>();
+			for (int i = 0; i < keys.length; i++) {
+				if (counts[i] != 0) {
+					map.put(new String(new char[] { (char) ((keys[i] >> 16) & 0xFF), (char) ((keys[i] >> 8) & 0xFF), (char) (keys[i] & 0xFF) }), counts[i]);
+				}
+			}
+			return map;
+		}
+	}
+}
@@ -4,6 +4,16 @@ import util.GeomUtil;
 
 import java.util.Vector;
 
+/**
+ * Great circle and rhumb line calculations.
+ * <br>
+ * The start and arrival points, the directions, the rhumb line distance and route are <b>static</b>:
+ * <code>setStart</code>, <code>setArrival</code>, <code>calculateGreatCircle</code>, <code>calculateRhumLine</code>, etc.
+ * cannot be used by several threads at the same time. Use {@link GreatCircleRoute} instead.
+ * <br>
+ * The static methods taking their points as parameters (like {@link #getGCDistance(GreatCirclePoint, GreatCirclePoint)},
+ * {@link #calculateRhumLineDistance(GreatCirclePoint, GreatCirclePoint)}, {@link #dr(GreatCirclePoint, double, double)}) are thread-safe.
+ */
 public final class GreatCircle {
 	public static final int TO_NORTH = 0;
 	public static final int TO_SOUTH = 1;
@@ -29,11 +39,17 @@ public final class GreatCircle {
 	 * Coordinates in radians
 	 *
 	 * @param p the position to start from
+	 * @deprecated Static state, not thread-safe. Use {@link GreatCircleRoute}.
 	 */
+	@Deprecated
 	public static void setStart(GreatCirclePoint p) {
 		start = p;
 	}
 
+	/**
+	 * @deprecated Static state, not thread-safe. Use {@link GreatCircleRoute}.
+	 */
+	@Deprecated
 	public static void setStartInDegrees(GreatCirclePoint p) {
 		start = new GreatCirclePoint(Math.toRadians(p.getL()),
 						Math.toRadians(p.getG()));
@@ -43,32 +59,58 @@ public final class GreatCircle {
 	 * Coordinates in radians
 	 *
 	 * @param p the arrival position
+	 * @deprecated Static state, not thread-safe. Use {@link GreatCircleRoute}.
 	 */
+	@Deprecated
 	public static void setArrival(GreatCirclePoint p) {
 		arrival = p;
 	}
 
+	/**
+	 * @deprecated Static state, not thread-safe. Use {@link GreatCircleRoute}.
+	 */
+	@Deprecated
 	public static void setArrivalInDegrees(GreatCirclePoint p) {
 		arrival = new GreatCirclePoint(Math.toRadians(p.getL()),
 						Math.toRadians(p.getG()));
 	}
 
+	/**
+	 * @deprecated Static state, not thread-safe. Use {@link GreatCircleRoute}.
+	 */
+	@Deprecated
 	public static GreatCirclePoint getStart() {
 		return start;
 	}
 
+	/**
+	 * @deprecated Static state, not thread-safe. Use {@link GreatCircleRoute}.
+	 */
+	@Deprecated
 	public static GreatCirclePoint getArrival() {
 		return arrival;
 	}
 
+	/**
+	 * @deprecated Static state, not thread-safe. Use {@link GreatCircleRoute}.
+	 */
+	@Deprecated
 	public static int getNS() {
 		return nsDir;
 	}
 
+	/**
+	 * @deprecated Static state, not thread-safe. Use {@link GreatCircleRoute}.
+	 */
+	@Deprecated
 	public static int getEW() {
 		return ewDir;
 	}
 
+	/**
+	 * @deprecated Static state, not thread-safe. Use {@link GreatCircleRoute}.
+	 */
+	@Deprecated
 	public void calculateGreatCircle(int nbPoints) {
 		if (arrival.getL() > start.getL())
 			nsDir = TO_NORTH;
@@ -142,17 +184,27 @@ public final class GreatCircle {
 
 	/**
 	 * @return in radians
+	 * @deprecated Static state, not thread-safe. Use {@link GreatCircleRoute}.
 	 */
+	@Deprecated
 	public static double getDistance() {
 		double cos = Math.sin(start.getL()) * Math.sin(arrival.getL()) + Math.cos(start.getL()) * Math.cos(arrival.getL()) * Math.cos(arrival.getG() - start.getG());
 		double dist = Math.acos(cos);
 		return dist;
 	}
 
+	/**
+	 * @deprecated Static state, not thread-safe. Use {@link GreatCircleRoute}.
+	 */
+	@Deprecated
 	public static double getDistanceInDegrees() {
 		return Math.toDegrees(getDistance());
 	}
 
+	/**
+	 * @deprecated Static state, not thread-safe. Use {@link GreatCircleRoute}.
+	 */
+	@Deprecated
 	public static double getDistanceInNM() {
 		return (getDistanceInDegrees() * 60D);
 	}
@@ -163,9 +215,7 @@ public final class GreatCircle {
 	 * @return in nautical miles
 	 */
 	public static double getDistanceInNM(GreatCirclePoint from, GreatCirclePoint to) {
-		setStartInDegrees(from);
-		setArrivalInDegrees(to);
-		return (getDistanceInDegrees() * 60D);
+		return getGCDistanceInDegrees(from, to); // Does not touch the static start and arrival
 	}
 
 	/**
@@ -190,6 +240,10 @@ public final class GreatCircle {
 		return Math.toDegrees(dist) * 60D;
 	}
 
+	/**
+	 * @deprecated Static state, not thread-safe. Use {@link GreatCircleRoute}.
+	 */
+	@Deprecated
 	public static void calculateRhumLine() {
 		if (arrival.getL() > start.getL())
 			nsDir = TO_NORTH;
@@ -370,14 +424,26 @@ public final class GreatCircle {
 		return d >= 0.0D ? 1 : -1;
 	}
 
+	/**
+	 * @deprecated Static state, not thread-safe. Use {@link GreatCircleRoute}.
+	 */
+	@Deprecated
 	public double getRhumbLineDistance() {
 		return dLoxo;
 	}
 
+	/**
+	 * @deprecated Static state, not thread-safe. Use {@link GreatCircleRoute}.
+	 */
+	@Deprecated
 	public double getRhumbLineRoute() {
 		return rv;
 	}
 
+	/**
+	 * @deprecated Static state, not thread-safe. Use {@link GreatCircleRoute}.
+	 */
+	@Deprecated
 	public Vector<GreatCircleWayPoint> getRoute() {
 		return route;
 	}
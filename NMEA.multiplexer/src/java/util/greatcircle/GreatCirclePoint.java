@@ -45,12 +45,7 @@ public final class GreatCirclePoint
 	 * @return the distance, in nm.
 	 */
 	public double orthoDistanceBetween(GreatCirclePoint target) {
-		GreatCircle gc = new GreatCircle();
-		gc.setStart(new GreatCirclePoint(Math.toRadians(this.getL()), Math.toRadians(this.getG())));
-		gc.setArrival(new GreatCirclePoint(Math.toRadians(target.getL()), Math.toRadians(target.getG())));
-		gc.calculateGreatCircle(1);
-		double d = Math.toDegrees(gc.getDistance());
-		return d * 60D;
+		return GreatCircleRoute.inDegrees(this, target).getDistanceInNM();
 	}
 
 	/**
@@ -71,13 +66,7 @@ public final class GreatCirclePoint
 	 * @return the distance, in nm.
 	 */
 	public double loxoDistanceBetween(GreatCirclePoint target) {
-		GreatCircle gc = new GreatCircle();
-		gc.setStart(new GreatCirclePoint(Math.toRadians(this.getL()), Math.toRadians(this.getG())));
-		gc.setArrival(new GreatCirclePoint(Math.toRadians(target.getL()), Math.toRadians(target.getG())));
-		gc.calculateRhumLine();
-		double d = gc.getRhumbLineDistance();
-
-		return d;
+		return GreatCircleRoute.inDegrees(this, target).getRhumbLineDistance();
 	}
 
 	public String toString() {
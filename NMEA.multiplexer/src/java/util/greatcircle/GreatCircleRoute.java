@@ -0,0 +1,249 @@
+package util.greatcircle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A route between two points, along the great circle (orthodrome), or the rhumb line (loxodrome).
+ * <br>
+ * Immutable, and thread-safe: unlike the static methods of {@link GreatCircle} (<code>setStart</code>, <code>setArrival</code>, ...),
+ * several threads can compute their routes at the same time.
+ * Everything is computed once, in the constructor, but the way points, computed on demand.
+ * <br>
+ * See {@link #distancesAndBearings(double, double, double[], double[], int, double[], double[])} to compute
+ * the distance and bearing from one position to many others.
+ */
+public final class GreatCircleRoute {
+
+	private final static double NM_PER_RADIAN = 60d * 180d / Math.PI; // 3437.7467707849396
+
+	// In radians
+	private final double startL;
+	private final double startG;
+	private final double arrivalL;
+	private final double arrivalG;
+
+	private final double gcDistance;   // radians
+	private final double initialRoute; // radians, [0, 2.PI[
+	private final double rhumbLineDistance; // nm
+	private final double rhumbLineRoute;    // radians, [0, 2.PI[
+
+	private GreatCircleRoute(double startL, double startG, double arrivalL, double arrivalG) {
+		this.startL = startL;
+		this.startG = startG;
+		this.arrivalL = arrivalL;
+		this.arrivalG = arrivalG;
+
+		double deltaL = arrivalL - startL;
+		double deltaG = normalize(arrivalG - startG);
+		double cosStartL = Math.cos(startL);
+		double cosArrivalL = Math.cos(arrivalL);
+		this.gcDistance = haversine(deltaL, deltaG, cosStartL, cosArrivalL);
+		this.initialRoute = positive(Math.atan2(Math.sin(deltaG) * cosArrivalL,
+						(cosStartL * Math.sin(arrivalL)) - (Math.sin(startL) * cosArrivalL * Math.cos(deltaG))));
+
+		double deltaLC = Math.log(Math.tan((Math.PI / 4d) + (arrivalL / 2d)) / Math.tan((Math.PI / 4d) + (startL / 2d)));
+		double q = (Math.abs(deltaLC) > 1E-12) ? (deltaL / deltaLC) : cosStartL; // Along a parallel
+		this.rhumbLineDistance = Math.sqrt((deltaL * deltaL) + (q * q * deltaG * deltaG)) * NM_PER_RADIAN;
+		this.rhumbLineRoute = positive(Math.atan2(deltaG, deltaLC));
+	}
+
+	/**
+	 * @param from L and G in radians
+	 * @param to   L and G in radians
+	 * @return the route
+	 */
+	public static GreatCircleRoute inRadians(GreatCirclePoint from, GreatCirclePoint to) {
+		return new GreatCircleRoute(from.getL(), from.getG(), to.getL(), to.getG());
+	}
+
+	/**
+	 * @param from L and G in degrees
+	 * @param to   L and G in degrees
+	 * @return the route
+	 */
+	public static GreatCircleRoute inDegrees(GreatCirclePoint from, GreatCirclePoint to) {
+		return inDegrees(from.getL(), from.getG(), to.getL(), to.getG());
+	}
+
+	/**
+	 * All in degrees.
+	 */
+	public static GreatCircleRoute inDegrees(double fromLat, double fromLng, double toLat, double toLng) {
+		return new GreatCircleRoute(Math.toRadians(fromLat), Math.toRadians(fromLng), Math.toRadians(toLat), Math.toRadians(toLng));
+	}
+
+	/**
+	 * @return in ]-PI, PI]
+	 */
+	private static double normalize(double g) {
+		while (g > Math.PI) {
+			g -= (2 * Math.PI);
+		}
+		while (g <= -Math.PI) {
+			g += (2 * Math.PI);
+		}
+		return g;
+	}
+
+	/**
+	 * @return in [0, 2.PI[
+	 */
+	private static double positive(double angle) {
+		return (angle < 0d) ? angle + (2 * Math.PI) : angle;
+	}
+
+	/**
+	 * Haversine, accurate for the small distances too (unlike the arc cosine).
+	 *
+	 * @return in radians
+	 */
+	private static double haversine(double deltaL, double deltaG, double cosL1, double cosL2) {
+		double sinHalfDL = Math.sin(deltaL / 2d);
+		double sinHalfDG = Math.sin(deltaG / 2d);
+		double a = (sinHalfDL * sinHalfDL) + (cosL1 * cosL2 * sinHalfDG * sinHalfDG);
+		return 2d * Math.asin(Math.min(1d, Math.sqrt(a)));
+	}
+
+	/**
+	 * @return in radians
+	 */
+	public GreatCirclePoint getStart() {
+		return new GreatCirclePoint(startL, startG);
+	}
+
+	/**
+	 * @return in radians
+	 */
+	public GreatCirclePoint getArrival() {
+		return new GreatCirclePoint(arrivalL, arrivalG);
+	}
+
+	/**
+	 * @return the great circle distance, in radians
+	 */
+	public double getDistance() {
+		return gcDistance;
+	}
+
+	/**
+	 * @return the great circle distance, in nautical miles
+	 */
+	public double getDistanceInNM() {
+		return gcDistance * NM_PER_RADIAN;
+	}
+
+	/**
+	 * @return the initial route of the great circle, in degrees, [0, 360[
+	 */
+	public double getInitialRouteInDegrees() {
+		return Math.toDegrees(initialRoute);
+	}
+
+	/**
+	 * @return the rhumb line distance, in nautical miles
+	 */
+	public double getRhumbLineDistance() {
+		return rhumbLineDistance;
+	}
+
+	/**
+	 * @return the rhumb line route, in radians, [0, 2.PI[
+	 */
+	public double getRhumbLineRoute() {
+		return rhumbLineRoute;
+	}
+
+	/**
+	 * @return the rhumb line route, in degrees, [0, 360[
+	 */
+	public double getRhumbLineRouteInDegrees() {
+		return Math.toDegrees(rhumbLineRoute);
+	}
+
+	/**
+	 * The great circle, in <code>nbSteps</code> steps of the same length.
+	 * <br>
+	 * Like {@link GreatCircle#calculateGreatCircle(int)}, but the steps have the same length
+	 * (not the same difference in longitude), and the routes along a meridian work too.
+	 *
+	 * @param nbSteps the number of steps
+	 * @return <code>nbSteps + 1</code> way points, from the start to the arrival. Positions in radians,
+	 * route to the arrival (Z) in degrees, null for the arrival.
+	 */
+	public List<GreatCircleWayPoint> getWayPoints(int nbSteps) {
+		if (nbSteps < 1) {
+			throw new IllegalArgumentException(String.format("At least one step required (%d)", nbSteps));
+		}
+		List<GreatCircleWayPoint> route = new ArrayList<>(nbSteps + 1);
+		double cosStartL = Math.cos(startL);
+		double cosArrivalL = Math.cos(arrivalL);
+		double sinDistance = Math.sin(gcDistance);
+		for (int i = 0; i <= nbSteps; i++) {
+			double l, g;
+			if (i == 0 || gcDistance == 0d) {
+				l = startL;
+				g = startG;
+			} else if (i == nbSteps) {
+				l = arrivalL;
+				g = arrivalG;
+			} else {
+				// Interpolation along the great circle
+				double fraction = (double) i / (double) nbSteps;
+				double a = Math.sin((1d - fraction) * gcDistance) / sinDistance;
+				double b = Math.sin(fraction * gcDistance) / sinDistance;
+				double x = (a * cosStartL * Math.cos(startG)) + (b * cosArrivalL * Math.cos(arrivalG));
+				double y = (a * cosStartL * Math.sin(startG)) + (b * cosArrivalL * Math.sin(arrivalG));
+				double z = (a * Math.sin(startL)) + (b * Math.sin(arrivalL));
+				l = Math.atan2(z, Math.sqrt((x * x) + (y * y)));
+				g = Math.atan2(y, x);
+			}
+			Double zn = null;
+			if (i < nbSteps && gcDistance != 0d) {
+				zn = (i == 0) ? getInitialRouteInDegrees() : new GreatCircleRoute(l, g, arrivalL, arrivalG).getInitialRouteInDegrees();
+			}
+			route.add(new GreatCircleWayPoint(new GreatCirclePoint(l, g), zn));
+		}
+		return route;
+	}
+
+	/**
+	 * Great circle distance and initial route, from one position to many others (AIS targets, way points, ...).
+	 * <br>
+	 * Primitive arrays in, primitive arrays out, nothing allocated, the trigonometry of the origin is done once.
+	 *
+	 * @param fromLat   origin latitude, degrees
+	 * @param fromLng   origin longitude, degrees
+	 * @param lats      latitudes of the destinations, degrees
+	 * @param lngs      longitudes of the destinations, degrees
+	 * @param count     number of destinations to compute, from index 0
+	 * @param distances receives the distances, in nautical miles. At least <code>count</code> long.
+	 * @param bearings  receives the initial routes, in degrees [0, 360[. At least <code>count</code> long. Can be null.
+	 */
+	public static void distancesAndBearings(double fromLat, double fromLng,
+	                                        double[] lats, double[] lngs, int count,
+	                                        double[] distances, double[] bearings) {
+		double l1 = Math.toRadians(fromLat);
+		double g1 = Math.toRadians(fromLng);
+		double sinL1 = Math.sin(l1);
+		double cosL1 = Math.cos(l1);
+		for (int i = 0; i < count; i++) {
+			double l2 = Math.toRadians(lats[i]);
+			double deltaG = Math.toRadians(lngs[i]) - g1;
+			double cosL2 = Math.cos(l2);
+			distances[i] = haversine(l2 - l1, deltaG, cosL1, cosL2) * NM_PER_RADIAN;
+			if (bearings != null) {
+				double bearing = Math.toDegrees(Math.atan2(Math.sin(deltaG) * cosL2, (cosL1 * Math.sin(l2)) - (sinL1 * cosL2 * Math.cos(deltaG))));
+				bearings[i] = (bearing < 0d) ? bearing + 360d : bearing;
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("From %s to %s: GC %.02f nm (initial route %.01f), RL %.02f nm (route %.01f)",
+						new GreatCirclePoint(Math.toDegrees(startL), Math.toDegrees(startG)),
+						new GreatCirclePoint(Math.toDegrees(arrivalL), Math.toDegrees(arrivalG)),
+						getDistanceInNM(), getInitialRouteInDegrees(), rhumbLineDistance, getRhumbLineRouteInDegrees());
+	}
+}
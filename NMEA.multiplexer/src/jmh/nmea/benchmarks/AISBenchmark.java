@@ -0,0 +1,50 @@
+package nmea.benchmarks;
+
+import nmea.ais.AISParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AISParser#parse(String)}, one sentence per operation.
+ * <br>
+ * There is no AIS log in <code>sample.data</code>, the sentences are the ones of the AISParser samples,
+ * plus a Class B position report, and a type 5 in two fragments.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AISBenchmark {
+
+	private final static String[] SENTENCES = {
+					"!AIVDM,1,1,,A,14eG;o@034o8sd<L9i:a;WF>062D,0*7D",
+					"!AIVDM,1,1,,A,15NB>cP03jG?l`<EaV0`MFO000S>,0*39",
+					"!AIVDM,1,1,,B,177KQJ5000G?tO`K>RA1wUbN0TKH,0*5C",
+					"!AIVDM,1,1,,B,B52K>;h00Fc>jpUlNV@ikwpUoP06,0*4F",
+					"!AIVDM,2,1,1,A,55?MbV02;H;s<HtKR20EHE:0@T4@Dn2222222216L961O5Gf0NSQEp6ClRp8,0*1C",
+					"!AIVDM,2,2,1,A,88888888880,2*25"
+	};
+
+	private final AISParser parser = new AISParser();
+	private int idx = 0;
+
+	@Benchmark
+	public AISParser.AISRecord parseAIS() {
+		AISParser.AISRecord record = parser.parse(SENTENCES[idx++]);
+		if (idx == SENTENCES.length) {
+			idx = 0;
+		}
+		return record;
+	}
+}
@@ -0,0 +1,79 @@
+package nmea.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import context.NMEADataCache;
+import nmea.utils.NMEAJsonWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>GET /cache</code>, on a fully populated cache: the Gson tree it used to be built with,
+ * the {@link NMEAJsonWriter}, and the poll of an unchanged cache (the serialized body is kept with the cache version).
+ * <br>
+ * One operation is one response body.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheSerializationBenchmark {
+
+	private final static Set<String> NOT_SERIALIZED = Collections.singleton(NMEADataCache.DEVIATION_DATA);
+
+	private NMEADataCache cache;
+
+	private long memoVersion = -1L;
+	private byte[] memo = null;
+
+	@Setup
+	public void setup() {
+		cache = DataCacheBenchmark.newCache(1);
+		for (String sentence : SampleData.validSentences(SampleData.DEFAULT_FILES)) {
+			cache.parseAndFeed(sentence);
+		}
+	}
+
+	/**
+	 * What <code>RESTImplementation.getCache</code> was doing.
+	 */
+	@Benchmark
+	public byte[] gsonTree() {
+		JsonElement jsonElement = new Gson().toJsonTree(cache);
+		((JsonObject) jsonElement).remove(NMEADataCache.DEVIATION_DATA);
+		return jsonElement.toString().getBytes();
+	}
+
+	@Benchmark
+	public byte[] streaming() throws IOException {
+		return NMEAJsonWriter.toJson(cache.snapshot(), NOT_SERIALIZED);
+	}
+
+	/**
+	 * The cache has not changed since the previous poll.
+	 */
+	@Benchmark
+	public byte[] memoized() throws IOException {
+		if (memo == null || memoVersion != cache.getVersion()) {
+			memoVersion = cache.getVersion();
+			memo = NMEAJsonWriter.toJson(cache.snapshot(), NOT_SERIALIZED);
+		}
+		return memo;
+	}
+}
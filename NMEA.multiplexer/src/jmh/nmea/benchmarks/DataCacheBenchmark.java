@@ -0,0 +1,84 @@
+package nmea.benchmarks;
+
+import context.ApplicationContext;
+import context.NMEADataCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link NMEADataCache}, fed like the multiplexer does, and read like the REST and WebSocket clients do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataCacheBenchmark {
+
+	@Param({"1", "30"})
+	public int damping;
+
+	private NMEADataCache cache;
+	private String[] sentences;
+	private int idx = 0;
+
+	/**
+	 * Creates the cache the way <code>MuxInitializer</code> does (<code>init.cache=true</code>).
+	 */
+	static NMEADataCache newCache(int damping) {
+		ApplicationContext.getInstance().initCache("zero-deviation.csv", 0d, 1d, 1d, 0d, 0d, 0d, damping);
+		NMEADataCache cache = ApplicationContext.getInstance().getDataCache();
+		cache.setDampingSize(damping);
+		return cache;
+	}
+
+	@Setup
+	public void setup() {
+		cache = newCache(damping);
+		List<String> data = SampleData.validSentences(SampleData.DEFAULT_FILES);
+		sentences = data.toArray(new String[data.size()]);
+		for (String sentence : sentences) { // Warm the cache, fill the damping buffers
+			cache.parseAndFeed(sentence);
+		}
+	}
+
+	@Benchmark
+	public NMEADataCache parseAndFeed() {
+		cache.parseAndFeed(sentences[idx++]);
+		if (idx == sentences.length) {
+			idx = 0;
+		}
+		return cache;
+	}
+
+	/**
+	 * Reading a full set of data, damped or not.
+	 * The damping is effective only when the damping size is greater than 1.
+	 */
+	@State(Scope.Thread)
+	public static class Reading {
+		@Param({"false", "true"})
+		public boolean useDamping;
+
+		@Param({NMEADataCache.BSP, NMEADataCache.HDG_TRUE, NMEADataCache.TWD, NMEADataCache.POSITION})
+		public String key;
+	}
+
+	@Benchmark
+	public Object get(Reading reading) {
+		return cache.get(reading.key, reading.useDamping);
+	}
+}
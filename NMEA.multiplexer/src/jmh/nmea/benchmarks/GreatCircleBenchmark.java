@@ -0,0 +1,97 @@
+package nmea.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import util.greatcircle.GreatCircle;
+import util.greatcircle.GreatCirclePoint;
+import util.greatcircle.GreatCircleRoute;
+import util.greatcircle.GreatCircleWayPoint;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The static {@link GreatCircle} against the {@link GreatCircleRoute}.
+ * <br>
+ * <code>staticRoute</code> and <code>instanceRoute</code>: one route, from San Francisco to Hawaii, with 20 way points, and its rhumb line.
+ * <br>
+ * <code>staticFanOut</code> and <code>batchFanOut</code>: distance and route from one position to 1000 others (like the AIS targets).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GreatCircleBenchmark {
+
+	private final static int NB_POINTS = 1_000;
+	private final static int NB_STEPS = 20;
+
+	private final static double FROM_LAT = 37.63;
+	private final static double FROM_LNG = -122.77;
+	private final static double TO_LAT = 20d;
+	private final static double TO_LNG = -150d;
+
+	private final GreatCirclePoint from = new GreatCirclePoint(Math.toRadians(FROM_LAT), Math.toRadians(FROM_LNG));
+	private final GreatCirclePoint to = new GreatCirclePoint(Math.toRadians(TO_LAT), Math.toRadians(TO_LNG));
+
+	private final double[] lats = new double[NB_POINTS];
+	private final double[] lngs = new double[NB_POINTS];
+	private final GreatCirclePoint[] points = new GreatCirclePoint[NB_POINTS];
+	private final double[] distances = new double[NB_POINTS];
+	private final double[] bearings = new double[NB_POINTS];
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		for (int i = 0; i < NB_POINTS; i++) {
+			lats[i] = FROM_LAT + (random.nextDouble() - 0.5);
+			lngs[i] = FROM_LNG + (random.nextDouble() - 0.5);
+			points[i] = new GreatCirclePoint(Math.toRadians(lats[i]), Math.toRadians(lngs[i]));
+		}
+	}
+
+	@Benchmark
+	public double staticRoute() {
+		GreatCircle gc = new GreatCircle();
+		GreatCircle.setStart(from);
+		GreatCircle.setArrival(to);
+		gc.calculateGreatCircle(NB_STEPS);
+		Vector<GreatCircleWayPoint> route = gc.getRoute();
+		gc.calculateRhumLine();
+		return gc.getDistance() + route.size() + gc.getRhumbLineDistance() + gc.getRhumbLineRoute();
+	}
+
+	@Benchmark
+	public double instanceRoute() {
+		GreatCircleRoute route = GreatCircleRoute.inRadians(from, to);
+		List<GreatCircleWayPoint> wayPoints = route.getWayPoints(NB_STEPS);
+		return route.getDistance() + wayPoints.size() + route.getRhumbLineDistance() + route.getRhumbLineRoute();
+	}
+
+	@Benchmark
+	public double[] staticFanOut() {
+		for (int i = 0; i < NB_POINTS; i++) {
+			distances[i] = GreatCircle.getGCDistanceInDegrees(from, points[i]) * 60d;
+			bearings[i] = Math.toDegrees(GreatCircle.calculateRhumLineRoute(from, points[i]));
+		}
+		return distances;
+	}
+
+	@Benchmark
+	public double[] batchFanOut() {
+		GreatCircleRoute.distancesAndBearings(FROM_LAT, FROM_LNG, lats, lngs, NB_POINTS, distances, bearings);
+		return distances;
+	}
+}
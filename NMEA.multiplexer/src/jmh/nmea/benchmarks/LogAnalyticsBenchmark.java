@@ -0,0 +1,98 @@
+package nmea.benchmarks;
+
+import nmea.parser.GeoPos;
+import nmea.parser.RMC;
+import nmea.parser.StringParsers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import util.LogAnalytics;
+import util.LogStats;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analysis of a log: line by line, with the parsers, as <code>util.LogAnalyzer</code> was doing,
+ * and with {@link LogAnalytics}, on one thread, and on all the processors.
+ * <br>
+ * The log is <code>2017.06.10.nmea</code>, <code>copies</code> times. One operation is one analysis of the whole log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogAnalyticsBenchmark {
+
+	@Param({ "20" })
+	public int copies;
+
+	private Path log;
+	private LogAnalytics parallel;
+	private LogAnalytics singleThread;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		log = Files.createTempFile("log-analytics", ".nmea");
+		byte[] sample = SampleData.stream("2017.06.10.nmea").getBytes(StandardCharsets.US_ASCII);
+		for (int i = 0; i < copies; i++) {
+			Files.write(log, sample, StandardOpenOption.APPEND);
+		}
+		parallel = new LogAnalytics();
+		singleThread = new LogAnalytics();
+		singleThread.setParallelism(1);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(log);
+	}
+
+	@Benchmark
+	public double lineByLine() throws IOException {
+		double distance = 0d;
+		GeoPos previous = null;
+		try (BufferedReader br = Files.newBufferedReader(log, StandardCharsets.ISO_8859_1)) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (StringParsers.validCheckSum(line) && StringParsers.getSentenceID(line).equals("RMC")) {
+					RMC rmc = StringParsers.parseRMC(line);
+					if (rmc.getGp() != null) {
+						if (previous != null) {
+							distance += LogStats.haversineKm(previous.lat, previous.lng, rmc.getGp().lat, rmc.getGp().lng);
+						}
+						previous = rmc.getGp();
+					}
+				}
+			}
+		}
+		return distance;
+	}
+
+	@Benchmark
+	public LogStats analyticsSingleThread() throws IOException {
+		return singleThread.analyze(log);
+	}
+
+	@Benchmark
+	public LogStats analyticsParallel() throws IOException {
+		return parallel.analyze(log);
+	}
+}
@@ -0,0 +1,94 @@
+package nmea.benchmarks;
+
+import nmea.forwarders.Forwarder;
+import nmea.mux.GenericNMEAMultiplexer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The full {@link GenericNMEAMultiplexer#onData(String)}: cache, computers, and fan-out to N forwarders.
+ * <br>
+ * The forwarders are {@link NullForwarder}s, loaded like any other custom forwarder (<code>forward.XX.cls</code>),
+ * so what is measured is the multiplexer itself, not the I/O.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultiplexerBenchmark {
+
+	@Param({"0", "1", "4", "16"})
+	public int nbForwarders;
+
+	@Param({"false", "true"})
+	public boolean initCache;
+
+	private GenericNMEAMultiplexer mux;
+	private String[] sentences;
+	private int idx = 0;
+
+	/**
+	 * Does nothing but counting the bytes.
+	 */
+	public static class NullForwarder implements Forwarder {
+		private long nbBytes = 0L;
+
+		@Override
+		public void write(byte[] mess) {
+			nbBytes += mess.length;
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public void setProperties(Properties props) {
+		}
+
+		@Override
+		public Object getBean() {
+			return nbBytes;
+		}
+	}
+
+	@Setup
+	public void setup() {
+		Properties props = new Properties();
+		props.setProperty("init.cache", String.valueOf(initCache));
+		for (int i = 1; i <= nbForwarders; i++) {
+			props.setProperty(String.format("forward.%02d.cls", i), NullForwarder.class.getName());
+		}
+		mux = new GenericNMEAMultiplexer(props);
+		List<String> data = SampleData.validSentences(SampleData.DEFAULT_FILES);
+		sentences = data.toArray(new String[data.size()]);
+	}
+
+	@Benchmark
+	public GenericNMEAMultiplexer onData() {
+		int i;
+		synchronized (this) { // Scope.Benchmark, for the multi-threaded runs (-t)
+			i = idx++;
+			if (idx == sentences.length) {
+				idx = 0;
+			}
+		}
+		mux.onData(sentences[i]);
+		return mux;
+	}
+}
@@ -0,0 +1,130 @@
+package nmea.benchmarks;
+
+import nmea.api.NMEAEvent;
+import nmea.api.NMEAException;
+import nmea.api.NMEAListener;
+import nmea.api.NMEAParser;
+import nmea.api.SentenceFilter;
+import nmea.parser.StringParsers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sentence detection and validation, one sentence per operation.
+ * <ul>
+ *   <li><code>detectSentence</code>: the String based detection of the {@link NMEAParser}</li>
+ *   <li><code>dataRead</code>: what a reader triggers, with or without the <code>NMEAFramer</code></li>
+ *   <li><code>validCheckSum</code>: {@link StringParsers#validCheckSum(CharSequence)}</li>
+ *   <li><code>sentenceFilter</code>: the device and sentence filters of a channel, see {@link SentenceFilter}</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+	@Param({"2017.06.10.nmea", "data.onboard.nmea"})
+	public String dataFile;
+
+	private String[] sentences;
+	private String[] chunks;
+	private byte[][] bytes;
+	private int idx = 0;
+
+	private NMEAParser parser;
+	private SentenceFilter filter;
+
+	@Setup
+	public void setup() {
+		List<String> lines = SampleData.lines(dataFile);
+		sentences = lines.toArray(new String[lines.size()]);
+		chunks = new String[sentences.length];
+		bytes = new byte[sentences.length][];
+		for (int i = 0; i < sentences.length; i++) {
+			chunks[i] = sentences[i] + NMEAParser.STANDARD_NMEA_EOS;
+			bytes[i] = chunks[i].getBytes(StandardCharsets.ISO_8859_1);
+		}
+		parser = new NMEAParser(new ArrayList<>());
+		filter = SentenceFilter.compile(new String[] { "GP", "II", "~AI" }, new String[] { "RMC", "GLL", "MWV", "VHW", "~GSV", "~GSA" });
+	}
+
+	/**
+	 * A parser, as created by an NMEAClient, with or without framing.
+	 */
+	@State(Scope.Thread)
+	public static class Channel {
+		@Param({"false", "true"})
+		public boolean framing;
+
+		private List<NMEAListener> listeners;
+		private long detected = 0L;
+
+		@Setup
+		public void setup() {
+			listeners = new ArrayList<>();
+			NMEAParser parser = new NMEAParser(listeners); // Registers its own dataRead listener
+			parser.setFraming(framing);
+			parser.addNMEAListener(new NMEAListener() {
+				@Override
+				public void dataDetected(NMEAEvent e) {
+					detected += e.getSentence().length();
+				}
+			});
+		}
+	}
+
+	private int next() {
+		int i = idx++;
+		if (idx == sentences.length) {
+			idx = 0;
+		}
+		return i;
+	}
+
+	@Benchmark
+	public void detectSentence(Blackhole bh) throws NMEAException {
+		parser.setNmeaStream(chunks[next()]);
+		String s;
+		while ((s = parser.detectSentence()) != null) {
+			bh.consume(s);
+		}
+	}
+
+	@Benchmark
+	public long dataRead(Channel channel) {
+		int i = next();
+		NMEAEvent event = new NMEAEvent(this, bytes[i], 0, bytes[i].length);
+		for (int l = 0; l < channel.listeners.size(); l++) {
+			channel.listeners.get(l).dataRead(event);
+		}
+		return channel.detected;
+	}
+
+	@Benchmark
+	public boolean validCheckSum() {
+		return StringParsers.validCheckSum(sentences[next()]);
+	}
+
+	@Benchmark
+	public boolean sentenceFilter() {
+		return filter.accept(sentences[next()]);
+	}
+}
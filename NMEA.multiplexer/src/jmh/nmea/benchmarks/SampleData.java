@@ -0,0 +1,92 @@
+package nmea.benchmarks;
+
+import nmea.parser.StringParsers;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the sentences of the <code>sample.data</code> directory, to feed the benchmarks.
+ * <br>
+ * The directory can be changed with <code>-Dbench.data.dir=...</code>, default is <code>sample.data</code>
+ * (the benchmarks are run from the <code>NMEA.multiplexer</code> directory).
+ */
+public final class SampleData {
+
+	public final static String DATA_DIR = System.getProperty("bench.data.dir", "sample.data");
+
+	/**
+	 * The files used by default. GPS only, and a full set of instruments.
+	 */
+	public final static String[] DEFAULT_FILES = {
+					"2017.06.10.nmea",
+					"data.onboard.nmea",
+					"gpsdata.nmea"
+	};
+
+	private SampleData() {
+	}
+
+	/**
+	 * @param fileName the file to read, in {@link #DATA_DIR}
+	 * @return All the lines of the file, as they are (valid or not).
+	 */
+	public static List<String> lines(String fileName) {
+		List<String> lines = new ArrayList<>();
+		File file = new File(DATA_DIR, fileName);
+		try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (line.length() > 0) {
+					lines.add(line);
+				}
+			}
+		} catch (IOException ioe) {
+			throw new RuntimeException(String.format("Reading %s", file.getAbsolutePath()), ioe);
+		}
+		return lines;
+	}
+
+	/**
+	 * @param fileNames the files to read, in {@link #DATA_DIR}
+	 * @return the sentences with a valid checksum, in the order they appear in the files.
+	 */
+	public static List<String> validSentences(String... fileNames) {
+		List<String> sentences = new ArrayList<>();
+		for (String fileName : fileNames) {
+			lines(fileName).stream()
+							.filter(line -> line.startsWith("$") || line.startsWith("!"))
+							.filter(StringParsers::validCheckSum)
+							.forEach(sentences::add);
+		}
+		return sentences;
+	}
+
+	/**
+	 * @param id the sentence ID, like "RMC"
+	 * @return the valid sentences of the default files, with this ID.
+	 */
+	public static String[] validSentences(String id) {
+		String[] sentences = validSentences(DEFAULT_FILES).stream()
+						.filter(s -> s.length() > 6 && s.substring(3, 6).equals(id))
+						.toArray(String[]::new);
+		if (sentences.length == 0) {
+			throw new IllegalArgumentException(String.format("No %s sentence in %s", id, DATA_DIR));
+		}
+		return sentences;
+	}
+
+	/**
+	 * @param fileName the file to read, in {@link #DATA_DIR}
+	 * @return the raw content of the file, with an NMEA end-of-sentence after each line.
+	 */
+	public static String stream(String fileName) {
+		StringBuilder sb = new StringBuilder();
+		lines(fileName).forEach(line -> sb.append(line).append("\r\n"));
+		return sb.toString();
+	}
+}
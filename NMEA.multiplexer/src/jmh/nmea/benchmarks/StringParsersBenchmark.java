@@ -0,0 +1,95 @@
+package nmea.benchmarks;
+
+import nmea.parser.StringParsers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One <code>StringParsers.parseXXX</code> per sentence ID, one sentence per operation.
+ * The sentences are the valid ones of the sample data, for the given ID.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StringParsersBenchmark {
+
+	@Param({"RMC", "GGA", "GSA", "GSV", "GLL", "RMB",
+					"VHW", "VLW", "MTW", "HDG",
+					"MWV", "MWD", "VWR", "VWT",
+					"XDR", "MDA", "MMB", "MTA", "VDR", "STD"})
+	public String id;
+
+	private String[] sentences;
+	private int idx = 0;
+
+	@Setup
+	public void setup() {
+		sentences = SampleData.validSentences(id);
+	}
+
+	@Benchmark
+	public Object parse() {
+		String sentence = sentences[idx++];
+		if (idx == sentences.length) {
+			idx = 0;
+		}
+		switch (id) {
+			case "RMC":
+				return StringParsers.parseRMC(sentence);
+			case "GGA":
+				return StringParsers.parseGGA(sentence);
+			case "GSA":
+				return StringParsers.parseGSA(sentence);
+			case "GSV":
+				return StringParsers.parseGSV(sentence);
+			case "GLL":
+				return StringParsers.parseGLL(sentence);
+			case "RMB":
+				return StringParsers.parseRMB(sentence);
+			case "VHW":
+				return StringParsers.parseVHW(sentence);
+			case "VLW":
+				return StringParsers.parseVLW(sentence);
+			case "MTW":
+				return StringParsers.parseMTW(sentence);
+			case "HDG":
+				return StringParsers.parseHDG(sentence);
+			case "MWV":
+				return StringParsers.parseMWV(sentence);
+			case "MWD":
+				return StringParsers.parseMWD(sentence);
+			case "VWR":
+				return StringParsers.parseVWR(sentence);
+			case "VWT":
+				return StringParsers.parseVWT(sentence);
+			case "XDR":
+				return StringParsers.parseXDR(sentence);
+			case "MDA":
+				return StringParsers.parseMDA(sentence);
+			case "MMB":
+				return StringParsers.parseMMB(sentence);
+			case "MTA":
+				return StringParsers.parseMTA(sentence);
+			case "VDR":
+				return StringParsers.parseVDR(sentence);
+			case "STD":
+				return StringParsers.parseSTD(sentence);
+			default:
+				throw new IllegalArgumentException(id);
+		}
+	}
+}
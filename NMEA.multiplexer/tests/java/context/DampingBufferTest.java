@@ -0,0 +1,182 @@
+package context;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DampingBufferTest {
+
+	private final static double EPSILON = 1E-9;
+
+	/**
+	 * The values a buffer should hold, and their statistics, the slow way.
+	 */
+	private static class Reference {
+		private final int size;
+		private final long window;
+		private final Deque<double[]> values = new ArrayDeque<>(); // [value, time]
+
+		Reference(int size, long window) {
+			this.size = size;
+			this.window = window;
+		}
+
+		void add(double value, long time) {
+			evict(time);
+			if (size > 0 && values.size() == size) {
+				values.removeFirst();
+			}
+			values.addLast(new double[]{value, time});
+		}
+
+		void evict(long now) {
+			while (window > 0 && !values.isEmpty() && values.peekFirst()[1] < now - window) {
+				values.removeFirst();
+			}
+		}
+
+		void check(DampingBuffer buffer, long now) {
+			evict(now);
+			DampingBuffer.Statistics stats = buffer.getStatistics(now);
+			if (values.isEmpty()) {
+				assertNull(stats);
+				return;
+			}
+			assertNotNull(stats);
+			double sum = 0d, min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+			for (double[] v : values) {
+				sum += v[0];
+				min = Math.min(min, v[0]);
+				max = Math.max(max, v[0]);
+			}
+			double mean = sum / values.size();
+			double sumSq = 0d;
+			for (double[] v : values) {
+				sumSq += (v[0] - mean) * (v[0] - mean);
+			}
+			assertEquals(values.size(), stats.getCount());
+			assertEquals(mean, stats.getMean(), EPSILON);
+			assertEquals(min, stats.getMin(), 0d);
+			assertEquals(max, stats.getMax(), 0d);
+			assertEquals(Math.sqrt(sumSq / values.size()), stats.getStdDev(), 1E-6);
+		}
+	}
+
+	@Test
+	public void limitedByCount() {
+		Random random = new Random(1);
+		DampingBuffer buffer = new DampingBuffer(10, 0L, false);
+		Reference reference = new Reference(10, 0L);
+		for (int i = 0; i < 1_000; i++) {
+			double value = 10d + (random.nextGaussian() * 3d);
+			buffer.add(value, i);
+			reference.add(value, i);
+			reference.check(buffer, i);
+		}
+	}
+
+	@Test
+	public void limitedByTime() {
+		Random random = new Random(2);
+		DampingBuffer buffer = new DampingBuffer(0, 5_000L, false);
+		Reference reference = new Reference(0, 5_000L);
+		long time = 0L;
+		for (int i = 0; i < 2_000; i++) {
+			time += random.nextInt(500); // Several values with the same time, sometimes
+			double value = random.nextDouble() * 100d;
+			buffer.add(value, time);
+			reference.add(value, time);
+			reference.check(buffer, time);
+		}
+		// Nothing comes in, the values get old
+		reference.check(buffer, time + 2_500L);
+		reference.check(buffer, time + 10_000L);
+		assertNull(buffer.getStatistics(time + 10_000L));
+		assertTrue(Double.isNaN(buffer.getMean(time + 10_000L)));
+	}
+
+	@Test
+	public void limitedByBoth() {
+		Random random = new Random(3);
+		DampingBuffer buffer = new DampingBuffer(50, 1_000L, false);
+		Reference reference = new Reference(50, 1_000L);
+		long time = 0L;
+		for (int i = 0; i < 2_000; i++) {
+			time += random.nextInt(60);
+			double value = (i % 100 < 50) ? i : -i; // Monotonic runs, for the min and max queues
+			buffer.add(value, time);
+			reference.add(value, time);
+			reference.check(buffer, time);
+		}
+	}
+
+	@Test
+	public void growsBeyondTheInitialCapacity() {
+		DampingBuffer buffer = new DampingBuffer(0, 0L, false);
+		Reference reference = new Reference(0, 0L);
+		for (int i = 0; i < 5_000; i++) {
+			double value = Math.sin(i / 10d) * 1_000d;
+			buffer.add(value, i);
+			reference.add(value, i);
+		}
+		reference.check(buffer, 5_000L);
+	}
+
+	@Test
+	public void noRoundingDrift() {
+		// Large values, small differences: the running sums must not drift
+		DampingBuffer buffer = new DampingBuffer(100, 0L, false);
+		Reference reference = new Reference(100, 0L);
+		Random random = new Random(4);
+		for (int i = 0; i < 200_000; i++) {
+			double value = 1E9 + random.nextDouble();
+			buffer.add(value, i);
+			reference.add(value, i);
+		}
+		reference.check(buffer, 200_000L);
+	}
+
+	@Test
+	public void angles() {
+		DampingBuffer buffer = new DampingBuffer(4, 0L, true);
+		buffer.add(350d, 0L);
+		buffer.add(10d, 1L);
+		DampingBuffer.Statistics stats = buffer.getStatistics(1L);
+		assertEquals(2, stats.getCount());
+		assertEquals(0d, Math.min(stats.getMean(), 360d - stats.getMean()), EPSILON); // Circular mean, not 180
+		assertEquals(10d, stats.getMin(), 0d);
+		assertEquals(350d, stats.getMax(), 0d);
+
+		buffer.add(20d, 2L);
+		buffer.add(30d, 3L);
+		buffer.add(40d, 4L); // 350 goes out
+		stats = buffer.getStatistics(4L);
+		assertEquals(4, stats.getCount());
+		assertEquals(25d, stats.getMean(), EPSILON);
+		assertEquals(10d, stats.getMin(), 0d);
+		assertEquals(40d, stats.getMax(), 0d);
+	}
+
+	@Test
+	public void nanAndClear() {
+		DampingBuffer buffer = new DampingBuffer(10, 0L, false);
+		buffer.add(1d, 0L);
+		buffer.add(Double.NaN, 1L);
+		buffer.add(3d, 2L);
+		DampingBuffer.Statistics stats = buffer.getStatistics(2L);
+		assertEquals(2, stats.getCount());
+		assertEquals(2d, stats.getMean(), EPSILON);
+
+		buffer.clear();
+		assertNull(buffer.getStatistics(3L));
+		buffer.add(5d, 4L);
+		assertEquals(5d, buffer.getMean(4L), EPSILON);
+	}
+}
@@ -0,0 +1,74 @@
+package context;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NMEADataCacheTest {
+
+	@Test
+	public void snapshotsSeeWholeUpdates() throws InterruptedException {
+		NMEADataCache cache = new NMEADataCache();
+		AtomicBoolean done = new AtomicBoolean(false);
+		Thread writer = new Thread(() -> {
+			for (int i = 0; !done.get(); i++) {
+				final Integer value = i;
+				cache.update(() -> {
+					cache.put("A", value);
+					cache.put("B", value);
+				});
+			}
+		});
+		writer.start();
+		try {
+			for (int i = 0; i < 10_000; i++) {
+				Map<String, Object> snapshot = cache.snapshot();
+				assertEquals(snapshot.get("A"), snapshot.get("B"));
+			}
+		} finally {
+			done.set(true);
+			writer.join();
+		}
+	}
+
+	@Test
+	public void snapshotFromAnUpdate() {
+		NMEADataCache cache = new NMEADataCache();
+		cache.put("A", 1);
+		Map<String, Object> before = cache.snapshot();
+		cache.update(() -> {
+			cache.put("A", 2);
+			assertSame(before, cache.snapshot()); // The one from before the update
+		});
+		assertEquals(2, cache.snapshot().get("A"));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void mapValuesCopiedOnPut() {
+		NMEADataCache cache = new NMEADataCache();
+		Map<Long, NMEADataCache.CurrentDefinition> currentMap = new HashMap<>();
+		currentMap.put(60_000L, null);
+		cache.put(NMEADataCache.CALCULATED_CURRENT, currentMap);
+		Map<String, Object> snapshot = cache.snapshot();
+		currentMap.put(120_000L, null); // Not seen by the cache
+		Map<Long, NMEADataCache.CurrentDefinition> cached = (Map<Long, NMEADataCache.CurrentDefinition>) snapshot.get(NMEADataCache.CALCULATED_CURRENT);
+		assertNotNull(cached);
+		assertEquals(1, cached.size());
+		try {
+			cached.put(120_000L, null);
+			fail("The cached map is immutable");
+		} catch (UnsupportedOperationException expected) {
+		}
+		cache.reset();
+		assertTrue(((Map<?, ?>) cache.get(NMEADataCache.CALCULATED_CURRENT)).isEmpty());
+	}
+}
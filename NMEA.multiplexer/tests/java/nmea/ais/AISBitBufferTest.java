@@ -0,0 +1,113 @@
+package nmea.ais;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class AISBitBufferTest {
+
+	/**
+	 * @param bits a string of '0' and '1', its length a multiple of 6
+	 * @return the 6-bit armored payload
+	 */
+	private static String armor(String bits) {
+		StringBuilder payload = new StringBuilder();
+		for (int i = 0; i < bits.length(); i += 6) {
+			int value = Integer.parseInt(bits.substring(i, i + 6), 2);
+			payload.append((char) (value < 40 ? value + 48 : value + 56));
+		}
+		return payload.toString();
+	}
+
+	private static String randomBits(Random random, int nbBits) {
+		StringBuilder sb = new StringBuilder(nbBits);
+		for (int i = 0; i < nbBits; i++) {
+			sb.append(random.nextBoolean() ? '1' : '0');
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void everyFieldAgainstTheBitString() {
+		Random random = new Random(1);
+		String bits = randomBits(random, 6 * 71); // 426 bits, several words
+		AISBitBuffer buffer = new AISBitBuffer(); // Smaller, must grow
+		buffer.append(armor(bits), 0);
+		assertEquals(bits.length(), buffer.length());
+		for (int from = 0; from < bits.length(); from++) {
+			for (int len = 1; len <= 64 && from + len <= bits.length(); len++) {
+				String field = bits.substring(from, from + len);
+				BigInteger expected = new BigInteger(field, 2);
+				assertEquals(from + ":" + len, expected.longValue(), buffer.unsigned(from, len));
+				long signed = (field.charAt(0) == '1') ? expected.subtract(BigInteger.ONE.shiftLeft(len)).longValue() : expected.longValue();
+				assertEquals(from + ":" + len, signed, buffer.signed(from, len));
+				if (len <= 32) {
+					assertEquals((int) expected.longValue(), buffer.uint(from, len));
+					assertEquals((int) signed, buffer.sint(from, len));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void signedFields() {
+		// 8-bit ROT of -127, 28-bit longitude of -123.395383 * 600,000, then 1 (positive)
+		int longitude = (int) Math.round(-123.395383 * 600_000);
+		String bits = String.format("%8s", Integer.toBinaryString(-127 & 0xFF)).replace(' ', '0') +
+						String.format("%28s", Integer.toBinaryString(longitude & 0x0FFFFFFF)).replace(' ', '0') +
+						"000001";
+		AISBitBuffer buffer = new AISBitBuffer();
+		buffer.append(armor(bits), 0);
+		assertEquals(-127, buffer.sint(0, 8));
+		assertEquals(129, buffer.uint(0, 8));
+		assertEquals(longitude, buffer.sint(8, 28));
+		assertEquals(1, buffer.sint(36, 6));
+	}
+
+	@Test
+	public void fillBitsAndBeyondTheEnd() {
+		AISBitBuffer buffer = new AISBitBuffer();
+		buffer.append("w", 2); // 111111, the last 2 bits are fill bits
+		assertEquals(4, buffer.length());
+		assertEquals(0b1111, buffer.uint(0, 4));
+		assertEquals(0b111100, buffer.uint(0, 6)); // The fill bits read as 0
+		assertEquals(0L, buffer.unsigned(10_000, 64));
+
+		buffer.reset();
+		assertEquals(0, buffer.length());
+		assertEquals(0, buffer.uint(0, 6));
+		// Appended fragments
+		buffer.append("1", 0);
+		buffer.append("w", 0);
+		assertEquals(12, buffer.length());
+		assertEquals(0b000001_111111, buffer.uint(0, 12));
+	}
+
+	@Test
+	public void text() {
+		// "AB C" then '@' padding: A=1, B=2, ' '=32, C=3, @=0
+		String bits = "000001" + "000010" + "100000" + "000011" + "000000" + "000000";
+		AISBitBuffer buffer = new AISBitBuffer();
+		buffer.append(armor(bits), 0);
+		assertEquals("AB C", buffer.text(0, 6));
+		assertEquals("AB", buffer.text(0, 3)); // Trailing spaces removed
+		assertEquals("AB C", buffer.text(0, 20)); // Stops at the end of the message
+		assertEquals("", buffer.text(36, 5));
+	}
+
+	@Test
+	public void invalidCharacter() {
+		AISBitBuffer buffer = new AISBitBuffer();
+		for (String payload : new String[]{"X", "_", "x", "\u00e9"}) {
+			try {
+				buffer.append(payload, 0);
+				fail(String.format("[%s] is not part of the armoring", payload));
+			} catch (IllegalArgumentException expected) {
+			}
+		}
+	}
+}
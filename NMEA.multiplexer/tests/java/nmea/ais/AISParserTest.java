@@ -0,0 +1,144 @@
+package nmea.ais;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * The expected values are the ones of the gpsd AIVDM/AIVDO decoding documentation.
+ */
+public class AISParserTest {
+
+	private final static String TYPE_5_PART_1 = "!AIVDM,2,1,1,A,55?MbV02;H;s<HtKR20EHE:0@T4@Dn2222222216L961O5Gf0NSQEp6ClRp8,0*1C";
+	private final static String TYPE_5_PART_2 = "!AIVDM,2,2,1,A,88888888880,2*25";
+
+	@Test
+	public void positionReportClassA() {
+		AISParser.AISRecord record = new AISParser().parse("!AIVDM,1,1,,A,15RTgt0PAso;90TKcjM8h6g208CQ,0*4A");
+		assertNotNull(record);
+		assertEquals(1, record.getMessageType());
+		assertEquals(371798000, record.getMmsi());
+		assertEquals(0, record.getNavstatus());
+		assertEquals(-127, record.getRot());
+		assertEquals(12.3f, record.getSog(), 1E-4);
+		assertEquals(1, record.getPosAcc());
+		assertEquals(-123.395383, record.getLongitude(), 1E-5);
+		assertEquals(48.38163, record.getLatitude(), 1E-5);
+		assertEquals(224.0f, record.getCog(), 1E-4);
+		assertEquals(215, record.getHdg());
+		assertEquals(33, record.getUtc());
+	}
+
+	@Test
+	public void positionReportClassB() {
+		AISParser.AISRecord record = new AISParser().parse("!AIVDM,1,1,,B,B52K>;h00Fc>jpUlNV@ikwpUoP06,0*4F");
+		assertNotNull(record);
+		assertEquals(18, record.getMessageType());
+		assertEquals(338087471, record.getMmsi());
+		assertEquals(0.1f, record.getSog(), 1E-4);
+		assertEquals(0, record.getPosAcc());
+		assertEquals(-74.072132, record.getLongitude(), 1E-5);
+		assertEquals(40.68454, record.getLatitude(), 1E-5);
+		assertEquals(79.6f, record.getCog(), 1E-4);
+		assertEquals(511, record.getHdg()); // Not available
+		assertEquals(49, record.getUtc());
+	}
+
+	private static void assertEverDiadem(AISParser.AISRecord record) {
+		assertNotNull(record);
+		assertEquals(5, record.getMessageType());
+		assertEquals(351759000, record.getMmsi());
+		assertEquals(9134270, record.getImo());
+		assertEquals("3FOF8", record.getCallSign());
+		assertEquals("EVER DIADEM", record.getShipName());
+		assertEquals(70, record.getShipType());
+		assertEquals(225, record.getToBow());
+		assertEquals(70, record.getToStern());
+		assertEquals(1, record.getToPort());
+		assertEquals(31, record.getToStarboard());
+		assertEquals(1, record.getEpfd());
+		assertEquals(5, record.getEtaMonth());
+		assertEquals(15, record.getEtaDay());
+		assertEquals(14, record.getEtaHour());
+		assertEquals(0, record.getEtaMinute());
+		assertEquals(12.2f, record.getDraught(), 1E-4);
+		assertEquals("NEW YORK", record.getDestination());
+	}
+
+	@Test
+	public void staticAndVoyageDataInTwoFragments() {
+		AISParser parser = new AISParser();
+		assertNull(parser.parse(TYPE_5_PART_1)); // Waiting for the second one
+		assertEquals(1, parser.getNbPending());
+		assertEverDiadem(parser.parse(TYPE_5_PART_2));
+		assertEquals(0, parser.getNbPending());
+	}
+
+	@Test
+	public void fragmentsOutOfOrder() {
+		AISParser parser = new AISParser();
+		assertNull(parser.parse(TYPE_5_PART_2));
+		assertEverDiadem(parser.parse(TYPE_5_PART_1));
+		assertEquals(0, parser.getNbPending());
+	}
+
+	@Test
+	public void fragmentsInterleavedWithOtherMessages() {
+		AISParser parser = new AISParser();
+		assertNull(parser.parse(TYPE_5_PART_1));
+		assertNotNull(parser.parse("!AIVDM,1,1,,B,B52K>;h00Fc>jpUlNV@ikwpUoP06,0*4F"));
+		assertEverDiadem(parser.parse(TYPE_5_PART_2));
+	}
+
+	@Test
+	public void firstFragmentAgain() {
+		AISParser parser = new AISParser();
+		assertNull(parser.parse(TYPE_5_PART_1));
+		assertNull(parser.parse(TYPE_5_PART_1)); // Another message with the same sequence ID, starts over
+		assertEquals(1, parser.getNbPending());
+		assertEverDiadem(parser.parse(TYPE_5_PART_2));
+	}
+
+	@Test
+	public void expiredFragments() throws InterruptedException {
+		AISParser parser = new AISParser(10L);
+		assertNull(parser.parse(TYPE_5_PART_1));
+		Thread.sleep(50L);
+		assertNull(parser.parse(TYPE_5_PART_2)); // The first one is gone
+		assertEquals(1, parser.getNbPending());
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void badChecksum() {
+		new AISParser().parse("!AIVDM,1,1,,B,B52K>;h00Fc>jpUlNV@ikwpUoP06,0*4E");
+	}
+
+	@Test
+	public void invalidSentences() {
+		AISParser parser = new AISParser();
+		String[] invalid = {
+						"$GPTXT,1,1,,B,B52K,0", // Not AIS
+						"!AIVDM,1,1,,B",        // Missing fields
+						"!AIVDM,1,2,,B,B52K,0", // Fragment 2 of 1
+						"!AIVDM,1,1,,B,B52X,0"  // Not 6-bit armored
+		};
+		for (String sentence : invalid) {
+			try {
+				parser.parse(withChecksum(sentence));
+				fail(String.format("[%s] is not valid", sentence));
+			} catch (RuntimeException expected) {
+			}
+		}
+	}
+
+	private static String withChecksum(String sentence) {
+		int cs = 0;
+		for (int i = 1; i < sentence.length(); i++) {
+			cs ^= sentence.charAt(i);
+		}
+		return String.format("%s*%02X", sentence, cs);
+	}
+}
@@ -0,0 +1,181 @@
+package nmea.ais;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AISTargetTableTest {
+
+	private final static double EPSILON = 1E-3;
+
+	private static AISParser.AISRecord position(int mmsi, double lat, double lng, double cog, double sog) {
+		AISParser.AISRecord record = new AISParser.AISRecord(System.currentTimeMillis());
+		record.setMessageType(1);
+		record.setMmsi(mmsi);
+		record.setLatitude((int) Math.round(lat * 600_000));
+		record.setLongitude((int) Math.round(lng * 600_000));
+		record.setCog((int) Math.round(cog * 10));
+		record.setSog((int) Math.round(sog * 10));
+		return record;
+	}
+
+	/**
+	 * Far away targets, so the queries with a small radius go through the grid, not through all the targets.
+	 */
+	private static void addFarAwayTargets(AISTargetTable table, Random random, int nb) {
+		for (int i = 0; i < nb; i++) {
+			table.update(position(900_000_000 + i, -60 + (random.nextDouble() * 20), random.nextDouble() * 90, 0, 0));
+		}
+	}
+
+	private static AISTargetTable.Proximity only(List<AISTargetTable.Proximity> list, int mmsi) {
+		for (AISTargetTable.Proximity proximity : list) {
+			if (proximity.getTarget().getMmsi() == mmsi) {
+				return proximity;
+			}
+		}
+		throw new AssertionError(String.format("%d not found in %d target(s)", mmsi, list.size()));
+	}
+
+	@Test
+	public void headOn() {
+		AISTargetTable table = new AISTargetTable();
+		table.update(position(1, 0.1, 0, 180, 10)); // 6 nm North, going South
+		AISTargetTable.Proximity proximity = only(table.getTargetsWithin(0, 0, 0, 10, 10), 1);
+		assertEquals(6d, proximity.getDistance(), EPSILON);
+		assertEquals(0d, proximity.getBearing(), EPSILON);
+		assertEquals(0d, proximity.getCpa(), EPSILON);
+		assertEquals(18d, proximity.getTcpa(), EPSILON); // 6 nm at 20 knots
+	}
+
+	@Test
+	public void crossing() {
+		AISTargetTable table = new AISTargetTable();
+		table.update(position(1, 0, 0.1, 270, 10)); // 6 nm East, going West
+		AISTargetTable.Proximity proximity = only(table.getTargetsWithin(0, 0, 0, 10, 10), 1);
+		assertEquals(90d, proximity.getBearing(), EPSILON);
+		assertEquals(3d * Math.sqrt(2d), proximity.getCpa(), EPSILON);
+		assertEquals(18d, proximity.getTcpa(), EPSILON);
+
+		assertEquals(1, table.getThreats(0, 0, 0, 10, 10, 5, 20).size());
+		assertEquals(0, table.getThreats(0, 0, 0, 10, 10, 4, 20).size()); // Not close enough
+		assertEquals(0, table.getThreats(0, 0, 0, 10, 10, 5, 15).size()); // Not soon enough
+	}
+
+	@Test
+	public void divergingAndSameVelocity() {
+		AISTargetTable table = new AISTargetTable();
+		table.update(position(1, 0.1, 0, 0, 20));  // 6 nm North, going away
+		table.update(position(2, -0.05, 0, 0, 10)); // 3 nm South, same course and speed
+		List<AISTargetTable.Proximity> list = table.getTargetsWithin(0, 0, 0, 10, 10);
+		assertEquals(2, list.get(0).getTarget().getMmsi()); // The closest first
+
+		AISTargetTable.Proximity diverging = only(list, 1);
+		assertTrue(diverging.getTcpa() < 0);
+		assertEquals(-36d, diverging.getTcpa(), EPSILON);
+
+		AISTargetTable.Proximity sameVelocity = only(list, 2);
+		assertEquals(3d, sameVelocity.getCpa(), EPSILON); // Stays where it is
+		assertEquals(0d, sameVelocity.getTcpa(), 0d);
+
+		List<AISTargetTable.Proximity> threats = table.getThreats(0, 0, 0, 10, 10, 10, 60);
+		assertEquals(1, threats.size()); // Only the one at the same velocity (tcpa 0)
+		assertEquals(2, threats.get(0).getTarget().getMmsi());
+	}
+
+	@Test
+	public void acrossTheDateLine() {
+		AISTargetTable table = new AISTargetTable();
+		addFarAwayTargets(table, new Random(1), 500);
+		table.update(position(1, 10, -179.95, 270, 10)); // East of the date line, going West, across it
+		table.update(position(2, 10, 179.95, 90, 10));   // West of the date line, going East, across it
+		double distance = 0.1 * 60 * Math.cos(Math.toRadians(10));
+
+		AISTargetTable.Proximity proximity = only(table.getTargetsWithin(10, 179.95, 90, 0, 10), 1);
+		assertEquals(distance, proximity.getDistance(), EPSILON);
+		assertEquals(90d, proximity.getBearing(), 0.1);
+		assertEquals(0d, proximity.getCpa(), EPSILON);
+
+		proximity = only(table.getTargetsWithin(10, -179.95, 0, 0, 10), 2);
+		assertEquals(distance, proximity.getDistance(), EPSILON);
+		assertEquals(270d, proximity.getBearing(), 0.1);
+		assertEquals(0d, proximity.getCpa(), EPSILON);
+		assertEquals(distance * 6, proximity.getTcpa(), 0.01); // At 10 knots, in minutes. The positions are floats.
+
+		assertEquals(2, table.getTargetsWithin(10, 180, 0, 0, 5).size());
+	}
+
+	/**
+	 * Same distance as the table, the slow way.
+	 */
+	private static double distance(double lat, double lng, AISTarget target) {
+		double cosLat = Math.max(0.01, Math.cos(Math.toRadians(lat)));
+		double dLng = target.getLongitude() - lng;
+		if (dLng > 180d) {
+			dLng -= 360d;
+		} else if (dLng < -180d) {
+			dLng += 360d;
+		}
+		double x = dLng * 60d * cosLat;
+		double y = (target.getLatitude() - lat) * 60d;
+		return Math.sqrt((x * x) + (y * y));
+	}
+
+	@Test
+	public void gridQueryLikeBruteForce() {
+		Random random = new Random(2);
+		AISTargetTable table = new AISTargetTable();
+		int mmsi = 1;
+		// Clusters, some of them around the date line and close to the poles
+		double[][] centers = {{37.5, -122.5}, {10, 180}, {-10, -179.9}, {85, 20}, {-88, -60}, {0, 0}};
+		for (double[] center : centers) {
+			for (int i = 0; i < 400; i++) {
+				double lat = Math.max(-90, Math.min(90, center[0] + ((random.nextDouble() - 0.5) * 2)));
+				double lng = center[1] + ((random.nextDouble() - 0.5) * 4);
+				lng = (lng > 180) ? lng - 360 : (lng < -180 ? lng + 360 : lng);
+				table.update(position(mmsi++, lat, lng, random.nextDouble() * 360, random.nextDouble() * 20));
+			}
+		}
+		List<AISTarget> all = table.getTargets();
+		assertEquals(mmsi - 1, all.size());
+		for (int q = 0; q < 300; q++) {
+			double[] center = centers[q % centers.length];
+			double lat = Math.max(-90, Math.min(90, center[0] + ((random.nextDouble() - 0.5) * 2)));
+			double lng = center[1] + ((random.nextDouble() - 0.5) * 4);
+			lng = (lng > 180) ? lng - 360 : (lng < -180 ? lng + 360 : lng);
+			double radius = (q % 10 == 0) ? 500 : random.nextDouble() * 30; // Some through all the targets
+			Set<Integer> expected = new TreeSet<>();
+			for (AISTarget target : all) {
+				if (distance(lat, lng, target) <= radius) {
+					expected.add(target.getMmsi());
+				}
+			}
+			Set<Integer> actual = new TreeSet<>();
+			double previous = 0d;
+			for (AISTargetTable.Proximity proximity : table.getTargetsWithin(lat, lng, 0, 0, radius)) {
+				actual.add(proximity.getTarget().getMmsi());
+				assertTrue(proximity.getDistance() >= previous);
+				previous = proximity.getDistance();
+			}
+			assertEquals(String.format("Around %f, %f, within %f nm", lat, lng, radius), expected, actual);
+		}
+	}
+
+	@Test
+	public void movingTargetsChangeCells() {
+		AISTargetTable table = new AISTargetTable();
+		addFarAwayTargets(table, new Random(3), 500);
+		table.update(position(1, 45, -5, 0, 0));
+		assertEquals(1, table.getTargetsWithin(45, -5, 0, 0, 1).size());
+		table.update(position(1, 46, -5, 0, 0)); // 60 nm North
+		assertEquals(0, table.getTargetsWithin(45, -5, 0, 0, 1).size());
+		assertEquals(1, table.getTargetsWithin(46, -5, 0, 0, 1).size());
+		assertEquals(501, table.size());
+	}
+}
@@ -0,0 +1,133 @@
+package nmea.api;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NMEAFramerTest {
+
+	private final static String RMC = "$GPRMC,223325.585,A,3744.9335,N,12230.4266,W,000.0,000.0,100617,,,A*7E";
+	private final static String GGA = "$GPGGA,223326.585,3744.9336,N,12230.4266,W,1,03,20.0,-16.8,M,,,,0000*3D";
+	private final static String AIS = "!AIVDM,1,1,,A,14eG;o@034o8sd<L9i:a;WF>062D,0*7D";
+
+	private final List<String> sentences = new ArrayList<>();
+	private final List<Boolean> validity = new ArrayList<>();
+	private NMEAFramer framer;
+
+	@Before
+	public void setUp() {
+		sentences.clear();
+		validity.clear();
+		framer = new NMEAFramer(sentence -> {
+			sentences.add(sentence.toString());
+			validity.add(sentence.isValid());
+		}, 128);
+	}
+
+	private static byte[] bytes(String str) {
+		return str.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	@Test
+	public void detectsSentences() {
+		framer.feed(bytes(RMC + "\r\n" + GGA + "\r\n" + AIS + "\n"));
+		assertEquals(3, sentences.size());
+		assertEquals(RMC, sentences.get(0));
+		assertEquals(GGA, sentences.get(1));
+		assertEquals(AIS, sentences.get(2));
+		assertTrue(validity.stream().allMatch(v -> v));
+		assertEquals(3, framer.getNbSentences());
+		assertEquals(0, framer.getNbInvalid());
+	}
+
+	@Test
+	public void sentenceSplitAcrossReads() {
+		byte[] data = bytes(RMC + "\r\n" + GGA + "\r\n");
+		for (byte b : data) { // One byte at a time
+			framer.feed(new byte[]{b}, 0, 1);
+		}
+		assertEquals(2, sentences.size());
+		assertEquals(RMC, sentences.get(0));
+		assertEquals(GGA, sentences.get(1));
+
+		sentences.clear();
+		framer.feed(RMC.substring(0, 20));
+		assertTrue(sentences.isEmpty());
+		framer.feed(RMC.substring(20) + "\r\n");
+		assertEquals(1, sentences.size());
+		assertEquals(RMC, sentences.get(0));
+	}
+
+	@Test
+	public void invalidChecksum() {
+		framer.feed(bytes(RMC.replace("*7E", "*7F") + "\r\n"));
+		framer.feed(bytes(RMC.substring(0, RMC.indexOf('*')) + "\r\n")); // No checksum
+		assertEquals(2, sentences.size());
+		assertFalse(validity.get(0));
+		assertFalse(validity.get(1));
+		assertEquals(2, framer.getNbInvalid());
+	}
+
+	@Test
+	public void trailingGarbageAfterTheChecksum() {
+		String[] broken = {"*7E5", "*7EZZ", "*7", "*7 E", "*7E\r5", "*7E "};
+		for (String trailer : broken) {
+			framer.feed(bytes(RMC.replace("*7E", trailer) + "\r\n"));
+		}
+		assertEquals(broken.length, sentences.size());
+		for (int i = 0; i < broken.length; i++) {
+			assertFalse(broken[i], validity.get(i));
+		}
+		assertEquals(broken.length, framer.getNbInvalid());
+
+		framer.feed(bytes(RMC + "\r\r\n" + RMC.replace("*7E", "*7e") + "\n")); // Lower case is fine
+		assertTrue(validity.get(broken.length));
+		assertTrue(validity.get(broken.length + 1));
+	}
+
+	@Test
+	public void garbageAndBrokenSentences() {
+		// Noise before the start, and a sentence interrupted by a new one
+		framer.feed(bytes("xx,12*\r\n$GPGGA,2233" + RMC + "\r\n"));
+		assertEquals(1, sentences.size());
+		assertEquals(RMC, sentences.get(0));
+		assertTrue(validity.get(0));
+	}
+
+	@Test
+	public void overflow() {
+		StringBuilder tooLong = new StringBuilder("$GPXXX,");
+		while (tooLong.length() < 300) {
+			tooLong.append("0123456789");
+		}
+		framer.feed(bytes(tooLong.toString()));
+		framer.feed(bytes("\r\n" + RMC + "\r\n"));
+		assertEquals(1, framer.getNbOverflows());
+		assertEquals(1, sentences.size());
+		assertEquals(RMC, sentences.get(0));
+	}
+
+	@Test
+	public void viewAccessors() {
+		NMEAFramer viewFramer = new NMEAFramer(sentence -> {
+			assertTrue(sentence.isDevice("GP"));
+			assertTrue(sentence.isSentence("RMC"));
+			assertFalse(sentence.isSentence("GGA"));
+			assertEquals(RMC.length(), sentence.length());
+			assertEquals('$', sentence.charAt(0));
+			byte[] copy = new byte[sentence.length()];
+			assertEquals(RMC.length(), sentence.copyTo(copy, 0));
+			assertEquals(RMC, new String(copy, StandardCharsets.ISO_8859_1));
+			sentences.add(sentence.toString());
+		});
+		viewFramer.feed(RMC + "\r\n");
+		assertEquals(1, sentences.size());
+	}
+}
@@ -0,0 +1,218 @@
+package nmea.mux;
+
+import nmea.api.NMEASentence;
+import nmea.forwarders.SentenceForwarder;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OutputQueueTest {
+
+	private final static long TIMEOUT = 5_000L; // ms
+
+	/**
+	 * Records what it receives. Waits for the gate to open before writing the first sentence,
+	 * so the queue fills up.
+	 */
+	private static class GatedForwarder implements SentenceForwarder {
+		final List<String> received = Collections.synchronizedList(new ArrayList<>());
+		final CountDownLatch gate = new CountDownLatch(1);
+		final CountDownLatch firstIn = new CountDownLatch(1);
+		final List<Thread> writers = Collections.synchronizedList(new ArrayList<>());
+
+		@Override
+		public void write(NMEASentence sentence) {
+			writers.add(Thread.currentThread());
+			firstIn.countDown();
+			try {
+				gate.await(TIMEOUT, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			received.add(sentence.toString());
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public void setProperties(Properties props) {
+		}
+
+		@Override
+		public Object getBean() {
+			return null;
+		}
+	}
+
+	private static NMEASentence sentence(int i) {
+		return new NMEASentence(String.format("$GPTXT,%d*00", i));
+	}
+
+	private static void waitFor(OutputQueue queue, long delivered) throws InterruptedException {
+		long until = System.currentTimeMillis() + TIMEOUT;
+		while (queue.getStatus().delivered < delivered && System.currentTimeMillis() < until) {
+			Thread.sleep(5L);
+		}
+	}
+
+	/**
+	 * Offers 0..nb-1, while the first one is stuck in the forwarder.
+	 */
+	private static void fill(OutputQueue queue, GatedForwarder forwarder, int nb) throws InterruptedException {
+		queue.offer(sentence(0));
+		assertTrue(forwarder.firstIn.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		for (int i = 1; i < nb; i++) {
+			queue.offer(sentence(i));
+		}
+	}
+
+	@Test
+	public void noQueue() {
+		GatedForwarder forwarder = new GatedForwarder();
+		forwarder.gate.countDown();
+		OutputQueue queue = new OutputQueue(forwarder, 0, OutputQueue.OverflowPolicy.BLOCK);
+		queue.offer(sentence(1));
+		assertEquals(1, forwarder.received.size());
+		assertEquals(Thread.currentThread(), forwarder.writers.get(0)); // Written by the caller
+		queue.stop(true);
+	}
+
+	@Test
+	public void dropNewest() throws InterruptedException {
+		GatedForwarder forwarder = new GatedForwarder();
+		OutputQueue queue = new OutputQueue(forwarder, 3, OutputQueue.OverflowPolicy.DROP_NEWEST);
+		fill(queue, forwarder, 10);
+		assertEquals(3, queue.getDepth());
+		forwarder.gate.countDown();
+		waitFor(queue, 4);
+		// The one in the forwarder, then the first three
+		assertEquals(4, forwarder.received.size());
+		for (int i = 0; i < 4; i++) {
+			assertTrue(forwarder.received.get(i).startsWith(String.format("$GPTXT,%d*", i)));
+		}
+		OutputQueue.Status status = queue.getStatus();
+		assertEquals(10, status.offered);
+		assertEquals(6, status.getDropped());
+		queue.stop(true);
+	}
+
+	@Test
+	public void dropOldest() throws InterruptedException {
+		GatedForwarder forwarder = new GatedForwarder();
+		OutputQueue queue = new OutputQueue(forwarder, 3, OutputQueue.OverflowPolicy.DROP_OLDEST);
+		fill(queue, forwarder, 10);
+		assertEquals(3, queue.getDepth());
+		forwarder.gate.countDown();
+		waitFor(queue, 4);
+		// The one in the forwarder, then the last three
+		assertEquals(4, forwarder.received.size());
+		assertTrue(forwarder.received.get(0).startsWith("$GPTXT,0*"));
+		for (int i = 1; i < 4; i++) {
+			assertTrue(forwarder.received.get(i).startsWith(String.format("$GPTXT,%d*", 6 + i)));
+		}
+		assertEquals(6, queue.getStatus().getDropped());
+		queue.stop(true);
+	}
+
+	@Test
+	public void block() throws InterruptedException {
+		GatedForwarder forwarder = new GatedForwarder();
+		OutputQueue queue = new OutputQueue(forwarder, 2, OutputQueue.OverflowPolicy.BLOCK);
+		fill(queue, forwarder, 3); // One in the forwarder, two in the queue, it is full
+		CountDownLatch offered = new CountDownLatch(1);
+		Thread producer = new Thread(() -> {
+			queue.offer(sentence(3));
+			offered.countDown();
+		});
+		producer.start();
+		assertEquals(1, offered.getCount());
+		assertTrue(!offered.await(200L, TimeUnit.MILLISECONDS)); // Waiting for room
+		forwarder.gate.countDown();
+		assertTrue(offered.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		waitFor(queue, 4);
+		assertEquals(4, forwarder.received.size());
+		for (int i = 0; i < 4; i++) {
+			assertTrue(forwarder.received.get(i).startsWith(String.format("$GPTXT,%d*", i)));
+		}
+		assertEquals(0, queue.getStatus().getDropped());
+		queue.stop(true);
+	}
+
+	@Test
+	public void blockDoesNotWaitForItself() throws InterruptedException {
+		// A computer re-feeding its own (full) queue, from its consumer thread: dropped, not blocked.
+		OutputQueue[] self = new OutputQueue[1];
+		CountDownLatch done = new CountDownLatch(1);
+		SentenceForwarder computer = new GatedForwarder() {
+			@Override
+			public void write(NMEASentence sentence) {
+				if (sentence.toString().startsWith("$GPTXT,0*")) {
+					for (int i = 100; i < 110; i++) { // More than the queue can hold
+						self[0].offer(sentence(i));
+					}
+					done.countDown();
+				}
+			}
+		};
+		self[0] = new OutputQueue(computer, 2, OutputQueue.OverflowPolicy.BLOCK);
+		self[0].offer(sentence(0));
+		assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		assertEquals(8, self[0].getStatus().getDropped());
+		self[0].stop(true);
+	}
+
+	@Test
+	public void blockingComputersFeedingEachOther() throws InterruptedException {
+		// Each one re-feeds the other (full) queue from its consumer thread: dropped, not a deadlock.
+		OutputQueue[] queues = new OutputQueue[2];
+		CountDownLatch done = new CountDownLatch(2);
+		CountDownLatch bothIn = new CountDownLatch(2);
+		for (int q = 0; q < 2; q++) {
+			int other = 1 - q;
+			queues[q] = new OutputQueue(new GatedForwarder() {
+				@Override
+				public void write(NMEASentence sentence) {
+					if (sentence.toString().startsWith("$GPTXT,0*")) {
+						bothIn.countDown();
+						try {
+							bothIn.await(TIMEOUT, TimeUnit.MILLISECONDS); // Both consumers busy, the queues do not drain
+						} catch (InterruptedException ie) {
+							Thread.currentThread().interrupt();
+						}
+						for (int i = 100; i < 110; i++) { // More than the other queue can hold
+							queues[other].offer(sentence(i));
+						}
+						done.countDown();
+					}
+				}
+			}, 2, OutputQueue.OverflowPolicy.BLOCK);
+		}
+		queues[0].offer(sentence(0));
+		queues[1].offer(sentence(0));
+		assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		assertTrue(queues[0].getStatus().getDropped() > 0);
+		assertTrue(queues[1].getStatus().getDropped() > 0);
+		queues[0].stop(true);
+		queues[1].stop(true);
+	}
+
+	@Test
+	public void stopDrains() throws InterruptedException {
+		GatedForwarder forwarder = new GatedForwarder();
+		OutputQueue queue = new OutputQueue(forwarder, 10, OutputQueue.OverflowPolicy.DROP_OLDEST);
+		fill(queue, forwarder, 5);
+		forwarder.gate.countDown();
+		queue.stop(true);
+		assertEquals(5, forwarder.received.size());
+	}
+}
@@ -0,0 +1,92 @@
+package nmea.mux;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class QueuedSubscriberTest {
+
+	/**
+	 * Blocks in its first write until closed, like a client that does not read.
+	 */
+	private static class StalledStream implements CachePublisher.Subscriber {
+		final CountDownLatch closed = new CountDownLatch(1);
+
+		@Override
+		public void send(String message) throws IOException {
+			try {
+				closed.await();
+			} catch (InterruptedException ie) {
+				// Closed
+			}
+			throw new IOException("Connection closed");
+		}
+
+		@Override
+		public void close() {
+			closed.countDown();
+		}
+	}
+
+	@Test
+	public void sendsInOrder() throws Exception {
+		List<String> written = new CopyOnWriteArrayList<>();
+		CountDownLatch all = new CountDownLatch(3);
+		CachePublisher.QueuedSubscriber subscriber = new CachePublisher.QueuedSubscriber(new CachePublisher.Subscriber() {
+			@Override
+			public void send(String message) {
+				written.add(message);
+				all.countDown();
+			}
+
+			@Override
+			public void heartbeat() {
+				written.add(":");
+				all.countDown();
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		subscriber.send("1");
+		subscriber.heartbeat();
+		subscriber.send("2");
+		assertTrue(all.await(5, TimeUnit.SECONDS));
+		assertEquals(3, written.size());
+		assertEquals("1", written.get(0));
+		assertEquals(":", written.get(1));
+		assertEquals("2", written.get(2));
+		subscriber.close();
+	}
+
+	@Test
+	public void stalledStreamDoesNotBlockTheSender() throws Exception {
+		StalledStream stream = new StalledStream();
+		CachePublisher.QueuedSubscriber subscriber = new CachePublisher.QueuedSubscriber(stream);
+		long before = System.currentTimeMillis();
+		try {
+			for (int i = 0; i < 1_000; i++) {
+				subscriber.send(String.valueOf(i)); // The first one blocks the writer, the others are queued
+			}
+			fail("The queue should be full");
+		} catch (IOException expected) {
+		}
+		assertTrue(System.currentTimeMillis() - before < 1_000L);
+		subscriber.close();
+		assertEquals(0, stream.closed.getCount()); // The pending write is released
+		try {
+			subscriber.send("after");
+			fail("Closed");
+		} catch (IOException expected) {
+		}
+	}
+}
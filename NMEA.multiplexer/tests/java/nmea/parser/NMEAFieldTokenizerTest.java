@@ -0,0 +1,111 @@
+package nmea.parser;
+
+import org.junit.Test;
+
+import java.text.NumberFormat;
+import java.text.ParseException;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NMEAFieldTokenizerTest {
+
+	private final NMEAFieldTokenizer tokenizer = new NMEAFieldTokenizer();
+
+	/**
+	 * The fields must be the ones of <code>substring(0, indexOf("*")).split(",")</code>
+	 */
+	private void assertSameAsSplit(String sentence) {
+		String[] expected = sentence.substring(0, sentence.indexOf("*")).split(",");
+		tokenizer.reset(sentence);
+		assertEquals(sentence, expected.length, tokenizer.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(sentence, expected[i], tokenizer.toString(i));
+			assertEquals(sentence, expected[i].length(), tokenizer.length(i));
+			assertTrue(sentence, tokenizer.equals(i, expected[i]));
+			assertEquals(sentence, expected[i].isEmpty(), tokenizer.isEmpty(i));
+			assertEquals(sentence, expected[i].trim().isEmpty(), tokenizer.isBlank(i));
+		}
+	}
+
+	@Test
+	public void sameFieldsAsSplit() {
+		assertSameAsSplit("$GPRMC,223325.585,A,3744.9335,N,12230.4266,W,000.0,000.0,100617,,,A*7E");
+		assertSameAsSplit("$GPRMC,,V,,,,,,,,,,N*53");
+		assertSameAsSplit("$IIVHW,,,,,,,,*6D"); // Trailing empty fields are dropped
+		assertSameAsSplit("$WIMWV, 45 ,R, 12.5 ,N,A*3A");
+		assertSameAsSplit("*00");
+		assertSameAsSplit(",,,*00");
+		StringBuilder many = new StringBuilder("$WIXDR");
+		for (int i = 0; i < 50; i++) { // More than the initial capacity
+			many.append(",C,").append(i).append(".5,C,").append(i);
+		}
+		assertSameAsSplit(many.append("*00").toString());
+	}
+
+	@Test
+	public void resetAllAndCharSequence() {
+		StringBuilder sb = new StringBuilder("$IIHDG,231,,,15,E*32");
+		tokenizer.resetAll(sb);
+		assertEquals(6, tokenizer.size());
+		assertEquals("E*32", tokenizer.toString(5));
+		assertEquals('2', tokenizer.charAt(1, 0));
+		assertEquals(7, tokenizer.start(1));
+		assertEquals(10, tokenizer.end(1));
+	}
+
+	@Test(expected = StringIndexOutOfBoundsException.class)
+	public void noChecksum() {
+		tokenizer.reset("$GPRMC,223325.585,A");
+	}
+
+	@Test
+	public void beyondTheLastField() {
+		tokenizer.reset("$IIVHW,,,,,,,,*6D");
+		try {
+			tokenizer.toString(1);
+			fail("Field 1 does not exist");
+		} catch (ArrayIndexOutOfBoundsException expected) {
+		}
+	}
+
+	@Test
+	public void parseNMEADoubleLikeNumberFormat() throws ParseException {
+		String[] values = {"0", "000.0", "3744.9335", "-16.8", "12230.4266", "1.0130", "-0.001", "232.", "1e3",
+						"12.5abc", "0.1234567890123456789", "99999999999999999999", "-0"};
+		NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
+		for (String value : values) {
+			String sentence = "$XX," + value + "*00";
+			tokenizer.reset(sentence);
+			double expected = nf.parse(value).doubleValue();
+			assertEquals(value, expected, tokenizer.parseNMEADouble(1), 0d);
+		}
+		for (String value : new String[]{"", " ", "abc", ".", "+5"}) {
+			tokenizer.resetAll("$XX," + value + ",Z");
+			try {
+				tokenizer.parseNMEADouble(1);
+				fail(String.format("[%s] is not a number", value));
+			} catch (NumberFormatException expected) {
+			}
+		}
+	}
+
+	@Test
+	public void parseDoubleAndInt() {
+		tokenizer.reset("$GPGGA,223326.585,3744.9336,N,12230.4266,W,1,03*00");
+		assertEquals(223326.585, tokenizer.parseDouble(1), 0d);
+		assertEquals(37d, tokenizer.parseDouble(2, 0, 2), 0d);
+		assertEquals(44.9336, tokenizer.parseDouble(2, 2, tokenizer.length(2)), 0d);
+		assertEquals(122, tokenizer.parseInt(4, 0, 3));
+		assertEquals(3, tokenizer.parseInt(7));
+		assertFalse(tokenizer.equals(3, "S"));
+		try {
+			tokenizer.parseInt(3);
+			fail("N is not an int");
+		} catch (NumberFormatException expected) {
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package nmea.parser;
+
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.Format;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The sentences of <code>tests/data/StringParsers.golden.txt</code> (taken from <code>sample.data/*.nmea</code>,
+ * plus some broken ones), parsed by the {@link StringParsers} based on the {@link NMEAFieldTokenizer},
+ * must give the same results as the ones of the original <code>String.split</code> based parsers,
+ * recorded in the same file.
+ * <br>
+ * Run from the module directory (like the benchmarks).
+ */
+public class StringParsersGoldenTest {
+
+	final static String GOLDEN_FILE = "tests/data/StringParsers.golden.txt";
+
+	private final static Gson GSON = new GsonBuilder()
+					.serializeNulls()
+					.serializeSpecialFloatingPointValues()
+					.registerTypeHierarchyAdapter(Date.class, (JsonSerializer<Date>) (date, type, context) -> new JsonPrimitive(date.getTime()))
+					.setExclusionStrategies(new ExclusionStrategy() { // The formatters some values hold, not part of the result
+						@Override
+						public boolean shouldSkipField(FieldAttributes field) {
+							return false;
+						}
+
+						@Override
+						public boolean shouldSkipClass(Class<?> clazz) {
+							return Format.class.isAssignableFrom(clazz);
+						}
+					})
+					.create();
+
+	/**
+	 * @param sentence the NMEA sentence
+	 * @return what the parser returns for this sentence (JSON), or the exception it throws, and the checksum validity
+	 */
+	static String describe(String sentence) {
+		Object result;
+		try {
+			switch (sentence.substring(3, 6)) {
+				case "RMC":
+					result = StringParsers.parseRMC(sentence);
+					break;
+				case "GGA":
+					result = StringParsers.parseGGA(sentence);
+					break;
+				case "VTG":
+					result = StringParsers.parseVTG(sentence);
+					break;
+				case "MWV":
+					result = StringParsers.parseMWV(sentence);
+					break;
+				case "VHW":
+					result = StringParsers.parseVHW(sentence);
+					break;
+				case "VLW":
+					result = StringParsers.parseVLW(sentence);
+					break;
+				case "HDG":
+					result = StringParsers.parseHDG(sentence);
+					break;
+				case "HDM":
+					result = StringParsers.parseHDM(sentence);
+					break;
+				case "HDT":
+					result = StringParsers.parseHDT(sentence);
+					break;
+				case "MTW":
+					result = StringParsers.parseMTW(sentence);
+					break;
+				case "MTA":
+					result = StringParsers.parseMTA(sentence);
+					break;
+				case "MMB":
+					result = StringParsers.parseMMB(sentence);
+					break;
+				case "XDR":
+					result = StringParsers.parseXDR(sentence);
+					break;
+				case "MDA":
+					result = StringParsers.parseMDA(sentence);
+					break;
+				default:
+					throw new IllegalArgumentException(String.format("No parser for [%s]", sentence));
+			}
+		} catch (Exception ex) {
+			result = "Exception: " + ex.getClass().getName();
+		}
+		boolean validCheckSum;
+		try {
+			validCheckSum = StringParsers.validCheckSum(sentence);
+		} catch (Exception ex) {
+			validCheckSum = false;
+		}
+		return String.format("%s %s %s", (validCheckSum ? "valid" : "invalid"), (result == null ? "-" : result.getClass().getSimpleName()), GSON.toJson(result));
+	}
+
+	@Test
+	public void sameAsStringBasedParsers() throws Exception {
+		List<String> mismatches = new ArrayList<>();
+		int nbSentences = 0;
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(GOLDEN_FILE), StandardCharsets.ISO_8859_1))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				int tab = line.indexOf('\t');
+				String sentence = line.substring(0, tab);
+				String expected = line.substring(tab + 1);
+				String actual = describe(sentence);
+				nbSentences++;
+				if (!expected.equals(actual)) {
+					mismatches.add(String.format("%s\n  expected %s\n  actual   %s", sentence, expected, actual));
+				}
+			}
+		}
+		assertTrue("Empty golden file", nbSentences > 0);
+		assertEquals(String.format("%d mismatch(es) out of %d sentences:\n%s", mismatches.size(), nbSentences,
+						String.join("\n", mismatches.subList(0, Math.min(10, mismatches.size())))), 0, mismatches.size());
+	}
+}